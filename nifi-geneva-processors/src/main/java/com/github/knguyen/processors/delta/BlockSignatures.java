@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.delta;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the per-block checksums of a locally cached report that the remote delta helper uses to find unchanged
+ * regions of the freshly generated report. Every full block of the basis file contributes one line holding its weak
+ * (rolling) checksum and its strong MD5 digest; a trailing partial block is not signed and will always be sent as
+ * literal data.
+ *
+ * The signature stream is plain text so the helper script can parse it without any binary unpacking:
+ *
+ * <pre>
+ * &lt;block size&gt; &lt;block count&gt;
+ * &lt;weak checksum&gt; &lt;md5 hex&gt;     (one line per block, in block order)
+ * </pre>
+ */
+public final class BlockSignatures {
+    /**
+     * Computes the weak checksum of {@code length} bytes of {@code data} starting at {@code offset}. This is the
+     * rsync-style Adler variant: {@code a} is the sum of the bytes and {@code b} weights every byte by its distance from
+     * the end of the block, both modulo 2^16. The helper script rolls this exact function over the new report one byte
+     * at a time, so the two implementations must never diverge.
+     *
+     * @param data
+     *            The buffer holding the block.
+     * @param offset
+     *            The offset of the first byte of the block.
+     * @param length
+     *            The block length.
+     *
+     * @return The weak checksum, {@code a | (b << 16)}.
+     */
+    public static long weakChecksum(final byte[] data, final int offset, final int length) {
+        long a = 0;
+        long b = 0;
+        for (int i = 0; i < length; i++) {
+            final int value = data[offset + i] & 0xff;
+            a += value;
+            b += (long) (length - i) * value;
+        }
+        return (a & 0xffff) | ((b & 0xffff) << 16);
+    }
+
+    /**
+     * Reads the basis file block by block and writes its signature stream to {@code out}. The output stream is flushed
+     * but not closed.
+     *
+     * @param basis
+     *            The locally cached copy of the previous report.
+     * @param blockSize
+     *            The block size in bytes.
+     * @param out
+     *            The stream to write the signatures to, typically the standard input of the remote helper.
+     *
+     * @throws IOException
+     *             if the basis file cannot be read or the stream cannot be written.
+     */
+    public static void write(final Path basis, final int blockSize, final OutputStream out) throws IOException {
+        final long blockCount = Files.size(basis) / blockSize;
+        final MessageDigest md5 = newMd5();
+        final byte[] block = new byte[blockSize];
+
+        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        writer.write(blockSize + " " + blockCount + "\n");
+
+        try (final InputStream in = Files.newInputStream(basis)) {
+            for (long i = 0; i < blockCount; i++) {
+                readFully(in, block);
+                writer.write(weakChecksum(block, 0, blockSize) + " " + toHex(md5.digest(block)) + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException exc) {
+            // every JVM is required to support MD5
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes)
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static void readFully(final InputStream in, final byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            final int count = in.read(buffer, read, buffer.length - read);
+            if (count < 0)
+                throw new IOException("Basis file was truncated while computing block signatures.");
+            read += count;
+        }
+    }
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private BlockSignatures() {
+    }
+}
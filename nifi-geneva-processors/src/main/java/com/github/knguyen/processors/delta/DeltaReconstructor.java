@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.delta;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Rebuilds a new version of a report from the locally cached basis file and the instruction stream emitted by the
+ * remote delta helper. The instruction stream is a sequence of records, each introduced by a single ASCII tag:
+ *
+ * <ul>
+ * <li>{@code L} followed by a 4-byte big-endian length and that many bytes of literal data;</li>
+ * <li>{@code B} followed by a 4-byte big-endian block index, meaning "copy this block from the basis file";</li>
+ * <li>{@code E} followed by the 16-byte MD5 digest of the complete new file, which ends the stream.</li>
+ * </ul>
+ *
+ * The digest of the rebuilt output is verified against the trailer so that a stale or corrupted basis file can never
+ * silently produce a wrong report.
+ */
+public final class DeltaReconstructor {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Applies the instruction stream and writes the rebuilt file to {@code out}.
+     *
+     * @param basis
+     *            The locally cached copy of the previous report, the same file the signatures were computed from.
+     * @param blockSize
+     *            The block size used when the signatures were computed.
+     * @param delta
+     *            The instruction stream read from the remote helper.
+     * @param out
+     *            The stream receiving the rebuilt report. It is not closed.
+     *
+     * @return Statistics describing how much of the report was copied locally versus transferred.
+     *
+     * @throws IOException
+     *             if the stream is malformed, references an unknown block or the rebuilt digest does not match.
+     */
+    public static DeltaStatistics apply(final Path basis, final int blockSize, final InputStream delta,
+            final OutputStream out) throws IOException {
+        final MessageDigest md5 = BlockSignatures.newMd5();
+        final DataInputStream in = new DataInputStream(delta);
+        final byte[] buffer = new byte[Math.max(blockSize, COPY_BUFFER_SIZE)];
+
+        long literalBytes = 0;
+        long matchedBytes = 0;
+
+        try (final RandomAccessFile basisFile = new RandomAccessFile(basis.toFile(), "r")) {
+            final long blockCount = basisFile.length() / blockSize;
+
+            while (true) {
+                final int tag = in.read();
+                if (tag == 'L') {
+                    long remaining = Integer.toUnsignedLong(in.readInt());
+                    literalBytes += remaining;
+                    while (remaining > 0) {
+                        final int chunk = (int) Math.min(buffer.length, remaining);
+                        in.readFully(buffer, 0, chunk);
+                        md5.update(buffer, 0, chunk);
+                        out.write(buffer, 0, chunk);
+                        remaining -= chunk;
+                    }
+                } else if (tag == 'B') {
+                    final long index = Integer.toUnsignedLong(in.readInt());
+                    if (index >= blockCount)
+                        throw new IOException(String.format(
+                                "Delta stream references block %d but the basis file only has %d blocks.", index,
+                                blockCount));
+                    basisFile.seek(index * blockSize);
+                    basisFile.readFully(buffer, 0, blockSize);
+                    md5.update(buffer, 0, blockSize);
+                    out.write(buffer, 0, blockSize);
+                    matchedBytes += blockSize;
+                } else if (tag == 'E') {
+                    final byte[] expected = new byte[16];
+                    in.readFully(expected);
+                    if (!Arrays.equals(expected, md5.digest()))
+                        throw new IOException("Rebuilt report does not match the digest reported by the remote host.");
+                    out.flush();
+                    return new DeltaStatistics(literalBytes, matchedBytes);
+                } else if (tag < 0) {
+                    throw new EOFException("Delta stream ended before the end-of-stream record.");
+                } else {
+                    throw new IOException(String.format("Unexpected record tag `%s` in delta stream.", (char) tag));
+                }
+            }
+        }
+    }
+
+    /**
+     * Describes the outcome of a delta transfer.
+     */
+    public static final class DeltaStatistics {
+        private final long literalBytes;
+        private final long matchedBytes;
+
+        DeltaStatistics(final long literalBytes, final long matchedBytes) {
+            this.literalBytes = literalBytes;
+            this.matchedBytes = matchedBytes;
+        }
+
+        /**
+         * @return The number of bytes that crossed the wire as literal data.
+         */
+        public long getLiteralBytes() {
+            return literalBytes;
+        }
+
+        /**
+         * @return The number of bytes copied from the local basis file.
+         */
+        public long getMatchedBytes() {
+            return matchedBytes;
+        }
+    }
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private DeltaReconstructor() {
+    }
+}
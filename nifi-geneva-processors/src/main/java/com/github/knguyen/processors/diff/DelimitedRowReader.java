@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal, allocation-free reader for the delimited report formats produced by `runrep` (CSV, BCP and TSV). Rows are
+ * exposed as raw bytes so that they can be hashed and copied to the output unchanged; fields are exposed as offsets into
+ * the current row.
+ *
+ * When quoting is enabled, delimiters and line breaks inside double-quoted fields do not end the field or the row, and
+ * a doubled quote inside a quoted field is treated as an escaped quote. Blank rows are skipped and a trailing carriage
+ * return is dropped from every row.
+ */
+public class DelimitedRowReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte delimiter;
+    private final boolean quoted;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+
+    private byte[] row = new byte[1024];
+    private int rowLength;
+    private long rowNumber;
+
+    private int[] fieldStarts = new int[64];
+    private int[] fieldEnds = new int[64];
+    private int fieldCount;
+
+    public DelimitedRowReader(final InputStream in, final byte delimiter, final boolean quoted) {
+        this.in = in;
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+    }
+
+    /**
+     * Advances to the next non-blank row.
+     *
+     * @return {@code true} if a row was read, {@code false} at the end of the stream.
+     *
+     * @throws IOException
+     *             if the underlying stream cannot be read.
+     */
+    public boolean next() throws IOException {
+        while (readRow()) {
+            if (rowLength > 0) {
+                splitFields();
+                rowNumber++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readRow() throws IOException {
+        rowLength = 0;
+        boolean inQuotes = false;
+        boolean any = false;
+
+        while (true) {
+            if (bufferPosition == bufferLimit) {
+                bufferLimit = in.read(buffer, 0, buffer.length);
+                bufferPosition = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    trimCarriageReturn();
+                    return any;
+                }
+            }
+
+            final byte b = buffer[bufferPosition++];
+            any = true;
+            if (b == '\n' && !inQuotes) {
+                trimCarriageReturn();
+                return true;
+            }
+            if (quoted && b == '"')
+                inQuotes = !inQuotes;
+            append(b);
+        }
+    }
+
+    private void append(final byte b) {
+        if (rowLength == row.length)
+            row = Arrays.copyOf(row, row.length * 2);
+        row[rowLength++] = b;
+    }
+
+    private void trimCarriageReturn() {
+        if (rowLength > 0 && row[rowLength - 1] == '\r')
+            rowLength--;
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        boolean inQuotes = false;
+        int start = 0;
+        for (int i = 0; i < rowLength; i++) {
+            final byte b = row[i];
+            if (quoted && b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == delimiter && !inQuotes) {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+        addField(start, rowLength);
+    }
+
+    private void addField(final int start, final int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * @return The bytes of the current row. Only the first {@link #getRowLength()} bytes are valid, and the array is
+     *         reused by the next call to {@link #next()}.
+     */
+    public byte[] getRow() {
+        return row;
+    }
+
+    public int getRowLength() {
+        return rowLength;
+    }
+
+    /**
+     * @return The 1-based number of the current row, not counting blank rows.
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public int getFieldStart(final int index) {
+        return fieldStarts[index];
+    }
+
+    public int getFieldEnd(final int index) {
+        return fieldEnds[index];
+    }
+
+    /**
+     * Decodes a field of the current row, removing surrounding quotes and surrounding whitespace.
+     *
+     * @param index
+     *            The 0-based field index.
+     *
+     * @return The field value.
+     */
+    public String getField(final int index) {
+        String value = new String(row, fieldStarts[index], fieldEnds[index] - fieldStarts[index],
+                StandardCharsets.UTF_8).trim();
+        if (quoted && value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            value = value.substring(1, value.length() - 1).replace("\"\"", "\"").trim();
+        return value;
+    }
+}
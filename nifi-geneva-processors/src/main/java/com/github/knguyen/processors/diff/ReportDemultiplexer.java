@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a delimited report into several outputs by the value of a key column. This is the reverse of merging many
+ * single-key queries into one query with an IN-list: every row is written to the outputs registered for its key, and
+ * the header, when present, is written to every output so that each one reads like the report of its own query.
+ *
+ * Key values are compared after removing surrounding quotes and whitespace, the same way {@link DelimitedRowReader}
+ * decodes fields. Rows whose key was not registered are dropped and counted.
+ */
+public class ReportDemultiplexer {
+    private final byte delimiter;
+    private final boolean quoted;
+    private final boolean headerPresent;
+    private final String keyColumn;
+
+    /**
+     * @param delimiter
+     *            The field delimiter, see {@link RowChangeDetector#delimiterFor(String)}.
+     * @param quoted
+     *            Whether fields may be enclosed in double quotes.
+     * @param headerPresent
+     *            Whether the first row is a header row.
+     * @param keyColumn
+     *            The name of the key column, or its 1-based number.
+     */
+    public ReportDemultiplexer(final byte delimiter, final boolean quoted, final boolean headerPresent,
+            final String keyColumn) {
+        if (keyColumn == null || keyColumn.isBlank())
+            throw new IllegalArgumentException("A key column is required to split a report.");
+
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+        this.headerPresent = headerPresent;
+        this.keyColumn = keyColumn.trim();
+    }
+
+    /**
+     * Streams the report once, writing every row to the outputs of its key.
+     *
+     * @param report
+     *            The merged report.
+     * @param outputs
+     *            The outputs of every key. Several outputs may share a key, in which case each receives the rows.
+     *
+     * @return The number of rows written for each key, and the number of rows that matched no key.
+     *
+     * @throws IOException
+     *             if the report cannot be read, the outputs cannot be written, or a row lacks the key column.
+     * @throws IllegalArgumentException
+     *             if the key column cannot be resolved.
+     */
+    public Summary split(final InputStream report, final Map<String, List<OutputStream>> outputs)
+            throws IOException {
+        final DelimitedRowReader reader = new DelimitedRowReader(report, delimiter, quoted);
+        final Summary summary = new Summary();
+        if (!reader.next()) {
+            flush(outputs);
+            return summary;
+        }
+
+        final int keyIndex;
+        if (headerPresent) {
+            keyIndex = resolveKeyColumn(reader);
+            for (final List<OutputStream> keyOutputs : outputs.values())
+                for (final OutputStream out : keyOutputs)
+                    writeRow(out, reader);
+            if (!reader.next()) {
+                flush(outputs);
+                return summary;
+            }
+        } else {
+            keyIndex = resolveKeyColumn(null);
+        }
+
+        do {
+            if (keyIndex >= reader.getFieldCount())
+                throw new IOException(String.format("Row %d has %d fields but key column %d was requested.",
+                        reader.getRowNumber(), reader.getFieldCount(), keyIndex + 1));
+
+            final String key = reader.getField(keyIndex);
+            final List<OutputStream> keyOutputs = outputs.get(key);
+            if (keyOutputs == null) {
+                summary.unmatched++;
+                continue;
+            }
+
+            for (final OutputStream out : keyOutputs)
+                writeRow(out, reader);
+            summary.rows.merge(key, 1L, Long::sum);
+        } while (reader.next());
+
+        flush(outputs);
+        return summary;
+    }
+
+    private int resolveKeyColumn(final DelimitedRowReader header) {
+        if (!keyColumn.isEmpty() && keyColumn.chars().allMatch(Character::isDigit)) {
+            final int index = Integer.parseInt(keyColumn) - 1;
+            if (index < 0)
+                throw new IllegalArgumentException("Key column numbers are 1-based.");
+            return index;
+        }
+
+        if (header == null)
+            throw new IllegalArgumentException(String.format(
+                    "Key column `%s` is a name, but the report has no header row. Use a column number instead.",
+                    keyColumn));
+
+        for (int field = 0; field < header.getFieldCount(); field++) {
+            if (header.getField(field).equalsIgnoreCase(keyColumn))
+                return field;
+        }
+        throw new IllegalArgumentException(
+                String.format("Key column `%s` was not found in the report header.", keyColumn));
+    }
+
+    private static void writeRow(final OutputStream out, final DelimitedRowReader reader) throws IOException {
+        out.write(reader.getRow(), 0, reader.getRowLength());
+        out.write('\n');
+    }
+
+    private static void flush(final Map<String, List<OutputStream>> outputs) throws IOException {
+        for (final List<OutputStream> keyOutputs : outputs.values())
+            for (final OutputStream out : keyOutputs)
+                out.flush();
+    }
+
+    /**
+     * The number of rows written by {@link ReportDemultiplexer#split}.
+     */
+    public static final class Summary {
+        private final Map<String, Long> rows = new HashMap<>();
+        private long unmatched;
+
+        /**
+         * @return The number of rows of a key, not counting the header.
+         */
+        public long getRows(final String key) {
+            return rows.getOrDefault(key, 0L);
+        }
+
+        /**
+         * @return The number of rows of every key that had any.
+         */
+        public Map<String, Long> getRows() {
+            return Collections.unmodifiableMap(rows);
+        }
+
+        /**
+         * @return The number of rows whose key was not requested.
+         */
+        public long getUnmatched() {
+            return unmatched;
+        }
+    }
+}
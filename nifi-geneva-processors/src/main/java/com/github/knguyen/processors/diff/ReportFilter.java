@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.knguyen.processors.utils.StringUtils;
+
+/**
+ * Describes a row filter and column projection that is applied to a delimited report on the host that produced it, so
+ * that rows and columns the flow drops anyway never cross the network.
+ *
+ * The work is done by the bundled `report-filter.pl`, which rewrites the report in place. This class only validates
+ * the configuration and renders the helper's command line.
+ */
+public class ReportFilter {
+    /**
+     * The name of the bundled helper script, relative to this class.
+     */
+    public static final String SCRIPT_RESOURCE = "report-filter.pl";
+
+    /**
+     * Matches `column operator value`. The column is matched lazily so that the first operator wins, which allows the
+     * value (e.g. a regular expression) to contain operator characters.
+     */
+    private static final Pattern CONDITION_PATTERN = Pattern
+            .compile("^\\s*(.+?)\\s*(!=|<=|>=|!~|=|<|>|~)\\s*(.*?)\\s*$");
+
+    private final byte delimiter;
+    private final boolean quoted;
+    private final boolean headerPresent;
+    private final List<String> columns;
+    private final List<Condition> conditions;
+
+    /**
+     * @param delimiter
+     *            The field delimiter.
+     * @param quoted
+     *            Whether fields may be enclosed in double quotes.
+     * @param headerPresent
+     *            Whether the first row of the report holds the column names.
+     * @param columns
+     *            The columns to keep, in output order, as column names (requires a header) or 1-based column numbers.
+     *            Empty to keep every column.
+     * @param conditions
+     *            The conditions a row must meet to be kept. Empty to keep every row.
+     */
+    public ReportFilter(final byte delimiter, final boolean quoted, final boolean headerPresent,
+            final List<String> columns, final List<Condition> conditions) {
+        if (columns.isEmpty() && conditions.isEmpty())
+            throw new IllegalArgumentException("A report filter needs at least one column or one condition.");
+
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+        this.headerPresent = headerPresent;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+    }
+
+    /**
+     * Parses row filter conditions, one per line, in the form `column operator value`. Blank lines are ignored.
+     *
+     * @param conditions
+     *            The conditions, e.g. `Quantity > 0`.
+     *
+     * @return The parsed conditions.
+     *
+     * @throws IllegalArgumentException
+     *             if a line is not a valid condition.
+     */
+    public static List<Condition> parseConditions(final String conditions) {
+        final List<Condition> parsed = new ArrayList<>();
+        if (conditions == null)
+            return parsed;
+
+        for (final String line : conditions.split("\\r?\\n")) {
+            if (line.isBlank())
+                continue;
+
+            final Matcher matcher = CONDITION_PATTERN.matcher(line);
+            if (!matcher.matches())
+                throw new IllegalArgumentException(String.format(
+                        "`%s` is not a condition; expected `column operator value` with one of the operators "
+                                + "= != < <= > >= ~ !~.",
+                        line.trim()));
+            parsed.add(new Condition(matcher.group(1), matcher.group(2), matcher.group(3)));
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses a comma-separated column list. Blank entries are ignored.
+     *
+     * @param columns
+     *            The columns, e.g. `Portfolio,Investment,3`.
+     *
+     * @return The column names and numbers, trimmed.
+     */
+    public static List<String> parseColumns(final String columns) {
+        final List<String> parsed = new ArrayList<>();
+        if (columns == null)
+            return parsed;
+
+        for (final String column : columns.split(",")) {
+            if (!column.isBlank())
+                parsed.add(column.trim());
+        }
+        return parsed;
+    }
+
+    /**
+     * Renders the shell command that filters {@code resource} in place.
+     *
+     * @param scriptPath
+     *            Where the helper script lives on the host.
+     * @param resource
+     *            The report to filter.
+     *
+     * @return The command line, with every argument quoted.
+     */
+    public String toCommandLine(final String scriptPath, final String resource) {
+        final StringBuilder commandLine = new StringBuilder("perl ").append(StringUtils.shellQuote(scriptPath));
+        for (final String argument : getArguments())
+            commandLine.append(' ').append(StringUtils.shellQuote(argument));
+        return commandLine.append(' ').append(StringUtils.shellQuote(resource)).toString();
+    }
+
+    /**
+     * Returns the helper options describing this filter, without the report path.
+     */
+    public List<String> getArguments() {
+        final List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(String.valueOf((char) delimiter));
+        if (quoted)
+            arguments.add("-q");
+        if (headerPresent)
+            arguments.add("-h");
+        if (!columns.isEmpty()) {
+            arguments.add("-c");
+            arguments.add(String.join(",", columns));
+        }
+        for (final Condition condition : conditions) {
+            arguments.add("-f");
+            arguments.add(condition.getColumn());
+            arguments.add(condition.getOperator());
+            arguments.add(condition.getValue());
+        }
+        return arguments;
+    }
+
+    /**
+     * Reads the bundled helper script.
+     *
+     * @return The script content.
+     *
+     * @throws IOException
+     *             if the script is missing or cannot be read.
+     */
+    public static byte[] readScript() throws IOException {
+        try (final InputStream in = ReportFilter.class.getResourceAsStream(SCRIPT_RESOURCE)) {
+            if (in == null)
+                throw new FileNotFoundException(String.format("Could not find the bundled `%s`.", SCRIPT_RESOURCE));
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * A single `column operator value` condition.
+     */
+    public static final class Condition {
+        private final String column;
+        private final String operator;
+        private final String value;
+
+        public Condition(final String column, final String operator, final String value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * The number of data rows the helper kept and dropped. The header row is not counted.
+     */
+    public static final class Statistics {
+        private final long keptRows;
+        private final long droppedRows;
+
+        public Statistics(final long keptRows, final long droppedRows) {
+            this.keptRows = keptRows;
+            this.droppedRows = droppedRows;
+        }
+
+        /**
+         * Parses the `kept dropped` line the helper prints on success.
+         *
+         * @throws IOException
+         *             if the output is not in the expected form.
+         */
+        public static Statistics parse(final String output) throws IOException {
+            final String[] counts = output.trim().split("\\s+");
+            try {
+                if (counts.length == 2)
+                    return new Statistics(Long.parseLong(counts[0]), Long.parseLong(counts[1]));
+            } catch (final NumberFormatException exc) {
+                // reported below
+            }
+            throw new IOException(String.format("Unexpected output from the report filter: `%s`", output.trim()));
+        }
+
+        public long getKeptRows() {
+            return keptRows;
+        }
+
+        public long getDroppedRows() {
+            return droppedRows;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.github.knguyen.processors.utils.StringUtils;
+
+/**
+ * Compares a delimited report with the previous run of the same report definition and splits its rows into inserted,
+ * updated and deleted rows.
+ *
+ * Rows are identified by one or more key columns. For every row, only the hash of its key, the hash of the full row and
+ * the key text are persisted in a per-definition index file; the previous report itself is never kept. The index of the
+ * previous run is loaded into a {@link RowIndex}, the new report is streamed through it once, and keys that were never
+ * matched are emitted as deleted rows. Deleted rows only carry their key columns, since that is all the index retains.
+ *
+ * The new index is written to a temporary file and only replaces the previous one when {@link #commit()} is called, so
+ * that a failed or rolled back run does not lose the baseline.
+ */
+public class RowChangeDetector {
+    private static final int MAGIC = 0x47524958; // "GRIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+    private static final int ENTRY_KEY_OFFSET = 16;
+
+    private final Path indexFile;
+    private final Path pendingIndexFile;
+    private final byte delimiter;
+    private final boolean quoted;
+    private final boolean headerPresent;
+    private final List<String> keyColumns;
+    private final boolean offHeap;
+
+    /**
+     * The length of the key most recently copied by {@link #extractKey}.
+     */
+    private int keyLength;
+
+    /**
+     * @param indexFile
+     *            The index file of the report definition, see {@link #indexFileFor(Path, String)}.
+     * @param delimiter
+     *            The field delimiter.
+     * @param quoted
+     *            Whether fields may be enclosed in double quotes.
+     * @param headerPresent
+     *            Whether the first row of the report holds the column names.
+     * @param keyColumns
+     *            The key columns, as column names (requires a header) or 1-based column numbers.
+     * @param offHeap
+     *            Whether the index of the previous run is held in direct memory.
+     *
+     * @throws IllegalArgumentException
+     *             if the key columns are invalid whatever the report, see {@link #validateKeyColumns(List, boolean)}.
+     */
+    public RowChangeDetector(final Path indexFile, final byte delimiter, final boolean quoted,
+            final boolean headerPresent, final List<String> keyColumns, final boolean offHeap) {
+        validateKeyColumns(keyColumns, headerPresent);
+
+        this.indexFile = indexFile;
+        this.pendingIndexFile = indexFile
+                .resolveSibling(indexFile.getFileName() + "." + UUID.randomUUID().toString() + ".tmp");
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+        this.headerPresent = headerPresent;
+        this.keyColumns = keyColumns;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Checks the key columns as far as possible without the report: column numbers must be 1-based, and column names
+     * require a header row. Whether a name is in the header is only known once the report is read.
+     *
+     * @throws IllegalArgumentException
+     *             if no key column is given, or one can never be resolved.
+     */
+    public static void validateKeyColumns(final List<String> keyColumns, final boolean headerPresent) {
+        if (keyColumns == null || keyColumns.isEmpty())
+            throw new IllegalArgumentException("At least one key column is required for change detection.");
+
+        for (final String keyColumn : keyColumns) {
+            final String column = keyColumn.trim();
+            if (isColumnNumber(column)) {
+                if (Integer.parseInt(column) < 1)
+                    throw new IllegalArgumentException("Key column numbers are 1-based.");
+            } else if (!headerPresent) {
+                throw new IllegalArgumentException(String.format(
+                        "Key column `%s` is a name, but the report has no header row. Use column numbers instead.",
+                        column));
+            }
+        }
+    }
+
+    private static boolean isColumnNumber(final String column) {
+        return !column.isEmpty() && column.chars().allMatch(Character::isDigit);
+    }
+
+    /**
+     * Resolves the index file that holds the row hashes of a report definition.
+     *
+     * @param stateDirectory
+     *            The local directory holding the indexes.
+     * @param reportDefinition
+     *            Identifies the report definition and where it runs.
+     *
+     * @return The path of the index file.
+     */
+    public static Path indexFileFor(final Path stateDirectory, final String reportDefinition) {
+        return stateDirectory.resolve(StringUtils.sha256Hex(reportDefinition) + ".rowindex");
+    }
+
+    /**
+     * Returns the field delimiter of a `runrep` output format, or {@code null} if the format is not delimited.
+     *
+     * @param outputFormat
+     *            The `-f` value of the report, e.g. `csv`.
+     *
+     * @return The delimiter, or {@code null}.
+     */
+    public static Byte delimiterFor(final String outputFormat) {
+        switch (outputFormat) {
+        case "csv":
+        case "csvnospace":
+            return (byte) ',';
+        case "bcp":
+        case "bcpid":
+        case "bcpnospace":
+            return (byte) '|';
+        case "tsv":
+            return (byte) '\t';
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Streams the report once, writing every inserted and updated row to the respective output and, once the report
+     * has been read, the keys of every deleted row. When a header is present it is copied to the inserted and updated
+     * outputs, and the key columns of the header are written to the deleted output.
+     *
+     * @param report
+     *            The new report.
+     * @param inserted
+     *            Receives rows whose key did not exist in the previous run.
+     * @param updated
+     *            Receives rows whose key existed in the previous run with different content.
+     * @param deleted
+     *            Receives the key columns of rows that existed in the previous run but are gone.
+     *
+     * @return The number of rows in each category.
+     *
+     * @throws IOException
+     *             if the report or the index cannot be read, or the outputs cannot be written.
+     * @throws IllegalArgumentException
+     *             if a key column cannot be resolved.
+     */
+    public ChangeSummary detect(final InputStream report, final OutputStream inserted, final OutputStream updated,
+            final OutputStream deleted) throws IOException {
+        final RowIndex previous = loadPreviousIndex();
+        final DelimitedRowReader reader = new DelimitedRowReader(report, delimiter, quoted);
+        final ChangeSummary summary = new ChangeSummary();
+
+        try (final DataOutputStream index = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(pendingIndexFile)))) {
+            index.writeInt(MAGIC);
+            index.writeInt(VERSION);
+            index.writeLong(0L);
+            scan(reader, previous, index, inserted, updated, deleted, summary);
+        } catch (final IOException | RuntimeException exc) {
+            abort();
+            throw exc;
+        }
+
+        try {
+            // the entry count is only known now that the report has been read
+            try (final RandomAccessFile pendingIndex = new RandomAccessFile(pendingIndexFile.toFile(), "rw")) {
+                pendingIndex.seek(8);
+                pendingIndex.writeLong(summary.indexed);
+            }
+
+            if (previous != null)
+                writeDeletedKeys(previous, deleted, summary);
+        } catch (final IOException exc) {
+            abort();
+            throw exc;
+        }
+
+        inserted.flush();
+        updated.flush();
+        deleted.flush();
+        return summary;
+    }
+
+    private void scan(final DelimitedRowReader reader, final RowIndex previous, final DataOutputStream index,
+            final OutputStream inserted, final OutputStream updated, final OutputStream deleted,
+            final ChangeSummary summary) throws IOException {
+        if (!reader.next())
+            return;
+
+        byte[] key = new byte[256];
+        final int[] keyIndexes;
+        if (headerPresent) {
+            keyIndexes = resolveKeyColumns(reader);
+            writeRow(inserted, reader.getRow(), reader.getRowLength());
+            writeRow(updated, reader.getRow(), reader.getRowLength());
+            key = extractKey(reader, keyIndexes, key);
+            writeRow(deleted, key, keyLength);
+            if (!reader.next())
+                return;
+        } else {
+            keyIndexes = resolveKeyColumns(null);
+        }
+
+        do {
+            key = extractKey(reader, keyIndexes, key);
+            final long keyHash = RowIndex.hash(key, 0, keyLength);
+            final long rowHash = RowIndex.hash(reader.getRow(), 0, reader.getRowLength());
+
+            index.writeLong(keyHash);
+            index.writeLong(rowHash);
+            index.writeInt(keyLength);
+            index.write(key, 0, keyLength);
+            summary.indexed++;
+
+            final int slot = previous == null ? -1 : previous.find(keyHash);
+            if (slot < 0) {
+                summary.inserted++;
+                writeRow(inserted, reader.getRow(), reader.getRowLength());
+                continue;
+            }
+
+            if (previous.markSeen(slot))
+                summary.duplicates++;
+
+            if (previous.rowHash(slot) == rowHash) {
+                summary.unchanged++;
+            } else {
+                summary.updated++;
+                writeRow(updated, reader.getRow(), reader.getRowLength());
+            }
+        } while (reader.next());
+    }
+
+    /**
+     * Replaces the index of the previous run with the one built by {@link #detect}. Call this once the outputs have been
+     * safely committed.
+     *
+     * @throws IOException
+     *             if the index file cannot be moved into place.
+     */
+    public void commit() throws IOException {
+        if (Files.exists(pendingIndexFile))
+            Files.move(pendingIndexFile, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Discards the index built by {@link #detect}, keeping the previous run as the baseline.
+     */
+    public void abort() {
+        try {
+            Files.deleteIfExists(pendingIndexFile);
+        } catch (final IOException exc) {
+            // a stale temporary file is harmless, it is never read
+        }
+    }
+
+    private RowIndex loadPreviousIndex() throws IOException {
+        if (!Files.isRegularFile(indexFile))
+            return null;
+
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(String.format("`%s` is not a row index file.", indexFile));
+
+            final long entries = in.readLong();
+            final RowIndex index = RowIndex.allocate(entries, offHeap);
+            long offset = HEADER_LENGTH;
+            for (long i = 0; i < entries; i++) {
+                final long keyHash = in.readLong();
+                final long rowHash = in.readLong();
+                final int length = in.readInt();
+                skipFully(in, length);
+                index.put(keyHash, rowHash, offset);
+                offset += ENTRY_KEY_OFFSET + Integer.BYTES + length;
+            }
+            return index;
+        } catch (final EOFException exc) {
+            throw new IOException(String.format("Row index `%s` is truncated.", indexFile), exc);
+        }
+    }
+
+    private static void skipFully(final DataInputStream in, final int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+            if (skipped <= 0)
+                throw new EOFException();
+            remaining -= skipped;
+        }
+    }
+
+    private void writeDeletedKeys(final RowIndex previous, final OutputStream deleted, final ChangeSummary summary)
+            throws IOException {
+        final List<IOException> failures = new ArrayList<>(1);
+        try (final RandomAccessFile previousIndex = new RandomAccessFile(indexFile.toFile(), "r")) {
+            previous.forEachUnseen(offset -> {
+                if (!failures.isEmpty())
+                    return;
+                try {
+                    previousIndex.seek(offset + ENTRY_KEY_OFFSET);
+                    final byte[] key = new byte[previousIndex.readInt()];
+                    previousIndex.readFully(key);
+                    writeRow(deleted, key, key.length);
+                    summary.deleted++;
+                } catch (final IOException exc) {
+                    failures.add(exc);
+                }
+            });
+        }
+        if (!failures.isEmpty())
+            throw failures.get(0);
+    }
+
+    /**
+     * Copies the key fields of the current row, joined by the delimiter, into {@code key} (growing it when needed) and
+     * records the length in {@link #keyLength}.
+     */
+    private byte[] extractKey(final DelimitedRowReader reader, final int[] keyIndexes, byte[] key)
+            throws IOException {
+        final byte[] row = reader.getRow();
+        int length = 0;
+        for (int i = 0; i < keyIndexes.length; i++) {
+            final int field = keyIndexes[i];
+            if (field >= reader.getFieldCount())
+                throw new IOException(String.format("Row %d has %d fields but key column %d was requested.",
+                        reader.getRowNumber(), reader.getFieldCount(), field + 1));
+
+            final int start = reader.getFieldStart(field);
+            final int fieldLength = reader.getFieldEnd(field) - start;
+            if (length + fieldLength + 1 > key.length)
+                key = Arrays.copyOf(key, Math.max(key.length * 2, length + fieldLength + 1));
+            if (i > 0)
+                key[length++] = delimiter;
+            System.arraycopy(row, start, key, length, fieldLength);
+            length += fieldLength;
+        }
+        keyLength = length;
+        return key;
+    }
+
+    private int[] resolveKeyColumns(final DelimitedRowReader header) {
+        final int[] indexes = new int[keyColumns.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            final String column = keyColumns.get(i).trim();
+            if (isColumnNumber(column)) {
+                indexes[i] = Integer.parseInt(column) - 1;
+                continue;
+            }
+
+            if (header == null)
+                throw new IllegalArgumentException(String.format(
+                        "Key column `%s` is a name, but the report has no header row. Use column numbers instead.",
+                        column));
+
+            indexes[i] = -1;
+            for (int field = 0; field < header.getFieldCount(); field++) {
+                if (header.getField(field).equalsIgnoreCase(column)) {
+                    indexes[i] = field;
+                    break;
+                }
+            }
+            if (indexes[i] < 0)
+                throw new IllegalArgumentException(
+                        String.format("Key column `%s` was not found in the report header.", column));
+        }
+        return indexes;
+    }
+
+    private static void writeRow(final OutputStream out, final byte[] row, final int length) throws IOException {
+        out.write(row, 0, length);
+        out.write('\n');
+    }
+
+    /**
+     * The number of rows in each category after a run of {@link RowChangeDetector#detect}.
+     */
+    public static final class ChangeSummary {
+        private long inserted;
+        private long updated;
+        private long deleted;
+        private long unchanged;
+        private long duplicates;
+        private long indexed;
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * @return The number of rows whose key had already been seen earlier in the same report. Such rows are compared
+         *         with the previous run as if they were the first occurrence.
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * A compact open-addressing hash table mapping the 64-bit hash of a row key to the 64-bit hash of the full row and the
+ * offset of the key text in the persisted index file. Every slot takes three longs and nothing else is kept per row,
+ * so even reports with tens of millions of rows fit in a few hundred megabytes.
+ *
+ * The table can live on the heap or in direct (off-heap) memory; the latter keeps large indexes out of the garbage
+ * collector's way. A direct buffer is limited to 2 GB, i.e. roughly 89 million slots.
+ */
+final class RowIndex {
+    private static final int SLOT_WIDTH = 3;
+    private static final long SEEN = 1L << 63;
+    private static final long EMPTY = 0L;
+
+    private final LongBuffer table;
+    private final int capacity;
+    private final int mask;
+    private long size;
+
+    private RowIndex(final LongBuffer table, final int capacity) {
+        this.table = table;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Allocates a table large enough to hold {@code expectedEntries} keys at a load factor of at most 0.75.
+     *
+     * @param expectedEntries
+     *            The number of keys that will be added.
+     * @param offHeap
+     *            Whether to allocate the table in direct memory.
+     *
+     * @return An empty index.
+     *
+     * @throws IOException
+     *             if the table would exceed the maximum buffer size.
+     */
+    static RowIndex allocate(final long expectedEntries, final boolean offHeap) throws IOException {
+        long capacity = 16;
+        while (capacity * 3 < expectedEntries * 4)
+            capacity <<= 1;
+
+        final long longs = capacity * SLOT_WIDTH;
+        final long limit = offHeap ? Integer.MAX_VALUE / Long.BYTES : Integer.MAX_VALUE - 8;
+        if (longs > limit)
+            throw new IOException(String.format(
+                    "Cannot index %d rows: the index would exceed the maximum %s buffer size.", expectedEntries,
+                    offHeap ? "off-heap" : "heap"));
+
+        final LongBuffer table = offHeap
+                ? ByteBuffer.allocateDirect((int) longs * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+                : LongBuffer.allocate((int) longs);
+        return new RowIndex(table, (int) capacity);
+    }
+
+    /**
+     * Adds a key unless it is already present, in which case the first occurrence wins.
+     */
+    void put(final long keyHash, final long rowHash, final long keyOffset) {
+        int slot = (int) mix(keyHash) & mask;
+        while (true) {
+            final long existing = table.get(slot * SLOT_WIDTH);
+            if (existing == EMPTY) {
+                table.put(slot * SLOT_WIDTH, keyHash);
+                table.put(slot * SLOT_WIDTH + 1, rowHash);
+                table.put(slot * SLOT_WIDTH + 2, keyOffset);
+                size++;
+                return;
+            }
+            if (existing == keyHash)
+                return;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return The slot holding {@code keyHash}, or -1 if the key is unknown.
+     */
+    int find(final long keyHash) {
+        int slot = (int) mix(keyHash) & mask;
+        while (true) {
+            final long existing = table.get(slot * SLOT_WIDTH);
+            if (existing == keyHash)
+                return slot;
+            if (existing == EMPTY)
+                return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    long rowHash(final int slot) {
+        return table.get(slot * SLOT_WIDTH + 1);
+    }
+
+    /**
+     * Marks the key in {@code slot} as present in the new report.
+     *
+     * @return {@code true} if the key had already been marked, i.e. the new report contains it more than once.
+     */
+    boolean markSeen(final int slot) {
+        final long offset = table.get(slot * SLOT_WIDTH + 2);
+        if ((offset & SEEN) != 0)
+            return true;
+        table.put(slot * SLOT_WIDTH + 2, offset | SEEN);
+        return false;
+    }
+
+    /**
+     * Passes the key offset of every key that was never marked as seen, i.e. every deleted row, to {@code consumer}.
+     */
+    void forEachUnseen(final LongConsumer consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (table.get(slot * SLOT_WIDTH) == EMPTY)
+                continue;
+            final long offset = table.get(slot * SLOT_WIDTH + 2);
+            if ((offset & SEEN) == 0)
+                consumer.accept(offset);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Hashes a byte range to 64 bits with FNV-1a followed by the MurmurHash3 finalizer. Zero is reserved for empty
+     * slots and is never returned.
+     */
+    static long hash(final byte[] data, final int offset, final int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = mix(hash);
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -17,8 +17,17 @@
 package com.github.knguyen.processors.geneva;
 
 import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.annotation.behavior.Stateful;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.annotation.lifecycle.OnUnscheduled;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyValue;
 import org.apache.nifi.components.Validator;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.context.PropertyContext;
 import org.apache.nifi.processor.AbstractProcessor;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
@@ -29,34 +38,80 @@ import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
 import org.apache.nifi.logging.ComponentLog;
 import org.apache.nifi.processors.standard.util.FTPTransfer;
 import org.apache.nifi.processors.standard.util.FileTransfer;
 import org.apache.nifi.processors.standard.util.SFTPTransfer;
 
+import com.github.knguyen.processors.diff.ReportFilter;
+import com.github.knguyen.processors.diff.RowChangeDetector;
+import com.github.knguyen.processors.geneva.argument.StandardRunrepArgumentProvider;
+import com.github.knguyen.processors.geneva.catalog.GenevaCatalog;
+import com.github.knguyen.processors.geneva.catalog.GenevaCatalogService;
+import com.github.knguyen.processors.geneva.command.CatalogCommand;
 import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.command.PortfolioCommand;
+import com.github.knguyen.processors.geneva.journal.JobJournal;
+import com.github.knguyen.processors.geneva.limit.CircuitBreaker;
+import com.github.knguyen.processors.geneva.limit.ClusterConcurrencyLimiter;
+import com.github.knguyen.processors.geneva.limit.ClusterLimitedCommandExecutor;
+import com.github.knguyen.processors.geneva.limit.ConcurrencyLimitedCommandExecutor;
+import com.github.knguyen.processors.geneva.pool.HedgingCommandExecutor;
+import com.github.knguyen.processors.geneva.pool.HostPool;
+import com.github.knguyen.processors.geneva.pool.RuntimeHistory;
+import com.github.knguyen.processors.geneva.pool.TargetPropertyContext;
+import com.github.knguyen.processors.geneva.portfolio.GenevaPortfolioService;
+import com.github.knguyen.processors.geneva.portfolio.GenevaPortfolios;
+import com.github.knguyen.processors.geneva.retry.GenevaErrorClassifier;
+import com.github.knguyen.processors.geneva.retry.RetryingCommandExecutor;
+import com.github.knguyen.processors.geneva.session.GenevaSessionLimiterService;
+import com.github.knguyen.processors.geneva.session.SessionLimitedCommandExecutor;
+import com.github.knguyen.processors.local.LocalProcessCommandExecutorProvider;
 import com.github.knguyen.processors.ssh.SSHCommandExecutorProvider;
 import com.github.knguyen.processors.utils.CustomValidators;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import org.apache.nifi.util.StopWatch;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+@Stateful(scopes = { Scope.CLUSTER, Scope.LOCAL }, description = "When `Auto Incremental` is enabled, the knowledge date of the last successful run of every report definition is stored in the cluster state, keyed by `knowledgedate.<hash of the report definition and of the host or Host Pool and AGA it runs on>`.  When `Cluster Maximum Runs per Target` is set, the runs in flight and waiting of every node on every Geneva host and AGA are stored in the cluster state, keyed by `clusterruns.<hash of the target>`.  When `Job Journal` is enabled, the runs in flight on the node are stored in the local state, keyed by `job.<FlowFile UUID>`, until their FlowFiles are committed.")
 public abstract class BaseExecuteGeneva extends AbstractProcessor {
-
     protected SSHClientProvider sshClientProvider;
-    protected RemoteCommandExecutorProvider executorProvider = new SSHCommandExecutorProvider();
+    protected RemoteCommandExecutorProvider executorProvider;
     protected RemoteCommandExecutor remoteCommandExecutor;
+    protected volatile RemoteCleanupQueue cleanupQueue;
+    private volatile HostPool hostPool;
+    private volatile ExecutorService hedgeThreads;
+    private final RuntimeHistory runtimeHistory = new RuntimeHistory(100, 10);
+    private final Set<RemoteCommandExecutor> runExecutors = ConcurrentHashMap.newKeySet();
+    private final Map<HostPool.Target, RemoteCommandExecutor> targetExecutors = new ConcurrentHashMap<>();
+    private volatile JobJournal jobJournal;
+    private volatile ClusterConcurrencyLimiter clusterLimiter;
+    private final Map<String, ICommand> journaledCommands = new ConcurrentHashMap<>();
 
     protected void setSSHClientProvider(final SSHClientProvider sshClientProvider) {
         this.sshClientProvider = sshClientProvider;
@@ -72,27 +127,147 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
     public static final AllowableValue IDENTITY_FILE_STRATEGY = new AllowableValue("identity-file", "Identity File",
             "Use an identity file to log in to SSH.  The file should be accessible by your NiFi installation and have appropriate permissions.  The identify file is assumed to be password-less and in RSA format, where applicable.");
 
+    public static final AllowableValue SSH_TRANSPORT = new AllowableValue("ssh", "SSH",
+            "Run runrep on the Geneva host over SSH and download the report with SFTP.");
+    public static final AllowableValue LOCAL_TRANSPORT = new AllowableValue("local", "Local Process",
+            "Run runrep as a child process of NiFi and read the report from the local disk.  Only use this when NiFi runs on the Geneva application server, as the user NiFi runs as.");
+
+    public static final PropertyDescriptor EXECUTION_TRANSPORT = new PropertyDescriptor.Builder()
+            .name("execution-transport").displayName("Execution Transport")
+            .description("Specifies how runrep is launched and how its report is fetched.")
+            .allowableValues(SSH_TRANSPORT, LOCAL_TRANSPORT).defaultValue(SSH_TRANSPORT.getValue())
+            .addValidator(Validator.VALID).required(true).build();
+
     public static final PropertyDescriptor HOSTNAME = new PropertyDescriptor.Builder()
             .fromPropertyDescriptor(FileTransfer.HOSTNAME)
             .description(
                     "SSH Host for Runrep Utility: This refers to the SSH host where the Geneva runrep utility is located. In most configurations, this is the same server that hosts your Geneva AGA. You should specify this as a hostname or IP address.")
-            .addValidator(CustomValidators.HOSTNAME_VALIDATOR).build();
+            .addValidator(CustomValidators.HOSTNAME_VALIDATOR).dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT).build();
 
     public static final PropertyDescriptor PORT = new PropertyDescriptor.Builder()
             .fromPropertyDescriptor(SFTPTransfer.PORT)
             .description(
                     "The port on the server to connect to; default is 22. This value is not the same as your Geneva AGA.")
+            .dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT).build();
+
+    public static final PropertyDescriptor HOST_POOL = new PropertyDescriptor.Builder().name("host-pool")
+            .displayName("Host Pool")
+            .description(
+                    "Equivalent Geneva targets to spread the runs over instead of `Hostname`, `Port` and `Geneva AGA`, one per line as `host[:port] [aga] [weight=n]`, e.g. `geneva2.example.com:22 9001 weight=2`.  A target without a port uses `Port`, and one without an AGA uses `Geneva AGA`.  Every target is probed in the background, and new runs only go to the targets that can be reached.  All targets must accept the same SSH credentials.  Reports removed in batches, see `Remote Cleanup Batch Size`, are batched per target.")
+            .required(false).addValidator(CustomValidators.HOST_POOL_VALIDATOR)
+            .dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT).build();
+
+    public static final AllowableValue LEAST_IN_FLIGHT_ROUTING = new AllowableValue(HostPool.LEAST_IN_FLIGHT,
+            "Least In-Flight", "Run on the target with the fewest runs of this processor in flight.");
+    public static final AllowableValue WEIGHTED_ROUTING = new AllowableValue(HostPool.WEIGHTED, "Weighted",
+            "Run on the target with the fewest runs in flight relative to its weight, so that a target of weight 2 gets twice the runs of a target of weight 1.");
+    public static final AllowableValue LATENCY_AWARE_ROUTING = new AllowableValue(HostPool.LATENCY_AWARE,
+            "Latency-Aware",
+            "Run on the target with the fewest runs in flight weighted by how long its probes take to connect, so that a busy or distant host gets fewer runs.");
+
+    public static final PropertyDescriptor HOST_ROUTING_POLICY = new PropertyDescriptor.Builder()
+            .name("host-routing-policy").displayName("Host Routing Policy")
+            .description("How a run picks a target of the `Host Pool`.  Ties go to the targets in turn.")
+            .allowableValues(LEAST_IN_FLIGHT_ROUTING, WEIGHTED_ROUTING, LATENCY_AWARE_ROUTING)
+            .defaultValue(LEAST_IN_FLIGHT_ROUTING.getValue()).required(true).dependsOn(HOST_POOL).build();
+
+    public static final PropertyDescriptor HOST_PROBE_INTERVAL = new PropertyDescriptor.Builder()
+            .name("host-probe-interval").displayName("Host Probe Interval")
+            .description(
+                    "How often every target of the `Host Pool` is probed.  A target that cannot be reached, or on which a run failed with an I/O error, gets no new runs until a probe reaches it again.")
+            .required(true).defaultValue("30 sec").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .dependsOn(HOST_POOL).build();
+
+    public static final PropertyDescriptor HEDGE_PERCENTILE = new PropertyDescriptor.Builder()
+            .name("hedge-percentile").displayName("Hedge After Percentile")
+            .description(
+                    "When a run takes longer than this percentile of the recent runtimes of its report, e.g. 95, the report is run on another target of the `Host Pool` as well, and the processor goes on with whichever run succeeds first.  The other run is aborted.  The second run writes its report to a hidden file next to the report, so that the two runs never write the same file on shared storage: it is removed if the second run loses, and moved in place of the report if it wins, in which case the report of the first run is left for `PurgeGenevaReportOutputs`.  Runs are timed from when runrep started, so waiting for a concurrency or session limit does not count.  A report is only hedged once it ran 10 times, and never while `Shared Mount Remote Directory` is set; report bundles are never hedged.  Hedging trades extra load on the pool for a shorter tail of slow runs; leave empty to never hedge.")
+            .required(false).addValidator(StandardValidators.createLongValidator(50, 99, true))
+            .dependsOn(HOST_POOL).build();
+
+    public static final PropertyDescriptor ADAPTIVE_CONCURRENCY = new PropertyDescriptor.Builder()
+            .name("adaptive-concurrency").displayName("Adaptive Concurrency")
+            .description(
+                    "Limits the runs in flight on every Geneva host and AGA, and adapts the limit to how the host copes: it grows while runs complete as fast as usual, and shrinks when they get much slower, time out or fail.  The limit is shared by every processor running on the same host and AGA, so `Concurrent Tasks` can be set high while Geneva only gets the load it handles best.  A run waits for its host to take it for up to `Run Admission Timeout`, then goes back to its queue.")
+            .required(true).allowableValues("true", "false").defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR).build();
+
+    public static final PropertyDescriptor MAX_RUNS_PER_TARGET = new PropertyDescriptor.Builder()
+            .name("max-runs-per-target").displayName("Maximum Runs per Target")
+            .description("The most runs the adaptive limit of a Geneva host and AGA may grow to.")
+            .required(true).defaultValue("8").addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .dependsOn(ADAPTIVE_CONCURRENCY, "true").build();
+
+    public static final PropertyDescriptor CLUSTER_MAX_RUNS_PER_TARGET = new PropertyDescriptor.Builder()
+            .name("cluster-max-runs-per-target").displayName("Cluster Maximum Runs per Target")
+            .description(
+                    "The most runs this processor may have in flight on every Geneva host and AGA across all the nodes of the cluster, since `Concurrent Tasks` applies to each node.  The nodes share the limit fairly: while another node is waiting for a run, a node does not take more than its share.  The runs of every node are kept in the cluster state and expire two minutes after a node stops renewing them, e.g. when it goes down.  A run waits for a slot for up to `Run Admission Timeout`, then goes back to its queue.  Leave empty for no cluster-wide limit.")
+            .required(false).addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR).build();
+
+    public static final PropertyDescriptor GENEVA_SESSION_LIMITER_SERVICE = new PropertyDescriptor.Builder()
+            .name("geneva-session-limiter-service").displayName("Session Limiter Service")
+            .description(
+                    "Limits the Geneva sessions of every runrep user across all the processors that reference the same service, so that runs do not fail for exceeding the sessions of the user's license.  Every runrep command, including catalog and portfolio lookups, waits for a session of its `Runrep Username` for up to `Run Admission Timeout`, then goes back to its queue.")
+            .required(false).identifiesControllerService(GenevaSessionLimiterService.class).build();
+
+    public static final PropertyDescriptor RUN_ADMISSION_TIMEOUT = new PropertyDescriptor.Builder()
+            .name("run-admission-timeout").displayName("Run Admission Timeout")
+            .description(
+                    "How long a run waits for its Geneva host and AGA to be under their limit, i.e. the adaptive limit and the cluster-wide limit, or for a session of its runrep user, before the FlowFile is penalized and returned to its queue.")
+            .required(true).defaultValue("1 min").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    public static final PropertyDescriptor CIRCUIT_BREAKER_THRESHOLD = new PropertyDescriptor.Builder()
+            .name("circuit-breaker-threshold").displayName("Circuit Breaker Threshold")
+            .description(
+                    "The number of consecutive runs on a Geneva host and AGA that fail to connect, or whose AGA fails, after which the processor stops trying that target for `Circuit Breaker Open Duration`.  Meanwhile its FlowFiles are penalized and returned to their queue without connecting, and the processor yields.  A single run then probes the target: its success resumes the runs, its failure keeps the target off for another period.  The default of 0 always tries; 5 is a good start.")
+            .required(true).defaultValue("0").addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor CIRCUIT_BREAKER_OPEN_DURATION = new PropertyDescriptor.Builder()
+            .name("circuit-breaker-open-duration").displayName("Circuit Breaker Open Duration")
+            .description("How long a failing Geneva host and AGA get no runs before one run probes them again.")
+            .required(true).defaultValue("1 min").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    public static final PropertyDescriptor TRANSIENT_FAILURE_RETRIES = new PropertyDescriptor.Builder()
+            .name("transient-failure-retries").displayName("Transient Failure Retries")
+            .description(
+                    "How many times a run that failed with a transient error is tried again in place before the FlowFile is routed to `failure` or `geneva-failure`.  Transient errors are dropped or refused connections, timeouts, and an AGA that is unreachable or busy; a bad RSL, an unknown report, rejected credentials or a missing file are never retried.  Every retry waits a random time of up to `Retry Initial Backoff` doubled for every earlier retry, capped at `Retry Maximum Backoff`.  The default of 0 never retries.")
+            .required(true).defaultValue("0").addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor RETRY_INITIAL_BACKOFF = new PropertyDescriptor.Builder()
+            .name("retry-initial-backoff").displayName("Retry Initial Backoff")
+            .description("The longest wait before the first retry of a run.")
+            .required(true).defaultValue("2 sec").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    public static final PropertyDescriptor RETRY_MAX_BACKOFF = new PropertyDescriptor.Builder()
+            .name("retry-max-backoff").displayName("Retry Maximum Backoff")
+            .description("The longest wait before any retry of a run.")
+            .required(true).defaultValue("30 sec").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    public static final PropertyDescriptor RETRY_BUDGET = new PropertyDescriptor.Builder()
+            .name("retry-budget").displayName("Retry Budget")
+            .description(
+                    "How long after its first attempt a run may still be retried.  A retry that would start later is not made, so that a FlowFile does not hold its task for much longer than a failed run takes.")
+            .required(true).defaultValue("2 min").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    public static final PropertyDescriptor JOB_JOURNAL = new PropertyDescriptor.Builder().name("job-journal")
+            .displayName("Job Journal")
+            .description(
+                    "When enabled, the host, PID and output path of every run are written to the local state of the node as soon as runrep starts, and removed once its FlowFile is committed.  After NiFi restarts, a FlowFile whose run is still in the journal waits for that run to finish and fetches its report, instead of starting the report again; a run that is no longer running is reused if its report was written.  A run is only reattached on the host it was started on and if the command of the FlowFile did not change.  `Execution Timeout` still applies from the time the run started.  Stopping the processor does not kill the runs in flight when enabled.")
+            .required(true).allowableValues("true", "false").defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR).build();
+
     public static final PropertyDescriptor SSH_AUTHENTICATION_STRATEGY = new PropertyDescriptor.Builder()
             .name("ssh-authentication-strategy").displayName("SSH Authentication Strategy")
             .description("Specifies the method of authentication for the SSH connection.")
             .allowableValues(USERNAME_PASSWORD_STRATEGY, IDENTITY_FILE_STRATEGY)
-            .defaultValue(USERNAME_PASSWORD_STRATEGY.getValue()).addValidator(Validator.VALID).required(true).build();
+            .defaultValue(USERNAME_PASSWORD_STRATEGY.getValue()).addValidator(Validator.VALID).required(true)
+            .dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT).build();
 
     public static final PropertyDescriptor USERNAME = new PropertyDescriptor.Builder()
             .fromPropertyDescriptor(FileTransfer.USERNAME).description("The username on the host to connect as.")
-            .build();
+            .dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT).build();
 
     public static final PropertyDescriptor PASSWORD = new PropertyDescriptor.Builder()
             .fromPropertyDescriptor(FileTransfer.PASSWORD)
@@ -120,6 +295,12 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
                     "Specifies the timeout duration for data transmission during command execution, like `runrep` or `rungsql`.  If you have large RSL reports or accounting runs, you should set this value to a long duration.")
             .defaultValue("5 mins").build();
 
+    public static final PropertyDescriptor EXECUTION_TIMEOUT = new PropertyDescriptor.Builder()
+            .name("execution-timeout").displayName("Execution Timeout")
+            .description(
+                    "The longest a run may take on the Geneva host, from starting runrep until it exits.  A run that takes longer is killed on the host along with its child processes, and its FlowFile is routed to `failure`.  `Connection Timeout` still bounds connecting to the host and `Data Timeout` every transfer of a report.  Leave empty to let runs take as long as they need, except that a run started before NiFi restarted is waited for at most an hour before it is killed and run again; with the `Local Process` transport, `Data Timeout` bounds the run instead.")
+            .required(false).addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
     public static final PropertyDescriptor RUNREP_USERNAME = new PropertyDescriptor.Builder().name("runrep-username")
             .displayName("Runrep Username").description("The username used to authenticate with runrep.").required(true)
             .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
@@ -190,6 +371,18 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
             .addValidator(StandardValidators.createDirectoryExistsValidator(true, true))
             .defaultValue(System.getProperty("java.io.tmpdir")).build();
 
+    public static final AllowableValue FLAT_LAYOUT = new AllowableValue("flat", "Flat",
+            "Reports are written directly to the `Report Output Directory`.");
+    public static final AllowableValue SHARDED_LAYOUT = new AllowableValue("sharded", "Sharded",
+            "Reports are spread over two levels of subdirectories named after the first four characters of the FlowFile's `UUID`, e.g. `<Report Output Directory>/c4/80/c480d5a6-9400-11ee-b9d1-0242ac120002.csv`.  The subdirectories are created when first needed.");
+
+    public static final PropertyDescriptor REPORT_OUTPUT_LAYOUT = new PropertyDescriptor.Builder()
+            .name("report-output-layout").displayName("Report Output Layout")
+            .description(
+                    "How generated report filenames are laid out in the `Report Output Directory`.  Listing, looking up and removing files gets slow on most file systems once a directory holds hundreds of thousands of files; choose `Sharded` when that many reports can pile up.  Has no effect when `Report Output Path` is set.")
+            .allowableValues(FLAT_LAYOUT, SHARDED_LAYOUT).defaultValue(FLAT_LAYOUT.getValue())
+            .addValidator(Validator.VALID).required(true).build();
+
     public static final PropertyDescriptor PORTFOLIO_LIST = new PropertyDescriptor.Builder().name("portfolio")
             .displayName("Portfolio List").description("Specifies portfolios as a comma-separated list.")
             .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).required(false)
@@ -251,6 +444,24 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
             .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).required(false)
             .defaultValue("${geneva.priorknowledgedate}").build();
 
+    public static final PropertyDescriptor AUTO_INCREMENTAL = new PropertyDescriptor.Builder()
+            .name("auto-incremental").displayName("Auto Incremental")
+            .description(
+                    "When enabled, the knowledge date of the last successful run of every report definition is kept in the cluster state, and used as the `Prior Knowledge Date` of the next run of the same definition whenever `Prior Knowledge Date` evaluates to an empty value.  When `Knowledge Date` is empty, the time the run started is recorded instead.  The report definition covers the AGA, the report or query, the output format, the portfolios and the accounting options, but not the dates.  Clear the processor state to force a full run.")
+            .required(true).allowableValues("true", "false").defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+            .dependsOn(ACCOUNTING_RUN_TYPE, CLOSED_PERIOD_ACCOUNTING, INCREMENTAL_ACCOUNTING).build();
+
+    /**
+     * The attribute holding the prior knowledge date filled in by {@link #AUTO_INCREMENTAL}. The argument provider falls
+     * back to it when {@link #PRIOR_KNOWLEDGE_DATE} evaluates to an empty value.
+     */
+    public static final String AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE = "geneva.runrep.priorknowledgedate.auto";
+
+    private static final String KNOWLEDGE_DATE_STATE_PREFIX = "knowledgedate.";
+    private static final int STATE_UPDATE_ATTEMPTS = 10;
+    private static final long MAX_REATTACH_WAIT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
     public static final PropertyDescriptor EXTRA_FLAGS = new PropertyDescriptor.Builder().displayName("Extra Flags")
             .name("extra-flags")
             .description(
@@ -259,6 +470,133 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
             .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
             .defaultValue("${geneva.extraflags}").build();
 
+    public static final PropertyDescriptor DELTA_TRANSFER_CACHE_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("delta-transfer-cache-directory").displayName("Delta Transfer Cache Directory")
+            .description(
+                    "A local directory where NiFi keeps the previous version of every report fetched from a fixed `Report Output Path`.  When set, only the blocks of the report that changed since the previous run are transferred from the Geneva host and the new version is rebuilt locally.  This requires `perl` on the Geneva host.  The first run for a given path always downloads the full report.  Has no effect when `Report Output Path` is not set, since generated filenames never repeat.")
+            .required(false).addValidator(StandardValidators.createDirectoryExistsValidator(false, true))
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE).build();
+
+    public static final PropertyDescriptor DELTA_TRANSFER_BLOCK_SIZE = new PropertyDescriptor.Builder()
+            .name("delta-transfer-block-size").displayName("Delta Transfer Block Size")
+            .description(
+                    "The block size used to detect unchanged regions of a report.  Smaller blocks find more matches but cost more checksums; values below 1 KB are raised to 1 KB.")
+            .required(true).defaultValue("64 KB").addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .dependsOn(DELTA_TRANSFER_CACHE_DIRECTORY).build();
+
+    public static final PropertyDescriptor REMOTE_HELPER_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("remote-helper-directory").displayName("Remote Helper Directory")
+            .description(
+                    "The directory on the Geneva host where helper scripts used by this processor are uploaded.  It is created when missing and must be writable by the SSH user.")
+            .required(true).defaultValue("/tmp/nifi-geneva").addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+            .dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT).build();
+
+    public static final PropertyDescriptor SHARED_MOUNT_REMOTE_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("shared-mount-remote-directory").displayName("Shared Mount Remote Directory")
+            .description(
+                    "A directory on the Geneva host that is also mounted on every NiFi node, e.g. over NFS or SMB.  Reports written below this directory are read from `Shared Mount Local Directory` instead of being downloaded over SFTP, and are deleted there as well.  Reports written elsewhere are still downloaded over SFTP.")
+            .required(false).addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE).dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT)
+            .build();
+
+    public static final PropertyDescriptor SHARED_MOUNT_LOCAL_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("shared-mount-local-directory").displayName("Shared Mount Local Directory")
+            .description("The directory on the NiFi node where `Shared Mount Remote Directory` is mounted.")
+            .required(true).addValidator(StandardValidators.createDirectoryExistsValidator(false, false))
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE).dependsOn(SHARED_MOUNT_REMOTE_DIRECTORY)
+            .build();
+
+    public static final PropertyDescriptor SHARED_MOUNT_VISIBILITY_TIMEOUT = new PropertyDescriptor.Builder()
+            .name("shared-mount-visibility-timeout").displayName("Shared Mount Visibility Timeout")
+            .description(
+                    "Network file systems cache directory contents, so a report can take a moment to show up on the mount after runrep wrote it.  This is how long to wait for it before failing the run.")
+            .required(true).defaultValue("30 sec").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .dependsOn(SHARED_MOUNT_REMOTE_DIRECTORY).build();
+
+    public static final PropertyDescriptor EXEC_STREAM_THRESHOLD = new PropertyDescriptor.Builder()
+            .name("exec-stream-threshold").displayName("Exec Stream Threshold")
+            .description(
+                    "Reports of at least this size are streamed through an SSH exec channel running `cat` instead of being downloaded over SFTP.  SFTP waits for an acknowledgement of every few requests, which limits its throughput on high-latency links; an exec channel streams without waiting.  The number of bytes received is checked against the size of the report.  Leave empty to always use SFTP.")
+            .required(false).addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE).dependsOn(EXECUTION_TRANSPORT, SSH_TRANSPORT)
+            .build();
+
+    public static final PropertyDescriptor REMOTE_CLEANUP_BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("remote-cleanup-batch-size").displayName("Remote Cleanup Batch Size")
+            .description(
+                    "The number of reports to remove from a Geneva host at once.  With the default of 1, every report is removed as soon as its FlowFile is committed.  With a larger value, reports are queued and removed in the background with a single command per batch; queued reports are also removed every `Remote Cleanup Interval` and when the processor is stopped.")
+            .required(true).defaultValue("1").addValidator(StandardValidators.createLongValidator(1, 1000, true))
+            .build();
+
+    public static final PropertyDescriptor REMOTE_CLEANUP_INTERVAL = new PropertyDescriptor.Builder()
+            .name("remote-cleanup-interval").displayName("Remote Cleanup Interval")
+            .description(
+                    "How often queued reports are removed even if the batch is not full.  Only used when `Remote Cleanup Batch Size` is larger than 1.")
+            .required(true).defaultValue("30 sec").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    public static final PropertyDescriptor FETCH_SIBLING_OUTPUTS = new PropertyDescriptor.Builder()
+            .name("fetch-sibling-outputs").displayName("Fetch Sibling Outputs")
+            .description(
+                    "Whether to also fetch the other files runrep wrote next to the report, i.e. the files in the same directory named like the report with a different extension, such as the `.err` and `.arg` files of the `XML Error` format.  They are found with a single directory listing, downloaded in parallel and routed to `sibling output` as children of the report, and are removed from the Geneva host along with the report.")
+            .required(true).allowableValues("true", "false").defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR).build();
+
+    public static final PropertyDescriptor REPORT_FILTER_COLUMNS = new PropertyDescriptor.Builder()
+            .name("report-filter-columns").displayName("Report Columns")
+            .description(
+                    "A comma-separated list of the columns to keep, in output order, given as column names (when the report has a header row) or 1-based column numbers.  The other columns are removed on the Geneva host before the report is fetched, so they never cross the network.  Only applies to CSV, BCP and TSV reports and requires `perl` on the Geneva host.  Leave empty to keep every column.")
+            .required(false).addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).build();
+
+    public static final PropertyDescriptor REPORT_FILTER_CONDITIONS = new PropertyDescriptor.Builder()
+            .name("report-filter-conditions").displayName("Report Row Filter")
+            .description(
+                    "Conditions a row must meet to be kept, one per line, in the form `column operator value`, e.g. `Quantity > 0`.  All conditions must hold.  Columns are given as in `Report Columns`.  The operators `=`, `!=`, `<`, `<=`, `>` and `>=` compare numerically when the value is a number, in which case fields that are not numbers only match `!=`, and as text otherwise; `~` and `!~` match a Perl regular expression.  Rows are removed on the Geneva host before the report is fetched.  The header row is always kept.  Only applies to CSV, BCP and TSV reports and requires `perl` on the Geneva host.")
+            .required(false).addValidator(CustomValidators.REPORT_FILTER_CONDITIONS_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).build();
+
+    public static final PropertyDescriptor CHANGE_DETECTION_KEY_COLUMNS = new PropertyDescriptor.Builder()
+            .name("change-detection-key-columns").displayName("Change Detection Key Columns")
+            .description(
+                    "A comma-separated list of the columns that uniquely identify a row of the report, given as column names (when the report has a header row) or 1-based column numbers.  When set, rows of CSV, BCP and TSV reports are compared with the previous run of the same report definition and routed to the `inserted`, `updated` and `deleted` relationships, in addition to the full report being routed to `success`.  The report definition covers the AGA, the report or query, the output format, the portfolios and the accounting options, but not the dates, so that consecutive daily runs are compared with each other.")
+            .required(false).addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).build();
+
+    public static final PropertyDescriptor CHANGE_DETECTION_STATE_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("change-detection-state-directory").displayName("Change Detection State Directory")
+            .description(
+                    "A local directory where the row hashes of the previous run of every report definition are kept.  Only hashes and key columns are stored, never full rows.")
+            .required(true).addValidator(StandardValidators.createDirectoryExistsValidator(false, true))
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE).dependsOn(CHANGE_DETECTION_KEY_COLUMNS)
+            .build();
+
+    public static final PropertyDescriptor REPORT_HAS_HEADER_ROW = new PropertyDescriptor.Builder()
+            .name("report-has-header-row").displayName("Report Has Header Row")
+            .description(
+                    "Whether the first row of the report holds the column names.  It allows `Report Columns`, `Report Row Filter`, `Change Detection Key Columns` and `Batch Key Column` to refer to columns by name.  The header row is never filtered, is copied to the `inserted` and `updated` outputs and is never compared.")
+            .required(true).allowableValues("true", "false").defaultValue("true")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR).build();
+
+    public static final PropertyDescriptor CHANGE_DETECTION_OFF_HEAP = new PropertyDescriptor.Builder()
+            .name("change-detection-off-heap").displayName("Off-Heap Change Detection Index")
+            .description(
+                    "Whether the row index of the previous run is held in direct memory rather than on the JVM heap.  Each row takes 24 to 32 bytes; consider enabling this for reports with tens of millions of rows.")
+            .required(true).allowableValues("true", "false").defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR).dependsOn(CHANGE_DETECTION_KEY_COLUMNS).build();
+
+    public static final PropertyDescriptor GENEVA_CATALOG_SERVICE = new PropertyDescriptor.Builder()
+            .name("geneva-catalog-service").displayName("Catalog Service")
+            .description(
+                    "Checks the report or query against the catalog of its AGA before running it.  A target that is not in the catalog is routed to `geneva-failure` without connecting to the Geneva host, and a `runnumber` target is resolved to its report name in the `geneva.report.name` attribute.  The catalog is loaded through this processor's connection when the service has none or it is stale; if that fails, the report runs unchecked.")
+            .required(false).identifiesControllerService(GenevaCatalogService.class).build();
+
+    public static final PropertyDescriptor GENEVA_PORTFOLIO_SERVICE = new PropertyDescriptor.Builder()
+            .name("geneva-portfolio-service").displayName("Portfolio Service")
+            .description(
+                    "Checks the `Portfolio List` against the portfolios and portfolio groups of its AGA before running the report.  A list naming an unknown portfolio is routed to `geneva-failure` without connecting to the Geneva host, and the number of portfolios the list expands to is written to the `geneva.portfolio.count` attribute.  The portfolios are loaded through this processor's connection when the service has none or they are stale; if that fails, the report runs unchecked.")
+            .required(false).identifiesControllerService(GenevaPortfolioService.class).build();
+
     public static final AllowableValue CONSOLIDATE_ALL = new AllowableValue("-c1", "All",
             "Produces one consolidated report");
     public static final AllowableValue GROUP_CONSOLIDATE = new AllowableValue("-c2", "GroupsOnly",
@@ -280,49 +618,118 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
             .description("General exceptions (e.g. IOException, Timeout, etc.) will be routed to `failure`..").build();
     static final Relationship REL_GENEVA_FAILURE = new Relationship.Builder().name("geneva-failure")
             .description("Any Geneva query that executed with errors will be routed to `geneva-failure`.").build();
+    static final Relationship REL_SIBLING_OUTPUT = new Relationship.Builder().name("sibling-output").description(
+            "When `Fetch Sibling Outputs` is enabled, the other files runrep wrote next to the report are routed to `sibling-output`, one FlowFile per file.")
+            .build();
+    static final Relationship REL_INSERTED = new Relationship.Builder().name("inserted").description(
+            "When change detection is enabled, rows whose key did not exist in the previous run of the report are routed to `inserted`.")
+            .build();
+    static final Relationship REL_UPDATED = new Relationship.Builder().name("updated").description(
+            "When change detection is enabled, rows whose key existed in the previous run of the report with different content are routed to `updated`.")
+            .build();
+    static final Relationship REL_DELETED = new Relationship.Builder().name("deleted").description(
+            "When change detection is enabled, the key columns of rows that existed in the previous run of the report but are gone are routed to `deleted`.")
+            .build();
 
     protected List<PropertyDescriptor> descriptors;
 
-    protected Set<Relationship> relationships;
+    protected volatile Set<Relationship> relationships;
+    private volatile boolean changeDetectionEnabled;
+    private volatile boolean siblingOutputsEnabled;
+
+    /**
+     * The properties that say how to reach the Geneva host, shared with the other processors that connect to it.
+     */
+    static List<PropertyDescriptor> connectionDescriptors() {
+        final List<PropertyDescriptor> connectionDescriptors = new ArrayList<>();
+        connectionDescriptors.add(EXECUTION_TRANSPORT);
+        connectionDescriptors.add(HOSTNAME);
+        connectionDescriptors.add(PORT);
+        connectionDescriptors.add(SSH_AUTHENTICATION_STRATEGY);
+        connectionDescriptors.add(USERNAME);
+        connectionDescriptors.add(PASSWORD);
+        connectionDescriptors.add(PRIVATE_KEY_PATH);
+        connectionDescriptors.add(PRIVATE_KEY_PASSPHRASE);
+        return connectionDescriptors;
+    }
+
+    /**
+     * The SSH connection-specific details, which are listed last.
+     */
+    static List<PropertyDescriptor> connectionTuningDescriptors() {
+        final List<PropertyDescriptor> tuningDescriptors = new ArrayList<>();
+        tuningDescriptors.add(DATA_TIMEOUT);
+        tuningDescriptors.add(EXECUTION_TIMEOUT);
+        tuningDescriptors.add(FileTransfer.CONNECTION_TIMEOUT);
+        tuningDescriptors.add(SFTPTransfer.USE_KEEPALIVE_ON_TIMEOUT);
+        tuningDescriptors.add(SFTPTransfer.KEY_ALGORITHMS_ALLOWED);
+        tuningDescriptors.add(SFTPTransfer.STRICT_HOST_KEY_CHECKING);
+        tuningDescriptors.add(SFTPTransfer.HOST_KEY_FILE);
+        tuningDescriptors.add(FileTransfer.USE_COMPRESSION);
+        tuningDescriptors.add(FileTransfer.USE_COMPRESSION);
+        tuningDescriptors.add(FTPTransfer.PROXY_TYPE);
+        tuningDescriptors.add(FTPTransfer.PROXY_HOST);
+        tuningDescriptors.add(FTPTransfer.PROXY_PORT);
+        tuningDescriptors.add(FTPTransfer.HTTP_PROXY_USERNAME);
+        tuningDescriptors.add(FTPTransfer.HTTP_PROXY_PASSWORD);
+        return tuningDescriptors;
+    }
 
     protected static List<PropertyDescriptor> commonDescriptors() {
         final List<PropertyDescriptor> baseDescriptors = new ArrayList<>();
-        baseDescriptors.add(HOSTNAME);
-        baseDescriptors.add(PORT);
-        baseDescriptors.add(SSH_AUTHENTICATION_STRATEGY);
-        baseDescriptors.add(USERNAME);
-        baseDescriptors.add(PASSWORD);
-        baseDescriptors.add(PRIVATE_KEY_PATH);
-        baseDescriptors.add(PRIVATE_KEY_PASSPHRASE);
+        baseDescriptors.addAll(connectionDescriptors());
+        baseDescriptors.add(HOST_POOL);
+        baseDescriptors.add(HOST_ROUTING_POLICY);
+        baseDescriptors.add(HOST_PROBE_INTERVAL);
+        baseDescriptors.add(HEDGE_PERCENTILE);
+        baseDescriptors.add(ADAPTIVE_CONCURRENCY);
+        baseDescriptors.add(MAX_RUNS_PER_TARGET);
+        baseDescriptors.add(CLUSTER_MAX_RUNS_PER_TARGET);
+        baseDescriptors.add(GENEVA_SESSION_LIMITER_SERVICE);
+        baseDescriptors.add(RUN_ADMISSION_TIMEOUT);
+        baseDescriptors.add(CIRCUIT_BREAKER_THRESHOLD);
+        baseDescriptors.add(CIRCUIT_BREAKER_OPEN_DURATION);
+        baseDescriptors.add(TRANSIENT_FAILURE_RETRIES);
+        baseDescriptors.add(RETRY_INITIAL_BACKOFF);
+        baseDescriptors.add(RETRY_MAX_BACKOFF);
+        baseDescriptors.add(RETRY_BUDGET);
+        baseDescriptors.add(JOB_JOURNAL);
         baseDescriptors.add(REPORT_OUTPUT_FORMAT);
         baseDescriptors.add(REPORT_OUTPUT_PATH);
         baseDescriptors.add(REPORT_OUTPUT_DIRECTORY);
+        baseDescriptors.add(REPORT_OUTPUT_LAYOUT);
         baseDescriptors.add(RUNREP_USERNAME);
         baseDescriptors.add(RUNREP_PASSWORD);
         baseDescriptors.add(GENEVA_AGA);
         baseDescriptors.add(ACCOUNTING_RUN_TYPE);
         baseDescriptors.add(PORTFOLIO_LIST);
+        baseDescriptors.add(GENEVA_PORTFOLIO_SERVICE);
         baseDescriptors.add(PERIOD_START_DATE);
         baseDescriptors.add(PERIOD_END_DATE);
         baseDescriptors.add(KNOWLEDGE_DATE);
         baseDescriptors.add(PRIOR_KNOWLEDGE_DATE);
+        baseDescriptors.add(AUTO_INCREMENTAL);
         baseDescriptors.add(REPORT_CONSOLIDATION);
         baseDescriptors.add(EXTRA_FLAGS);
+        baseDescriptors.add(DELTA_TRANSFER_CACHE_DIRECTORY);
+        baseDescriptors.add(DELTA_TRANSFER_BLOCK_SIZE);
+        baseDescriptors.add(REMOTE_HELPER_DIRECTORY);
+        baseDescriptors.add(SHARED_MOUNT_REMOTE_DIRECTORY);
+        baseDescriptors.add(SHARED_MOUNT_LOCAL_DIRECTORY);
+        baseDescriptors.add(SHARED_MOUNT_VISIBILITY_TIMEOUT);
+        baseDescriptors.add(EXEC_STREAM_THRESHOLD);
+        baseDescriptors.add(REMOTE_CLEANUP_BATCH_SIZE);
+        baseDescriptors.add(REMOTE_CLEANUP_INTERVAL);
+        baseDescriptors.add(FETCH_SIBLING_OUTPUTS);
+        baseDescriptors.add(REPORT_FILTER_COLUMNS);
+        baseDescriptors.add(REPORT_FILTER_CONDITIONS);
+        baseDescriptors.add(CHANGE_DETECTION_KEY_COLUMNS);
+        baseDescriptors.add(CHANGE_DETECTION_STATE_DIRECTORY);
+        baseDescriptors.add(REPORT_HAS_HEADER_ROW);
+        baseDescriptors.add(CHANGE_DETECTION_OFF_HEAP);
 
         // these are SSH connection-specific details, move it to the bottom
-        baseDescriptors.add(DATA_TIMEOUT);
-        baseDescriptors.add(FileTransfer.CONNECTION_TIMEOUT);
-        baseDescriptors.add(SFTPTransfer.USE_KEEPALIVE_ON_TIMEOUT);
-        baseDescriptors.add(SFTPTransfer.KEY_ALGORITHMS_ALLOWED);
-        baseDescriptors.add(SFTPTransfer.STRICT_HOST_KEY_CHECKING);
-        baseDescriptors.add(SFTPTransfer.HOST_KEY_FILE);
-        baseDescriptors.add(FileTransfer.USE_COMPRESSION);
-        baseDescriptors.add(FileTransfer.USE_COMPRESSION);
-        baseDescriptors.add(FTPTransfer.PROXY_TYPE);
-        baseDescriptors.add(FTPTransfer.PROXY_HOST);
-        baseDescriptors.add(FTPTransfer.PROXY_PORT);
-        baseDescriptors.add(FTPTransfer.HTTP_PROXY_USERNAME);
-        baseDescriptors.add(FTPTransfer.HTTP_PROXY_PASSWORD);
+        baseDescriptors.addAll(connectionTuningDescriptors());
 
         return baseDescriptors;
     }
@@ -344,17 +751,57 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
     protected abstract ICommand getCommand(final ProcessSession session, final ProcessContext context,
             final FlowFile flowfile) throws IllegalArgumentException;
 
+    /**
+     * Called before the command of a FlowFile is built, e.g. to put files the command refers to on the host. The
+     * default does nothing.
+     *
+     * @return The FlowFile, possibly with attributes the command reads.
+     *
+     * @throws IOException
+     *             if the host could not be prepared.
+     */
+    protected FlowFile prepareRun(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final FlowFile flowFile) throws IOException {
+        return flowFile;
+    }
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         descriptors = new ArrayList<>(additionalDescriptors()); // First add the additional descriptors
         descriptors.addAll(commonDescriptors()); // Then add the common descriptors
         descriptors = Collections.unmodifiableList(descriptors); // Make the list unmodifiable
 
-        relationships = new HashSet<>();
+        relationships = buildRelationships(false, false);
+    }
+
+    private static Set<Relationship> buildRelationships(final boolean changeDetectionEnabled,
+            final boolean siblingOutputsEnabled) {
+        final Set<Relationship> relationships = new HashSet<>();
         relationships.add(REL_SUCCESS);
         relationships.add(REL_FAILURE);
         relationships.add(REL_GENEVA_FAILURE);
-        relationships = Collections.unmodifiableSet(relationships);
+        if (changeDetectionEnabled) {
+            relationships.add(REL_INSERTED);
+            relationships.add(REL_UPDATED);
+            relationships.add(REL_DELETED);
+        }
+        if (siblingOutputsEnabled)
+            relationships.add(REL_SIBLING_OUTPUT);
+        return Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    public void onPropertyModified(final PropertyDescriptor descriptor, final String oldValue, final String newValue) {
+        // the change detection and sibling output relationships only exist while the features are configured, so that
+        // existing flows do not suddenly have unconnected relationships
+        if (CHANGE_DETECTION_KEY_COLUMNS.equals(descriptor))
+            changeDetectionEnabled = newValue != null && !newValue.isBlank();
+        else if (FETCH_SIBLING_OUTPUTS.equals(descriptor))
+            siblingOutputsEnabled = Boolean.parseBoolean(newValue);
+        else
+            return;
+
+        relationships = buildRelationships(changeDetectionEnabled, siblingOutputsEnabled);
     }
 
     @Override
@@ -367,9 +814,168 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
         return descriptors;
     }
 
+    /**
+     * Returns the executor of a run: the processor's own, the one kept for the target of the run's lease, or, when
+     * `Hedge After Percentile` is set, a new one that also hedges the run on another target of the pool. A hedged run
+     * gets executors of its own, since aborting the losing run kills every run of its executor.
+     */
+    RemoteCommandExecutor openExecutor(final ProcessContext context, final HostPool.Lease lease) {
+        if (lease == null)
+            return createOrGetExecutor(context);
+
+        final ExecutorService threads = hedgeThreads;
+        if (threads == null || !isHedgingSupported() || context.getProperty(SHARED_MOUNT_REMOTE_DIRECTORY).isSet())
+            return getTargetExecutor(context, lease.getTarget());
+
+        final RemoteCommandExecutor executor = newExecutor(context);
+        final HedgingCommandExecutor hedging = new HedgingCommandExecutor(executor, lease.getTarget(), hostPool,
+                target -> newExecutor(TargetPropertyContext.wrap(context, target, HOSTNAME, PORT, GENEVA_AGA)),
+                runtimeHistory, context.getProperty(HEDGE_PERCENTILE).asInteger(), threads, getLogger());
+        // the attempts report their processes to the hedging executor, which journals them
+        hedging.setRunListener(this::journalRun);
+        return hedging;
+    }
+
+    /**
+     * Whether the runs of this processor may be hedged. The report of the losing run is removed through its command,
+     * so a run that writes several reports must not be.
+     */
+    protected boolean isHedgingSupported() {
+        return true;
+    }
+
+    /**
+     * Returns the executor kept for a target of the `Host Pool`, so that the runs on a target reuse its connection. The
+     * executor is closed when the processor stops, not when a run closes it.
+     */
+    private RemoteCommandExecutor getTargetExecutor(final ProcessContext context, final HostPool.Target target) {
+        final RemoteCommandExecutor executor = targetExecutors.computeIfAbsent(target, key -> {
+            final RemoteCommandExecutor created = decorate(context,
+                    getExecutorProvider(context).createExecutor(context, getLogger()));
+            if (this.sshClientProvider != null) // need this for unit tests
+                created.setSSHClientProvider(sshClientProvider);
+            created.setRunListener(this::journalRun);
+            return created;
+        });
+        return new ForwardingCommandExecutor(executor) {
+            @Override
+            public void close() {
+                // the connection is kept for the next runs on the target
+            }
+        };
+    }
+
+    /**
+     * Opens an executor for a single run, which is tracked until it is closed so that stopping the processor can cancel
+     * its run.
+     */
+    private RemoteCommandExecutor newExecutor(final ProcessContext context) {
+        final RemoteCommandExecutor executor = new ForwardingCommandExecutor(
+                decorate(context, getExecutorProvider(context).createExecutor(context, getLogger()))) {
+            @Override
+            public void close() throws IOException {
+                runExecutors.remove(this);
+                super.close();
+            }
+        };
+        if (this.sshClientProvider != null) // need this for unit tests
+            executor.setSSHClientProvider(sshClientProvider);
+        executor.setRunListener(this::journalRun);
+        runExecutors.add(executor);
+        return executor;
+    }
+
+    /**
+     * Wraps an executor into the adaptive limiter of its target when `Adaptive Concurrency` is enabled, into the
+     * cluster-wide limit when `Cluster Maximum Runs per Target` is set, into the sessions of its runrep user when a
+     * `Session Limiter Service` is set, and into the retries of transient failures when `Transient Failure Retries`
+     * is set. Every retry is admitted by the limiters anew, so that a run waiting to be retried does not hold a slot of
+     * its target or a session of its user.
+     */
+    private RemoteCommandExecutor decorate(final ProcessContext context, final RemoteCommandExecutor executor) {
+        RemoteCommandExecutor decorated = executor;
+        if (context.getProperty(ADAPTIVE_CONCURRENCY).asBoolean()) {
+            decorated = new ConcurrencyLimitedCommandExecutor(decorated, flowFile -> getTargetKey(context, flowFile),
+                    context.getProperty(MAX_RUNS_PER_TARGET).asInteger(),
+                    context.getProperty(RUN_ADMISSION_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS));
+        }
+
+        final ClusterConcurrencyLimiter clusterConcurrencyLimiter = clusterLimiter;
+        if (clusterConcurrencyLimiter != null) {
+            decorated = new ClusterLimitedCommandExecutor(decorated, clusterConcurrencyLimiter,
+                    flowFile -> getTargetKey(context, flowFile),
+                    context.getProperty(RUN_ADMISSION_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS));
+        }
+
+        if (context.getProperty(GENEVA_SESSION_LIMITER_SERVICE).isSet()) {
+            decorated = new SessionLimitedCommandExecutor(decorated,
+                    context.getProperty(GENEVA_SESSION_LIMITER_SERVICE)
+                            .asControllerService(GenevaSessionLimiterService.class),
+                    flowFile -> context.getProperty(RUNREP_USERNAME).evaluateAttributeExpressions(flowFile).getValue(),
+                    context.getProperty(RUN_ADMISSION_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS));
+        }
+
+        final int retries = context.getProperty(TRANSIENT_FAILURE_RETRIES).asInteger();
+        if (retries > 0) {
+            decorated = new RetryingCommandExecutor(decorated, retries,
+                    context.getProperty(RETRY_INITIAL_BACKOFF).asTimePeriod(TimeUnit.MILLISECONDS),
+                    context.getProperty(RETRY_MAX_BACKOFF).asTimePeriod(TimeUnit.MILLISECONDS),
+                    context.getProperty(RETRY_BUDGET).asTimePeriod(TimeUnit.MILLISECONDS), getLogger());
+        }
+        return decorated;
+    }
+
+    /**
+     * Returns the circuit breaker of the Geneva host and AGA a FlowFile runs on, or {@code null} if circuit breaking is
+     * disabled.
+     */
+    static CircuitBreaker getCircuitBreaker(final ProcessContext context, final FlowFile flowFile) {
+        final int threshold = context.getProperty(CIRCUIT_BREAKER_THRESHOLD).asInteger();
+        if (threshold == 0)
+            return null;
+
+        return CircuitBreaker.forTarget(getTargetKey(context, flowFile), threshold,
+                context.getProperty(CIRCUIT_BREAKER_OPEN_DURATION).asTimePeriod(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Records a failed run with the circuit breaker of its target. A Geneva error only counts as a failure of the
+     * target if runrep could not reach the AGA; any other error shows that the target is up.
+     */
+    static void recordFailure(final CircuitBreaker circuitBreaker, final Exception exc) {
+        if (circuitBreaker == null)
+            return;
+
+        if (exc instanceof GenevaException && !isTargetFailure((GenevaException) exc))
+            circuitBreaker.onSuccess();
+        else
+            circuitBreaker.onFailure();
+    }
+
+    /**
+     * @return {@code true} if runrep failed because it could not reach the AGA.
+     */
+    static boolean isTargetFailure(final GenevaException exc) {
+        return GenevaErrorClassifier.isAgaUnreachable(exc);
+    }
+
+    /**
+     * Identifies the Geneva host and AGA a FlowFile runs on.
+     */
+    static String getTargetKey(final ProcessContext context, final FlowFile flowFile) {
+        final String genevaAga = context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue();
+        if (isLocalTransport(context))
+            return "local/" + genevaAga;
+
+        return context.getProperty(HOSTNAME).evaluateAttributeExpressions(flowFile).getValue() + ":"
+                + context.getProperty(PORT).evaluateAttributeExpressions(flowFile).getValue() + "/" + genevaAga;
+    }
+
     public RemoteCommandExecutor createOrGetExecutor(final ProcessContext context) {
         if (remoteCommandExecutor == null) {
-            remoteCommandExecutor = executorProvider.createExecutor(context, getLogger());
+            remoteCommandExecutor = decorate(context,
+                    getExecutorProvider(context).createExecutor(context, getLogger()));
+            remoteCommandExecutor.setRunListener(this::journalRun);
         }
 
         if (this.sshClientProvider != null) // need this for unit tests
@@ -378,34 +984,322 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
         return remoteCommandExecutor;
     }
 
+    /**
+     * Returns the provider set through {@link #setExecutorProvider}, if any, or the one for the configured
+     * `Execution Transport`.
+     */
+    private RemoteCommandExecutorProvider getExecutorProvider(final ProcessContext context) {
+        if (executorProvider != null)
+            return executorProvider;
+
+        return getTransportExecutorProvider(context);
+    }
+
+    /**
+     * Returns the provider for the configured `Execution Transport`.
+     */
+    static RemoteCommandExecutorProvider getTransportExecutorProvider(final ProcessContext context) {
+        return isLocalTransport(context) ? new LocalProcessCommandExecutorProvider()
+                : new SSHCommandExecutorProvider();
+    }
+
+    static boolean isLocalTransport(final ProcessContext context) {
+        return LOCAL_TRANSPORT.getValue().equals(context.getProperty(EXECUTION_TRANSPORT).getValue());
+    }
+
+    /**
+     * @return When a run started before NiFi restarted is given up on and killed: at the end of its `Execution
+     *         Timeout`, or an hour after it is reattached to without one.
+     */
+    public static long getReattachDeadline(final PropertyContext context, final long startedAt) {
+        final PropertyValue executionTimeout = context.getProperty(EXECUTION_TIMEOUT);
+        return executionTimeout.isSet() ? startedAt + executionTimeout.asTimePeriod(TimeUnit.MILLISECONDS)
+                : System.currentTimeMillis() + MAX_REATTACH_WAIT_MILLIS;
+    }
+
+    /**
+     * Starts the background removal of reports when `Remote Cleanup Batch Size` asks for batches. The queue uses
+     * executors of its own, one per target of the `Host Pool` if any, so that their connections outlive the runs.
+     */
+    @OnScheduled
+    public void startRemoteCleanup(final ProcessContext context) {
+        final int batchSize = context.getProperty(REMOTE_CLEANUP_BATCH_SIZE).asInteger();
+        if (batchSize <= 1)
+            return;
+
+        final List<HostPool.Target> targets = isHostPoolEnabled(context)
+                ? HostPool.parseTargets(context.getProperty(HOST_POOL).getValue(), getDefaultPort(context), null)
+                : Collections.emptyList();
+        cleanupQueue = new RemoteCleanupQueue(cleanupTarget -> {
+            // the reports of a pool target are removed through the target's properties
+            final ProcessContext targetContext = targets.stream()
+                    .filter(target -> cleanupTarget.endsWith("@" + target.getHost() + ":" + target.getPort()))
+                    .findFirst().map(target -> TargetPropertyContext.wrap(context, target, HOSTNAME, PORT, GENEVA_AGA))
+                    .orElse(context);
+            final RemoteCommandExecutor cleanupExecutor = getExecutorProvider(targetContext)
+                    .createExecutor(targetContext, getLogger());
+            if (this.sshClientProvider != null) // need this for unit tests
+                cleanupExecutor.setSSHClientProvider(sshClientProvider);
+            return cleanupExecutor;
+        }, batchSize, context.getProperty(REMOTE_CLEANUP_INTERVAL).asTimePeriod(TimeUnit.MILLISECONDS), getLogger());
+    }
+
+    private static int getDefaultPort(final ProcessContext context) {
+        final Integer port = context.getProperty(PORT).evaluateAttributeExpressions().asInteger();
+        return port == null ? 22 : port;
+    }
+
+    /**
+     * Starts probing the targets of the `Host Pool`, if any.
+     */
+    @OnScheduled
+    public void startHostPool(final ProcessContext context) {
+        if (!isHostPoolEnabled(context))
+            return;
+
+        final HostPool pool = new HostPool(
+                HostPool.parseTargets(context.getProperty(HOST_POOL).getValue(), getDefaultPort(context), null),
+                context.getProperty(HOST_ROUTING_POLICY).getValue(), target -> isAvailable(context, target),
+                getLogger());
+        pool.startProbing(context.getProperty(HOST_PROBE_INTERVAL).asTimePeriod(TimeUnit.MILLISECONDS),
+                context.getProperty(FileTransfer.CONNECTION_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS).intValue());
+        hostPool = pool;
+
+        if (context.getProperty(HEDGE_PERCENTILE).isSet()) {
+            hedgeThreads = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "Geneva hedged run");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts sharing the runs of the Geneva targets with the other nodes of the cluster when `Cluster Maximum Runs per
+     * Target` is set.
+     */
+    @OnScheduled
+    public void startClusterLimiter(final ProcessContext context) {
+        if (context.getProperty(CLUSTER_MAX_RUNS_PER_TARGET).isSet())
+            clusterLimiter = new ClusterConcurrencyLimiter(context.getStateManager(),
+                    context.getProperty(CLUSTER_MAX_RUNS_PER_TARGET).asInteger(), getLogger());
+    }
+
+    /**
+     * Opens the job journal when `Job Journal` is enabled, dropping the runs too old to still be waited for.
+     */
+    @OnScheduled
+    public void startJobJournal(final ProcessContext context) {
+        if (!context.getProperty(JOB_JOURNAL).asBoolean()) {
+            jobJournal = null;
+            return;
+        }
+
+        final JobJournal journal = new JobJournal(context.getStateManager(), getLogger());
+        journal.prune(System.currentTimeMillis());
+        jobJournal = journal;
+    }
+
+    /**
+     * Journals a run once its PID is known, if it was started for a FlowFile that is being journaled.
+     */
+    private void journalRun(final FlowFile flowFile, final String host, final String pid) {
+        final JobJournal journal = jobJournal;
+        final String flowFileUuid = flowFile.getAttribute(CoreAttributes.UUID.key());
+        final ICommand command = journaledCommands.get(flowFileUuid);
+        if (journal == null || command == null)
+            return;
+
+        journal.record(flowFileUuid, new JobJournal.Entry(host, pid, System.currentTimeMillis(),
+                JobJournal.fingerprint(command), command.getOutputResource()));
+    }
+
+    /**
+     * Waits for the journaled run of a FlowFile, if any was started on the same host with the same command before NiFi
+     * went down.
+     *
+     * @return {@code true} if the run left its report, which can then be fetched without running the report again.
+     */
+    private boolean reattachRun(final JobJournal journal, final RemoteCommandExecutor commandExecutor,
+            final ICommand command, final String host, final FlowFile flowFile) throws IOException {
+        final JobJournal.Entry entry = journal.get(flowFile.getAttribute(CoreAttributes.UUID.key()));
+        if (entry == null || !Objects.equals(entry.getHost(), host)
+                || !entry.getFingerprint().equals(JobJournal.fingerprint(command)))
+            return false;
+
+        getLogger().info("Reattaching {} to run {} started before the restart", flowFile, entry.getPid());
+        return commandExecutor.reattach(entry.getPid(), entry.getStartedAt(), entry.getOutputResource(), flowFile);
+    }
+
+    /**
+     * @return {@code false} while the circuit of a target of the `Host Pool` is open, so that runs go to the other
+     *         targets instead of failing fast on it.
+     */
+    private static boolean isAvailable(final ProcessContext context, final HostPool.Target target) {
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(
+                TargetPropertyContext.wrap(context, target, HOSTNAME, PORT, GENEVA_AGA), null);
+        return circuitBreaker == null || circuitBreaker.isAvailable();
+    }
+
+    private static boolean isHostPoolEnabled(final ProcessContext context) {
+        return !isLocalTransport(context) && context.getProperty(HOST_POOL).isSet();
+    }
+
+    /**
+     * Kills the runs in flight on the Geneva hosts, so that runs abandoned by stopping the processor do not keep taking
+     * up Geneva capacity. Their FlowFiles go back to their queues. Journaled runs are left running, since a stop may be
+     * NiFi shutting down, and are reattached when the processor starts again.
+     */
+    @OnUnscheduled
+    public void cancelRuns() {
+        if (jobJournal != null)
+            return;
+
+        final RemoteCommandExecutor executor = remoteCommandExecutor;
+        if (executor != null)
+            executor.cancelRuns();
+        for (final RemoteCommandExecutor runExecutor : runExecutors)
+            runExecutor.cancelRuns();
+        for (final RemoteCommandExecutor targetExecutor : targetExecutors.values())
+            targetExecutor.cancelRuns();
+    }
+
+    /**
+     * Removes the reports still queued for removal, closes the executors of the `Host Pool` targets, and drops the
+     * executor so that the next run picks up a change of `Execution Transport`.
+     */
+    @OnStopped
+    public void onStopped() {
+        final RemoteCleanupQueue queue = cleanupQueue;
+        cleanupQueue = null;
+        if (queue != null)
+            queue.close();
+
+        final HostPool pool = hostPool;
+        hostPool = null;
+        if (pool != null)
+            pool.stopProbing();
+
+        final ExecutorService threads = hedgeThreads;
+        hedgeThreads = null;
+        if (threads != null)
+            threads.shutdown();
+
+        final ClusterConcurrencyLimiter limiter = clusterLimiter;
+        clusterLimiter = null;
+        if (limiter != null)
+            limiter.close();
+
+        for (final RemoteCommandExecutor targetExecutor : targetExecutors.values()) {
+            try {
+                targetExecutor.close();
+            } catch (final IOException exc) {
+                getLogger().debug("Failed to close the executor of a host pool target", exc);
+            }
+        }
+        targetExecutors.clear();
+
+        remoteCommandExecutor = null;
+    }
+
+    /**
+     * Routes the run to a target of the `Host Pool`, if any, and runs it with the target's properties.
+     */
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        final HostPool pool = hostPool;
+        if (pool == null) {
+            onTrigger(context, session, null);
+            return;
+        }
+
+        try (final HostPool.Lease lease = pool.acquire()) {
+            if (lease == null) {
+                getLogger().debug("No target of the host pool can be reached or has its circuit closed; yielding");
+                context.yield();
+                return;
+            }
+            onTrigger(TargetPropertyContext.wrap(context, lease.getTarget(), HOSTNAME, PORT, GENEVA_AGA), session,
+                    lease);
+        }
+    }
+
+    /**
+     * Runs the report of a FlowFile.
+     *
+     * @param lease
+     *            The target of the `Host Pool` the context points to, or {@code null} without a pool.
+     */
+    protected void onTrigger(final ProcessContext context, final ProcessSession session, final HostPool.Lease lease)
+            throws ProcessException {
         FlowFile flowFile = session.get();
         if (flowFile == null)
             return;
 
         final StopWatch stopWatch = new StopWatch(true);
-        final String host = context.getProperty(HOSTNAME).evaluateAttributeExpressions(flowFile).getValue();
-        final int port = context.getProperty(PORT).evaluateAttributeExpressions(flowFile).asInteger();
-        final String sshUsername = context.getProperty(USERNAME).evaluateAttributeExpressions(flowFile).getValue();
+        final LocalDateTime runStart = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        final boolean localTransport = isLocalTransport(context);
+        final String host = localTransport ? null
+                : context.getProperty(HOSTNAME).evaluateAttributeExpressions(flowFile).getValue();
+        final int port = localTransport ? -1
+                : context.getProperty(PORT).evaluateAttributeExpressions(flowFile).asInteger();
+        final String sshUsername = localTransport ? null
+                : context.getProperty(USERNAME).evaluateAttributeExpressions(flowFile).getValue();
 
         // Geneva runrep-specific information
         final String genevaAga = context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue();
         final String genevaUser = context.getProperty(RUNREP_USERNAME).evaluateAttributeExpressions(flowFile)
                 .getValue();
 
-        try (final RemoteCommandExecutor commandExecutor = createOrGetExecutor(context)) {
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(context, flowFile);
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            getLogger().debug("The circuit of Geneva target {} is open; returning {} to its queue", circuitBreaker,
+                    flowFile);
+            session.rollback(true);
+            context.yield();
+            return;
+        }
+
+        final String flowFileUuid = flowFile.getAttribute(CoreAttributes.UUID.key());
+        boolean runCompleted = false;
+        try (final RemoteCommandExecutor commandExecutor = openExecutor(context, lease)) {
+
+            // only this run may fill in the prior knowledge date, never an upstream processor
+            flowFile = session.removeAttribute(flowFile, AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE);
+            flowFile = prepareRun(context, session, commandExecutor, flowFile);
+            flowFile = checkCatalog(context, session, commandExecutor, flowFile);
+            flowFile = checkPortfolios(context, session, commandExecutor, flowFile);
+
+            final ICommand definitionCommand = getCommand(session, context, flowFile);
+            final String knowledgeDate = getEffectiveKnowledgeDate(context, flowFile, runStart);
+            final String knowledgeDateStateKey = getKnowledgeDateStateKey(context, flowFile, definitionCommand);
+            final String autoPriorKnowledgeDate = getAutoPriorKnowledgeDate(context, knowledgeDateStateKey,
+                    knowledgeDate);
+            if (autoPriorKnowledgeDate != null)
+                flowFile = session.putAttribute(flowFile, AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE, autoPriorKnowledgeDate);
 
             // execute the cmd on the server
-            final ICommand command = getCommand(session, context, flowFile);
+            final ICommand command = autoPriorKnowledgeDate == null ? definitionCommand
+                    : getCommand(session, context, flowFile);
             final String resultCsvFile = command.getOutputResource();
 
+            // key columns that can never be resolved fail the FlowFile before the report is run
+            final RowChangeDetector changeDetector;
+            try {
+                changeDetector = createChangeDetector(context, command, flowFile);
+            } catch (final IllegalArgumentException exc) {
+                reportChangeDetectionFailure(session, flowFile, exc);
+                return;
+            }
+
             final Map<String, String> attributes = new HashMap<>();
             final String protocolName = commandExecutor.getProtocolName();
 
-            attributes.put(protocolName + ".remote.host", host);
-            attributes.put(protocolName + ".remote.username", sshUsername);
-            attributes.put(protocolName + ".remote.port", String.valueOf(port));
+            if (!localTransport) {
+                attributes.put(protocolName + ".remote.host", host);
+                attributes.put(protocolName + ".remote.username", sshUsername);
+                attributes.put(protocolName + ".remote.port", String.valueOf(port));
+            }
             attributes.put(protocolName + ".remote.filename", resultCsvFile);
             attributes.put("geneva.runrep.aga", genevaAga);
             attributes.put("geneva.runrep.user", genevaUser);
@@ -413,38 +1307,553 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
 
             flowFile = session.putAllAttributes(flowFile, attributes);
 
-            // It's possible that report runs will fail through no fault of our own
-            // This could happen due to no fault of our own (memory, report, invalid params, etc.)
-            commandExecutor.execute(command, flowFile, session);
+            if (SHARDED_LAYOUT.getValue().equals(context.getProperty(REPORT_OUTPUT_LAYOUT).getValue()))
+                commandExecutor.createDirectories(Paths.get(resultCsvFile).getParent().toString(), flowFile);
+
+            final JobJournal journal = jobJournal;
+            if (journal != null && reattachRun(journal, commandExecutor, command, host, flowFile)) {
+                flowFile = session.putAttribute(flowFile, "geneva.runrep.reattached", "true");
+            } else {
+                if (journal != null)
+                    journaledCommands.put(flowFileUuid, command);
+                try {
+                    // It's possible that report runs will fail through no fault of our own
+                    // This could happen due to no fault of our own (memory, report, invalid params, etc.)
+                    commandExecutor.execute(command, flowFile, session);
+                } finally {
+                    journaledCommands.remove(flowFileUuid);
+                }
+            }
+            if (circuitBreaker != null)
+                circuitBreaker.onSuccess();
+
+            final HostPool.Target hedgeWinner = getHedgeWinner(commandExecutor, lease);
+            final String runHost = hedgeWinner == null ? host : hedgeWinner.getHost();
+            final int runPort = hedgeWinner == null ? port : hedgeWinner.getPort();
+            if (hedgeWinner != null)
+                flowFile = recordHedgeWinner(session, flowFile, protocolName, hedgeWinner);
+
+            final ReportFilter reportFilter = createReportFilter(context, flowFile);
+            if (reportFilter != null) {
+                final ReportFilter.Statistics filterStatistics = commandExecutor.filterFile(resultCsvFile,
+                        reportFilter, flowFile);
+                flowFile = session.putAttribute(flowFile, "geneva.filter.keptrows",
+                        String.valueOf(filterStatistics.getKeptRows()));
+                flowFile = session.putAttribute(flowFile, "geneva.filter.droppedrows",
+                        String.valueOf(filterStatistics.getDroppedRows()));
+            }
 
             // The result csv file on the server
             flowFile = commandExecutor.getRemoteFile(context, command, flowFile, session, getStreamHandler());
+            final List<String> siblingResources = context.getProperty(FETCH_SIBLING_OUTPUTS).asBoolean()
+                    ? commandExecutor.listSiblingFiles(resultCsvFile, flowFile)
+                    : Collections.emptyList();
+            if (!siblingResources.isEmpty())
+                flowFile = transferSiblingOutputs(context, session, commandExecutor, siblingResources, flowFile,
+                        runHost, runPort);
+            boolean changesDetected = true;
+            if (changeDetector != null) {
+                try {
+                    flowFile = detectRowChanges(session, flowFile, changeDetector);
+                } catch (final IllegalArgumentException exc) {
+                    // a key column missing from the header; the report is fetched, so it is still cleaned up below
+                    flowFile = reportChangeDetectionFailure(session, flowFile, exc);
+                    changesDetected = false;
+                }
+            }
 
             final long elapsedMs = stopWatch.getElapsed(TimeUnit.MILLISECONDS);
-            flowFile = session.putAttribute(flowFile, "geneva.runrep.elapsedms", String.valueOf(elapsedMs));
+            if (changesDetected) {
+                flowFile = session.putAttribute(flowFile, "geneva.runrep.elapsedms", String.valueOf(elapsedMs));
 
-            // emit provenance event and transfer FlowFile
-            session.getProvenanceReporter().fetch(flowFile,
-                    commandExecutor.getProtocolName() + "://" + host + ":" + port + "/" + resultCsvFile, elapsedMs);
-            session.transfer(flowFile, REL_SUCCESS);
+                // emit provenance event and transfer FlowFile
+                final String transitUri = getTransitUri(protocolName, runHost, runPort, resultCsvFile);
+                session.getProvenanceReporter().fetch(flowFile, transitUri, elapsedMs);
+                session.transfer(flowFile, REL_SUCCESS);
+            }
 
             final FlowFile finalFlowFile = flowFile;
-            session.commitAsync(() -> performCompletion(commandExecutor, command, finalFlowFile));
+            final String cleanupTarget = localTransport ? "local" : sshUsername + "@" + runHost + ":" + runPort;
+            final boolean recordRun = changesDetected;
+            runCompleted = true;
+            session.commitAsync(() -> {
+                forgetRun(flowFileUuid);
+                if (recordRun && knowledgeDateStateKey != null)
+                    recordKnowledgeDate(context, knowledgeDateStateKey, knowledgeDate);
+                if (recordRun)
+                    commitChangeDetector(changeDetector);
+                performCompletion(commandExecutor, command, siblingResources, finalFlowFile, cleanupTarget);
+            }, failure -> {
+                if (changeDetector != null)
+                    changeDetector.abort();
+            });
         } catch (final GenevaException exc) {
+            recordFailure(circuitBreaker, exc);
             final String failureReason = exc.getGenevaErrorMessage();
             flowFile = session.putAttribute(flowFile, "geneva.runrep.error", failureReason);
             reportFailure(session, flowFile, String.format("Got the error %s while executing command %s.",
                     exc.getGenevaErrorMessage(), exc.getCommand()), exc, REL_GENEVA_FAILURE);
+        } catch (final RunRejectedException exc) {
+            getLogger().debug("Returning {} to its queue: {}", flowFile, exc.getMessage());
+            session.rollback(true);
         } catch (final IOException exc) {
+            if (lease != null && GenevaErrorClassifier.isConnectionFailure(exc))
+                lease.fail();
+            recordFailure(circuitBreaker, exc);
             reportFailure(session, flowFile, genevaUser, exc, REL_FAILURE);
             throw new ProcessException("Unexpected error occured.", exc);
         } catch (final IllegalArgumentException exc) {
             throw new ProcessException(exc);
+        } finally {
+            // a failed run is started again rather than reattached; a committed one is forgotten once committed, and a
+            // run whose commit fails is kept so that the retry reuses its report
+            if (!runCompleted)
+                forgetRun(flowFileUuid);
+        }
+    }
+
+    private void forgetRun(final String flowFileUuid) {
+        final JobJournal journal = jobJournal;
+        if (journal != null)
+            journal.remove(flowFileUuid);
+    }
+
+    /**
+     * @return The target a hedged run succeeded on, or {@code null} if the run was not hedged or succeeded on the
+     *         target it was routed to.
+     */
+    static HostPool.Target getHedgeWinner(final RemoteCommandExecutor commandExecutor, final HostPool.Lease lease) {
+        if (!(commandExecutor instanceof HedgingCommandExecutor))
+            return null;
+
+        final HostPool.Target winner = ((HedgingCommandExecutor) commandExecutor).getWinningTarget();
+        return winner.equals(lease.getTarget()) ? null : winner;
+    }
+
+    /**
+     * Points the remote attributes of a FlowFile to the target its hedged run succeeded on.
+     */
+    static FlowFile recordHedgeWinner(final ProcessSession session, final FlowFile flowFile,
+            final String protocolName, final HostPool.Target winner) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put(protocolName + ".remote.host", winner.getHost());
+        attributes.put(protocolName + ".remote.port", String.valueOf(winner.getPort()));
+        if (winner.getAga() != null)
+            attributes.put("geneva.runrep.aga", winner.getAga());
+        attributes.put("geneva.runrep.hedged", "true");
+        return session.putAllAttributes(flowFile, attributes);
+    }
+
+    /**
+     * Checks the targets of a FlowFile against the catalog of its AGA when a catalog service is configured. The catalog
+     * is loaded through the processor's executor when the service has none or it is stale.
+     */
+    FlowFile checkCatalog(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final FlowFile flowFile) throws GenevaException {
+        if (!descriptors.contains(GENEVA_CATALOG_SERVICE) || !context.getProperty(GENEVA_CATALOG_SERVICE).isSet())
+            return flowFile;
+
+        final GenevaCatalogService catalogService = context.getProperty(GENEVA_CATALOG_SERVICE)
+                .asControllerService(GenevaCatalogService.class);
+        final String genevaAga = context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue();
+        final GenevaCatalog catalog;
+        try {
+            catalog = catalogService.getCatalog(genevaAga,
+                    () -> loadCatalog(context, session, commandExecutor, flowFile));
+        } catch (final IOException exc) {
+            getLogger().warn("Could not load the catalog of AGA {}; running {} unchecked", genevaAga, flowFile, exc);
+            return flowFile;
+        }
+        return validateTargets(context, session, catalog, flowFile);
+    }
+
+    private static GenevaCatalog loadCatalog(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final FlowFile flowFile) throws IOException {
+        final var provider = new StandardRunrepArgumentProvider(session, context, flowFile);
+        try {
+            final String reports = commandExecutor.executeForOutput(new CatalogCommand(provider, CatalogCommand.LIST),
+                    flowFile);
+            final String queries = commandExecutor
+                    .executeForOutput(new CatalogCommand(provider, CatalogCommand.PQUERY), flowFile);
+            return GenevaCatalog.parse(reports, queries, System.currentTimeMillis());
+        } catch (final GenevaException exc) {
+            throw new IOException(String.format("runrep failed to print the catalog: %s", exc.getGenevaErrorMessage()),
+                    exc);
+        }
+    }
+
+    /**
+     * Checks the `Portfolio List` of a FlowFile against the portfolios of its AGA when a portfolio service is
+     * configured, and records how many portfolios it expands to.
+     */
+    FlowFile checkPortfolios(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final FlowFile flowFile) throws GenevaException {
+        if (!context.getProperty(GENEVA_PORTFOLIO_SERVICE).isSet())
+            return flowFile;
+
+        final String portfolioList = context.getProperty(PORTFOLIO_LIST).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        if (portfolioList == null || portfolioList.isBlank())
+            return flowFile;
+
+        final GenevaPortfolioService portfolioService = context.getProperty(GENEVA_PORTFOLIO_SERVICE)
+                .asControllerService(GenevaPortfolioService.class);
+        final String genevaAga = context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue();
+        final GenevaPortfolios portfolios;
+        try {
+            portfolios = portfolioService.getPortfolios(genevaAga,
+                    query -> loadPortfolios(context, session, commandExecutor, flowFile, query));
+        } catch (final IOException exc) {
+            getLogger().warn("Could not load the portfolios of AGA {}; running {} unchecked", genevaAga, flowFile, exc);
+            return flowFile;
+        }
+
+        try {
+            final List<String> expanded = portfolios.expand(portfolioList);
+            return session.putAttribute(flowFile, "geneva.portfolio.count", String.valueOf(expanded.size()));
+        } catch (final IllegalArgumentException exc) {
+            throw new GenevaException("Unknown portfolio", String.format("%s in AGA %s", exc.getMessage(), genevaAga),
+                    "-p " + portfolioList);
+        }
+    }
+
+    /**
+     * Runs the membership query of a portfolio service through an executor, reading the result from what runrep
+     * prints rather than from a report file.
+     */
+    static GenevaPortfolios loadPortfolios(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final FlowFile flowFile, final String membershipQuery)
+            throws IOException {
+        final var command = new PortfolioCommand(new StandardRunrepArgumentProvider(session, context, flowFile) {
+            @Override
+            public String getOutputPath() {
+                return "/dev/stdout";
+            }
+        }, membershipQuery);
+        try {
+            command.validate();
+            return GenevaPortfolios.parse(commandExecutor.executeForOutput(command, flowFile),
+                    System.currentTimeMillis());
+        } catch (final IllegalArgumentException exc) {
+            throw new IOException(exc.getMessage(), exc);
+        } catch (final GenevaException exc) {
+            throw new IOException(
+                    String.format("runrep failed to run the membership query: %s", exc.getGenevaErrorMessage()), exc);
         }
     }
 
-    private void performCompletion(final RemoteCommandExecutor commandExecutor, final ICommand command,
-            final FlowFile flowfile) {
+    /**
+     * Checks the reports or queries a FlowFile runs against the catalog of its AGA. The default accepts everything.
+     *
+     * @return The FlowFile, possibly with attributes resolved from the catalog.
+     *
+     * @throws GenevaException
+     *             if a target is not in the catalog, i.e. runrep would not find it either.
+     */
+    protected FlowFile validateTargets(final ProcessContext context, final ProcessSession session,
+            final GenevaCatalog catalog, final FlowFile flowFile) throws GenevaException {
+        return flowFile;
+    }
+
+    /**
+     * Creates the failure for a target that is not in the catalog of an AGA.
+     */
+    static GenevaException notInCatalog(final String genevaAga, final String runCommandName, final String target) {
+        return new GenevaException("Unknown report",
+                String.format("`%s` is not in the catalog of AGA %s", target, genevaAga),
+                runCommandName + " " + target);
+    }
+
+    /**
+     * Returns the state key under which the last knowledge date of the command's report definition is kept, or
+     * {@code null} if auto-incremental runs are not enabled for this FlowFile.
+     */
+    static String getKnowledgeDateStateKey(final ProcessContext context, final FlowFile flowFile,
+            final ICommand command) {
+        if (!context.getProperty(AUTO_INCREMENTAL).asBoolean())
+            return null;
+
+        // the property keeps its value when the accounting run type changes, so check the dependency again
+        final String accountingRunType = context.getProperty(ACCOUNTING_RUN_TYPE).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        if (!CLOSED_PERIOD_ACCOUNTING.getValue().equals(accountingRunType)
+                && !INCREMENTAL_ACCOUNTING.getValue().equals(accountingRunType))
+            return null;
+
+        final String reportStateKey = getReportStateKey(context, flowFile, command);
+        return KNOWLEDGE_DATE_STATE_PREFIX + com.github.knguyen.processors.utils.StringUtils.sha256Hex(reportStateKey);
+    }
+
+    /**
+     * Identifies a report definition across runs for the state kept about it: the definition qualified by where it runs
+     * as configured, i.e. the `Host Pool` or the host and port, and `Geneva AGA`. The values of a pool target are left
+     * out, so that the targets of a pool share their state, and two hosts running the same AGA do not.
+     */
+    static String getReportStateKey(final ProcessContext context, final FlowFile flowFile, final ICommand command) {
+        final ProcessContext configured = TargetPropertyContext.unwrap(context);
+        final String location;
+        if (isLocalTransport(configured))
+            location = "local";
+        else if (configured.getProperty(HOST_POOL).isSet())
+            location = "pool " + configured.getProperty(HOST_POOL).getValue().trim();
+        else
+            location = configured.getProperty(HOSTNAME).evaluateAttributeExpressions(flowFile).getValue() + ":"
+                    + configured.getProperty(PORT).evaluateAttributeExpressions(flowFile).getValue();
+
+        final String aga = configured.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue();
+        return location + "|" + aga + "|" + command.getReportDefinition();
+    }
+
+    /**
+     * Looks up the knowledge date of the last successful run of the report definition.
+     *
+     * @return The prior knowledge date to use, or {@code null} if there is none or it is later than the knowledge date
+     *         of this run, i.e. an older knowledge date is being rerun, in which case the report runs in full.
+     */
+    static String getAutoPriorKnowledgeDate(final ProcessContext context, final String stateKey,
+            final String knowledgeDate) throws IOException {
+        if (stateKey == null)
+            return null;
+
+        final String storedKnowledgeDate = context.getStateManager().getState(Scope.CLUSTER).get(stateKey);
+        if (storedKnowledgeDate == null || isLater(storedKnowledgeDate, knowledgeDate))
+            return null;
+        return storedKnowledgeDate;
+    }
+
+    /**
+     * The knowledge date the report ran as: the configured one, or the time the run started when none is configured,
+     * in which case Geneva uses the current time.
+     */
+    static String getEffectiveKnowledgeDate(final ProcessContext context, final FlowFile flowFile,
+            final LocalDateTime runStart) {
+        final String knowledgeDate = context.getProperty(KNOWLEDGE_DATE).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        return knowledgeDate == null || knowledgeDate.isBlank()
+                ? runStart.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : knowledgeDate.trim();
+    }
+
+    /**
+     * Stores the knowledge date of a successful run in the cluster state. The stored date never moves backwards, so a
+     * rerun of an older knowledge date does not widen the next incremental run.
+     */
+    void recordKnowledgeDate(final ProcessContext context, final String stateKey, final String knowledgeDate) {
+        final StateManager stateManager = context.getStateManager();
+        try {
+            for (int attempt = 0; attempt < STATE_UPDATE_ATTEMPTS; attempt++) {
+                final StateMap currentState = stateManager.getState(Scope.CLUSTER);
+                final String storedKnowledgeDate = currentState.get(stateKey);
+                if (storedKnowledgeDate != null && !isLater(knowledgeDate, storedKnowledgeDate))
+                    return;
+
+                final Map<String, String> newState = new HashMap<>(currentState.toMap());
+                newState.put(stateKey, knowledgeDate);
+                // the first write replaces the empty state too, so that no concurrent write is lost
+                if (stateManager.replace(currentState, newState, Scope.CLUSTER))
+                    return;
+            }
+            getLogger().warn("Could not record knowledge date {} after {} attempts; the next run will not be incremental",
+                    knowledgeDate, STATE_UPDATE_ATTEMPTS);
+        } catch (final IOException exc) {
+            getLogger().warn("Could not record knowledge date {}; the next run will not be incremental", knowledgeDate,
+                    exc);
+        }
+    }
+
+    private static boolean isLater(final String candidate, final String reference) {
+        try {
+            return LocalDateTime.parse(candidate).isAfter(LocalDateTime.parse(reference));
+        } catch (final DateTimeParseException exc) {
+            // not comparable, let the latest successful run win
+            return true;
+        }
+    }
+
+    /**
+     * Routes the other files the run wrote next to the report to `sibling-output`, as children of the report.
+     *
+     * @return The report FlowFile, with the number of siblings added as an attribute.
+     */
+    private FlowFile transferSiblingOutputs(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final List<String> siblingResources, final FlowFile flowFile,
+            final String host, final int port) throws IOException {
+        final String protocolName = commandExecutor.getProtocolName();
+        final List<FlowFile> siblings = commandExecutor.getRemoteFiles(context, siblingResources, flowFile, session);
+        for (int i = 0; i < siblings.size(); i++) {
+            final String resource = siblingResources.get(i);
+            final String name = Paths.get(resource).getFileName().toString();
+
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put(CoreAttributes.FILENAME.key(), name);
+            attributes.put(protocolName + ".remote.filename", resource);
+            attributes.put("geneva.sibling.extension", name.substring(name.lastIndexOf('.') + 1));
+            attributes.put("geneva.report.uuid", flowFile.getAttribute(CoreAttributes.UUID.key()));
+
+            final FlowFile sibling = session.putAllAttributes(siblings.get(i), attributes);
+            session.getProvenanceReporter().fetch(sibling, getTransitUri(protocolName, host, port, resource));
+            session.transfer(sibling, REL_SIBLING_OUTPUT);
+        }
+        return session.putAttribute(flowFile, "geneva.sibling.count", String.valueOf(siblings.size()));
+    }
+
+    /**
+     * Returns the provenance transit URI of a file, which is a `file:` URI for the local transport (no host).
+     */
+    static String getTransitUri(final String protocolName, final String host, final int port,
+            final String resource) {
+        return host == null ? Paths.get(resource).toUri().toString()
+                : protocolName + "://" + host + ":" + port + "/" + resource;
+    }
+
+    /**
+     * Creates the filter to run on the host if a row filter or column projection is configured and the report format
+     * is delimited.
+     *
+     * @return The report filter, or {@code null} if filtering does not apply to this report.
+     */
+    private ReportFilter createReportFilter(final ProcessContext context, final FlowFile flowFile) {
+        final List<String> columns = ReportFilter.parseColumns(
+                context.getProperty(REPORT_FILTER_COLUMNS).evaluateAttributeExpressions(flowFile).getValue());
+        final List<ReportFilter.Condition> conditions = ReportFilter.parseConditions(
+                context.getProperty(REPORT_FILTER_CONDITIONS).evaluateAttributeExpressions(flowFile).getValue());
+        if (columns.isEmpty() && conditions.isEmpty())
+            return null;
+
+        final String outputFormat = context.getProperty(REPORT_OUTPUT_FORMAT).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        final Byte delimiter = RowChangeDetector.delimiterFor(outputFormat);
+        if (delimiter == null) {
+            getLogger().warn("Report filtering is only supported for CSV, BCP and TSV reports, not `{}`; skipping it",
+                    outputFormat);
+            return null;
+        }
+
+        return new ReportFilter(delimiter, delimiter == ',',
+                context.getProperty(REPORT_HAS_HEADER_ROW).asBoolean(), columns, conditions);
+    }
+
+    /**
+     * Creates a change detector for the report if change detection is configured and the report format is delimited.
+     *
+     * @return The change detector, or {@code null} if change detection does not apply to this report.
+     */
+    private RowChangeDetector createChangeDetector(final ProcessContext context, final ICommand command,
+            final FlowFile flowFile) {
+        final String keyColumns = context.getProperty(CHANGE_DETECTION_KEY_COLUMNS)
+                .evaluateAttributeExpressions(flowFile).getValue();
+        if (keyColumns == null || keyColumns.isBlank())
+            return null;
+
+        final String outputFormat = context.getProperty(REPORT_OUTPUT_FORMAT).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        final Byte delimiter = RowChangeDetector.delimiterFor(outputFormat);
+        if (delimiter == null) {
+            getLogger().warn("Change detection is only supported for CSV, BCP and TSV reports, not `{}`; skipping it",
+                    outputFormat);
+            return null;
+        }
+
+        final Path stateDirectory = Paths.get(context.getProperty(CHANGE_DETECTION_STATE_DIRECTORY).getValue());
+        final Path indexFile = RowChangeDetector.indexFileFor(stateDirectory,
+                getReportStateKey(context, flowFile, command));
+        return new RowChangeDetector(indexFile, delimiter, delimiter == ',',
+                context.getProperty(REPORT_HAS_HEADER_ROW).asBoolean(), Arrays.asList(keyColumns.split(",")), context.getProperty(CHANGE_DETECTION_OFF_HEAP).asBoolean());
+    }
+
+    /**
+     * Splits the rows of the fetched report into `inserted`, `updated` and `deleted` children. Children without any
+     * rows are dropped. The counts are added to the report FlowFile as attributes.
+     */
+    private FlowFile detectRowChanges(final ProcessSession session, FlowFile flowFile,
+            final RowChangeDetector changeDetector) throws IOException {
+        final FlowFile inserted = session.putAttribute(session.create(flowFile), "geneva.change.type", "inserted");
+        final FlowFile updated = session.putAttribute(session.create(flowFile), "geneva.change.type", "updated");
+        final FlowFile deleted = session.putAttribute(session.create(flowFile), "geneva.change.type", "deleted");
+
+        final RowChangeDetector.ChangeSummary summary;
+        try (final InputStream report = session.read(flowFile);
+                final OutputStream insertedOut = session.write(inserted);
+                final OutputStream updatedOut = session.write(updated);
+                final OutputStream deletedOut = session.write(deleted)) {
+            summary = changeDetector.detect(report, insertedOut, updatedOut, deletedOut);
+        } catch (final IOException | RuntimeException exc) {
+            changeDetector.abort();
+            session.remove(Arrays.asList(inserted, updated, deleted));
+            throw exc;
+        }
+
+        routeChanges(session, inserted, summary.getInserted(), REL_INSERTED);
+        routeChanges(session, updated, summary.getUpdated(), REL_UPDATED);
+        routeChanges(session, deleted, summary.getDeleted(), REL_DELETED);
+
+        if (summary.getDuplicates() > 0)
+            getLogger().warn("{} rows of {} share a key with an earlier row; check the change detection key columns",
+                    summary.getDuplicates(), flowFile);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("geneva.change.inserted", String.valueOf(summary.getInserted()));
+        attributes.put("geneva.change.updated", String.valueOf(summary.getUpdated()));
+        attributes.put("geneva.change.deleted", String.valueOf(summary.getDeleted()));
+        attributes.put("geneva.change.unchanged", String.valueOf(summary.getUnchanged()));
+        return session.putAllAttributes(flowFile, attributes);
+    }
+
+    private FlowFile reportChangeDetectionFailure(final ProcessSession session, FlowFile flowFile,
+            final IllegalArgumentException exc) {
+        flowFile = session.putAttribute(flowFile, "geneva.change.error", exc.getMessage());
+        reportFailure(session, flowFile, String.format("Cannot detect the row changes of %s: %s", flowFile,
+                exc.getMessage()), exc, REL_FAILURE);
+        return flowFile;
+    }
+
+    private static void routeChanges(final ProcessSession session, final FlowFile child, final long rows,
+            final Relationship relationship) {
+        if (rows == 0) {
+            session.remove(child);
+            return;
+        }
+        session.transfer(session.putAttribute(child, "record.count", String.valueOf(rows)), relationship);
+    }
+
+    private void commitChangeDetector(final RowChangeDetector changeDetector) {
+        if (changeDetector == null)
+            return;
+
+        try {
+            changeDetector.commit();
+        } catch (final IOException exc) {
+            getLogger().warn(
+                    "Routed the row changes but could not save the row index; the next run will be compared with an older baseline.",
+                    exc);
+        }
+    }
+
+    void performCompletion(final RemoteCommandExecutor commandExecutor, final ICommand command,
+            final List<String> siblingResources, final FlowFile flowfile, final String cleanupTarget) {
+        final RemoteCleanupQueue queue = cleanupQueue;
+        if (queue != null) {
+            queue.enqueue(cleanupTarget, flowfile, command.getOutputResource());
+            for (final String siblingResource : siblingResources)
+                queue.enqueue(cleanupTarget, flowfile, siblingResource);
+            return;
+        }
+
+        if (!siblingResources.isEmpty()) {
+            // the report and its siblings go in one batch
+            final List<String> resources = new ArrayList<>(siblingResources);
+            resources.add(0, command.getOutputResource());
+            try {
+                final List<String> failed = commandExecutor.deleteFiles(resources, flowfile);
+                if (!failed.isEmpty())
+                    getLogger().warn("Successfully ran runrep but could not clean up {}", failed);
+            } catch (final IOException exc) {
+                getLogger().warn(String.format(
+                        "Successfully ran runrep and got the content from `%s` but something went wrong while clean it up.",
+                        command.getOutputResource()), exc);
+            }
+            return;
+        }
+
         try {
             commandExecutor.deleteFile(command, flowfile);
         } catch (final FileNotFoundException fnfe) {
@@ -456,7 +1865,7 @@ public abstract class BaseExecuteGeneva extends AbstractProcessor {
         }
     }
 
-    private void reportFailure(final ProcessSession session, final FlowFile flowFile, final String error,
+    void reportFailure(final ProcessSession session, final FlowFile flowFile, final String error,
             final Exception exception, final Relationship relationship) {
         final ComponentLog logger = getLogger();
         logger.error(error, exception);
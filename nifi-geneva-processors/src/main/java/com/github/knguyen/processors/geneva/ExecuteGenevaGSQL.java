@@ -16,8 +16,21 @@
  */
 package com.github.knguyen.processors.geneva;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
@@ -27,10 +40,15 @@ import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.util.StopWatch;
 
+import com.github.knguyen.processors.diff.ReportDemultiplexer;
+import com.github.knguyen.processors.diff.RowChangeDetector;
 import com.github.knguyen.processors.geneva.argument.StandardRunrepArgumentProvider;
 import com.github.knguyen.processors.geneva.command.GSQLCommand;
-import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.limit.CircuitBreaker;
+import com.github.knguyen.processors.geneva.pool.HostPool;
+import com.github.knguyen.processors.geneva.retry.GenevaErrorClassifier;
 
 public class ExecuteGenevaGSQL extends BaseExecuteGeneva {
     public static final PropertyDescriptor GENEVA_SQL_QUERY = new PropertyDescriptor.Builder().name("geneva-sql-query")
@@ -44,9 +62,30 @@ public class ExecuteGenevaGSQL extends BaseExecuteGeneva {
             .required(false).addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).build();
 
+    public static final PropertyDescriptor GSQL_BATCH_KEY = new PropertyDescriptor.Builder().name("gsql-batch-key")
+            .displayName("Batch Key")
+            .description(
+                    "The key that distinguishes the query of an incoming FlowFile from the others, e.g. `${portfolio.code}`.  When set, the queries of up to `Batch Size` FlowFiles that only differ by their key, i.e. that have the same query text, credentials and parameters, are merged into a single `rungsql` run: `:BatchKeys` in the query is replaced with the quoted keys of the batch, e.g. `WHERE NameSort IN (:BatchKeys);`.  The result is split back into the originating FlowFiles by `Batch Key Column`.  The output format must be CSV, BCP or TSV, and `Auto Incremental` is not applied to batched queries.")
+            .required(false).addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).build();
+
+    public static final PropertyDescriptor GSQL_BATCH_KEY_COLUMN = new PropertyDescriptor.Builder()
+            .name("gsql-batch-key-column").displayName("Batch Key Column")
+            .description(
+                    "The name, or 1-based number, of the result column holding the key of each row.  Every row is routed to the FlowFiles whose `Batch Key` equals the column value, together with the header row if `Report Has Header Row` is set.")
+            .required(true).addValidator(StandardValidators.NON_BLANK_VALIDATOR).dependsOn(GSQL_BATCH_KEY)
+            .build();
+
+    public static final PropertyDescriptor GSQL_BATCH_SIZE = new PropertyDescriptor.Builder().name("gsql-batch-size")
+            .displayName("Batch Size")
+            .description(
+                    "The maximum number of FlowFiles whose queries are merged into one `rungsql` run, which bounds the length of the IN-list.")
+            .required(true).defaultValue("100").addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .dependsOn(GSQL_BATCH_KEY).build();
+
     @Override
     protected List<PropertyDescriptor> additionalDescriptors() {
-        return Arrays.asList(GENEVA_SQL_QUERY);
+        return Arrays.asList(GENEVA_SQL_QUERY, GSQL_BATCH_KEY, GSQL_BATCH_KEY_COLUMN, GSQL_BATCH_SIZE);
     }
 
     @OnScheduled
@@ -61,11 +100,264 @@ public class ExecuteGenevaGSQL extends BaseExecuteGeneva {
     }
 
     @Override
-    protected ICommand getCommand(final ProcessSession session, final ProcessContext context, final FlowFile flowfile)
-            throws IllegalArgumentException {
+    protected GSQLCommand getCommand(final ProcessSession session, final ProcessContext context,
+            final FlowFile flowfile) throws IllegalArgumentException {
         final var provider = new StandardRunrepArgumentProvider(session, context, flowfile);
         final var command = new GSQLCommand(provider);
         command.validate();
         return command;
     }
+
+    @Override
+    protected void onTrigger(final ProcessContext context, final ProcessSession session, final HostPool.Lease lease)
+            throws ProcessException {
+        if (!context.getProperty(GSQL_BATCH_KEY).isSet()) {
+            super.onTrigger(context, session, lease);
+            return;
+        }
+
+        final List<FlowFile> flowFiles = session.get(context.getProperty(GSQL_BATCH_SIZE).asInteger());
+        if (flowFiles.isEmpty())
+            return;
+
+        // group the FlowFiles whose queries only differ by their key
+        final Map<String, List<BatchEntry>> batches = new LinkedHashMap<>();
+        for (final FlowFile flowFile : flowFiles) {
+            try {
+                final String key = context.getProperty(GSQL_BATCH_KEY).evaluateAttributeExpressions(flowFile)
+                        .getValue();
+                GSQLCommand.validateBatchKey(key);
+                final GSQLCommand command = getCommand(session, context, flowFile);
+                command.getBatchQuery(Collections.singleton(key));
+                final String batchDefinition = getHostDefinition(context, flowFile) + "|"
+                        + command.getBatchDefinition();
+                batches.computeIfAbsent(batchDefinition, definition -> new ArrayList<>())
+                        .add(new BatchEntry(flowFile, key.trim(), command));
+            } catch (final IllegalArgumentException exc) {
+                reportFailure(session, flowFile,
+                        String.format("Cannot batch the query of %s: %s", flowFile, exc.getMessage()), exc,
+                        REL_FAILURE);
+            }
+        }
+
+        try (final RemoteCommandExecutor commandExecutor = openExecutor(context, lease)) {
+            // the session can only be committed once every FlowFile of the trigger has its destination
+            final List<Runnable> completions = new ArrayList<>();
+            final Iterator<List<BatchEntry>> remaining = batches.values().iterator();
+            boolean circuitOpen = false;
+            while (remaining.hasNext()) {
+                final List<BatchEntry> batch = remaining.next();
+                final CircuitBreaker circuitBreaker = getCircuitBreaker(context, batch.get(0).flowFile);
+                if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+                    getLogger().debug("The circuit of Geneva target {} is open; returning the batch of {} to its queue",
+                            circuitBreaker, batch.get(0).flowFile);
+                    requeue(session, batch);
+                    circuitOpen = true;
+                    continue;
+                }
+                if (!runBatch(context, session, commandExecutor, lease, circuitBreaker, batch, completions)) {
+                    // a limiter rejected the batch, so the batches not run yet go back to their queue as well
+                    requeue(session, batch);
+                    remaining.forEachRemaining(notRun -> requeue(session, notRun));
+                    break;
+                }
+            }
+            session.commitAsync(() -> completions.forEach(Runnable::run));
+            if (circuitOpen)
+                context.yield();
+        } catch (final IOException exc) {
+            throw new ProcessException("Unexpected error occured.", exc);
+        }
+    }
+
+    /**
+     * Runs the merged query of a batch once and splits its result back into the FlowFiles of the batch. A failure of
+     * the run fails every FlowFile of the batch, but not the other batches of the same trigger.
+     *
+     * @param circuitBreaker
+     *            Receives the outcome of the run, or {@code null} if circuit breaking is disabled.
+     * @param completions
+     *            Receives the cleanup of the run, to perform once the session is committed.
+     *
+     * @return {@code false} if a limiter rejected the run, in which case the FlowFiles of the batch were left as they
+     *         were.
+     */
+    private boolean runBatch(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final HostPool.Lease lease,
+            final CircuitBreaker circuitBreaker, final List<BatchEntry> batch, final List<Runnable> completions) {
+        final StopWatch stopWatch = new StopWatch(true);
+        final FlowFile first = batch.get(0).flowFile;
+        final boolean localTransport = isLocalTransport(context);
+        final String host = localTransport ? null
+                : context.getProperty(HOSTNAME).evaluateAttributeExpressions(first).getValue();
+        final int port = localTransport ? -1
+                : context.getProperty(PORT).evaluateAttributeExpressions(first).asInteger();
+        final String sshUsername = localTransport ? null
+                : context.getProperty(USERNAME).evaluateAttributeExpressions(first).getValue();
+        final String genevaAga = context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(first).getValue();
+        final String genevaUser = context.getProperty(RUNREP_USERNAME).evaluateAttributeExpressions(first)
+                .getValue();
+
+        final Set<String> keys = new LinkedHashSet<>();
+        for (final BatchEntry entry : batch)
+            keys.add(entry.key);
+
+        FlowFile merged = null;
+        try {
+            final String batchQuery = batch.get(0).command.getBatchQuery(keys);
+            final GSQLCommand command = new GSQLCommand(new StandardRunrepArgumentProvider(session, context, first) {
+                @Override
+                public String getGSQLQuery() {
+                    return batchQuery;
+                }
+            });
+            final String resultCsvFile = command.getOutputResource();
+            final ReportDemultiplexer demultiplexer = createDemultiplexer(context, first);
+
+            if (SHARDED_LAYOUT.getValue().equals(context.getProperty(REPORT_OUTPUT_LAYOUT).getValue()))
+                commandExecutor.createDirectories(Paths.get(resultCsvFile).getParent().toString(), first);
+
+            commandExecutor.execute(command, first, session);
+            if (circuitBreaker != null)
+                circuitBreaker.onSuccess();
+
+            final HostPool.Target hedgeWinner = getHedgeWinner(commandExecutor, lease);
+            final String runHost = hedgeWinner == null ? host : hedgeWinner.getHost();
+            final int runPort = hedgeWinner == null ? port : hedgeWinner.getPort();
+
+            final List<FlowFile> parents = new ArrayList<>();
+            for (final BatchEntry entry : batch)
+                parents.add(entry.flowFile);
+            merged = commandExecutor.getRemoteFile(context, command, session.create(parents), session,
+                    getStreamHandler());
+            final ReportDemultiplexer.Summary summary = demultiplex(session, merged, batch, demultiplexer);
+            session.remove(merged);
+            merged = null;
+            if (summary.getUnmatched() > 0)
+                getLogger().warn("{} rows of the batched query matched none of the keys {} in `{}`",
+                        summary.getUnmatched(), keys, context.getProperty(GSQL_BATCH_KEY_COLUMN).getValue());
+
+            final String protocolName = commandExecutor.getProtocolName();
+            final Map<String, String> attributes = new HashMap<>();
+            if (!localTransport) {
+                attributes.put(protocolName + ".remote.host", runHost);
+                attributes.put(protocolName + ".remote.username", sshUsername);
+                attributes.put(protocolName + ".remote.port", String.valueOf(runPort));
+            }
+            attributes.put(protocolName + ".remote.filename", resultCsvFile);
+            attributes.put("geneva.runrep.aga", genevaAga);
+            attributes.put("geneva.runrep.user", genevaUser);
+            attributes.put("geneva.runrep.command", command.getLoggablePart());
+            attributes.put("geneva.batch.size", String.valueOf(batch.size()));
+
+            final long elapsedMs = stopWatch.getElapsed(TimeUnit.MILLISECONDS);
+            attributes.put("geneva.runrep.elapsedms", String.valueOf(elapsedMs));
+            final String transitUri = getTransitUri(protocolName, runHost, runPort, resultCsvFile);
+            for (final BatchEntry entry : batch) {
+                FlowFile flowFile = session.putAllAttributes(entry.flowFile, attributes);
+                flowFile = session.putAttribute(flowFile, "geneva.batch.rows",
+                        String.valueOf(summary.getRows(entry.key)));
+                session.getProvenanceReporter().fetch(flowFile, transitUri, elapsedMs);
+                session.transfer(flowFile, REL_SUCCESS);
+            }
+
+            final String cleanupTarget = localTransport ? "local" : sshUsername + "@" + runHost + ":" + runPort;
+            completions.add(() -> performCompletion(commandExecutor, command, Collections.emptyList(), first,
+                    cleanupTarget));
+        } catch (final RunRejectedException exc) {
+            getLogger().debug("Returning the batch of {} to its queue: {}", first, exc.getMessage());
+            return false;
+        } catch (final GenevaException exc) {
+            recordFailure(circuitBreaker, exc);
+            removeQuietly(session, merged);
+            for (final BatchEntry entry : batch) {
+                final FlowFile flowFile = session.putAttribute(entry.flowFile, "geneva.runrep.error",
+                        exc.getGenevaErrorMessage());
+                reportFailure(session, flowFile, String.format("Got the error %s while executing command %s.",
+                        exc.getGenevaErrorMessage(), exc.getCommand()), exc, REL_GENEVA_FAILURE);
+            }
+        } catch (final IOException | IllegalArgumentException exc) {
+            if (exc instanceof IOException) {
+                if (lease != null && GenevaErrorClassifier.isConnectionFailure(exc))
+                    lease.fail();
+                recordFailure(circuitBreaker, exc);
+            }
+            removeQuietly(session, merged);
+            for (final BatchEntry entry : batch)
+                reportFailure(session, entry.flowFile, genevaUser, exc, REL_FAILURE);
+        }
+        return true;
+    }
+
+    /**
+     * Returns where a FlowFile's query runs, since queries for different hosts cannot be merged.
+     */
+    private static String getHostDefinition(final ProcessContext context, final FlowFile flowFile) {
+        if (isLocalTransport(context))
+            return "local";
+
+        return context.getProperty(USERNAME).evaluateAttributeExpressions(flowFile).getValue() + "@"
+                + context.getProperty(HOSTNAME).evaluateAttributeExpressions(flowFile).getValue() + ":"
+                + context.getProperty(PORT).evaluateAttributeExpressions(flowFile).getValue();
+    }
+
+    private static ReportDemultiplexer createDemultiplexer(final ProcessContext context, final FlowFile flowFile) {
+        final String outputFormat = context.getProperty(REPORT_OUTPUT_FORMAT).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        final Byte delimiter = RowChangeDetector.delimiterFor(outputFormat);
+        if (delimiter == null)
+            throw new IllegalArgumentException(String.format(
+                    "Batched queries are only supported for CSV, BCP and TSV output, not `%s`.", outputFormat));
+
+        return new ReportDemultiplexer(delimiter, delimiter == ',',
+                context.getProperty(REPORT_HAS_HEADER_ROW).asBoolean(),
+                context.getProperty(GSQL_BATCH_KEY_COLUMN).getValue());
+    }
+
+    /**
+     * Replaces the content of every FlowFile of the batch with the rows of its key.
+     */
+    private static ReportDemultiplexer.Summary demultiplex(final ProcessSession session, final FlowFile merged,
+            final List<BatchEntry> batch, final ReportDemultiplexer demultiplexer) throws IOException {
+        final Map<String, List<OutputStream>> outputs = new HashMap<>();
+        try (final InputStream report = session.read(merged)) {
+            try {
+                for (final BatchEntry entry : batch)
+                    outputs.computeIfAbsent(entry.key, key -> new ArrayList<>()).add(session.write(entry.flowFile));
+                return demultiplexer.split(report, outputs);
+            } finally {
+                for (final List<OutputStream> keyOutputs : outputs.values())
+                    for (final OutputStream out : keyOutputs)
+                        out.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the FlowFiles of a batch to the queue they came from, penalized like a rolled back FlowFile.
+     */
+    private static void requeue(final ProcessSession session, final List<BatchEntry> batch) {
+        for (final BatchEntry entry : batch)
+            session.transfer(session.penalize(entry.flowFile));
+    }
+
+    private static void removeQuietly(final ProcessSession session, final FlowFile flowFile) {
+        if (flowFile != null)
+            session.remove(flowFile);
+    }
+
+    /**
+     * A FlowFile of a batch, with its key and its own, unmerged, query.
+     */
+    private static final class BatchEntry {
+        private final FlowFile flowFile;
+        private final String key;
+        private final GSQLCommand command;
+
+        BatchEntry(final FlowFile flowFile, final String key, final GSQLCommand command) {
+            this.flowFile = flowFile;
+            this.key = key;
+            this.command = command;
+        }
+    }
 }
@@ -16,17 +16,21 @@
  */
 package com.github.knguyen.processors.geneva;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.nifi.components.AllowableValue;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.stream.io.StreamUtils;
 
 import com.github.knguyen.processors.geneva.argument.StandardRunrepArgumentProvider;
+import com.github.knguyen.processors.geneva.catalog.GenevaCatalog;
 import com.github.knguyen.processors.geneva.command.ICommand;
 import com.github.knguyen.processors.geneva.command.RSLCommand;
 
@@ -35,13 +39,82 @@ public class ExecuteGenevaRSL extends BaseExecuteGeneva {
     public static final PropertyDescriptor RSL_NAME = new PropertyDescriptor.Builder().name("rsl-name")
             .displayName("RSL Name")
             .description(
-                    "Specifies the RSL name.  The '.rsl' (dot rsl) extension is not necessary, e.g. `glmap_netassets` for Statement of Net Assets.")
+                    "Specifies the RSL name.  The '.rsl' (dot rsl) extension is not necessary, e.g. `glmap_netassets` for Statement of Net Assets.  When `RSL Source` is `FlowFile Content`, the content is uploaded under this name.")
             .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).required(true)
             .addValidator(StandardValidators.NON_BLANK_VALIDATOR).build();
 
+    public static final AllowableValue RSL_SOURCE_HOST = new AllowableValue("geneva-host", "Geneva Host",
+            "The RSL already exists on the Geneva host and is read by name from the RSL search path of runrep.");
+    public static final AllowableValue RSL_SOURCE_CONTENT = new AllowableValue("flowfile-content", "FlowFile Content",
+            "The FlowFile content is the RSL definition.  It is uploaded to `RSL Cache Directory` and read from there.");
+
+    public static final PropertyDescriptor RSL_SOURCE = new PropertyDescriptor.Builder().name("rsl-source")
+            .displayName("RSL Source").description("Where the RSL definition of the report comes from.")
+            .required(true).allowableValues(RSL_SOURCE_HOST, RSL_SOURCE_CONTENT)
+            .defaultValue(RSL_SOURCE_HOST.getValue()).build();
+
+    public static final PropertyDescriptor RSL_CACHE_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("rsl-cache-directory").displayName("RSL Cache Directory")
+            .description(
+                    "The directory on the Geneva host where RSL definitions from FlowFile content are uploaded.  Each definition is stored under a subdirectory named after the hash of its content, so a definition that was uploaded before is reused without being sent again.  It is created when missing and must be writable by the user runrep runs as.")
+            .required(true).defaultValue("/tmp/nifi-geneva/rsl").addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+            .dependsOn(RSL_SOURCE, RSL_SOURCE_CONTENT).build();
+
+    /**
+     * The attribute holding the path of the uploaded RSL definition on the Geneva host.
+     */
+    public static final String RSL_PATH_ATTRIBUTE = "geneva.rsl.path";
+
     @Override
     protected List<PropertyDescriptor> additionalDescriptors() {
-        return Arrays.asList(RSL_NAME);
+        return Arrays.asList(RSL_NAME, RSL_SOURCE, RSL_CACHE_DIRECTORY, GENEVA_CATALOG_SERVICE);
+    }
+
+    /**
+     * Uploads the RSL definition from the FlowFile content when `RSL Source` asks for it, unless the same content was
+     * uploaded before, and records where it went so that the command reads it from there.
+     */
+    @Override
+    protected FlowFile prepareRun(final ProcessContext context, final ProcessSession session,
+            final RemoteCommandExecutor commandExecutor, final FlowFile flowFile) throws IOException {
+        // the path is only ever set by this processor, never trusted from upstream
+        final FlowFile cleanFlowFile = session.removeAttribute(flowFile, RSL_PATH_ATTRIBUTE);
+        if (!RSL_SOURCE_CONTENT.getValue().equals(context.getProperty(RSL_SOURCE).getValue()))
+            return cleanFlowFile;
+
+        final String rslName = context.getProperty(RSL_NAME).evaluateAttributeExpressions(cleanFlowFile).getValue()
+                .trim();
+        if (rslName.contains("/") || rslName.contains("\\"))
+            throw new IllegalArgumentException(
+                    String.format("The RSL name `%s` cannot contain a path when uploading the RSL.", rslName));
+        if (cleanFlowFile.getSize() == 0)
+            throw new IllegalArgumentException("The FlowFile content holds no RSL definition.");
+
+        final byte[] content = new byte[(int) cleanFlowFile.getSize()];
+        session.read(cleanFlowFile, in -> StreamUtils.fillBuffer(in, content, true));
+
+        final String fileName = rslName.endsWith(".rsl") ? rslName : rslName + ".rsl";
+        final String rslPath = commandExecutor.cacheFile(
+                context.getProperty(RSL_CACHE_DIRECTORY).evaluateAttributeExpressions(cleanFlowFile).getValue(),
+                fileName, content, cleanFlowFile);
+        return session.putAttribute(cleanFlowFile, RSL_PATH_ATTRIBUTE, rslPath);
+    }
+
+    /**
+     * Rejects an RSL the catalog does not know, unless it was uploaded from the FlowFile content.
+     */
+    @Override
+    protected FlowFile validateTargets(final ProcessContext context, final ProcessSession session,
+            final GenevaCatalog catalog, final FlowFile flowFile) throws GenevaException {
+        if (RSL_SOURCE_CONTENT.getValue().equals(context.getProperty(RSL_SOURCE).getValue()))
+            return flowFile;
+
+        final String rslName = context.getProperty(RSL_NAME).evaluateAttributeExpressions(flowFile).getValue().trim();
+        if (!catalog.contains("runfile", rslName))
+            throw notInCatalog(context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue(),
+                    "runfile", rslName);
+        return flowFile;
     }
 
     @Override
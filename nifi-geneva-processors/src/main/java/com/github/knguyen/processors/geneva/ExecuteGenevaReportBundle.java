@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.util.StopWatch;
+
+import com.github.knguyen.processors.geneva.argument.StandardRunrepArgumentProvider;
+import com.github.knguyen.processors.geneva.catalog.GenevaCatalog;
+import com.github.knguyen.processors.geneva.command.BundleCommand;
+import com.github.knguyen.processors.geneva.command.Command;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.limit.CircuitBreaker;
+import com.github.knguyen.processors.geneva.pool.HostPool;
+import com.github.knguyen.processors.geneva.retry.GenevaErrorClassifier;
+
+/**
+ * Runs several reports with the same portfolios, dates and accounting options in a single runrep session, see
+ * {@link BundleCommand}. Every report is fetched into a FlowFile of its own and routed to `success`; the incoming
+ * FlowFile is routed to `original`.
+ *
+ * Change detection, report filtering and sibling outputs apply to a single report and are not offered here.
+ */
+public class ExecuteGenevaReportBundle extends BaseExecuteGeneva {
+
+    public static final PropertyDescriptor REPORT_BUNDLE = new PropertyDescriptor.Builder().name("report-bundle")
+            .displayName("Reports")
+            .description(
+                    "The reports to run, one per line.  A line is either an RSL name, e.g. `glmap_netassets`, or a run command followed by its target, e.g. `runquery TaxLotAppraisalAccruals` or `run \"Tax Lot Appraisal with Accruals\"`.  Blank lines and lines starting with `#` are ignored.  All reports run with the same parameters after a single `connect`, which lets Geneva reuse the accounting it already computed.  Report `n` is written to the output path with `-n` inserted before the extension.")
+            .required(true).addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES).build();
+
+    static final Relationship REL_ORIGINAL = new Relationship.Builder().name("original")
+            .description("The incoming FlowFile is routed to `original` once every report of the bundle was fetched.")
+            .build();
+
+    /**
+     * The common properties that only make sense for a single report.
+     */
+    private static final List<PropertyDescriptor> SINGLE_REPORT_DESCRIPTORS = Arrays.asList(FETCH_SIBLING_OUTPUTS,
+            REPORT_FILTER_COLUMNS, REPORT_FILTER_CONDITIONS, CHANGE_DETECTION_KEY_COLUMNS,
+            CHANGE_DETECTION_STATE_DIRECTORY, REPORT_HAS_HEADER_ROW, CHANGE_DETECTION_OFF_HEAP);
+
+    @Override
+    protected List<PropertyDescriptor> additionalDescriptors() {
+        return Arrays.asList(REPORT_BUNDLE, GENEVA_CATALOG_SERVICE);
+    }
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        super.init(context);
+
+        final List<PropertyDescriptor> supportedDescriptors = new ArrayList<>(descriptors);
+        supportedDescriptors.removeAll(SINGLE_REPORT_DESCRIPTORS);
+        descriptors = Collections.unmodifiableList(supportedDescriptors);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        final Set<Relationship> bundleRelationships = new HashSet<>(relationships);
+        bundleRelationships.add(REL_ORIGINAL);
+        return Collections.unmodifiableSet(bundleRelationships);
+    }
+
+    /**
+     * Rejects the bundle if the catalog does not know one of its reports, before any of them runs.
+     */
+    @Override
+    protected FlowFile validateTargets(final ProcessContext context, final ProcessSession session,
+            final GenevaCatalog catalog, final FlowFile flowFile) throws GenevaException {
+        final String bundle = context.getProperty(REPORT_BUNDLE).evaluateAttributeExpressions(flowFile).getValue();
+        for (final BundleCommand.Report report : BundleCommand.parseReports(bundle)) {
+            final String runCommandName = report.getRunCommandName() == null ? "runfile" : report.getRunCommandName();
+            if (!catalog.contains(runCommandName, report.getTarget()))
+                throw notInCatalog(context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue(),
+                        runCommandName, report.getTarget());
+        }
+        return flowFile;
+    }
+
+    @Override
+    protected BundleCommand getCommand(final ProcessSession session, final ProcessContext context,
+            final FlowFile flowfile) throws IllegalArgumentException {
+        final var provider = new StandardRunrepArgumentProvider(session, context, flowfile);
+        final var command = new BundleCommand(provider);
+        command.validate();
+        return command;
+    }
+
+    /**
+     * A bundle writes a report per run command, which the losing run of a hedge would leave behind.
+     */
+    @Override
+    protected boolean isHedgingSupported() {
+        return false;
+    }
+
+    @Override
+    protected void onTrigger(final ProcessContext context, final ProcessSession session, final HostPool.Lease lease)
+            throws ProcessException {
+        FlowFile flowFile = session.get();
+        if (flowFile == null)
+            return;
+
+        final StopWatch stopWatch = new StopWatch(true);
+        final LocalDateTime runStart = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        final boolean localTransport = isLocalTransport(context);
+        final String host = localTransport ? null
+                : context.getProperty(HOSTNAME).evaluateAttributeExpressions(flowFile).getValue();
+        final int port = localTransport ? -1
+                : context.getProperty(PORT).evaluateAttributeExpressions(flowFile).asInteger();
+        final String sshUsername = localTransport ? null
+                : context.getProperty(USERNAME).evaluateAttributeExpressions(flowFile).getValue();
+        final String genevaAga = context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue();
+        final String genevaUser = context.getProperty(RUNREP_USERNAME).evaluateAttributeExpressions(flowFile)
+                .getValue();
+
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(context, flowFile);
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            getLogger().debug("The circuit of Geneva target {} is open; returning {} to its queue", circuitBreaker,
+                    flowFile);
+            session.rollback(true);
+            context.yield();
+            return;
+        }
+
+        try (final RemoteCommandExecutor commandExecutor = openExecutor(context, lease)) {
+            flowFile = session.removeAttribute(flowFile, AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE);
+            flowFile = checkCatalog(context, session, commandExecutor, flowFile);
+            flowFile = checkPortfolios(context, session, commandExecutor, flowFile);
+
+            final BundleCommand definitionCommand = getCommand(session, context, flowFile);
+            final String knowledgeDate = getEffectiveKnowledgeDate(context, flowFile, runStart);
+            final String knowledgeDateStateKey = getKnowledgeDateStateKey(context, flowFile, definitionCommand);
+            final String autoPriorKnowledgeDate = getAutoPriorKnowledgeDate(context, knowledgeDateStateKey,
+                    knowledgeDate);
+            if (autoPriorKnowledgeDate != null)
+                flowFile = session.putAttribute(flowFile, AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE, autoPriorKnowledgeDate);
+
+            final BundleCommand command = autoPriorKnowledgeDate == null ? definitionCommand
+                    : getCommand(session, context, flowFile);
+            final List<BundleCommand.Report> reports = command.getReports();
+            final List<String> outputResources = command.getOutputResources();
+            final String protocolName = commandExecutor.getProtocolName();
+
+            final Map<String, String> attributes = new HashMap<>();
+            if (!localTransport) {
+                attributes.put(protocolName + ".remote.host", host);
+                attributes.put(protocolName + ".remote.username", sshUsername);
+                attributes.put(protocolName + ".remote.port", String.valueOf(port));
+            }
+            attributes.put("geneva.runrep.aga", genevaAga);
+            attributes.put("geneva.runrep.user", genevaUser);
+            attributes.put("geneva.runrep.command", command.getLoggablePart());
+            attributes.put("geneva.bundle.count", String.valueOf(reports.size()));
+            flowFile = session.putAllAttributes(flowFile, attributes);
+
+            if (SHARDED_LAYOUT.getValue().equals(context.getProperty(REPORT_OUTPUT_LAYOUT).getValue()))
+                commandExecutor.createDirectories(Paths.get(outputResources.get(0)).getParent().toString(), flowFile);
+
+            commandExecutor.execute(command, flowFile, session);
+            if (circuitBreaker != null)
+                circuitBreaker.onSuccess();
+
+            // every report is fetched through a command of its own, so that the executors see a single output
+            final List<ICommand> outputCommands = new ArrayList<>();
+            final List<FlowFile> reportFlowFiles = new ArrayList<>();
+            for (int i = 0; i < reports.size(); i++) {
+                final String outputResource = outputResources.get(i);
+                final ICommand outputCommand = new Command(command.getCommand(), command.getObfuscatedCommand(),
+                        outputResource);
+
+                final Map<String, String> reportAttributes = new HashMap<>();
+                reportAttributes.put(CoreAttributes.FILENAME.key(), Paths.get(outputResource).getFileName().toString());
+                reportAttributes.put(protocolName + ".remote.filename", outputResource);
+                reportAttributes.put("geneva.bundle.index", String.valueOf(i + 1));
+                reportAttributes.put("geneva.bundle.report", reports.get(i).toString());
+
+                FlowFile reportFlowFile = session.putAllAttributes(session.create(flowFile), reportAttributes);
+                reportFlowFile = commandExecutor.getRemoteFile(context, outputCommand, reportFlowFile, session,
+                        getStreamHandler());
+                outputCommands.add(outputCommand);
+                reportFlowFiles.add(reportFlowFile);
+            }
+
+            final long elapsedMs = stopWatch.getElapsed(TimeUnit.MILLISECONDS);
+            for (int i = 0; i < reportFlowFiles.size(); i++) {
+                final FlowFile reportFlowFile = session.putAttribute(reportFlowFiles.get(i),
+                        "geneva.runrep.elapsedms", String.valueOf(elapsedMs));
+                session.getProvenanceReporter().fetch(reportFlowFile,
+                        getTransitUri(protocolName, host, port, outputResources.get(i)), elapsedMs);
+                session.transfer(reportFlowFile, REL_SUCCESS);
+                reportFlowFiles.set(i, reportFlowFile);
+            }
+            session.transfer(flowFile, REL_ORIGINAL);
+
+            final String cleanupTarget = localTransport ? "local" : sshUsername + "@" + host + ":" + port;
+            session.commitAsync(() -> {
+                if (knowledgeDateStateKey != null)
+                    recordKnowledgeDate(context, knowledgeDateStateKey, knowledgeDate);
+                for (int i = 0; i < outputCommands.size(); i++)
+                    performCompletion(commandExecutor, outputCommands.get(i), Collections.emptyList(),
+                            reportFlowFiles.get(i), cleanupTarget);
+            });
+        } catch (final GenevaException exc) {
+            recordFailure(circuitBreaker, exc);
+            flowFile = session.putAttribute(flowFile, "geneva.runrep.error", exc.getGenevaErrorMessage());
+            reportFailure(session, flowFile, String.format("Got the error %s while executing command %s.",
+                    exc.getGenevaErrorMessage(), exc.getCommand()), exc, REL_GENEVA_FAILURE);
+        } catch (final RunRejectedException exc) {
+            getLogger().debug("Returning {} to its queue: {}", flowFile, exc.getMessage());
+            session.rollback(true);
+        } catch (final IOException exc) {
+            if (lease != null && GenevaErrorClassifier.isConnectionFailure(exc))
+                lease.fail();
+            recordFailure(circuitBreaker, exc);
+            reportFailure(session, flowFile, genevaUser, exc, REL_FAILURE);
+            throw new ProcessException("Unexpected error occured.", exc);
+        } catch (final IllegalArgumentException exc) {
+            throw new ProcessException(exc);
+        }
+    }
+}
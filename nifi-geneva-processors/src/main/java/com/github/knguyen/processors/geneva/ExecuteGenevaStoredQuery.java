@@ -26,6 +26,7 @@ import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 
 import com.github.knguyen.processors.geneva.argument.StandardRunrepArgumentProvider;
+import com.github.knguyen.processors.geneva.catalog.GenevaCatalog;
 import com.github.knguyen.processors.geneva.command.ICommand;
 import com.github.knguyen.processors.geneva.command.StoredQueryCommand;
 
@@ -56,7 +57,29 @@ public class ExecuteGenevaStoredQuery extends BaseExecuteGeneva {
 
     @Override
     protected List<PropertyDescriptor> additionalDescriptors() {
-        return Arrays.asList(RUN_COMMAND_NAME, RUN_COMMAND_TARGET);
+        return Arrays.asList(RUN_COMMAND_NAME, RUN_COMMAND_TARGET, GENEVA_CATALOG_SERVICE);
+    }
+
+    /**
+     * Rejects a target the catalog does not know, and resolves a report number to the name of its report.
+     */
+    @Override
+    protected FlowFile validateTargets(final ProcessContext context, final ProcessSession session,
+            final GenevaCatalog catalog, final FlowFile flowFile) throws GenevaException {
+        final String runCommandName = context.getProperty(RUN_COMMAND_NAME).getValue();
+        final String runCommandTarget = context.getProperty(RUN_COMMAND_TARGET).evaluateAttributeExpressions(flowFile)
+                .getValue();
+        if (runCommandTarget == null || runCommandTarget.isBlank())
+            return flowFile;
+
+        if (!catalog.contains(runCommandName, runCommandTarget.trim()))
+            throw notInCatalog(context.getProperty(GENEVA_AGA).evaluateAttributeExpressions(flowFile).getValue(),
+                    runCommandName, runCommandTarget.trim());
+
+        final String reportName = RUN_COMMAND_NAME_RUNNUMBER.getValue().equals(runCommandName)
+                ? catalog.resolveReportNumber(runCommandTarget)
+                : null;
+        return reportName == null ? flowFile : session.putAttribute(flowFile, "geneva.report.name", reportName);
     }
 
     @Override
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
+
+import com.github.knguyen.processors.diff.ReportFilter;
+import com.github.knguyen.processors.geneva.command.ICommand;
+
+/**
+ * An executor that forwards every call to another one, for decorators that only change a few of them, e.g. to limit
+ * or retry runs.
+ */
+public abstract class ForwardingCommandExecutor implements RemoteCommandExecutor {
+    protected final RemoteCommandExecutor delegate;
+
+    protected ForwardingCommandExecutor(final RemoteCommandExecutor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return The executor the calls are forwarded to.
+     */
+    protected RemoteCommandExecutor delegate() {
+        return delegate;
+    }
+
+    @Override
+    public void setSSHClientProvider(final SSHClientProvider sshClientProvider) {
+        delegate().setSSHClientProvider(sshClientProvider);
+    }
+
+    @Override
+    public String getProtocolName() {
+        return delegate().getProtocolName();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate().isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate().close();
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        delegate().execute(command, originalFlowFile, processSession);
+    }
+
+    @Override
+    public String executeForOutput(final ICommand command, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        return delegate().executeForOutput(command, flowFile);
+    }
+
+    @Override
+    public void cancelRuns() {
+        delegate().cancelRuns();
+    }
+
+    @Override
+    public void setRunListener(final RunListener runListener) {
+        delegate().setRunListener(runListener);
+    }
+
+    @Override
+    public boolean reattach(final String pid, final long startedAt, final String outputResource,
+            final FlowFile flowFile) throws IOException {
+        return delegate().reattach(pid, startedAt, outputResource, flowFile);
+    }
+
+    @Override
+    public FlowFile getRemoteFile(final ProcessContext context, final ICommand command, final FlowFile originalFlowFile,
+            final ProcessSession processSession, final IStreamHandler streamHandler) throws IOException {
+        return delegate().getRemoteFile(context, command, originalFlowFile, processSession, streamHandler);
+    }
+
+    @Override
+    public void deleteFile(final ICommand command, final FlowFile flowFile) throws IOException {
+        delegate().deleteFile(command, flowFile);
+    }
+
+    @Override
+    public List<String> deleteFiles(final List<String> resources, final FlowFile flowFile) throws IOException {
+        return delegate().deleteFiles(resources, flowFile);
+    }
+
+    @Override
+    public List<RemoteFileInfo> listFiles(final String directory, final FlowFile flowFile) throws IOException {
+        return delegate().listFiles(directory, flowFile);
+    }
+
+    @Override
+    public List<String> listSiblingFiles(final String resource, final FlowFile flowFile) throws IOException {
+        return delegate().listSiblingFiles(resource, flowFile);
+    }
+
+    @Override
+    public List<FlowFile> getRemoteFiles(final ProcessContext context, final List<String> resources,
+            final FlowFile originalFlowFile, final ProcessSession processSession) throws IOException {
+        return delegate().getRemoteFiles(context, resources, originalFlowFile, processSession);
+    }
+
+    @Override
+    public void createDirectories(final String directory, final FlowFile flowFile) throws IOException {
+        delegate().createDirectories(directory, flowFile);
+    }
+
+    @Override
+    public ReportFilter.Statistics filterFile(final String resource, final ReportFilter filter,
+            final FlowFile flowFile) throws IOException {
+        return delegate().filterFile(resource, filter, flowFile);
+    }
+
+    @Override
+    public String cacheFile(final String directory, final String name, final byte[] content, final FlowFile flowFile)
+            throws IOException {
+        return delegate().cacheFile(directory, name, content, flowFile);
+    }
+}
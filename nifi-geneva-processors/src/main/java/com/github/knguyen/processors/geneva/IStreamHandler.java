@@ -18,6 +18,8 @@ package com.github.knguyen.processors.geneva;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessSession;
@@ -26,4 +28,15 @@ import org.apache.nifi.processor.ProcessContext;
 public interface IStreamHandler {
     FlowFile handleStream(final ProcessContext context, final FlowFile originalFlowFile,
             final ProcessSession processSession, final InputStream inputStream) throws IOException;
+
+    /**
+     * Handles a report that is already on the local disk. The default implementation opens the file and hands it to
+     * {@link #handleStream}; implementations that copy the file as-is can do better.
+     */
+    default FlowFile handleFile(final ProcessContext context, final FlowFile originalFlowFile,
+            final ProcessSession processSession, final Path path) throws IOException {
+        try (final InputStream in = Files.newInputStream(path)) {
+            return handleStream(context, originalFlowFile, processSession, in);
+        }
+    }
 }
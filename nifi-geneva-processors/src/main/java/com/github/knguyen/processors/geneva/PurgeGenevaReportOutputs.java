@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.TriggerSerially;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
+
+import com.github.knguyen.processors.utils.StringUtils;
+
+/**
+ * Removes reports that the `ExecuteGeneva*` processors left behind in the `Report Output Directory`, e.g. because NiFi
+ * stopped between running a report and removing it, or because the run failed.
+ *
+ * Only files named the way those processors name their reports, {@code <uuid>.<extension>}, or the standard error
+ * files of their runs, and that have not been modified for `Minimum File Age` are removed. Reports written to a fixed
+ * `Report Output Path` are never touched. Both output layouts are searched, so that reports written before switching
+ * to the sharded layout are removed as well. Shard directories are kept, since the processors only create them once.
+ */
+@InputRequirement(Requirement.INPUT_FORBIDDEN)
+@TriggerSerially
+public class PurgeGenevaReportOutputs extends AbstractProcessor {
+    static final String REMOVED_COUNTER = "Orphaned Reports Removed";
+    static final String RECLAIMED_COUNTER = "Orphaned Report Bytes Reclaimed";
+
+    /**
+     * Bounds the length of the `rm` command line.
+     */
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    /**
+     * The number of subdirectory levels of the sharded output layout.
+     */
+    private static final int SHARD_DEPTH = 2;
+
+    /**
+     * Matches the standard error files runs keep next to their reports, see
+     * {@link RemoteCommandExecutor#getStdErrResource}, which are left behind by runs that were never reattached to.
+     */
+    private static final Pattern STDERR_FILENAME_PATTERN = Pattern
+            .compile("\\.(" + StringUtils.GUID_FILENAME_PATTERN.pattern() + ")\\.stderr");
+
+    /**
+     * The `Report Output Directory` of the `ExecuteGeneva*` processors, without their default: the temporary directory
+     * is shared with other software, whose files must never be purged by mistake.
+     */
+    public static final PropertyDescriptor REPORT_OUTPUT_DIRECTORY = new PropertyDescriptor.Builder()
+            .name(BaseExecuteGeneva.REPORT_OUTPUT_DIRECTORY.getName())
+            .displayName(BaseExecuteGeneva.REPORT_OUTPUT_DIRECTORY.getDisplayName())
+            .description(
+                    "The `Report Output Directory` of the processors whose reports to remove, as seen from the Geneva host.  There is no default, even though those processors default to the temporary directory: set it explicitly to that directory if that is where they write.")
+            .required(true).addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .expressionLanguageSupported(ExpressionLanguageScope.VARIABLE_REGISTRY).build();
+
+    public static final PropertyDescriptor MINIMUM_FILE_AGE = new PropertyDescriptor.Builder()
+            .name("minimum-file-age").displayName("Minimum File Age")
+            .description(
+                    "Reports that were modified more recently than this are kept.  Must be longer than the longest report run, as well as the time it takes to fetch and commit a report.")
+            .required(true).defaultValue("1 day").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    protected SSHClientProvider sshClientProvider;
+    protected RemoteCommandExecutorProvider executorProvider;
+
+    private List<PropertyDescriptor> descriptors;
+
+    protected void setSSHClientProvider(final SSHClientProvider sshClientProvider) {
+        this.sshClientProvider = sshClientProvider;
+    }
+
+    protected void setExecutorProvider(final RemoteCommandExecutorProvider commandExecutorProvider) {
+        this.executorProvider = commandExecutorProvider;
+    }
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<>(BaseExecuteGeneva.connectionDescriptors());
+        descriptors.add(REPORT_OUTPUT_DIRECTORY);
+        descriptors.add(MINIMUM_FILE_AGE);
+        descriptors.addAll(BaseExecuteGeneva.connectionTuningDescriptors());
+        this.descriptors = Collections.unmodifiableList(descriptors);
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        final String directory = context.getProperty(REPORT_OUTPUT_DIRECTORY).evaluateAttributeExpressions()
+                .getValue();
+        final long cutoff = System.currentTimeMillis()
+                - context.getProperty(MINIMUM_FILE_AGE).asTimePeriod(TimeUnit.MILLISECONDS);
+
+        final RemoteCommandExecutorProvider provider = executorProvider != null ? executorProvider
+                : BaseExecuteGeneva.getTransportExecutorProvider(context);
+        try (final RemoteCommandExecutor executor = provider.createExecutor(context, getLogger())) {
+            if (this.sshClientProvider != null) // need this for unit tests
+                executor.setSSHClientProvider(sshClientProvider);
+
+            final List<RemoteFileInfo> orphans = new ArrayList<>();
+            collectOrphans(executor, directory, SHARD_DEPTH, cutoff, orphans);
+            if (orphans.isEmpty()) {
+                context.yield();
+                return;
+            }
+
+            long removed = 0;
+            long reclaimed = 0;
+            for (int start = 0; start < orphans.size(); start += DELETE_BATCH_SIZE) {
+                final List<RemoteFileInfo> batch = orphans.subList(start,
+                        Math.min(start + DELETE_BATCH_SIZE, orphans.size()));
+                final List<String> paths = new ArrayList<>();
+                for (final RemoteFileInfo file : batch)
+                    paths.add(file.getPath());
+
+                final Set<String> failed = new HashSet<>(executor.deleteFiles(paths, null));
+                for (final RemoteFileInfo file : batch) {
+                    if (failed.contains(file.getPath())) {
+                        getLogger().warn("Could not remove the orphaned report `{}`", file.getPath());
+                    } else {
+                        removed++;
+                        reclaimed += file.getSize();
+                    }
+                }
+            }
+
+            session.adjustCounter(REMOVED_COUNTER, removed, false);
+            session.adjustCounter(RECLAIMED_COUNTER, reclaimed, false);
+            getLogger().info("Removed {} orphaned reports ({} bytes) from `{}`", removed, reclaimed, directory);
+        } catch (final IOException exc) {
+            getLogger().error("Failed to purge orphaned reports from `{}`", directory, exc);
+            context.yield();
+        }
+    }
+
+    /**
+     * Collects the orphaned reports of a directory, and of its shard directories down to {@code depth} levels.
+     */
+    private static void collectOrphans(final RemoteCommandExecutor executor, final String directory, final int depth,
+            final long cutoff, final List<RemoteFileInfo> orphans) throws IOException {
+        for (final RemoteFileInfo file : executor.listFiles(directory, null)) {
+            if (file.isDirectory()) {
+                if (depth > 0 && StringUtils.SHARD_DIRECTORY_PATTERN.matcher(file.getName()).matches())
+                    collectOrphans(executor, file.getPath(), depth - 1, cutoff, orphans);
+            } else if (file.getLastModified() < cutoff
+                    && (StringUtils.GUID_FILENAME_PATTERN.matcher(file.getName()).matches()
+                            || STDERR_FILENAME_PATTERN.matcher(file.getName()).matches())) {
+                orphans.add(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+
+/**
+ * Collects the reports to remove from the Geneva hosts and removes them in batches, so that cleaning up costs one round
+ * trip per batch rather than one SFTP session per report.
+ *
+ * Reports are grouped by target (host, port and user). A group is flushed as soon as it holds {@code batchSize}
+ * reports, and every group is flushed on a fixed interval and when the queue is closed. Reports that could not be
+ * removed are retried with the next flush, up to {@link #MAX_ATTEMPTS} times.
+ *
+ * The queue owns its executors, one per target, which keep their connections open between flushes. Flushes run on a
+ * single background thread, so an executor is never used concurrently.
+ */
+public class RemoteCleanupQueue {
+    static final int MAX_ATTEMPTS = 3;
+
+    private final Function<String, RemoteCommandExecutor> executorFactory;
+    private final Map<String, RemoteCommandExecutor> executors = new LinkedHashMap<>();
+    private final int batchSize;
+    private final ComponentLog logger;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Batch> pending = new LinkedHashMap<>();
+
+    /**
+     * The reports of one target, along with the most recent FlowFile for it, whose attributes the executor evaluates
+     * the connection properties against.
+     */
+    private static final class Batch {
+        private FlowFile flowFile;
+        private final Map<String, Integer> attempts = new LinkedHashMap<>();
+    }
+
+    public RemoteCleanupQueue(final RemoteCommandExecutor executor, final int batchSize, final long intervalMillis,
+            final ComponentLog logger) {
+        this(target -> executor, batchSize, intervalMillis, logger);
+    }
+
+    /**
+     * @param executorFactory
+     *            Opens the executor that removes the reports of a target, see {@link #enqueue}.
+     */
+    public RemoteCleanupQueue(final Function<String, RemoteCommandExecutor> executorFactory, final int batchSize,
+            final long intervalMillis, final ComponentLog logger) {
+        this.executorFactory = executorFactory;
+        this.batchSize = batchSize;
+        this.logger = logger;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Geneva Remote Cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a report for removal.
+     *
+     * @param target
+     *            Identifies the host the report is on; reports of the same target are removed together.
+     * @param flowFile
+     *            The FlowFile the report was fetched for.
+     * @param resource
+     *            The path of the report on the host.
+     */
+    public void enqueue(final String target, final FlowFile flowFile, final String resource) {
+        final boolean full;
+        synchronized (pending) {
+            final Batch batch = pending.computeIfAbsent(target, key -> new Batch());
+            batch.flowFile = flowFile;
+            batch.attempts.putIfAbsent(resource, 0);
+            full = batch.attempts.size() >= batchSize;
+        }
+
+        if (full)
+            scheduler.execute(this::flush);
+    }
+
+    /**
+     * Removes every queued report. Only called from the background thread, or once it has stopped.
+     */
+    void flush() {
+        final Map<String, Batch> batches;
+        synchronized (pending) {
+            if (pending.isEmpty())
+                return;
+            batches = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        for (final Map.Entry<String, Batch> entry : batches.entrySet()) {
+            final Batch batch = entry.getValue();
+            final List<String> resources = new ArrayList<>(batch.attempts.keySet());
+
+            List<String> failed;
+            try {
+                failed = executors.computeIfAbsent(entry.getKey(), executorFactory).deleteFiles(resources,
+                        batch.flowFile);
+            } catch (final IOException | RuntimeException exc) {
+                logger.warn("Could not remove {} reports from {}; will retry", resources.size(), entry.getKey(), exc);
+                failed = resources;
+                closeQuietly(executors.remove(entry.getKey()));
+            }
+
+            requeue(entry.getKey(), batch, failed);
+        }
+    }
+
+    private void requeue(final String target, final Batch batch, final List<String> failed) {
+        batch.attempts.keySet().retainAll(failed);
+        final Iterator<Map.Entry<String, Integer>> iterator = batch.attempts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Integer> attempt = iterator.next();
+            attempt.setValue(attempt.getValue() + 1);
+            if (attempt.getValue() >= MAX_ATTEMPTS) {
+                logger.warn("Giving up on removing `{}` from {} after {} attempts", attempt.getKey(), target,
+                        MAX_ATTEMPTS);
+                iterator.remove();
+            }
+        }
+        if (batch.attempts.isEmpty())
+            return;
+
+        synchronized (pending) {
+            final Batch current = pending.get(target);
+            if (current == null) {
+                pending.put(target, batch);
+            } else {
+                // keep the retry counts, but connect with the newer FlowFile
+                for (final Map.Entry<String, Integer> attempt : batch.attempts.entrySet())
+                    current.attempts.merge(attempt.getKey(), attempt.getValue(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread, makes a last attempt at removing the queued reports and closes the executors.
+     */
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(1, TimeUnit.MINUTES))
+                logger.warn("Timed out waiting for the remote cleanup to finish");
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        synchronized (pending) {
+            for (final Map.Entry<String, Batch> entry : pending.entrySet())
+                logger.warn("Leaving {} reports on {}: {}", entry.getValue().attempts.size(), entry.getKey(),
+                        entry.getValue().attempts.keySet());
+            pending.clear();
+        }
+        for (final RemoteCommandExecutor executor : executors.values())
+            closeQuietly(executor);
+        executors.clear();
+    }
+
+    private void closeQuietly(final RemoteCommandExecutor executor) {
+        if (executor == null)
+            return;
+
+        try {
+            executor.close();
+        } catch (final IOException exc) {
+            logger.debug("Failed to close the remote cleanup executor", exc);
+        }
+    }
+}
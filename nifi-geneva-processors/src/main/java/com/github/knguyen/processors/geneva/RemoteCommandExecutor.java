@@ -18,18 +18,36 @@ package com.github.knguyen.processors.geneva;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
 
+import com.github.knguyen.processors.diff.ReportFilter;
 import com.github.knguyen.processors.geneva.command.ICommand;
 
-import net.schmizz.sshj.sftp.RemoteFile;
-
 public interface RemoteCommandExecutor extends Closeable {
+    /**
+     * The line the shell of a run appends to its standard error file once runrep exited, see
+     * {@link #getStdErrResource}. A run that was killed or is still going has no such line.
+     */
+    String RUN_COMPLETED_MARKER = "geneva.run=completed";
+
+    /**
+     * Returns where a run keeps a copy of its standard error next to its report, so that the outcome of a run can be
+     * checked after NiFi restarted. The name is hidden so that the file is not taken for a sibling output.
+     */
+    static String getStdErrResource(final String outputResource) {
+        final Path report = Paths.get(outputResource);
+        return report.resolveSibling("." + report.getFileName() + ".stderr").toString();
+    }
+
     void setSSHClientProvider(SSHClientProvider sshClientProvider);
 
     String getProtocolName();
@@ -41,13 +59,227 @@ public interface RemoteCommandExecutor extends Closeable {
     void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
             throws IOException, GenevaException;
 
+    /**
+     * Runs a command that prints its result rather than writing a report, such as the runrep `list` command.
+     *
+     * @param command
+     *            The command to run.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @return What the command printed to its standard output.
+     *
+     * @throws IOException
+     *             if the command could not be run.
+     * @throws GenevaException
+     *             if runrep reported an error.
+     */
+    String executeForOutput(final ICommand command, final FlowFile flowFile) throws IOException, GenevaException;
+
+    /**
+     * Kills the processes of the runs in flight, along with their children, e.g. because the processor is stopped. The
+     * cancelled runs fail with a {@link RunCancelledException}. The default has no way to reach its runs.
+     */
+    default void cancelRuns() {
+        // nothing to cancel
+    }
+
+    /**
+     * Sets the listener to notify when the process of a run has started. The default cannot tell the PIDs of its runs
+     * and ignores the listener.
+     */
+    default void setRunListener(final RunListener runListener) {
+        // nothing to notify
+    }
+
+    /**
+     * Waits for a run started by an earlier instance of this executor, e.g. before NiFi restarted, to finish, so that
+     * its report can be fetched without running it again. A run that exceeds the `Execution Timeout` is killed.
+     *
+     * @param pid
+     *            The PID the run reported to the {@link RunListener}.
+     * @param startedAt
+     *            When the run started, in milliseconds since the epoch, to tell it from a later process with the same
+     *            PID.
+     * @param outputResource
+     *            The report the run writes.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @return {@code true} if runrep exited without an error and left a report that is not empty; {@code false} if
+     *         the report has to be run again. The default cannot find earlier runs and always returns {@code false}.
+     *
+     * @throws IOException
+     *             if the host could not be checked.
+     */
+    default boolean reattach(final String pid, final long startedAt, final String outputResource,
+            final FlowFile flowFile) throws IOException {
+        return false;
+    }
+
+    /**
+     * Tells whether the standard error a reattached run left, see {@link #getStdErrResource}, shows that runrep exited
+     * without reporting an error.
+     */
+    default boolean isCompletedWithoutError(final String stdErr) {
+        boolean completed = false;
+        for (final String line : stdErr.split("\\r?\\n")) {
+            if (RUN_COMPLETED_MARKER.equals(line.trim())) {
+                completed = true;
+                continue;
+            }
+            try {
+                maybeRaiseException("The reattached run failed", line, null);
+            } catch (final GenevaException exc) {
+                return false;
+            }
+        }
+        return completed;
+    }
+
     FlowFile getRemoteFile(final ProcessContext context, final ICommand command, final FlowFile originalFlowFile,
             final ProcessSession processSession, IStreamHandler streamHandler) throws IOException;
 
-    InputStream getStreamFromRemoteFile(final RemoteFile remoteFile) throws IOException;
-
     void deleteFile(final ICommand command, final FlowFile flowFile) throws IOException;
 
+    /**
+     * Removes several reports from the same host at once. Reports that no longer exist count as removed.
+     *
+     * @param resources
+     *            The paths of the reports.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @return The reports that could not be removed.
+     *
+     * @throws IOException
+     *             if the host could not be reached at all.
+     */
+    List<String> deleteFiles(final List<String> resources, final FlowFile flowFile) throws IOException;
+
+    /**
+     * Lists the regular files and subdirectories of a directory on the host, without descending into the
+     * subdirectories.
+     *
+     * @param directory
+     *            The directory to list.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against, may be {@code null}.
+     *
+     * @return The files and subdirectories in the directory.
+     *
+     * @throws IOException
+     *             if the directory could not be listed.
+     */
+    List<RemoteFileInfo> listFiles(final String directory, final FlowFile flowFile) throws IOException;
+
+    /**
+     * Lists the other files a run wrote next to its report, i.e. the files in the same directory whose name is the
+     * report's name with a different extension, such as the `.err` and `.arg` files of the `xmlerr` format. This
+     * takes a single directory read.
+     *
+     * @param resource
+     *            The report.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @return The paths of the sibling files, sorted by name.
+     *
+     * @throws IOException
+     *             if the directory could not be listed.
+     */
+    default List<String> listSiblingFiles(final String resource, final FlowFile flowFile) throws IOException {
+        final Path report = Paths.get(resource);
+        final String name = report.getFileName().toString();
+        final int extension = name.lastIndexOf('.');
+        final String prefix = (extension > 0 ? name.substring(0, extension) : name) + ".";
+
+        final List<String> siblings = new ArrayList<>();
+        final Path directory = report.getParent();
+        for (final RemoteFileInfo file : listFiles(directory == null ? "." : directory.toString(), flowFile)) {
+            if (!file.isDirectory() && file.getName().startsWith(prefix) && !file.getName().equals(name))
+                siblings.add(file.getPath());
+        }
+        Collections.sort(siblings);
+        return siblings;
+    }
+
+    /**
+     * Fetches several files into new children of a FlowFile. Implementations may download the files concurrently. The
+     * files are left on the host.
+     *
+     * @param context
+     *            The process context.
+     * @param resources
+     *            The files to fetch.
+     * @param originalFlowFile
+     *            The FlowFile to derive the children from.
+     * @param processSession
+     *            The session to create the children in.
+     *
+     * @return The children, in the order of {@code resources}.
+     *
+     * @throws IOException
+     *             if any of the files could not be fetched, in which case no child is left in the session.
+     */
+    List<FlowFile> getRemoteFiles(final ProcessContext context, final List<String> resources,
+            final FlowFile originalFlowFile, final ProcessSession processSession) throws IOException;
+
+    /**
+     * Creates a directory on the host along with its missing parents. Implementations may remember the directories they
+     * created, so a directory removed while the processor runs is not recreated.
+     *
+     * @param directory
+     *            The directory to create.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @throws IOException
+     *             if the directory could not be created.
+     */
+    void createDirectories(final String directory, final FlowFile flowFile) throws IOException;
+
+    /**
+     * Filters the rows and projects the columns of a delimited report in place on the host, so that only the remaining
+     * bytes are fetched afterwards.
+     *
+     * @param resource
+     *            The report to filter.
+     * @param filter
+     *            The filter to apply.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @return The number of rows kept and dropped.
+     *
+     * @throws IOException
+     *             if the filter could not be run or failed, e.g. because a column does not exist.
+     */
+    ReportFilter.Statistics filterFile(final String resource, final ReportFilter filter, final FlowFile flowFile)
+            throws IOException;
+
+    /**
+     * Ensures that a file with the given content exists on the host and returns its path. The file is placed in a
+     * directory named after the hash of its content, so content that was cached once is reused without being sent
+     * again, and a changed content never overwrites a file another run may be reading.
+     *
+     * @param directory
+     *            The cache directory on the host.
+     * @param name
+     *            The file name, which the cached file keeps.
+     * @param content
+     *            The file content.
+     * @param flowFile
+     *            A FlowFile to evaluate the connection properties against.
+     *
+     * @return The path of the cached file on the host.
+     *
+     * @throws IOException
+     *             if the file could not be checked or written.
+     */
+    String cacheFile(final String directory, final String name, final byte[] content, final FlowFile flowFile)
+            throws IOException;
+
     default void maybeRaiseException(final String message, final String errorLine, final String loggableCommand)
             throws GenevaException {
         // Array of keywords to check in the errorLine
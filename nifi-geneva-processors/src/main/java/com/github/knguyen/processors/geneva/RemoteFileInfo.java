@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+/**
+ * A file or subdirectory found in a directory on the Geneva host.
+ */
+public class RemoteFileInfo {
+    private final String path;
+    private final String name;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+
+    /**
+     * @param path
+     *            The full path of the file.
+     * @param name
+     *            The name of the file, without its directory.
+     * @param directory
+     *            Whether this is a directory rather than a regular file.
+     * @param size
+     *            The size of the file in bytes.
+     * @param lastModified
+     *            When the file was last modified, in milliseconds since the epoch.
+     */
+    public RemoteFileInfo(final String path, final String name, final boolean directory, final long size,
+            final long lastModified) {
+        this.path = path;
+        this.name = name;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import org.apache.nifi.flowfile.FlowFile;
+
+/**
+ * Notified when the process of a run has started on its host, e.g. to journal the run so that it can be reattached to
+ * after NiFi restarts.
+ */
+@FunctionalInterface
+public interface RunListener {
+    /**
+     * @param flowFile
+     *            The FlowFile the run is for.
+     * @param host
+     *            The host the run started on, or {@code null} for a run on the NiFi node itself.
+     * @param pid
+     *            The PID of the shell that runs runrep.
+     */
+    void onStarted(FlowFile flowFile, String host, String pid);
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
+
+import com.github.knguyen.processors.geneva.portfolio.GenevaPortfolioService;
+import com.github.knguyen.processors.geneva.portfolio.GenevaPortfolios;
+
+/**
+ * Splits a `Portfolio List` into work units of about the same number of portfolios, expanding every portfolio group
+ * it names, so that the reports of a large group can run in parallel. Each work unit becomes a FlowFile of its own with
+ * the `geneva.portfolio` attribute, which the `ExecuteGeneva*` processors read by default.
+ *
+ * The portfolios come from a {@link GenevaPortfolioService}. The Geneva host is only contacted when the service has no
+ * portfolios for the AGA or they are stale.
+ */
+@InputRequirement(Requirement.INPUT_REQUIRED)
+public class SplitGenevaPortfolioGroup extends AbstractProcessor {
+
+    public static final PropertyDescriptor PORTFOLIO_SERVICE = new PropertyDescriptor.Builder()
+            .fromPropertyDescriptor(BaseExecuteGeneva.GENEVA_PORTFOLIO_SERVICE)
+            .description(
+                    "Resolves the portfolio groups of the `Portfolio List`.  A list naming an unknown portfolio is routed to `failure`.")
+            .required(true).build();
+
+    public static final PropertyDescriptor MAX_PORTFOLIOS_PER_SPLIT = new PropertyDescriptor.Builder()
+            .name("max-portfolios-per-split").displayName("Maximum Portfolios per Split")
+            .description(
+                    "The most portfolios a work unit holds.  The portfolios are spread over as few work units as possible, whose sizes differ by at most one.")
+            .required(true).defaultValue("50").addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR).build();
+
+    static final Relationship REL_SPLIT = new Relationship.Builder().name("split")
+            .description("Every work unit is routed to `split`.").build();
+
+    static final Relationship REL_ORIGINAL = new Relationship.Builder().name("original")
+            .description("The incoming FlowFile is routed to `original` once it was split.").build();
+
+    static final Relationship REL_FAILURE = new Relationship.Builder().name("failure")
+            .description(
+                    "A FlowFile whose `Portfolio List` names an unknown portfolio, or whose portfolios could not be loaded, is routed to `failure` with the reason in the `geneva.portfolio.error` attribute.")
+            .build();
+
+    private static final Set<Relationship> RELATIONSHIPS = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList(REL_SPLIT, REL_ORIGINAL, REL_FAILURE)));
+
+    protected SSHClientProvider sshClientProvider;
+    protected RemoteCommandExecutorProvider executorProvider;
+
+    private List<PropertyDescriptor> descriptors;
+
+    protected void setSSHClientProvider(final SSHClientProvider sshClientProvider) {
+        this.sshClientProvider = sshClientProvider;
+    }
+
+    protected void setExecutorProvider(final RemoteCommandExecutorProvider commandExecutorProvider) {
+        this.executorProvider = commandExecutorProvider;
+    }
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<>(BaseExecuteGeneva.connectionDescriptors());
+        descriptors.add(BaseExecuteGeneva.RUNREP_USERNAME);
+        descriptors.add(BaseExecuteGeneva.RUNREP_PASSWORD);
+        descriptors.add(BaseExecuteGeneva.GENEVA_AGA);
+        descriptors.add(BaseExecuteGeneva.PORTFOLIO_LIST);
+        descriptors.add(PORTFOLIO_SERVICE);
+        descriptors.add(MAX_PORTFOLIOS_PER_SPLIT);
+        descriptors.addAll(BaseExecuteGeneva.connectionTuningDescriptors());
+        this.descriptors = Collections.unmodifiableList(descriptors);
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return RELATIONSHIPS;
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        final FlowFile flowFile = session.get();
+        if (flowFile == null)
+            return;
+
+        final String portfolioList = context.getProperty(BaseExecuteGeneva.PORTFOLIO_LIST)
+                .evaluateAttributeExpressions(flowFile).getValue();
+        final String genevaAga = context.getProperty(BaseExecuteGeneva.GENEVA_AGA)
+                .evaluateAttributeExpressions(flowFile).getValue();
+        final int maxPortfolios = context.getProperty(MAX_PORTFOLIOS_PER_SPLIT).asInteger();
+
+        final List<String> portfolios;
+        try {
+            final GenevaPortfolios known = context.getProperty(PORTFOLIO_SERVICE)
+                    .asControllerService(GenevaPortfolioService.class)
+                    .getPortfolios(genevaAga, query -> loadPortfolios(context, session, flowFile, query));
+            portfolios = known.expand(portfolioList == null ? "" : portfolioList);
+        } catch (final IOException | IllegalArgumentException exc) {
+            getLogger().error("Could not split the portfolios `{}` of {}", portfolioList, flowFile, exc);
+            session.transfer(session.penalize(session.putAttribute(flowFile, "geneva.portfolio.error",
+                    String.valueOf(exc.getMessage()))), REL_FAILURE);
+            return;
+        }
+
+        final List<List<String>> workUnits = GenevaPortfolios.partition(portfolios, maxPortfolios);
+        final String fragmentId = flowFile.getAttribute(CoreAttributes.UUID.key());
+        for (int i = 0; i < workUnits.size(); i++) {
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put("geneva.portfolio", GenevaPortfolios.format(workUnits.get(i)));
+            attributes.put("geneva.portfolio.count", String.valueOf(workUnits.get(i).size()));
+            attributes.put("fragment.identifier", fragmentId);
+            attributes.put("fragment.index", String.valueOf(i));
+            attributes.put("fragment.count", String.valueOf(workUnits.size()));
+            session.transfer(session.putAllAttributes(session.create(flowFile), attributes), REL_SPLIT);
+        }
+        session.transfer(flowFile, REL_ORIGINAL);
+    }
+
+    private GenevaPortfolios loadPortfolios(final ProcessContext context, final ProcessSession session,
+            final FlowFile flowFile, final String membershipQuery) throws IOException {
+        final RemoteCommandExecutorProvider provider = executorProvider != null ? executorProvider
+                : BaseExecuteGeneva.getTransportExecutorProvider(context);
+        try (final RemoteCommandExecutor executor = provider.createExecutor(context, getLogger())) {
+            if (this.sshClientProvider != null) // need this for unit tests
+                executor.setSSHClientProvider(sshClientProvider);
+
+            return BaseExecuteGeneva.loadPortfolios(context, session, executor, flowFile, membershipQuery);
+        }
+    }
+}
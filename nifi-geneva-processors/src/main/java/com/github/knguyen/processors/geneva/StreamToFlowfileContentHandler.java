@@ -18,6 +18,12 @@ package com.github.knguyen.processors.geneva;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessSession;
@@ -28,9 +34,37 @@ public class StreamToFlowfileContentHandler implements IStreamHandler {
     @Override
     public FlowFile handleStream(final ProcessContext context, final FlowFile originalFlowFile,
             final ProcessSession processSession, final InputStream inputStream) throws IOException {
-        if (inputStream != null && inputStream.available() > 0)
-            return processSession.write(originalFlowFile, out -> StreamUtils.copy(inputStream, out));
+        if (inputStream == null)
+            return originalFlowFile;
 
-        return originalFlowFile;
+        // a network stream may have nothing available yet, so only reading tells an empty report
+        final PushbackInputStream in = new PushbackInputStream(inputStream);
+        final int first = in.read();
+        if (first < 0)
+            return originalFlowFile;
+
+        in.unread(first);
+        return processSession.write(originalFlowFile, out -> StreamUtils.copy(in, out));
+    }
+
+    /**
+     * Copies the file with {@link FileChannel#transferTo}, which lets the kernel read the file without going through
+     * an intermediate buffer.
+     */
+    @Override
+    public FlowFile handleFile(final ProcessContext context, final FlowFile originalFlowFile,
+            final ProcessSession processSession, final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size == 0)
+                return originalFlowFile;
+
+            return processSession.write(originalFlowFile, out -> {
+                final WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (position < size)
+                    position += channel.transferTo(position, size - position, target);
+            });
+        }
     }
 }
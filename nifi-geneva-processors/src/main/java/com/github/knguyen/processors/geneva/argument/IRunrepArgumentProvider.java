@@ -76,6 +76,13 @@ public interface IRunrepArgumentProvider {
 
     String getRSLName();
 
+    /**
+     * Retrieves the path on the Geneva host of an RSL definition that was uploaded for this run.
+     *
+     * @return The path, or {@code null} if the RSL is read by name from the RSL search path of runrep.
+     */
+    String getRSLPath();
+
     /**
      * Retrieves the file extension for the output report.
      *
@@ -101,6 +108,13 @@ public interface IRunrepArgumentProvider {
 
     String getRunCommandTarget();
 
+    /**
+     * Retrieves the reports of a report bundle, one per line.
+     *
+     * @return A {@code String} listing the reports of the bundle.
+     */
+    String getReportBundle();
+
     /**
      * Validates the provided arguments for the Runrep command.
      *
@@ -30,6 +30,7 @@ import org.apache.nifi.util.StringUtils;
 import com.github.knguyen.processors.geneva.BaseExecuteGeneva;
 import com.github.knguyen.processors.geneva.ExecuteGenevaGSQL;
 import com.github.knguyen.processors.geneva.ExecuteGenevaRSL;
+import com.github.knguyen.processors.geneva.ExecuteGenevaReportBundle;
 import com.github.knguyen.processors.geneva.ExecuteGenevaStoredQuery;
 
 /**
@@ -171,7 +172,8 @@ public class StandardRunrepArgumentProvider implements IRunrepArgumentProvider {
      * Constructs and returns the complete output path for the Runrep process report in the Geneva system. This method
      * combines the output filename and directory, obtained from getOutputFilename() and getOutputDirectory() methods
      * respectively, to form the full path for storing the report. If only the directory is provided, it generates a
-     * unique filename within that directory.
+     * unique filename within that directory, or within a subdirectory of it when the `Report Output Layout` is
+     * sharded.
      *
      * @return A {@code String} representing the full output path for the report. It includes both the directory and the
      *         filename, ensuring a complete path is available for report storage. The method may return {@code null} if
@@ -185,6 +187,11 @@ public class StandardRunrepArgumentProvider implements IRunrepArgumentProvider {
 
         final String outputDirectory = getOutputDirectory();
         final String fileExtension = getFileExtension();
+        if (BaseExecuteGeneva.SHARDED_LAYOUT.getValue()
+                .equals(context.getProperty(BaseExecuteGeneva.REPORT_OUTPUT_LAYOUT).getValue()))
+            return com.github.knguyen.processors.utils.StringUtils.getShardedGuidFilename(outputDirectory, flowfile,
+                    fileExtension);
+
         return com.github.knguyen.processors.utils.StringUtils.getGuidFilename(outputDirectory, flowfile,
                 fileExtension);
     }
@@ -271,16 +278,23 @@ public class StandardRunrepArgumentProvider implements IRunrepArgumentProvider {
      * PRIOR_KNOWLEDGE_DATE property, taking into account the attributes in the current {@code FlowFile}.
      *
      * This ability to specify a prior knowledge date is essential for reports that require comparison or analysis of
-     * data over different time frames.
+     * data over different time frames. When the property evaluates to an empty value, the date filled in by the
+     * `Auto Incremental` mode (see {@link BaseExecuteGeneva#AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE}) is used instead.
      *
      * @return A {@code String} representing the prior knowledge date. This date is generally in standard date format.
      *         If the PRIOR_KNOWLEDGE_DATE property is not set or if the dynamic evaluation against the flowfile does
-     *         not result in a value, the method might return {@code null}.
+     *         not result in a value, and no date was filled in automatically, the method might return {@code null}.
      */
     @Override
     public String getPriorKnowledgeDate() {
-        return context.getProperty(BaseExecuteGeneva.PRIOR_KNOWLEDGE_DATE).evaluateAttributeExpressions(flowfile)
-                .getValue();
+        final String priorKnowledgeDate = context.getProperty(BaseExecuteGeneva.PRIOR_KNOWLEDGE_DATE)
+                .evaluateAttributeExpressions(flowfile).getValue();
+
+        // fall back to the date filled in from the processor state by `Auto Incremental`
+        if (StringUtils.isBlank(priorKnowledgeDate) && flowfile != null)
+            return flowfile.getAttribute(BaseExecuteGeneva.AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE);
+
+        return priorKnowledgeDate;
     }
 
     /**
@@ -386,6 +400,17 @@ public class StandardRunrepArgumentProvider implements IRunrepArgumentProvider {
         return context.getProperty(ExecuteGenevaRSL.RSL_NAME).evaluateAttributeExpressions(flowfile).getValue();
     }
 
+    /**
+     * Retrieves the path of the RSL definition {@link ExecuteGenevaRSL} uploaded from the FlowFile content, which it
+     * records in the {@link ExecuteGenevaRSL#RSL_PATH_ATTRIBUTE} attribute.
+     *
+     * @return The path, or {@code null} if the RSL was not uploaded.
+     */
+    @Override
+    public String getRSLPath() {
+        return flowfile.getAttribute(ExecuteGenevaRSL.RSL_PATH_ATTRIBUTE);
+    }
+
     /**
      * Retrieves the output format for the output report.
      *
@@ -493,6 +518,12 @@ public class StandardRunrepArgumentProvider implements IRunrepArgumentProvider {
         return null;
     }
 
+    @Override
+    public String getReportBundle() {
+        return context.getProperty(ExecuteGenevaReportBundle.REPORT_BUNDLE).evaluateAttributeExpressions(flowfile)
+                .getValue();
+    }
+
     @Override
     public void validate() throws IllegalArgumentException {
         validateUserCredentials();
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.catalog;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The reports, report numbers and stored queries available in an AGA, as printed by the runrep `list` and `pquery`
+ * commands. Names are compared case-insensitively, like runrep does.
+ *
+ * The parsing is lenient: a `list` line is a report number followed by the report name and, optionally, its title;
+ * a `pquery` line starts with the query name. Anything else is ignored. When a section yields no entries at all, the
+ * catalog cannot tell whether a target of that kind exists and accepts it, so that an unexpected output format never
+ * blocks a run.
+ */
+public final class GenevaCatalog {
+    private static final Pattern REPORT_LINE = Pattern.compile("^\\s*(\\d+)[.:)]?\\s+(\\S+)(?:\\s+(.+?))?\\s*$");
+    private static final Pattern QUERY_LINE = Pattern.compile("^\\s*([A-Za-z_][\\w.]*)(?:\\s.*)?$");
+
+    private final Set<String> reports;
+    private final Map<String, String> reportNumbers;
+    private final Set<String> queries;
+    private final long loadedAt;
+
+    GenevaCatalog(final Set<String> reports, final Map<String, String> reportNumbers, final Set<String> queries,
+            final long loadedAt) {
+        this.reports = Collections.unmodifiableSet(reports);
+        this.reportNumbers = Collections.unmodifiableMap(reportNumbers);
+        this.queries = Collections.unmodifiableSet(queries);
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Parses the output of the runrep `list` and `pquery` commands.
+     *
+     * @param listOutput
+     *            What `list` printed.
+     * @param pqueryOutput
+     *            What `pquery` printed.
+     * @param loadedAt
+     *            When the output was taken, in milliseconds since the epoch.
+     *
+     * @return The catalog.
+     */
+    public static GenevaCatalog parse(final String listOutput, final String pqueryOutput, final long loadedAt) {
+        final Set<String> reports = new HashSet<>();
+        final Map<String, String> reportNumbers = new HashMap<>();
+        for (final String line : lines(listOutput)) {
+            final Matcher matcher = REPORT_LINE.matcher(line);
+            if (!matcher.matches())
+                continue;
+
+            final String name = stripExtension(matcher.group(2));
+            reports.add(normalize(name));
+            if (matcher.group(3) != null)
+                reports.add(normalize(matcher.group(3)));
+            reportNumbers.put(String.valueOf(Integer.parseInt(matcher.group(1))), name);
+        }
+
+        final Set<String> queries = new HashSet<>();
+        for (final String line : lines(pqueryOutput)) {
+            final Matcher matcher = QUERY_LINE.matcher(line);
+            if (matcher.matches())
+                queries.add(normalize(matcher.group(1)));
+        }
+
+        return new GenevaCatalog(reports, reportNumbers, queries, loadedAt);
+    }
+
+    /**
+     * Checks whether runrep would find the target of a run command.
+     *
+     * @param runCommandName
+     *            The run command, e.g. `runquery`.
+     * @param target
+     *            Its target, e.g. `TaxLotAppraisalAccruals`.
+     *
+     * @return {@code false} only if the catalog knows the targets of that kind and the target is not one of them.
+     */
+    public boolean contains(final String runCommandName, final String target) {
+        switch (runCommandName) {
+        case "run":
+        case "runfile":
+        case "runf":
+            return reports.isEmpty() || reports.contains(normalize(stripExtension(target)));
+        case "runnumber":
+            return reportNumbers.isEmpty() || resolveReportNumber(target) != null;
+        case "runquery":
+            return queries.isEmpty() || queries.contains(normalize(target));
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Resolves a `runnumber` target to the name of the report it runs.
+     *
+     * @param number
+     *            The report number.
+     *
+     * @return The report name, or {@code null} if the number is unknown.
+     */
+    public String resolveReportNumber(final String number) {
+        try {
+            return reportNumbers.get(String.valueOf(Integer.parseInt(number.trim())));
+        } catch (final NumberFormatException exc) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of report names and titles.
+     */
+    public int getReportCount() {
+        return reports.size();
+    }
+
+    /**
+     * @return The number of stored queries.
+     */
+    public int getQueryCount() {
+        return queries.size();
+    }
+
+    /**
+     * @return When the catalog was loaded, in milliseconds since the epoch.
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Returns a copy of this catalog that counts as loaded at the given time.
+     */
+    GenevaCatalog withLoadedAt(final long loadedAt) {
+        return new GenevaCatalog(reports, reportNumbers, queries, loadedAt);
+    }
+
+    private static String[] lines(final String output) {
+        return output == null ? new String[0] : output.split("\\r?\\n");
+    }
+
+    private static String stripExtension(final String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".rsl") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    private static String normalize(final String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.catalog;
+
+import java.io.IOException;
+
+import org.apache.nifi.controller.ControllerService;
+
+/**
+ * Keeps the catalog of reports, report numbers and stored queries of every AGA in memory, so that processors can
+ * reject an unknown report before they connect to the Geneva host.
+ *
+ * The service does not connect to Geneva itself: the processors own the connection settings, so they load a catalog
+ * through their own executor whenever the service has none or it is older than the refresh interval.
+ */
+public interface GenevaCatalogService extends ControllerService {
+
+    /**
+     * Returns the catalog of an AGA, loading it when it is missing or stale. Concurrent callers for the same AGA wait
+     * for a single load. When a refresh fails, the previous catalog is kept for another interval.
+     *
+     * @param aga
+     *            The AGA.
+     * @param loader
+     *            Loads the catalog from the Geneva host.
+     *
+     * @return The catalog.
+     *
+     * @throws IOException
+     *             if the catalog could not be loaded and there is no previous one.
+     */
+    GenevaCatalog getCatalog(String aga, CatalogLoader loader) throws IOException;
+
+    /**
+     * Loads the catalog of an AGA from the Geneva host.
+     */
+    @FunctionalInterface
+    interface CatalogLoader {
+        GenevaCatalog load() throws IOException;
+    }
+}
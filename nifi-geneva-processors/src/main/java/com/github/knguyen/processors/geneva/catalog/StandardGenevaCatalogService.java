@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.catalog;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.processor.util.StandardValidators;
+
+@Tags({ "geneva", "runrep", "catalog", "cache" })
+@CapabilityDescription("Keeps the reports, report numbers and stored queries of every Geneva AGA in memory, so that the Geneva processors can reject an unknown report or query without connecting to the Geneva host.  The catalog of an AGA is loaded by the first processor that needs it, through that processor's connection, and reloaded once it is older than the refresh interval.")
+public class StandardGenevaCatalogService extends AbstractControllerService implements GenevaCatalogService {
+
+    public static final PropertyDescriptor REFRESH_INTERVAL = new PropertyDescriptor.Builder()
+            .name("catalog-refresh-interval").displayName("Refresh Interval")
+            .description(
+                    "How long a catalog is used before it is loaded again.  Reports and queries added in Geneva are rejected until the next load.")
+            .required(true).defaultValue("1 hour").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    private static final List<PropertyDescriptor> DESCRIPTORS = Collections.singletonList(REFRESH_INTERVAL);
+
+    private final Map<String, GenevaCatalog> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private volatile long refreshIntervalMillis;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return DESCRIPTORS;
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) {
+        refreshIntervalMillis = context.getProperty(REFRESH_INTERVAL).asTimePeriod(TimeUnit.MILLISECONDS);
+    }
+
+    @OnDisabled
+    public void onDisabled() {
+        catalogs.clear();
+        loadLocks.clear();
+    }
+
+    @Override
+    public GenevaCatalog getCatalog(final String aga, final CatalogLoader loader) throws IOException {
+        final GenevaCatalog catalog = catalogs.get(aga);
+        if (isFresh(catalog))
+            return catalog;
+
+        synchronized (loadLocks.computeIfAbsent(aga, key -> new Object())) {
+            final GenevaCatalog current = catalogs.get(aga);
+            if (isFresh(current))
+                return current;
+
+            try {
+                final GenevaCatalog loaded = loader.load();
+                catalogs.put(aga, loaded);
+                getLogger().info("Loaded the catalog of AGA {}: {} reports and {} stored queries", aga,
+                        loaded.getReportCount(), loaded.getQueryCount());
+                return loaded;
+            } catch (final IOException exc) {
+                if (current == null)
+                    throw exc;
+
+                // retry after another interval rather than on every FlowFile
+                getLogger().warn("Could not refresh the catalog of AGA {}; keeping the previous one", aga, exc);
+                final GenevaCatalog kept = current.withLoadedAt(System.currentTimeMillis());
+                catalogs.put(aga, kept);
+                return kept;
+            }
+        }
+    }
+
+    private boolean isFresh(final GenevaCatalog catalog) {
+        return catalog != null && System.currentTimeMillis() - catalog.getLoadedAt() < refreshIntervalMillis;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.nifi.util.StringUtils;
+
+import com.github.knguyen.processors.geneva.argument.IRunrepArgumentProvider;
+
+/**
+ * Runs several reports with the same parameters in a single runrep session: one `connect`, then one `runfile` (or
+ * `run`, `runquery`, ...) per report, each writing to its own output file. Geneva keeps the accounting it computed for
+ * the first report, so the following reports for the same portfolios and dates are much cheaper than separate runs.
+ *
+ * The reports are listed one per line. A line is either an RSL name, which is read and run with `runfile`, or a run
+ * command followed by its target, e.g. `runquery TaxLotAppraisalAccruals`. Blank lines and lines starting with `#` are
+ * ignored. The output of report {@code n} is the configured output path with `-n` inserted before the extension.
+ */
+public class BundleCommand extends RunrepCommand {
+    private static final List<String> RUN_COMMAND_NAMES = Arrays.asList("run", "runfile", "runf", "runnumber",
+            "runquery");
+
+    public BundleCommand(final IRunrepArgumentProvider argumentProvider) {
+        super(argumentProvider);
+    }
+
+    @Override
+    protected String getReportCommand() {
+        final String outputFormat = argumentProvider.getOutputFormat();
+        final String reportParameters = getReportParameters();
+        final List<Report> reports = getReports();
+        final List<String> outputResources = getOutputResources();
+
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < reports.size(); i++) {
+            final Report report = reports.get(i);
+            final String line;
+            if (report.getRunCommandName() == null) {
+                lines.add(String.format("read \"%s.rsl\"", report.getTarget()));
+                line = String.format("runfile \"%s\" -f %s -o \"%s\"", report.getTarget(), outputFormat,
+                        outputResources.get(i));
+            } else {
+                final String target = report.getTarget().contains(" ") ? "\"" + report.getTarget() + "\""
+                        : report.getTarget();
+                line = String.format("%s %s -f %s -o %s", report.getRunCommandName(), target, outputFormat,
+                        outputResources.get(i));
+            }
+            lines.add(StringUtils.isNotBlank(reportParameters) ? line + " " + reportParameters : line);
+        }
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    @Override
+    protected String getReportTarget() {
+        return getReports().stream().map(Report::toString).collect(Collectors.joining(","));
+    }
+
+    /**
+     * Returns the output file of the first report. Use {@link #getOutputResources()} for all of them.
+     */
+    @Override
+    public String getOutputResource() {
+        final List<String> outputResources = getOutputResources();
+        return outputResources.isEmpty() ? null : outputResources.get(0);
+    }
+
+    /**
+     * Retrieves the output file of every report, in the order the reports are listed.
+     *
+     * @return The output files.
+     */
+    public List<String> getOutputResources() {
+        final String outputPath = getOuputFilename();
+        final int count = getReports().size();
+
+        final List<String> outputResources = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++)
+            outputResources.add(com.github.knguyen.processors.utils.StringUtils.getIndexedFilename(outputPath, i));
+        return outputResources;
+    }
+
+    /**
+     * Parses the reports of the bundle.
+     *
+     * @return The reports, in the order they are listed.
+     */
+    public List<Report> getReports() {
+        return parseReports(argumentProvider.getReportBundle());
+    }
+
+    /**
+     * Parses the reports of a bundle.
+     *
+     * @param bundle
+     *            The reports, one per line.
+     *
+     * @return The reports, in the order they are listed.
+     */
+    public static List<Report> parseReports(final String bundle) {
+        if (bundle == null)
+            return Collections.emptyList();
+
+        final List<Report> reports = new ArrayList<>();
+        for (final String line : bundle.split("\\r?\\n")) {
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#"))
+                continue;
+
+            final String[] parts = trimmed.split("\\s+", 2);
+            if (parts.length == 2 && RUN_COMMAND_NAMES.contains(parts[0].toLowerCase())) {
+                reports.add(new Report(parts[0].toLowerCase(), unquote(parts[1].trim())));
+            } else {
+                final String rslName = trimmed.endsWith(".rsl") ? trimmed.substring(0, trimmed.length() - 4)
+                        : trimmed;
+                reports.add(new Report(null, unquote(rslName)));
+            }
+        }
+        return reports;
+    }
+
+    @Override
+    public void validate() {
+        argumentProvider.validate();
+
+        final List<Report> reports = getReports();
+        if (reports.isEmpty())
+            throw new IllegalArgumentException("A report bundle must list at least one report.");
+
+        for (final Report report : reports) {
+            if (report.getTarget().isEmpty() || report.getTarget().startsWith("-"))
+                throw new IllegalArgumentException(String.format(
+                        "`%s` is not a valid report; runrep would misinterpret a name starting with '-' as flags.",
+                        report));
+        }
+    }
+
+    private static String unquote(final String value) {
+        return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1)
+                : value;
+    }
+
+    /**
+     * A single report of a bundle.
+     */
+    public static final class Report {
+        private final String runCommandName;
+        private final String target;
+
+        Report(final String runCommandName, final String target) {
+            this.runCommandName = runCommandName;
+            this.target = target;
+        }
+
+        /**
+         * @return The run command, e.g. `runquery`, or {@code null} for an RSL that is read and run with `runfile`.
+         */
+        public String getRunCommandName() {
+            return runCommandName;
+        }
+
+        /**
+         * @return The RSL name without its extension, or the target of the run command.
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return runCommandName == null ? target : runCommandName + " " + target;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.command;
+
+import com.github.knguyen.processors.geneva.argument.IRunrepArgumentProvider;
+
+/**
+ * Prints part of the catalog of an AGA: `list` prints the reports with their numbers and `pquery` the stored queries.
+ * Nothing is written to the output path; the catalog is read from what runrep prints, see
+ * {@code RemoteCommandExecutor#executeForOutput}.
+ */
+public class CatalogCommand extends RunrepCommand {
+    public static final String LIST = "list";
+    public static final String PQUERY = "pquery";
+
+    private final String catalogCommand;
+
+    public CatalogCommand(final IRunrepArgumentProvider argumentProvider, final String catalogCommand) {
+        super(argumentProvider);
+        this.catalogCommand = catalogCommand;
+
+        // the base constructor builds the command before the catalog command is known
+        init();
+    }
+
+    @Override
+    protected String getReportCommand() {
+        return catalogCommand;
+    }
+
+    @Override
+    protected String getReportTarget() {
+        return catalogCommand;
+    }
+
+    @Override
+    public void validate() {
+        if (!LIST.equals(catalogCommand) && !PQUERY.equals(catalogCommand))
+            throw new IllegalArgumentException(
+                    String.format("`%s` is not a catalog command; use `list` or `pquery`.", catalogCommand));
+    }
+}
@@ -123,6 +123,17 @@ public class Command implements ICommand {
         return null;
     }
 
+    /**
+     * A plain command carries no structured arguments, so the obfuscated command itself is the closest thing to a
+     * report definition.
+     *
+     * @return The obfuscated command.
+     */
+    @Override
+    public String getReportDefinition() {
+        return getObfuscatedCommand();
+    }
+
     @Override
     public void validate() {
         if (StringUtils.isBlank(commandToExecute))
@@ -16,6 +16,7 @@
  */
 package com.github.knguyen.processors.geneva.command;
 
+import java.util.Collection;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -25,6 +26,12 @@ import org.apache.nifi.util.StringUtils;
 import com.github.knguyen.processors.geneva.argument.IRunrepArgumentProvider;
 
 public class GSQLCommand extends RunrepCommand {
+    /**
+     * The token of a batched query that is replaced with the quoted keys of the batch, e.g.
+     * {@code WHERE NameSort IN (:BatchKeys)}.
+     */
+    public static final String BATCH_KEYS_PLACEHOLDER = ":BatchKeys";
+
     public GSQLCommand(IRunrepArgumentProvider argumentProvider) {
         super(argumentProvider);
     }
@@ -49,6 +56,11 @@ public class GSQLCommand extends RunrepCommand {
         }
     }
 
+    @Override
+    protected String getReportTarget() {
+        return argumentProvider.getGSQLQuery();
+    }
+
     /**
      * Constructs a string of report parameters based on the processor context and a flowfile for the "GSQL" command
      * class.
@@ -79,6 +91,57 @@ public class GSQLCommand extends RunrepCommand {
                 .filter(Objects::nonNull).collect(Collectors.joining(" "));
     }
 
+    /**
+     * Retrieves everything that must be equal for two queries to be merged into a single batch: the credentials, the
+     * output format, the parameters and the query text itself, in which the keys are not yet expanded.
+     *
+     * @return A {@link String} identifying the batch the query belongs to.
+     */
+    public String getBatchDefinition() {
+        return String.join("|", argumentProvider.getGenevaUser(), argumentProvider.getGenevaAga(),
+                argumentProvider.getOutputFormat(), getReportParameters(), getReportTarget());
+    }
+
+    /**
+     * Replaces {@link #BATCH_KEYS_PLACEHOLDER} in the query with the keys of a batch, each double-quoted like any other
+     * GSQL string literal.
+     *
+     * @param keys
+     *            The keys of the batch, see {@link #validateBatchKey(String)}.
+     *
+     * @return The query of the whole batch.
+     *
+     * @throws IllegalArgumentException
+     *             if the query has no placeholder.
+     */
+    public String getBatchQuery(final Collection<String> keys) {
+        final String gsqlQuery = getReportTarget();
+        if (!gsqlQuery.contains(BATCH_KEYS_PLACEHOLDER))
+            throw new IllegalArgumentException(
+                    String.format("A batched query must contain `%s`, e.g. `IN (%s)`.", BATCH_KEYS_PLACEHOLDER,
+                            BATCH_KEYS_PLACEHOLDER));
+
+        final String keyList = keys.stream().map(key -> "\"" + key + "\"").collect(Collectors.joining(", "));
+        return gsqlQuery.replace(BATCH_KEYS_PLACEHOLDER, keyList);
+    }
+
+    /**
+     * Checks that a key can be embedded into the query. A double quote would end the string literal, and since the
+     * query is passed to `runrep` through an unquoted here document, the shell would expand `$`, backticks and
+     * backslashes, and a line break would end the query.
+     *
+     * @throws IllegalArgumentException
+     *             if the key is blank or contains one of these characters.
+     */
+    public static void validateBatchKey(final String key) {
+        if (StringUtils.isBlank(key))
+            throw new IllegalArgumentException("The batch key cannot be blank");
+
+        if (key.chars().anyMatch(c -> c == '"' || c == '$' || c == '`' || c == '\\' || c == '\n' || c == '\r'))
+            throw new IllegalArgumentException(String.format(
+                    "The batch key `%s` must not contain quotes, `$`, backticks, backslashes or line breaks", key));
+    }
+
     @Override
     public void validate() {
         argumentProvider.validate();
@@ -64,5 +64,14 @@ public interface ICommand {
      */
     String getOutputResource();
 
+    /**
+     * Retrieves a stable description of what the command computes: the report or query, the portfolios and the
+     * accounting options, but none of the credentials, dates or output paths, nor the AGA it runs on. Two runs of the
+     * same report on different days share the same definition; state kept across runs adds where the report runs.
+     *
+     * @return A {@link String} describing the report definition.
+     */
+    String getReportDefinition();
+
     void validate();
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.command;
+
+import org.apache.nifi.util.StringUtils;
+
+import com.github.knguyen.processors.geneva.argument.IRunrepArgumentProvider;
+
+/**
+ * Runs the membership query of a portfolio service as CSV, without any of the report parameters of the FlowFile, since
+ * the portfolios of an AGA do not depend on them. Point the output path at `/dev/stdout` to read the result from what
+ * runrep prints, see {@code RemoteCommandExecutor#executeForOutput}.
+ */
+public class PortfolioCommand extends RunrepCommand {
+    private final String membershipQuery;
+
+    public PortfolioCommand(final IRunrepArgumentProvider argumentProvider, final String membershipQuery) {
+        super(argumentProvider);
+        this.membershipQuery = membershipQuery;
+
+        // the base constructor builds the command before the query is known
+        init();
+    }
+
+    @Override
+    protected String getReportCommand() {
+        return String.format("rungsql -f csv -o \"%s\"%n%s", getOuputFilename(), membershipQuery);
+    }
+
+    @Override
+    protected String getReportTarget() {
+        return membershipQuery;
+    }
+
+    @Override
+    public void validate() {
+        if (StringUtils.isBlank(membershipQuery))
+            throw new IllegalArgumentException("The membership query cannot be blank");
+
+        if (!membershipQuery.endsWith(";"))
+            throw new IllegalArgumentException("The membership query must end with a `;` character");
+    }
+}
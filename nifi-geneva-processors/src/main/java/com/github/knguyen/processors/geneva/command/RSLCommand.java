@@ -33,6 +33,10 @@ public class RSLCommand extends RunrepCommand {
         final String rslName = rslNameProperty.endsWith(".rsl")
                 ? rslNameProperty.substring(0, rslNameProperty.length() - 4) : rslNameProperty;
 
+        // an uploaded RSL is read from where it was uploaded to, otherwise from the RSL search path
+        final String rslPath = argumentProvider.getRSLPath();
+        final String rslFile = StringUtils.isNotBlank(rslPath) ? rslPath : rslName + ".rsl";
+
         // get the output format
         final String outputFormat = argumentProvider.getOutputFormat();
 
@@ -41,11 +45,21 @@ public class RSLCommand extends RunrepCommand {
         final String reportParameters = getReportParameters();
 
         if (StringUtils.isNotBlank(reportParameters)) {
-            return String.format("read \"%s.rsl\"%nrunfile \"%s\" -f %s -o \"%s\" %s", rslName, rslName, outputFormat,
+            return String.format("read \"%s\"%nrunfile \"%s\" -f %s -o \"%s\" %s", rslFile, rslName, outputFormat,
                     outputFilename, reportParameters);
         } else {
-            return String.format("read \"%s.rsl\"%nrunfile \"%s\" -f %s -o \"%s\"", rslName, rslName, outputFormat,
+            return String.format("read \"%s\"%nrunfile \"%s\" -f %s -o \"%s\"", rslFile, rslName, outputFormat,
                     outputFilename);
         }
     }
+
+    /**
+     * Retrieves the RSL name, or the path of an uploaded RSL, which is named after the hash of its content so that a
+     * changed definition counts as a different report.
+     */
+    @Override
+    protected String getReportTarget() {
+        final String rslPath = argumentProvider.getRSLPath();
+        return StringUtils.isNotBlank(rslPath) ? rslPath : argumentProvider.getRSLName();
+    }
 }
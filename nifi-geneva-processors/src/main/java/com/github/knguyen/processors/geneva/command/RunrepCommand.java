@@ -112,6 +112,13 @@ public abstract class RunrepCommand implements ICommand {
 
     protected abstract String getReportCommand();
 
+    /**
+     * Retrieves what the command runs, e.g. the RSL name or the GSQL query, without any of its parameters.
+     *
+     * @return A {@link String} identifying the report being run.
+     */
+    protected abstract String getReportTarget();
+
     /**
      * Determines the output file name for the report based on the processor context and a flowfile.
      *
@@ -261,6 +268,22 @@ public abstract class RunrepCommand implements ICommand {
         return this.outputResource;
     }
 
+    /**
+     * Joins the report target, the output format and the non-temporal report parameters. Dates and the output path are
+     * left out on purpose so that daily runs of the same report map to the same definition, and the AGA so that the
+     * targets of a host pool, which may override it, share it.
+     *
+     * @return A {@link String} describing the report definition.
+     */
+    @Override
+    public String getReportDefinition() {
+        return Stream
+                .of(getReportTarget(), argumentProvider.getOutputFormat(),
+                        formatParameter("-p", argumentProvider.getPortfolioList()), formatAccountingRunType(),
+                        formatReportConsolidation(), formatExtraFlags())
+                .filter(Objects::nonNull).collect(Collectors.joining("|"));
+    }
+
     @Override
     public void validate() {
         argumentProvider.validate();
@@ -47,6 +47,11 @@ public class StoredQueryCommand extends RunrepCommand {
                 outputFilename, reportParameters).trim();
     }
 
+    @Override
+    protected String getReportTarget() {
+        return String.format("%s %s", argumentProvider.getRunCommandName(), argumentProvider.getRunCommandTarget());
+    }
+
     @Override
     public void validate() {
         argumentProvider.validate();
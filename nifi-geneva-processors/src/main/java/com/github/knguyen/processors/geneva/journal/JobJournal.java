@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.journal;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.logging.ComponentLog;
+
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.utils.StringUtils;
+
+/**
+ * The runs in flight on this node, kept in the local state so that a run started before NiFi went down can be waited
+ * for after a restart instead of being started again. Every entry is keyed by the UUID of the FlowFile that started the
+ * run, which survives a restart.
+ *
+ * Updates are compared and swapped: on a standalone node the cluster state, e.g. the knowledge dates, is kept in the
+ * local state as well and written by other threads.
+ */
+public class JobJournal {
+    static final String KEY_PREFIX = "job.";
+    static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final int UPDATE_ATTEMPTS = 10;
+
+    private final StateManager stateManager;
+    private final ComponentLog logger;
+
+    public JobJournal(final StateManager stateManager, final ComponentLog logger) {
+        this.stateManager = stateManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Identifies what a run produces, so that a FlowFile whose command changed since its run started is not reattached
+     * to it.
+     */
+    public static String fingerprint(final ICommand command) {
+        return StringUtils.sha256Hex(command.getLoggablePart() + "\n" + command.getOutputResource());
+    }
+
+    /**
+     * @return The run started for the FlowFile, or {@code null} if there is none or the journal cannot be read.
+     */
+    public Entry get(final String flowFileUuid) {
+        try {
+            return Entry.parse(stateManager.getState(Scope.LOCAL).get(KEY_PREFIX + flowFileUuid));
+        } catch (final IOException exc) {
+            logger.warn("Could not read the job journal; the run of {} will not be reattached", flowFileUuid, exc);
+            return null;
+        }
+    }
+
+    public void record(final String flowFileUuid, final Entry entry) {
+        try {
+            if (!update(state -> !entry.format().equals(state.put(KEY_PREFIX + flowFileUuid, entry.format()))))
+                logger.warn("The state kept changing while journaling the run of {}; it will not be reattached after "
+                        + "a restart", flowFileUuid);
+        } catch (final IOException exc) {
+            logger.warn("Could not journal the run of {}; it will not be reattached after a restart", flowFileUuid,
+                    exc);
+        }
+    }
+
+    public void remove(final String flowFileUuid) {
+        try {
+            if (!update(state -> state.remove(KEY_PREFIX + flowFileUuid) != null))
+                logger.warn("The state kept changing while removing the run of {} from the job journal",
+                        flowFileUuid);
+        } catch (final IOException exc) {
+            logger.warn("Could not remove the run of {} from the job journal", flowFileUuid, exc);
+        }
+    }
+
+    /**
+     * Drops the entries of runs started longer than the retention ago, whose FlowFiles were dropped or routed elsewhere
+     * while the processor was down.
+     */
+    public void prune(final long now) {
+        try {
+            if (!update(state -> state.entrySet().removeIf(entry -> {
+                if (!entry.getKey().startsWith(KEY_PREFIX))
+                    return false;
+                final Entry job = Entry.parse(entry.getValue());
+                return job == null || job.getStartedAt() < now - RETENTION_MILLIS;
+            })))
+                logger.warn("The state kept changing while pruning the job journal");
+        } catch (final IOException exc) {
+            logger.warn("Could not prune the job journal", exc);
+        }
+    }
+
+    /**
+     * Applies a change to a copy of the local state and swaps it in, starting over if the state changed meanwhile.
+     *
+     * @return {@code false} if the state kept changing.
+     */
+    private boolean update(final Change change) throws IOException {
+        for (int attempt = 0; attempt < UPDATE_ATTEMPTS; attempt++) {
+            final StateMap current = stateManager.getState(Scope.LOCAL);
+            final Map<String, String> state = new HashMap<>(current.toMap());
+            if (!change.apply(state) || stateManager.replace(current, state, Scope.LOCAL))
+                return true;
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface Change {
+        /**
+         * @return {@code true} if the state was changed.
+         */
+        boolean apply(Map<String, String> state);
+    }
+
+    /**
+     * A run in flight: where it runs, the PID of its shell, when it started and what it produces.
+     */
+    public static final class Entry {
+        private final String host;
+        private final String pid;
+        private final long startedAt;
+        private final String fingerprint;
+        private final String outputResource;
+
+        /**
+         * @param host
+         *            The Geneva host of the run, or {@code null} for a local run.
+         */
+        public Entry(final String host, final String pid, final long startedAt, final String fingerprint,
+                final String outputResource) {
+            this.host = host;
+            this.pid = pid;
+            this.startedAt = startedAt;
+            this.fingerprint = fingerprint;
+            this.outputResource = outputResource;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public String getPid() {
+            return pid;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getOutputResource() {
+            return outputResource;
+        }
+
+        String format() {
+            return String.join("\t", host == null ? "" : host, pid, String.valueOf(startedAt), fingerprint,
+                    outputResource);
+        }
+
+        static Entry parse(final String value) {
+            if (value == null)
+                return null;
+
+            final String[] fields = value.split("\t", 5);
+            if (fields.length < 5)
+                return null;
+            try {
+                return new Entry(fields[0].isEmpty() ? null : fields[0], fields[1], Long.parseLong(fields[2]),
+                        fields[3], fields[4]);
+            } catch (final NumberFormatException exc) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the runs in flight on one Geneva target, i.e. a host and AGA, and adapts the limit to how the target copes
+ * (additive increase, multiplicative decrease): every run that completes about as fast as usual raises the limit by
+ * {@code 1/limit}, so by about one per round of runs, while a run that is much slower than usual, times out or fails
+ * lowers it by 10%.
+ *
+ * "Usual" is a slow moving average of the run times, and "now" a fast one, so that a single long report does not count
+ * as congestion. The limit only grows while it is actually used, so that an idle target does not build up a limit it
+ * never proved it can take.
+ *
+ * Limiters are shared by every processor of the JVM that runs on the same target.
+ */
+public final class AdaptiveConcurrencyLimiter {
+    private static final Map<String, AdaptiveConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_SMOOTHING = 0.05;
+    private static final double RECENT_SMOOTHING = 0.3;
+
+    private final String target;
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+    private double baselineNanos;
+    private double recentNanos;
+
+    AdaptiveConcurrencyLimiter(final String target, final int maxLimit) {
+        this.target = target;
+        this.maxLimit = maxLimit;
+        this.limit = Math.min(2, maxLimit);
+    }
+
+    /**
+     * Returns the limiter of a target, creating it on first use.
+     *
+     * @param target
+     *            Identifies the host and AGA.
+     * @param maxLimit
+     *            The most runs the limit may grow to; the latest value wins when processors disagree.
+     */
+    public static AdaptiveConcurrencyLimiter forTarget(final String target, final int maxLimit) {
+        final AdaptiveConcurrencyLimiter limiter = LIMITERS.computeIfAbsent(target,
+                key -> new AdaptiveConcurrencyLimiter(key, maxLimit));
+        limiter.setMaxLimit(maxLimit);
+        return limiter;
+    }
+
+    private synchronized void setMaxLimit(final int maxLimit) {
+        this.maxLimit = maxLimit;
+        limit = Math.min(limit, maxLimit);
+    }
+
+    /**
+     * Waits until the target may take another run.
+     *
+     * @return {@code true} if the run may start, in which case exactly one of {@link #onSuccess(long)},
+     *         {@link #onDropped()} or {@link #onIgnored()} must follow; {@code false} if the wait timed out.
+     *
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting, e.g. because the processor is being stopped.
+     */
+    public synchronized boolean acquire(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (inFlight >= getLimit()) {
+            final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0)
+                return false;
+            wait(remainingMillis);
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Ends a run that completed, and adapts the limit to how long it took.
+     */
+    public synchronized void onSuccess(final long latencyNanos) {
+        final boolean saturated = inFlight * 2 >= limit;
+        release();
+
+        if (baselineNanos == 0) {
+            baselineNanos = latencyNanos;
+            recentNanos = latencyNanos;
+        } else {
+            baselineNanos += BASELINE_SMOOTHING * (latencyNanos - baselineNanos);
+            recentNanos += RECENT_SMOOTHING * (latencyNanos - recentNanos);
+        }
+
+        if (recentNanos > LATENCY_TOLERANCE * baselineNanos)
+            backOff();
+        else if (saturated)
+            limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    /**
+     * Ends a run that timed out or was failed by Geneva, and lowers the limit.
+     */
+    public synchronized void onDropped() {
+        release();
+        backOff();
+    }
+
+    /**
+     * Ends a run that says nothing about the load of the target, e.g. one rejected for a bad parameter.
+     */
+    public synchronized void onIgnored() {
+        release();
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private void backOff() {
+        limit = Math.max(1, limit * BACKOFF_RATIO);
+    }
+
+    /**
+     * @return The number of runs the target may take at once.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public String toString() {
+        return target;
+    }
+}
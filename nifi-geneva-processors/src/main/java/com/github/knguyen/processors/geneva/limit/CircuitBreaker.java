@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending runs to a Geneva target, i.e. a host and AGA, that keeps failing to connect, so that FlowFiles fail
+ * fast instead of each waiting for a connection or data timeout.
+ *
+ * The circuit opens after {@code threshold} consecutive failures. While it is open, no run is allowed. Once it has been
+ * open for the open duration, it half-opens and lets a single probe run through: the circuit closes if the probe
+ * succeeds and opens again if it fails. A probe whose outcome is never recorded is replaced after another open
+ * duration.
+ *
+ * Circuit breakers are shared by every processor of the JVM that runs on the same target.
+ */
+public final class CircuitBreaker {
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String target;
+    private final LongSupplier clock;
+    private int threshold;
+    private long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long changedAt;
+
+    CircuitBreaker(final String target, final int threshold, final long openMillis, final LongSupplier clock) {
+        this.target = target;
+        this.threshold = threshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the circuit breaker of a target, creating it on first use.
+     *
+     * @param target
+     *            Identifies the host and AGA.
+     * @param threshold
+     *            The consecutive failures that open the circuit; the latest value wins when processors disagree.
+     * @param openMillis
+     *            How long the circuit stays open before a probe is let through.
+     */
+    public static CircuitBreaker forTarget(final String target, final int threshold, final long openMillis) {
+        final CircuitBreaker breaker = BREAKERS.computeIfAbsent(target,
+                key -> new CircuitBreaker(key, threshold, openMillis, System::currentTimeMillis));
+        breaker.configure(threshold, openMillis);
+        return breaker;
+    }
+
+    private synchronized void configure(final int threshold, final long openMillis) {
+        this.threshold = threshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return {@code true} if a run may go to the target, in which case its outcome should be recorded.
+     */
+    public synchronized boolean allowRequest() {
+        final long now = clock.getAsLong();
+        switch (state) {
+        case OPEN:
+        case HALF_OPEN:
+            if (now - changedAt < openMillis)
+                return false;
+            // half-open: let one probe through
+            state = State.HALF_OPEN;
+            changedAt = now;
+            return true;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return {@code true} if {@link #allowRequest()} would let a run through right now, without letting one through.
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.CLOSED || clock.getAsLong() - changedAt >= openMillis;
+    }
+
+    /**
+     * Records that the target responded.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records that the target could not be reached, or that its AGA failed.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= threshold)) {
+            state = State.OPEN;
+            changedAt = clock.getAsLong();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return {@code true} while runs are kept from the target.
+     */
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    @Override
+    public String toString() {
+        return target;
+    }
+}
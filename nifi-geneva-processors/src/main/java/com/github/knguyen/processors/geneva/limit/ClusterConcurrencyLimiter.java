@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.logging.ComponentLog;
+
+import com.github.knguyen.processors.utils.StringUtils;
+
+/**
+ * Limits the runs in flight on every Geneva target, i.e. a host and AGA, across all the nodes of a cluster. Every node
+ * publishes how many runs it has in flight and waiting on each target in the cluster state of the processor, and a
+ * node only starts a run while the total is under the limit.
+ *
+ * Slots are shared fairly: while another node is waiting, a node does not take more than its share of the limit, i.e.
+ * the limit divided by the number of nodes running or waiting on the target. A node takes any free slot otherwise.
+ *
+ * The count of a node expires unless the node renews it, so that the slots of a node that went down are freed. Since
+ * this node's counts are kept in memory and written back in full, a write that fails is made up by the next renewal.
+ */
+public class ClusterConcurrencyLimiter implements AutoCloseable {
+    static final String KEY_PREFIX = "clusterruns.";
+    static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long POLL_MILLIS = 1000;
+    private static final int STATE_UPDATE_ATTEMPTS = 10;
+
+    private final StateManager stateManager;
+    private final int limit;
+    private final ComponentLog logger;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Slots> localSlots = new HashMap<>();
+    private final ScheduledExecutorService renewal;
+
+    /**
+     * @param limit
+     *            The most runs a target may take at once across the cluster.
+     */
+    public ClusterConcurrencyLimiter(final StateManager stateManager, final int limit, final ComponentLog logger) {
+        this.stateManager = stateManager;
+        this.limit = limit;
+        this.logger = logger;
+        this.renewal = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Geneva cluster run leases");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewal.scheduleWithFixedDelay(this::renew, LEASE_MILLIS / 4, LEASE_MILLIS / 4, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until the target may take another run somewhere in the cluster.
+     *
+     * @return {@code true} if the run may start, in which case {@link #release(String)} must follow; {@code false} if
+     *         the wait timed out.
+     */
+    public boolean acquire(final String target, final long timeoutMillis) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            slots(target).waiting++;
+        }
+
+        boolean acquired = false;
+        try {
+            while (!(acquired = tryAcquireLogged(target))) {
+                final long remainingMillis = deadline - System.currentTimeMillis();
+                if (remainingMillis <= 0)
+                    return false;
+                // jittered so that the nodes do not poll in lockstep
+                final long pollMillis = POLL_MILLIS / 2 + ThreadLocalRandom.current().nextLong(POLL_MILLIS);
+                Thread.sleep(Math.min(remainingMillis, pollMillis));
+            }
+            return true;
+        } finally {
+            if (!acquired) {
+                synchronized (this) {
+                    slots(target).waiting--;
+                }
+                publishQuietly(target);
+            }
+        }
+    }
+
+    public void release(final String target) {
+        synchronized (this) {
+            slots(target).running--;
+        }
+        publishQuietly(target);
+    }
+
+    private boolean tryAcquireLogged(final String target) throws IOException {
+        try {
+            return tryAcquire(target);
+        } catch (final IOException exc) {
+            logger.warn("Could not read the runs of Geneva target {} from the cluster state", target, exc);
+            throw exc;
+        }
+    }
+
+    /**
+     * Takes a slot of the target if the cluster has one free and this node is within its share, and publishes that this
+     * node is waiting otherwise.
+     */
+    private synchronized boolean tryAcquire(final String target) throws IOException {
+        final String key = getStateKey(target);
+        final Slots mine = slots(target);
+        for (int attempt = 0; attempt < STATE_UPDATE_ATTEMPTS; attempt++) {
+            final long now = System.currentTimeMillis();
+            final StateMap currentState = stateManager.getState(Scope.CLUSTER);
+            final Map<String, Slots> nodes = parse(currentState.get(key), now);
+            final Slots published = nodes.remove(nodeId);
+
+            int total = mine.running;
+            int activeNodes = 1;
+            boolean othersWaiting = false;
+            for (final Slots other : nodes.values()) {
+                total += other.running;
+                if (other.running > 0 || other.waiting > 0)
+                    activeNodes++;
+                othersWaiting |= other.waiting > 0;
+            }
+            final int fairShare = (limit + activeNodes - 1) / activeNodes;
+            final boolean admitted = total < limit && (mine.running < fairShare || !othersWaiting);
+            if (admitted) {
+                mine.running++;
+                mine.waiting--;
+            } else if (published != null && published.running == mine.running && published.waiting == mine.waiting) {
+                return false;
+            }
+
+            if (write(currentState, Map.of(key, format(nodes, mine, now))))
+                return admitted;
+
+            if (admitted) {
+                mine.running--;
+                mine.waiting++;
+            }
+        }
+        return false;
+    }
+
+    private void publishQuietly(final String target) {
+        try {
+            publish(List.of(target));
+        } catch (final IOException exc) {
+            logger.warn("Could not publish the runs of this node on Geneva target {}; retrying within {} ms",
+                    target, LEASE_MILLIS / 4, exc);
+        }
+    }
+
+    /**
+     * Writes the counts of this node on the targets and extends their lease, dropping the expired counts of other nodes
+     * on the way.
+     */
+    private synchronized void publish(final List<String> targets) throws IOException {
+        for (int attempt = 0; attempt < STATE_UPDATE_ATTEMPTS; attempt++) {
+            final long now = System.currentTimeMillis();
+            final StateMap currentState = stateManager.getState(Scope.CLUSTER);
+            final Map<String, String> updates = new HashMap<>();
+            for (final String target : targets) {
+                final String key = getStateKey(target);
+                final Map<String, Slots> nodes = parse(currentState.get(key), now);
+                nodes.remove(nodeId);
+                updates.put(key, format(nodes, slots(target), now));
+            }
+            if (write(currentState, updates)) {
+                localSlots.values().removeIf(slots -> slots.running <= 0 && slots.waiting <= 0);
+                return;
+            }
+        }
+        throw new IOException("The cluster state kept changing while publishing the runs of this node");
+    }
+
+    private void renew() {
+        final List<String> targets;
+        synchronized (this) {
+            targets = new ArrayList<>(localSlots.keySet());
+        }
+        if (targets.isEmpty())
+            return;
+
+        try {
+            publish(targets);
+        } catch (final IOException exc) {
+            logger.warn("Could not renew the runs of this node; other nodes may take their slots",
+                    exc);
+        } catch (final RuntimeException exc) {
+            logger.error("Failed to renew the runs of this node on the Geneva targets", exc);
+        }
+    }
+
+    /**
+     * Stops renewing and frees the slots of this node. The runs of this node are expected to be over.
+     */
+    @Override
+    public void close() {
+        renewal.shutdownNow();
+        final List<String> targets;
+        synchronized (this) {
+            targets = new ArrayList<>(localSlots.keySet());
+            localSlots.clear();
+        }
+        try {
+            if (!targets.isEmpty())
+                publish(targets);
+        } catch (final IOException exc) {
+            logger.warn("Could not free the runs of this node on the Geneva targets; they expire within {} ms",
+                    LEASE_MILLIS, exc);
+        }
+    }
+
+    private boolean write(final StateMap currentState, final Map<String, String> updates) throws IOException {
+        final Map<String, String> newState = new HashMap<>(currentState.toMap());
+        updates.forEach((key, value) -> {
+            if (value.isEmpty())
+                newState.remove(key);
+            else
+                newState.put(key, value);
+        });
+
+        // the first write replaces the empty state, so that it fails too if another node wrote meanwhile
+        return stateManager.replace(currentState, newState, Scope.CLUSTER);
+    }
+
+    private Slots slots(final String target) {
+        return localSlots.computeIfAbsent(target, key -> new Slots());
+    }
+
+    static String getStateKey(final String target) {
+        return KEY_PREFIX + StringUtils.sha256Hex(target);
+    }
+
+    /**
+     * Reads the counts of the nodes on a target, as {@code node running waiting expiry} records separated by
+     * {@code ;}, skipping the expired ones.
+     */
+    static Map<String, Slots> parse(final String value, final long now) {
+        final Map<String, Slots> nodes = new LinkedHashMap<>();
+        if (value == null || value.isEmpty())
+            return nodes;
+
+        for (final String record : value.split(";")) {
+            final String[] fields = record.split(" ");
+            if (fields.length != 4)
+                continue;
+            try {
+                final Slots slots = new Slots();
+                slots.running = Integer.parseInt(fields[1]);
+                slots.waiting = Integer.parseInt(fields[2]);
+                slots.expiry = Long.parseLong(fields[3]);
+                if (slots.expiry > now)
+                    nodes.put(fields[0], slots);
+            } catch (final NumberFormatException exc) {
+                // written by another version; dropped on the next write
+            }
+        }
+        return nodes;
+    }
+
+    private String format(final Map<String, Slots> others, final Slots mine, final long now) {
+        final StringBuilder value = new StringBuilder();
+        others.forEach((node, slots) -> appendRecord(value, node, slots, slots.expiry));
+        if (mine.running > 0 || mine.waiting > 0)
+            appendRecord(value, nodeId, mine, now + LEASE_MILLIS);
+        return value.toString();
+    }
+
+    private static void appendRecord(final StringBuilder value, final String node, final Slots slots,
+            final long expiry) {
+        if (value.length() > 0)
+            value.append(';');
+        value.append(node).append(' ').append(slots.running).append(' ').append(slots.waiting).append(' ')
+                .append(expiry);
+    }
+
+    static final class Slots {
+        int running;
+        int waiting;
+        long expiry;
+    }
+}
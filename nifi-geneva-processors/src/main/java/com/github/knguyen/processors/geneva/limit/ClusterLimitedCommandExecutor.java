@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RunRejectedException;
+import com.github.knguyen.processors.geneva.command.ICommand;
+
+/**
+ * Runs reports within the {@link ClusterConcurrencyLimiter} of the processor. A run waits for a slot of its target in
+ * the cluster; if none frees up within the admission timeout, the run is rejected without starting.
+ */
+public class ClusterLimitedCommandExecutor extends ForwardingCommandExecutor {
+    private final ClusterConcurrencyLimiter limiter;
+    private final Function<FlowFile, String> targetResolver;
+    private final long admissionTimeoutMillis;
+
+    /**
+     * @param delegate
+     *            Runs the reports.
+     * @param limiter
+     *            Holds the slots of the targets across the cluster.
+     * @param targetResolver
+     *            Identifies the host and AGA a FlowFile runs on.
+     * @param admissionTimeoutMillis
+     *            How long a run waits for a slot.
+     */
+    public ClusterLimitedCommandExecutor(final RemoteCommandExecutor delegate, final ClusterConcurrencyLimiter limiter,
+            final Function<FlowFile, String> targetResolver, final long admissionTimeoutMillis) {
+        super(delegate);
+        this.limiter = limiter;
+        this.targetResolver = targetResolver;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        final String target = targetResolver.apply(originalFlowFile);
+        try {
+            if (!limiter.acquire(target, admissionTimeoutMillis))
+                throw new RunRejectedException(
+                        String.format("Geneva target %s is already running its limit of runs in the cluster", target));
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RunRejectedException(String.format("Interrupted while waiting for Geneva target %s", target));
+        } catch (final IOException exc) {
+            throw new RunRejectedException(
+                    String.format("Could not reserve a run of Geneva target %s in the cluster state: %s", target,
+                            exc.getMessage()));
+        }
+
+        try {
+            delegate().execute(command, originalFlowFile, processSession);
+        } finally {
+            limiter.release(target);
+        }
+    }
+}
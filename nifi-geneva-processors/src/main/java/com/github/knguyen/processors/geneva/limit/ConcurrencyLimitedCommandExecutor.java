@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RunCancelledException;
+import com.github.knguyen.processors.geneva.RunRejectedException;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.retry.GenevaErrorClassifier;
+
+/**
+ * Runs reports within the {@link AdaptiveConcurrencyLimiter} of their target. A run waits for the target to take it;
+ * if the target does not within the admission timeout, the run is rejected without starting.
+ */
+public class ConcurrencyLimitedCommandExecutor extends ForwardingCommandExecutor {
+    private final Function<FlowFile, String> targetResolver;
+    private final int maxLimit;
+    private final long admissionTimeoutMillis;
+
+    /**
+     * @param delegate
+     *            Runs the reports.
+     * @param targetResolver
+     *            Identifies the host and AGA a FlowFile runs on.
+     * @param maxLimit
+     *            The most runs a target may take at once.
+     * @param admissionTimeoutMillis
+     *            How long a run waits for its target.
+     */
+    public ConcurrencyLimitedCommandExecutor(final RemoteCommandExecutor delegate,
+            final Function<FlowFile, String> targetResolver, final int maxLimit, final long admissionTimeoutMillis) {
+        super(delegate);
+        this.targetResolver = targetResolver;
+        this.maxLimit = maxLimit;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter
+                .forTarget(targetResolver.apply(originalFlowFile), maxLimit);
+        try {
+            if (!limiter.acquire(admissionTimeoutMillis))
+                throw new RunRejectedException(String.format("Geneva target %s is already running its limit of %d runs",
+                        limiter, limiter.getLimit()));
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RunRejectedException(String.format("Interrupted while waiting for Geneva target %s", limiter));
+        }
+
+        final long start = System.nanoTime();
+        try {
+            delegate.execute(command, originalFlowFile, processSession);
+            limiter.onSuccess(System.nanoTime() - start);
+        } catch (final RunCancelledException exc) {
+            // a cancelled run says nothing about how the target copes
+            limiter.onIgnored();
+            throw exc;
+        } catch (final IOException | GenevaException exc) {
+            // a report that fails by itself, e.g. a bad RSL, says nothing about the load of the target either
+            if (GenevaErrorClassifier.isOverload(exc))
+                limiter.onDropped();
+            else
+                limiter.onIgnored();
+            throw exc;
+        } catch (final RuntimeException exc) {
+            limiter.onIgnored();
+            throw exc;
+        }
+    }
+}
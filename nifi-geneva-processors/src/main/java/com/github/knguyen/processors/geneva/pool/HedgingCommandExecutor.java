@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.pool;
+
+import static com.github.knguyen.processors.utils.StringUtils.shellQuote;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessSession;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RunListener;
+import com.github.knguyen.processors.geneva.command.Command;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.retry.GenevaErrorClassifier;
+
+/**
+ * Runs a report on a second target of the pool when it takes longer than a percentile of its recent runtimes on the
+ * first, and goes on with whichever run succeeds first. The other run is killed on its host. Every call after the run,
+ * e.g. fetching the report, goes to the target of the winning run.
+ *
+ * The second run writes its report next to the report of the command, under its own name, so that the two runs never
+ * write the same file when the targets share their storage. If it wins, its report is moved to where the command put
+ * it; the report of the first run is then left to `PurgeGenevaReportOutputs`, since on shared storage it is the very
+ * file the second run's report replaced. If the first run wins, the report of the second is removed.
+ *
+ * Runs are timed from when their process started, as reported to the {@link RunListener}, so that waiting for a limiter
+ * to admit a run neither counts towards its runtime nor gets it hedged. A report with too few recent runs to have a
+ * percentile, or with no other healthy target, is never hedged; neither is a run whose executor does not report its
+ * process.
+ */
+public class HedgingCommandExecutor extends ForwardingCommandExecutor {
+    private final HostPool.Target target;
+    private final HostPool pool;
+    private final Function<HostPool.Target, RemoteCommandExecutor> executorFactory;
+    private final RuntimeHistory history;
+    private final int percentile;
+    private final ExecutorService threads;
+    private final ComponentLog logger;
+
+    private RemoteCommandExecutor winner;
+    private HostPool.Target winningTarget;
+    private volatile Attempt hedge;
+    private volatile RunListener runListener;
+
+    /**
+     * @param delegate
+     *            The executor of the target the run was routed to.
+     * @param executorFactory
+     *            Opens an executor on another target of the pool.
+     * @param threads
+     *            Runs the attempts while the calling thread waits for the first to succeed.
+     */
+    public HedgingCommandExecutor(final RemoteCommandExecutor delegate, final HostPool.Target target,
+            final HostPool pool, final Function<HostPool.Target, RemoteCommandExecutor> executorFactory,
+            final RuntimeHistory history, final int percentile, final ExecutorService threads,
+            final ComponentLog logger) {
+        super(delegate);
+        this.target = target;
+        this.pool = pool;
+        this.executorFactory = executorFactory;
+        this.history = history;
+        this.percentile = percentile;
+        this.threads = threads;
+        this.logger = logger;
+        this.winningTarget = target;
+    }
+
+    @Override
+    protected RemoteCommandExecutor delegate() {
+        return winner == null ? delegate : winner;
+    }
+
+    /**
+     * @return The target whose run succeeded, which is the target the run was routed to unless the run was hedged and
+     *         the hedge won.
+     */
+    public HostPool.Target getWinningTarget() {
+        return winningTarget;
+    }
+
+    /**
+     * Notifies the listener of the processes of every attempt, which the executors of the attempts report to this
+     * executor rather than to the listener directly.
+     */
+    @Override
+    public void setRunListener(final RunListener runListener) {
+        this.runListener = runListener;
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        final String definition = command.getReportDefinition();
+        final long hedgeAfterMillis = history.getPercentile(definition, percentile);
+        final Attempt primary = new Attempt(delegate, target, null, runListener);
+        if (hedgeAfterMillis < 0) {
+            primary.run(command, originalFlowFile, processSession);
+            if (primary.failure != null)
+                primary.rethrow();
+            if (primary.elapsedMillis >= 0)
+                history.record(definition, primary.elapsedMillis);
+            return;
+        }
+
+        final CompletionService<Attempt> completion = new ExecutorCompletionService<>(threads);
+        primary.submit(completion, command, originalFlowFile);
+        try {
+            Future<Attempt> done = null;
+            long waitMillis;
+            while (done == null && (waitMillis = primary.getMillisBefore(hedgeAfterMillis)) > 0)
+                done = completion.poll(waitMillis, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                hedge = startHedge(completion, command, originalFlowFile, hedgeAfterMillis);
+                done = completion.take();
+            }
+
+            Attempt first = get(done);
+            if (first.failure != null && hedge != null) {
+                logger.debug("The run on {} failed; waiting for the run on {}", first.target,
+                        (first == primary ? hedge : primary).target);
+                final Attempt second = get(completion.take());
+                if (second.failure == null)
+                    first = second;
+            }
+            if (first.failure != null) {
+                if (hedge != null)
+                    hedge.release(GenevaErrorClassifier.isConnectionFailure(hedge.failure));
+                (primary.failure != null ? primary : first).rethrow();
+            }
+
+            if (first.elapsedMillis >= 0)
+                history.record(definition, first.elapsedMillis);
+            winner = first.executor;
+            winningTarget = first.target;
+            if (hedge != null && first == hedge) {
+                abort(primary, originalFlowFile);
+                moveReport(hedge, command, originalFlowFile);
+            } else if (hedge != null) {
+                abort(hedge, originalFlowFile);
+            }
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            if (hedge != null)
+                abort(hedge, originalFlowFile);
+            throw new IOException("Interrupted while waiting for the run", exc);
+        }
+    }
+
+    private Attempt startHedge(final CompletionService<Attempt> completion, final ICommand command,
+            final FlowFile flowFile, final long hedgeAfterMillis) {
+        final String outputResource = command.getOutputResource();
+        if (outputResource == null || !command.getCommand().contains(outputResource)) {
+            logger.debug("Not hedging {}, whose report cannot be written elsewhere", command.getLoggablePart());
+            return null;
+        }
+
+        final HostPool.Lease lease = pool.acquire(target);
+        if (lease == null)
+            return null;
+
+        logger.info("{} has been running on {} for longer than {} ms; running it on {} as well",
+                command.getLoggablePart(), target, hedgeAfterMillis, lease.getTarget());
+        final Attempt attempt = new Attempt(executorFactory.apply(lease.getTarget()), lease.getTarget(), lease,
+                runListener);
+        attempt.submit(completion, new RedirectedCommand(command, getHedgeResource(outputResource)), flowFile);
+        return attempt;
+    }
+
+    /**
+     * @return Where the second run of a report writes it: a hidden file next to the report.
+     */
+    static String getHedgeResource(final String outputResource) {
+        final Path path = Paths.get(outputResource);
+        return path.resolveSibling(".hedge-" + path.getFileName()).toString();
+    }
+
+    /**
+     * Moves the report of the winning second run to where the command put it, so that it is fetched and removed like
+     * the report of any other run. Pools only work over SSH, so the host has a shell.
+     */
+    private static void moveReport(final Attempt hedge, final ICommand command, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        final String move = "mv -f -- " + shellQuote(hedge.command.getOutputResource()) + " "
+                + shellQuote(command.getOutputResource());
+        hedge.executor.executeForOutput(new Command(move, move, null), flowFile);
+    }
+
+    private static Attempt get(final Future<Attempt> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final ExecutionException exc) {
+            throw new IOException("The run failed unexpectedly", exc.getCause());
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the run", exc);
+        }
+    }
+
+    /**
+     * Kills the losing run and drops its connection, then releases its target in the background. The report of the
+     * second run is removed as well; the first run wrote where the winning report now is if the storage is shared.
+     */
+    private void abort(final Attempt loser, final FlowFile flowFile) {
+        logger.debug("Aborting the run on {}", loser.target);
+        loser.executor.cancelRuns();
+        try {
+            loser.executor.close();
+        } catch (final IOException exc) {
+            logger.warn("Failed to abort the run on {}", loser.target, exc);
+        }
+
+        threads.submit(() -> {
+            try {
+                loser.await();
+                if (loser == hedge)
+                    loser.executor.deleteFile(loser.command, flowFile);
+                else
+                    logger.debug("Leaving the report of the aborted run on {} to the purge", loser.target);
+            } catch (final IOException exc) {
+                // the run may have been aborted before it wrote anything
+                logger.debug("Could not remove the report of the aborted run on {}", loser.target, exc);
+            } catch (final InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            } finally {
+                loser.release(false);
+            }
+        });
+    }
+
+    @Override
+    public void cancelRuns() {
+        delegate.cancelRuns();
+        final Attempt attempt = hedge;
+        if (attempt != null)
+            attempt.executor.cancelRuns();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (winner == null || winner == delegate)
+                delegate.close();
+            else
+                winner.close();
+        } finally {
+            if (hedge != null && winner == hedge.executor)
+                hedge.lease.close();
+        }
+    }
+
+    /**
+     * A run of the report on one target.
+     */
+    private static final class Attempt {
+        private final RemoteCommandExecutor executor;
+        private final HostPool.Target target;
+        private final HostPool.Lease lease;
+        private final RunListener runListener;
+
+        private volatile ICommand command;
+        private volatile Future<Attempt> future;
+        private volatile Exception failure;
+        private volatile boolean started;
+        private volatile long startNanos;
+        private volatile long elapsedMillis = -1;
+
+        Attempt(final RemoteCommandExecutor executor, final HostPool.Target target, final HostPool.Lease lease,
+                final RunListener runListener) {
+            this.executor = executor;
+            this.target = target;
+            this.lease = lease;
+            this.runListener = runListener;
+        }
+
+        /**
+         * Runs the report, timing it from when its process started. The runtime stays negative if the executor did not
+         * report the process.
+         */
+        void run(final ICommand command, final FlowFile flowFile, final ProcessSession processSession) {
+            this.command = command;
+            executor.setRunListener((startedFlowFile, host, pid) -> {
+                startNanos = System.nanoTime();
+                started = true;
+                if (runListener != null)
+                    runListener.onStarted(startedFlowFile, host, pid);
+            });
+            try {
+                executor.execute(command, flowFile, processSession);
+            } catch (final IOException | GenevaException exc) {
+                failure = exc;
+            }
+            if (started)
+                elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        void submit(final CompletionService<Attempt> completion, final ICommand command, final FlowFile flowFile) {
+            future = completion.submit(() -> {
+                // the run does not touch the session, so none is passed to the other thread
+                run(command, flowFile, null);
+                return this;
+            });
+        }
+
+        /**
+         * @return How much longer the run may take before it is hedged, or the full threshold again while it waits to
+         *         be admitted, since the wait does not count.
+         */
+        long getMillisBefore(final long hedgeAfterMillis) {
+            if (!started)
+                return Math.max(hedgeAfterMillis, 1);
+            return hedgeAfterMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        void await() throws InterruptedException {
+            try {
+                future.get();
+            } catch (final ExecutionException exc) {
+                // the run is over either way
+            }
+        }
+
+        void rethrow() throws IOException, GenevaException {
+            if (failure instanceof GenevaException)
+                throw (GenevaException) failure;
+            throw (IOException) failure;
+        }
+
+        /**
+         * Closes the executor of the run, and releases its target if it was leased for the run.
+         *
+         * @param targetFailed
+         *            Whether to take the target out of the rotation, because the run could not connect.
+         */
+        void release(final boolean targetFailed) {
+            try {
+                executor.close();
+            } catch (final IOException exc) {
+                // the connection is gone either way
+            } finally {
+                if (lease != null) {
+                    if (targetFailed)
+                        lease.fail();
+                    lease.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A command that writes its report to another file, by replacing the output resource in the command line.
+     */
+    private static final class RedirectedCommand implements ICommand {
+        private final ICommand command;
+        private final String outputResource;
+
+        RedirectedCommand(final ICommand command, final String outputResource) {
+            this.command = command;
+            this.outputResource = outputResource;
+        }
+
+        private String redirect(final String commandLine) {
+            return commandLine.replace(command.getOutputResource(), outputResource);
+        }
+
+        @Override
+        public String getObfuscatedCommand() {
+            return redirect(command.getObfuscatedCommand());
+        }
+
+        @Override
+        public String getCommand() {
+            return redirect(command.getCommand());
+        }
+
+        @Override
+        public String getLoggablePart() {
+            return redirect(command.getLoggablePart());
+        }
+
+        @Override
+        public String getOutputResource() {
+            return outputResource;
+        }
+
+        @Override
+        public String getReportDefinition() {
+            return command.getReportDefinition();
+        }
+
+        @Override
+        public void validate() {
+            command.validate();
+        }
+    }
+}
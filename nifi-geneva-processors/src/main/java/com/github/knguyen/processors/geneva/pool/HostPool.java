@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.pool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.apache.nifi.logging.ComponentLog;
+
+/**
+ * A pool of equivalent Geneva targets, i.e. hosts and AGAs that serve the same data, over which new runs are spread.
+ *
+ * Every target is probed in the background by opening a TCP connection to its SSH port; a target that cannot be
+ * reached, or whose run failed to connect, gets no new runs until a probe reaches it again. The time a probe takes to
+ * connect is the latency the `latency-aware` policy routes by. The probe only shows that the SSH port accepts
+ * connections, not that runrep or the AGA work; targets whose runs keep failing are kept out by the availability check
+ * instead, e.g. their circuit breakers.
+ */
+public class HostPool {
+    public static final String LEAST_IN_FLIGHT = "least-in-flight";
+    public static final String WEIGHTED = "weighted";
+    public static final String LATENCY_AWARE = "latency-aware";
+
+    /**
+     * The weight of the latest probe in the latency estimate.
+     */
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final List<Target> targets;
+    private final String policy;
+    private final Predicate<Target> availability;
+    private final ComponentLog logger;
+
+    private ScheduledExecutorService prober;
+    private int nextTarget;
+
+    public HostPool(final List<Target> targets, final String policy, final ComponentLog logger) {
+        this(targets, policy, target -> true, logger);
+    }
+
+    /**
+     * @param availability
+     *            Tells whether a healthy target may take a run right now, e.g. because its circuit is not open.
+     */
+    public HostPool(final List<Target> targets, final String policy, final Predicate<Target> availability,
+            final ComponentLog logger) {
+        if (targets.isEmpty())
+            throw new IllegalArgumentException("A host pool needs at least one target");
+
+        this.targets = Collections.unmodifiableList(new ArrayList<>(targets));
+        this.policy = policy;
+        this.availability = availability;
+        this.logger = logger;
+    }
+
+    /**
+     * Parses the targets of a pool, one per line: {@code host[:port] [aga] [weight=n]}, e.g.
+     * {@code geneva2.example.com:22 9001 weight=2}. Blank lines and lines starting with `#` are ignored.
+     *
+     * @param spec
+     *            The targets.
+     * @param defaultPort
+     *            The SSH port of a target that names none.
+     * @param defaultAga
+     *            The AGA of a target that names none, or {@code null}.
+     *
+     * @return The targets, in the order they are listed.
+     *
+     * @throws IllegalArgumentException
+     *             if a line cannot be parsed.
+     */
+    public static List<Target> parseTargets(final String spec, final int defaultPort, final String defaultAga) {
+        final List<Target> targets = new ArrayList<>();
+        for (final String rawLine : spec.split("\\r?\\n")) {
+            final String line = rawLine.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            final String[] tokens = line.split("\\s+");
+            if (tokens.length > 3)
+                throw new IllegalArgumentException(
+                        String.format("`%s` must be `host[:port] [aga] [weight=n]`", line));
+
+            String host = tokens[0];
+            int port = defaultPort;
+            final int colon = host.lastIndexOf(':');
+            if (colon > 0) {
+                port = parsePositive(host.substring(colon + 1), "port", line);
+                host = host.substring(0, colon);
+            }
+
+            String aga = defaultAga;
+            int weight = 1;
+            for (int i = 1; i < tokens.length; i++) {
+                if (tokens[i].startsWith("weight="))
+                    weight = parsePositive(tokens[i].substring("weight=".length()), "weight", line);
+                else
+                    aga = String.valueOf(parsePositive(tokens[i], "AGA", line));
+            }
+            targets.add(new Target(host, port, aga, weight));
+        }
+
+        if (targets.isEmpty())
+            throw new IllegalArgumentException("The host pool lists no target");
+        return targets;
+    }
+
+    private static int parsePositive(final String value, final String name, final String line) {
+        try {
+            final int parsed = Integer.parseInt(value);
+            if (parsed > 0)
+                return parsed;
+        } catch (final NumberFormatException exc) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("`%s` is not a valid %s in `%s`", value, name, line));
+    }
+
+    /**
+     * Probes every target now and then every {@code intervalMillis}.
+     */
+    public synchronized void startProbing(final long intervalMillis, final int connectTimeoutMillis) {
+        stopProbing();
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Geneva host pool probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(() -> probeAll(connectTimeoutMillis), 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopProbing() {
+        if (prober != null) {
+            prober.shutdownNow();
+            prober = null;
+        }
+    }
+
+    void probeAll(final int connectTimeoutMillis) {
+        for (final Target target : targets) {
+            final long start = System.nanoTime();
+            try (final Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(target.getHost(), target.getPort()), connectTimeoutMillis);
+                target.recordProbe(System.nanoTime() - start);
+                if (!target.healthy) {
+                    logger.info("Geneva target {} is reachable again", target);
+                    target.healthy = true;
+                }
+            } catch (final IOException exc) {
+                if (target.healthy)
+                    logger.warn("Geneva target {} is unreachable; routing no new runs to it", target, exc);
+                target.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Picks the healthy and available target the policy prefers and counts a run against it.
+     *
+     * @return The lease on the target, to be closed once the run is over, or {@code null} if no target is healthy and
+     *         available.
+     */
+    public Lease acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * Picks the healthy and available target the policy prefers other than the given one, e.g. to run a duplicate of a
+     * run that takes too long on it.
+     *
+     * @return The lease on the target, or {@code null} if no other target is healthy and available.
+     */
+    public synchronized Lease acquire(final Target excluded) {
+        Target best = null;
+        double bestScore = Double.MAX_VALUE;
+        // start after the previous pick, so that ties are spread round-robin
+        for (int i = 0; i < targets.size(); i++) {
+            final Target target = targets.get((nextTarget + i) % targets.size());
+            if (!target.healthy || target.equals(excluded) || !availability.test(target))
+                continue;
+
+            final double score = score(target);
+            if (score < bestScore) {
+                best = target;
+                bestScore = score;
+            }
+        }
+        if (best == null)
+            return null;
+
+        nextTarget = (targets.indexOf(best) + 1) % targets.size();
+        best.inFlight++;
+        return new Lease(best);
+    }
+
+    private double score(final Target target) {
+        switch (policy) {
+        case WEIGHTED:
+            return (target.inFlight + 1) / (double) target.getWeight();
+        case LATENCY_AWARE:
+            // a target that was not probed yet counts as the fastest until it is
+            return (target.inFlight + 1) * Math.max(target.latencyNanos, 1.0);
+        default:
+            return target.inFlight;
+        }
+    }
+
+    private synchronized void release(final Target target) {
+        target.inFlight--;
+    }
+
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    /**
+     * A host, SSH port and AGA runs can be routed to.
+     */
+    public static final class Target {
+        private final String host;
+        private final int port;
+        private final String aga;
+        private final int weight;
+
+        private volatile boolean healthy = true;
+        private volatile double latencyNanos;
+        private int inFlight;
+
+        public Target(final String host, final int port, final String aga, final int weight) {
+            this.host = host;
+            this.port = port;
+            this.aga = aga;
+            this.weight = weight;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * @return The AGA, or {@code null} to keep the processor's `Geneva AGA`.
+         */
+        public String getAga() {
+            return aga;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        void recordProbe(final long nanos) {
+            latencyNanos = latencyNanos == 0 ? nanos
+                    : LATENCY_SMOOTHING * nanos + (1 - LATENCY_SMOOTHING) * latencyNanos;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Target))
+                return false;
+            final Target target = (Target) other;
+            return host.equals(target.host) && port == target.port && Objects.equals(aga, target.aga);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, aga);
+        }
+
+        @Override
+        public String toString() {
+            return aga == null ? host + ":" + port : host + ":" + port + "/" + aga;
+        }
+    }
+
+    /**
+     * A run routed to a target. Closing the lease ends the run.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Target target;
+        private boolean closed;
+
+        private Lease(final Target target) {
+            this.target = target;
+        }
+
+        public Target getTarget() {
+            return target;
+        }
+
+        /**
+         * Takes the target out of the rotation until a probe reaches it again, e.g. because the run could not connect.
+         */
+        public void fail() {
+            if (target.healthy)
+                logger.warn("A run on Geneva target {} failed to connect; routing no new runs to it", target);
+            target.healthy = false;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(target);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.pool;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The recent runtimes of every report definition, from which the time after which a run counts as a straggler is
+ * derived.
+ */
+public class RuntimeHistory {
+    private final int window;
+    private final int minSamples;
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+
+    /**
+     * @param window
+     *            The number of most recent runtimes kept per report definition.
+     * @param minSamples
+     *            The number of runtimes a report definition needs before it has percentiles.
+     */
+    public RuntimeHistory(final int window, final int minSamples) {
+        this.window = window;
+        this.minSamples = minSamples;
+    }
+
+    public void record(final String definition, final long millis) {
+        samples.computeIfAbsent(definition, key -> new Samples(window)).add(millis);
+    }
+
+    /**
+     * @return The runtime that {@code percentile} percent of the recent runs of the report definition took at most, or
+     *         -1 if it did not run often enough yet.
+     */
+    public long getPercentile(final String definition, final int percentile) {
+        final Samples history = samples.get(definition);
+        if (history == null)
+            return -1;
+
+        final long[] sorted = history.snapshot();
+        if (sorted.length < minSamples)
+            return -1;
+
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+
+    private static final class Samples {
+        private final long[] values;
+        private int count;
+        private int next;
+
+        Samples(final int window) {
+            this.values = new long[window];
+        }
+
+        synchronized void add(final long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            count = Math.min(count + 1, values.length);
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.processor.ProcessContext;
+
+/**
+ * A view of a {@link ProcessContext} in which the host, port and AGA properties hold the values of a pool target, so
+ * that the executors, the SSH client provider and the argument providers, which all read these properties, connect to
+ * the target without knowing about the pool.
+ *
+ * The view is a dynamic proxy, so that it keeps working when NiFi adds methods to {@link ProcessContext}.
+ */
+public final class TargetPropertyContext implements InvocationHandler {
+    private final ProcessContext context;
+    private final Map<String, String> overrides;
+
+    private TargetPropertyContext(final ProcessContext context, final Map<String, String> overrides) {
+        this.context = context;
+        this.overrides = overrides;
+    }
+
+    /**
+     * Wraps a context.
+     *
+     * @param context
+     *            The processor's context.
+     * @param target
+     *            The target to connect to.
+     * @param hostname
+     *            The property holding the host.
+     * @param port
+     *            The property holding the SSH port.
+     * @param aga
+     *            The property holding the AGA, which is kept if the target names none.
+     *
+     * @return The context of the target.
+     */
+    public static ProcessContext wrap(final ProcessContext context, final HostPool.Target target,
+            final PropertyDescriptor hostname, final PropertyDescriptor port, final PropertyDescriptor aga) {
+        final Map<String, String> overrides = new HashMap<>();
+        overrides.put(hostname.getName(), target.getHost());
+        overrides.put(port.getName(), String.valueOf(target.getPort()));
+        if (target.getAga() != null)
+            overrides.put(aga.getName(), target.getAga());
+
+        return (ProcessContext) Proxy.newProxyInstance(ProcessContext.class.getClassLoader(),
+                new Class<?>[] { ProcessContext.class }, new TargetPropertyContext(context, overrides));
+    }
+
+    /**
+     * Returns the processor's context behind a target's context.
+     *
+     * @param context
+     *            A context, wrapped or not.
+     *
+     * @return The context as configured, without the values of the target.
+     */
+    public static ProcessContext unwrap(final ProcessContext context) {
+        if (Proxy.isProxyClass(context.getClass())
+                && Proxy.getInvocationHandler(context) instanceof TargetPropertyContext)
+            return ((TargetPropertyContext) Proxy.getInvocationHandler(context)).context;
+        return context;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if ("getProperty".equals(method.getName()) && args != null && args.length == 1) {
+            final String name = args[0] instanceof PropertyDescriptor ? ((PropertyDescriptor) args[0]).getName()
+                    : String.valueOf(args[0]);
+            if (overrides.containsKey(name))
+                return newPropertyValue(name);
+        } else if ("getAllProperties".equals(method.getName()) && args == null) {
+            final Map<String, String> properties = new LinkedHashMap<>(context.getAllProperties());
+            properties.putAll(overrides);
+            return properties;
+        } else if ("getProperties".equals(method.getName()) && args == null) {
+            final Map<PropertyDescriptor, String> properties = new LinkedHashMap<>(context.getProperties());
+            for (final Map.Entry<PropertyDescriptor, String> entry : properties.entrySet()) {
+                if (overrides.containsKey(entry.getKey().getName()))
+                    entry.setValue(overrides.get(entry.getKey().getName()));
+            }
+            return properties;
+        }
+
+        try {
+            return method.invoke(context, args);
+        } catch (final InvocationTargetException exc) {
+            throw exc.getCause();
+        }
+    }
+
+    private PropertyValue newPropertyValue(final String name) {
+        return context.newPropertyValue(overrides.get(name));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.portfolio;
+
+import java.io.IOException;
+
+import org.apache.nifi.controller.ControllerService;
+
+/**
+ * Keeps the portfolios and portfolio groups of every AGA in memory, so that processors can reject an unknown portfolio
+ * before they connect to the Geneva host, and split a group into work units.
+ *
+ * Like {@code GenevaCatalogService}, the service does not connect to Geneva itself: the processors load the portfolios
+ * through their own executor, by running the service's membership query, whenever the service has none or they are
+ * older than the refresh interval.
+ */
+public interface GenevaPortfolioService extends ControllerService {
+
+    /**
+     * Returns the portfolios of an AGA, loading them when they are missing or stale. Concurrent callers for the same
+     * AGA wait for a single load. When a refresh fails, the previous portfolios are kept for another interval.
+     *
+     * @param aga
+     *            The AGA.
+     * @param loader
+     *            Runs the membership query on the Geneva host.
+     *
+     * @return The portfolios.
+     *
+     * @throws IOException
+     *             if the portfolios could not be loaded and there are no previous ones.
+     */
+    GenevaPortfolios getPortfolios(String aga, PortfolioLoader loader) throws IOException;
+
+    /**
+     * Runs the membership query of the service on the Geneva host.
+     */
+    @FunctionalInterface
+    interface PortfolioLoader {
+        GenevaPortfolios load(String membershipQuery) throws IOException;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.portfolio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.knguyen.processors.diff.DelimitedRowReader;
+
+/**
+ * The portfolios of an AGA and the members of its portfolio groups, as returned by the membership query of a
+ * {@link GenevaPortfolioService}. Names are compared case-insensitively, and a name may be written the way the
+ * `Portfolio List` property requires, i.e. wrapped in escaped quotes when it contains spaces.
+ *
+ * A group may contain other groups; expanding a group returns the portfolios of all its nested groups, each once.
+ */
+public final class GenevaPortfolios {
+    private final Map<String, String> names;
+    private final Map<String, Set<String>> groups;
+    private final long loadedAt;
+
+    GenevaPortfolios(final Map<String, String> names, final Map<String, Set<String>> groups, final long loadedAt) {
+        this.names = Collections.unmodifiableMap(names);
+        this.groups = Collections.unmodifiableMap(groups);
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Parses the CSV output of the membership query: a header row, then one row per portfolio with the portfolio name
+     * in the first column and, optionally, the name of a group it belongs to in the second.
+     *
+     * @param output
+     *            What the query printed.
+     * @param loadedAt
+     *            When the output was taken, in milliseconds since the epoch.
+     *
+     * @return The portfolios.
+     *
+     * @throws IOException
+     *             if the output cannot be read.
+     */
+    public static GenevaPortfolios parse(final String output, final long loadedAt) throws IOException {
+        final Map<String, String> names = new HashMap<>();
+        final Map<String, Set<String>> groups = new HashMap<>();
+
+        final DelimitedRowReader reader = new DelimitedRowReader(
+                new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)), (byte) ',', true);
+        while (reader.next()) {
+            if (reader.getRowNumber() == 1)
+                continue;
+
+            final String portfolio = unquote(reader.getField(0));
+            if (portfolio.isEmpty())
+                continue;
+            names.putIfAbsent(normalize(portfolio), portfolio);
+
+            final String group = reader.getFieldCount() > 1 ? unquote(reader.getField(1)) : "";
+            if (group.isEmpty())
+                continue;
+            names.putIfAbsent(normalize(group), group);
+            groups.computeIfAbsent(normalize(group), key -> new LinkedHashSet<>()).add(normalize(portfolio));
+        }
+        return new GenevaPortfolios(names, groups, loadedAt);
+    }
+
+    /**
+     * @return {@code true} if the name is a portfolio or a portfolio group.
+     */
+    public boolean contains(final String name) {
+        return names.containsKey(normalize(unquote(name)));
+    }
+
+    /**
+     * @return {@code true} if the name is a portfolio group.
+     */
+    public boolean isGroup(final String name) {
+        return groups.containsKey(normalize(unquote(name)));
+    }
+
+    /**
+     * Expands a portfolio list, replacing every group by the portfolios it contains.
+     *
+     * @param portfolioList
+     *            The comma-separated names, as in the `Portfolio List` property.
+     *
+     * @return The portfolios, each once, in the order they are listed.
+     *
+     * @throws IllegalArgumentException
+     *             if a name is neither a portfolio nor a group.
+     */
+    public List<String> expand(final String portfolioList) {
+        final Set<String> portfolios = new LinkedHashSet<>();
+        for (final String entry : portfolioList.split(",")) {
+            final String name = unquote(entry);
+            if (name.isEmpty())
+                continue;
+            if (!contains(name))
+                throw new IllegalArgumentException(String.format("`%s` is neither a portfolio nor a group", name));
+
+            expand(normalize(name), new HashSet<>(), portfolios);
+        }
+        return new ArrayList<>(portfolios);
+    }
+
+    private void expand(final String key, final Set<String> visited, final Set<String> portfolios) {
+        if (!visited.add(key))
+            return;
+
+        final Set<String> members = groups.get(key);
+        if (members == null) {
+            portfolios.add(names.get(key));
+            return;
+        }
+        for (final String member : members)
+            expand(member, visited, portfolios);
+    }
+
+    /**
+     * Splits portfolios into the fewest work units of at most {@code maxSize} portfolios, whose sizes differ by at most
+     * one.
+     *
+     * @return The work units, in the order of the portfolios.
+     */
+    public static List<List<String>> partition(final List<String> portfolios, final int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("A work unit must hold at least one portfolio");
+
+        final int units = (portfolios.size() + maxSize - 1) / maxSize;
+        final List<List<String>> partitions = new ArrayList<>(units);
+        int start = 0;
+        for (int i = 0; i < units; i++) {
+            final int size = portfolios.size() / units + (i < portfolios.size() % units ? 1 : 0);
+            partitions.add(new ArrayList<>(portfolios.subList(start, start + size)));
+            start += size;
+        }
+        return partitions;
+    }
+
+    /**
+     * Formats portfolios as a `Portfolio List`, wrapping the names that contain spaces in escaped quotes.
+     */
+    public static String format(final List<String> portfolios) {
+        final List<String> entries = new ArrayList<>(portfolios.size());
+        for (final String portfolio : portfolios)
+            entries.add(portfolio.contains(" ") ? "\\\"" + portfolio + "\\\"" : portfolio);
+        return String.join(",", entries);
+    }
+
+    /**
+     * @return The number of portfolios and groups.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @return When the portfolios were loaded, in milliseconds since the epoch.
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Returns a copy that counts as loaded at the given time.
+     */
+    GenevaPortfolios withLoadedAt(final long loadedAt) {
+        return new GenevaPortfolios(names, groups, loadedAt);
+    }
+
+    private static String unquote(final String name) {
+        String value = name.trim();
+        if (value.length() >= 4 && value.startsWith("\\\"") && value.endsWith("\\\""))
+            value = value.substring(2, value.length() - 2);
+        else if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            value = value.substring(1, value.length() - 1);
+        return value.trim();
+    }
+
+    private static String normalize(final String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
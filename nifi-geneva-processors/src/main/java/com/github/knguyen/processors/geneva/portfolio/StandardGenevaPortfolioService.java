@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.portfolio;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.processor.util.StandardValidators;
+
+@Tags({ "geneva", "runrep", "portfolio", "group", "cache" })
+@CapabilityDescription("Keeps the portfolios and portfolio group memberships of every Geneva AGA in memory, so that the Geneva processors can reject an unknown portfolio without connecting to the Geneva host, and split a portfolio group into work units.  The memberships of an AGA are loaded by the first processor that needs them, by running the membership query through that processor's connection, and reloaded once they are older than the refresh interval.")
+public class StandardGenevaPortfolioService extends AbstractControllerService implements GenevaPortfolioService {
+
+    public static final PropertyDescriptor MEMBERSHIP_QUERY = new PropertyDescriptor.Builder()
+            .name("portfolio-membership-query").displayName("Membership Query")
+            .description(
+                    "The GSQL query that lists the portfolios of an AGA.  It must select the portfolio name first and, for a portfolio that belongs to a group, the group name second; a portfolio that belongs to several groups is listed once per group.  Groups of groups are expanded recursively.  The query must end with a `;` character.")
+            .required(true).addValidator(StandardValidators.NON_BLANK_VALIDATOR).build();
+
+    public static final PropertyDescriptor REFRESH_INTERVAL = new PropertyDescriptor.Builder()
+            .name("portfolio-refresh-interval").displayName("Refresh Interval")
+            .description(
+                    "How long the portfolios are used before they are loaded again.  Portfolios added in Geneva are rejected until the next load.")
+            .required(true).defaultValue("1 hour").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
+    private static final List<PropertyDescriptor> DESCRIPTORS = Collections
+            .unmodifiableList(Arrays.asList(MEMBERSHIP_QUERY, REFRESH_INTERVAL));
+
+    private final Map<String, GenevaPortfolios> portfolios = new ConcurrentHashMap<>();
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private volatile String membershipQuery;
+    private volatile long refreshIntervalMillis;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return DESCRIPTORS;
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) {
+        membershipQuery = context.getProperty(MEMBERSHIP_QUERY).getValue().trim();
+        refreshIntervalMillis = context.getProperty(REFRESH_INTERVAL).asTimePeriod(TimeUnit.MILLISECONDS);
+    }
+
+    @OnDisabled
+    public void onDisabled() {
+        portfolios.clear();
+        loadLocks.clear();
+    }
+
+    @Override
+    public GenevaPortfolios getPortfolios(final String aga, final PortfolioLoader loader) throws IOException {
+        final GenevaPortfolios cached = portfolios.get(aga);
+        if (isFresh(cached))
+            return cached;
+
+        synchronized (loadLocks.computeIfAbsent(aga, key -> new Object())) {
+            final GenevaPortfolios current = portfolios.get(aga);
+            if (isFresh(current))
+                return current;
+
+            try {
+                final GenevaPortfolios loaded = loader.load(membershipQuery);
+                portfolios.put(aga, loaded);
+                getLogger().info("Loaded {} portfolios and groups of AGA {}", loaded.size(), aga);
+                return loaded;
+            } catch (final IOException exc) {
+                if (current == null)
+                    throw exc;
+
+                // retry after another interval rather than on every FlowFile
+                getLogger().warn("Could not refresh the portfolios of AGA {}; keeping the previous ones", aga, exc);
+                final GenevaPortfolios kept = current.withLoadedAt(System.currentTimeMillis());
+                portfolios.put(aga, kept);
+                return kept;
+            }
+        }
+    }
+
+    private boolean isFresh(final GenevaPortfolios loaded) {
+        return loaded != null && System.currentTimeMillis() - loaded.getLoadedAt() < refreshIntervalMillis;
+    }
+}
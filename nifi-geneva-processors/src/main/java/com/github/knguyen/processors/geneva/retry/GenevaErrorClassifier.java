@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.retry;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+import org.apache.nifi.processors.standard.socket.ClientConnectException;
+
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RunRejectedException;
+import com.github.knguyen.processors.geneva.RunTimeoutException;
+
+import net.schmizz.sshj.connection.ConnectionException;
+import net.schmizz.sshj.sftp.SFTPException;
+import net.schmizz.sshj.transport.TransportException;
+import net.schmizz.sshj.userauth.UserAuthException;
+
+/**
+ * Tells the failures that may go away by themselves, e.g. a reset connection or a busy AGA, from those that will not,
+ * e.g. a bad RSL or rejected credentials.
+ */
+public final class GenevaErrorClassifier {
+    /**
+     * Matches the runrep errors that mean the AGA could not be reached, as opposed to errors of the report itself.
+     */
+    private static final Pattern AGA_UNREACHABLE_PATTERN = Pattern
+            .compile("(?i)(unable to connect|cannot connect|could not connect|connection (refused|reset|closed|lost)"
+                    + "|timed out|timeout|no response from|agent .*not (running|available))");
+
+    /**
+     * Matches the runrep errors of an AGA that is up but cannot take the run right now.
+     */
+    private static final Pattern AGA_BUSY_PATTERN = Pattern
+            .compile("(?i)(busy|too many|try again|temporarily|deadlock|lock timeout|resource unavailable)");
+
+    /**
+     * Matches the messages of I/O errors that come from a dropped connection.
+     */
+    private static final Pattern TRANSIENT_IO_PATTERN = Pattern
+            .compile("(?i)(reset|broken pipe|timed out|timeout|refused|closed|end of stream|disconnect)");
+
+    private GenevaErrorClassifier() {
+    }
+
+    /**
+     * @return {@code true} if runrep failed because it could not reach the AGA.
+     */
+    public static boolean isAgaUnreachable(final GenevaException exc) {
+        final String error = exc.getGenevaErrorMessage();
+        return error != null && AGA_UNREACHABLE_PATTERN.matcher(error).find();
+    }
+
+    /**
+     * @return {@code true} if the Geneva host could not be connected to at all, as opposed to a failure of a run or a
+     *         transfer on a host that was reached.
+     */
+    public static boolean isConnectionFailure(final Exception exc) {
+        for (Throwable cause = exc; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClientConnectException || cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if a failed run suggests that its target is overloaded: the run timed out, lost its
+     *         connection, or runrep could not reach the AGA or found it busy. Errors of the report itself do not.
+     */
+    public static boolean isOverload(final Exception exc) {
+        return exc instanceof RunTimeoutException || isTransient(exc);
+    }
+
+    /**
+     * @return {@code true} if running the same command again may succeed.
+     */
+    public static boolean isTransient(final Exception exc) {
+        if (exc instanceof GenevaException) {
+            final String error = ((GenevaException) exc).getGenevaErrorMessage();
+            return isAgaUnreachable((GenevaException) exc)
+                    || (error != null && AGA_BUSY_PATTERN.matcher(error).find());
+        }
+
+        // the run never started, and the caller decides when to try again
+        if (exc instanceof RunRejectedException)
+            return false;
+
+        for (Throwable cause = exc; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FileNotFoundException || cause instanceof UserAuthException
+                    || cause instanceof SFTPException)
+                return false;
+
+            if (cause instanceof SocketException || cause instanceof SocketTimeoutException
+                    || cause instanceof EOFException || cause instanceof TransportException
+                    || cause instanceof ConnectionException)
+                return true;
+
+            if (cause instanceof IOException && cause.getMessage() != null
+                    && TRANSIENT_IO_PATTERN.matcher(cause.getMessage()).find())
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.retry;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessSession;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RunListener;
+import com.github.knguyen.processors.geneva.command.ICommand;
+
+/**
+ * Runs runrep commands again when they fail with a transient error, see {@link GenevaErrorClassifier}, waiting a
+ * random time of up to {@code initialBackoff * 2^retry} (full jitter) before every retry. A command is tried at most
+ * {@code maxRetries + 1} times, and never retried once the next attempt would start after the retry budget.
+ *
+ * Running a command again is safe, since runrep overwrites its output, but only once the first run is over: an I/O
+ * error after runrep reported its PID, see {@link RunListener}, may have only dropped the channel of a run that goes
+ * on, so it is not retried. The connection is not closed here, since it may be shared with the runs of other threads;
+ * the executor reconnects by itself once it dropped.
+ */
+public class RetryingCommandExecutor extends ForwardingCommandExecutor {
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long budgetMillis;
+    private final ComponentLog logger;
+    private final ThreadLocal<Boolean> started = ThreadLocal.withInitial(() -> false);
+
+    public RetryingCommandExecutor(final RemoteCommandExecutor delegate, final int maxRetries,
+            final long initialBackoffMillis, final long maxBackoffMillis, final long budgetMillis,
+            final ComponentLog logger) {
+        super(delegate);
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.budgetMillis = budgetMillis;
+        this.logger = logger;
+    }
+
+    @Override
+    public void setRunListener(final RunListener runListener) {
+        delegate.setRunListener((flowFile, host, pid) -> {
+            started.set(true);
+            if (runListener != null)
+                runListener.onStarted(flowFile, host, pid);
+        });
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        run(command, () -> {
+            delegate.execute(command, originalFlowFile, processSession);
+            return null;
+        });
+    }
+
+    @Override
+    public String executeForOutput(final ICommand command, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        return run(command, () -> delegate.executeForOutput(command, flowFile));
+    }
+
+    private <T> T run(final ICommand command, final Attempt<T> attempt) throws IOException, GenevaException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        for (int retry = 0;; retry++) {
+            started.set(false);
+            try {
+                return attempt.run();
+            } catch (final IOException | GenevaException exc) {
+                final long backoffMillis = getBackoffMillis(retry);
+                if (retry >= maxRetries || !GenevaErrorClassifier.isTransient(exc)
+                        || exc instanceof IOException && started.get()
+                        || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) >= deadline)
+                    throw exc;
+
+                logger.warn("Retrying `{}` in {} ms after a transient failure ({} of {})",
+                        command.getLoggablePart(), backoffMillis, retry + 1, maxRetries, exc);
+                sleep(backoffMillis);
+            } finally {
+                started.remove();
+            }
+        }
+    }
+
+    private long getBackoffMillis(final int retry) {
+        final long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(retry, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(final long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry", exc);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Attempt<T> {
+        T run() throws IOException, GenevaException;
+    }
+}
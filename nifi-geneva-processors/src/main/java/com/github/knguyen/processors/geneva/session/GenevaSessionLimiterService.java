@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.session;
+
+import org.apache.nifi.controller.ControllerService;
+
+/**
+ * Limits the Geneva sessions of every runrep user, which are bound by the user's license, across all the processors
+ * that reference the service.
+ */
+public interface GenevaSessionLimiterService extends ControllerService {
+
+    /**
+     * Waits in the queue of the runrep user until it may start another session.
+     *
+     * @param runrepUser
+     *            The runrep user.
+     * @param timeoutMillis
+     *            How long to wait.
+     *
+     * @return The session, to close once runrep exits; {@code null} if the wait timed out or the queue of the user is
+     *         full.
+     */
+    Session acquire(String runrepUser, long timeoutMillis) throws InterruptedException;
+
+    /**
+     * A session of a runrep user. Closing it lets the next run of the user start.
+     */
+    interface Session extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
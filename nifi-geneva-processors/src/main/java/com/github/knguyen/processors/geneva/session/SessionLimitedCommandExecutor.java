@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.session;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RunRejectedException;
+import com.github.knguyen.processors.geneva.command.ICommand;
+
+/**
+ * Opens a session of the runrep user with the {@link GenevaSessionLimiterService} for every command. A command that
+ * gets no session within the admission timeout is rejected without starting.
+ */
+public class SessionLimitedCommandExecutor extends ForwardingCommandExecutor {
+    private final GenevaSessionLimiterService limiterService;
+    private final Function<FlowFile, String> userResolver;
+    private final long admissionTimeoutMillis;
+
+    /**
+     * @param delegate
+     *            Runs the commands.
+     * @param limiterService
+     *            Limits the sessions of the runrep users.
+     * @param userResolver
+     *            Identifies the runrep user of a FlowFile.
+     * @param admissionTimeoutMillis
+     *            How long a command waits for a session.
+     */
+    public SessionLimitedCommandExecutor(final RemoteCommandExecutor delegate,
+            final GenevaSessionLimiterService limiterService, final Function<FlowFile, String> userResolver,
+            final long admissionTimeoutMillis) {
+        super(delegate);
+        this.limiterService = limiterService;
+        this.userResolver = userResolver;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        try (final GenevaSessionLimiterService.Session session = openSession(originalFlowFile)) {
+            delegate().execute(command, originalFlowFile, processSession);
+        }
+    }
+
+    @Override
+    public String executeForOutput(final ICommand command, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        try (final GenevaSessionLimiterService.Session session = openSession(flowFile)) {
+            return delegate().executeForOutput(command, flowFile);
+        }
+    }
+
+    private GenevaSessionLimiterService.Session openSession(final FlowFile flowFile) throws RunRejectedException {
+        final String user = userResolver.apply(flowFile);
+        final GenevaSessionLimiterService.Session session;
+        try {
+            session = limiterService.acquire(user, admissionTimeoutMillis);
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RunRejectedException(String.format("Interrupted while waiting for a session of runrep user %s",
+                    user));
+        }
+
+        if (session == null)
+            throw new RunRejectedException(String.format(
+                    "Runrep user %s had no session free within the admission timeout, or too many runs waiting", user));
+        return session;
+    }
+}
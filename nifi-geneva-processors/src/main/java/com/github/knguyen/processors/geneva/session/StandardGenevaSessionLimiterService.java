@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.session;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.processor.util.StandardValidators;
+
+@Tags({ "geneva", "runrep", "license", "session", "limit", "throttle" })
+@CapabilityDescription("Limits the Geneva sessions of every runrep user across all the Geneva processors that reference the service, so that a user does not run into the session limit of its license, which makes runrep fail.  Each runrep user may have a number of sessions open at once and start new ones at a given rate; runs over the limit wait in a queue of the user, first come first served, instead of failing.  A run that does not start within the `Run Admission Timeout` of its processor, or finds the queue full, goes back to its queue.")
+public class StandardGenevaSessionLimiterService extends AbstractControllerService
+        implements GenevaSessionLimiterService {
+
+    public static final PropertyDescriptor MAX_SESSIONS_PER_USER = new PropertyDescriptor.Builder()
+            .name("max-sessions-per-user").displayName("Maximum Sessions per User")
+            .description(
+                    "The most runrep sessions a runrep user may have open at once, across all the processors using this service.  Set it to the number of concurrent sessions the license of the users allows, less any sessions opened outside NiFi.")
+            .required(true).defaultValue("4").addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR).build();
+
+    public static final PropertyDescriptor SESSION_STARTS_PER_MINUTE = new PropertyDescriptor.Builder()
+            .name("session-starts-per-minute").displayName("Session Starts per Minute")
+            .description(
+                    "How many runrep sessions a runrep user may start per minute on average, so that a burst of FlowFiles does not log the user in many times at once.")
+            .required(true).defaultValue("60").addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR).build();
+
+    public static final PropertyDescriptor SESSION_START_BURST = new PropertyDescriptor.Builder()
+            .name("session-start-burst").displayName("Session Start Burst")
+            .description(
+                    "How many runrep sessions a runrep user may start at once after being idle, before `Session Starts per Minute` applies.")
+            .required(true).defaultValue("4").addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR).build();
+
+    public static final PropertyDescriptor MAX_QUEUED_RUNS_PER_USER = new PropertyDescriptor.Builder()
+            .name("max-queued-runs-per-user").displayName("Maximum Queued Runs per User")
+            .description(
+                    "The most runs that may wait for a session of a runrep user.  Every waiting run holds a task of its processor, so a run that finds the queue full goes back to its queue right away instead.")
+            .required(true).defaultValue("32").addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    private static final List<PropertyDescriptor> DESCRIPTORS = Collections.unmodifiableList(
+            Arrays.asList(MAX_SESSIONS_PER_USER, SESSION_STARTS_PER_MINUTE, SESSION_START_BURST,
+                    MAX_QUEUED_RUNS_PER_USER));
+
+    private final Map<String, UserSessionLimiter> limiters = new ConcurrentHashMap<>();
+    private volatile int maxSessions;
+    private volatile int startsPerMinute;
+    private volatile int burst;
+    private volatile int maxQueued;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return DESCRIPTORS;
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) {
+        maxSessions = context.getProperty(MAX_SESSIONS_PER_USER).asInteger();
+        startsPerMinute = context.getProperty(SESSION_STARTS_PER_MINUTE).asInteger();
+        burst = context.getProperty(SESSION_START_BURST).asInteger();
+        maxQueued = context.getProperty(MAX_QUEUED_RUNS_PER_USER).asInteger();
+    }
+
+    /**
+     * Forgets the users. The service can only be disabled once the processors using it are stopped, so no session is
+     * open by then.
+     */
+    @OnDisabled
+    public void onDisabled() {
+        limiters.clear();
+    }
+
+    @Override
+    public Session acquire(final String runrepUser, final long timeoutMillis) throws InterruptedException {
+        final UserSessionLimiter limiter = limiters.computeIfAbsent(runrepUser,
+                user -> new UserSessionLimiter(user, maxSessions, startsPerMinute, burst, maxQueued));
+        if (!limiter.acquire(timeoutMillis)) {
+            getLogger().debug("Runrep user {} has {} sessions open and {} runs waiting", limiter,
+                    limiter.getOpenSessions(), limiter.getQueued());
+            return null;
+        }
+        return limiter::release;
+    }
+}
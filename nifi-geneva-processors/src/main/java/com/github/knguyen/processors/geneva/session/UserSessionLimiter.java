@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.session;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the sessions of one runrep user: how many are open at once, and how fast new ones start, through a token
+ * bucket that holds up to {@code burst} starts and refills at {@code startsPerMinute}. Runs that cannot start wait
+ * their turn in a queue of bounded length, first come first served.
+ */
+class UserSessionLimiter {
+    private final String user;
+    private final int maxSessions;
+    private final int maxQueued;
+    private final double tokensPerNano;
+    private final double burst;
+
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private int openSessions;
+    private double tokens;
+    private long refilledAt;
+
+    UserSessionLimiter(final String user, final int maxSessions, final int startsPerMinute, final int burst,
+            final int maxQueued) {
+        this.user = user;
+        this.maxSessions = maxSessions;
+        this.maxQueued = maxQueued;
+        this.tokensPerNano = startsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Waits until the user may start another session.
+     *
+     * @return {@code true} if the session may start, in which case {@link #release()} must follow; {@code false} if
+     *         the wait timed out or the queue is full.
+     */
+    synchronized boolean acquire(final long timeoutMillis) throws InterruptedException {
+        if (queue.size() >= maxQueued && !(queue.isEmpty() && canStart()))
+            return false;
+
+        final Object turn = new Object();
+        queue.addLast(turn);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (true) {
+                refill();
+                if (queue.peekFirst() == turn && canStart()) {
+                    openSessions++;
+                    tokens--;
+                    return true;
+                }
+
+                final long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0)
+                    return false;
+
+                // a closing session wakes the queue up, but a token only comes with time
+                long waitNanos = remainingNanos;
+                if (openSessions < maxSessions && tokens < 1)
+                    waitNanos = Math.min(waitNanos, (long) Math.ceil((1 - tokens) / tokensPerNano));
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, 1));
+            }
+        } finally {
+            queue.remove(turn);
+            // the next in line may be able to start
+            notifyAll();
+        }
+    }
+
+    synchronized void release() {
+        openSessions--;
+        notifyAll();
+    }
+
+    synchronized int getOpenSessions() {
+        return openSessions;
+    }
+
+    synchronized int getQueued() {
+        return queue.size();
+    }
+
+    private boolean canStart() {
+        refill();
+        return openSessions < maxSessions && tokens >= 1;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+
+    @Override
+    public String toString() {
+        return user;
+    }
+}
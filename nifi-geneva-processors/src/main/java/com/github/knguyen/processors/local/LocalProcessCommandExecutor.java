@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.local;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.context.PropertyContext;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
+import org.apache.nifi.processors.standard.util.FileTransfer;
+import org.apache.nifi.util.StringUtils;
+
+import com.github.knguyen.processors.diff.ReportFilter;
+import com.github.knguyen.processors.geneva.BaseExecuteGeneva;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.IStreamHandler;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RemoteFileInfo;
+import com.github.knguyen.processors.geneva.RunCancelledException;
+import com.github.knguyen.processors.geneva.RunListener;
+import com.github.knguyen.processors.geneva.RunTimeoutException;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.utils.LocalFiles;
+
+/**
+ * Runs commands as child processes of NiFi, for nodes that are installed on the Geneva application server itself.
+ *
+ * The command is written to the standard input of {@code /bin/sh} rather than passed as an argument, so that the runrep
+ * password never shows up in the process list. The report is read straight from the local disk.
+ */
+public class LocalProcessCommandExecutor implements RemoteCommandExecutor {
+    static final String SHELL = "/bin/sh";
+    static final String PERL = "perl";
+    private static final long PROCESS_START_TOLERANCE_MILLIS = 5000;
+
+    private final PropertyContext context;
+    private final ComponentLog logger;
+
+    private volatile boolean closed = false;
+    private final Set<Process> runningProcesses = ConcurrentHashMap.newKeySet();
+    private final Set<Process> cancelledProcesses = ConcurrentHashMap.newKeySet();
+    private volatile RunListener runListener;
+
+    public LocalProcessCommandExecutor(final PropertyContext context, final ComponentLog logger) {
+        this.context = context;
+        this.logger = logger;
+    }
+
+    /**
+     * There is no SSH connection to make, so the provider is ignored.
+     */
+    @Override
+    public void setSSHClientProvider(final SSHClientProvider sshClientProvider) {
+        // nothing to do
+    }
+
+    @Override
+    public String getProtocolName() {
+        return "local";
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
+            throws IOException, GenevaException {
+        run(command, null, originalFlowFile);
+    }
+
+    /**
+     * @return Where the standard error of a run is written: next to its report if the run is for a FlowFile, so that
+     *         it can be checked when the run is reattached to, or else a temporary file.
+     */
+    private static Path createStdErrFile(final ICommand command, final FlowFile flowFile) throws IOException {
+        if (flowFile != null && command.getOutputResource() != null) {
+            final Path stdErrFile = Paths.get(RemoteCommandExecutor.getStdErrResource(command.getOutputResource()));
+            if (Files.isDirectory(stdErrFile.getParent()))
+                return stdErrFile;
+        }
+        return Files.createTempFile("geneva-", ".stderr");
+    }
+
+    @Override
+    public String executeForOutput(final ICommand command, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        final Path stdOutFile = Files.createTempFile("geneva-", ".stdout");
+        try {
+            run(command, stdOutFile, null);
+            return Files.readString(stdOutFile, StandardCharsets.UTF_8);
+        } finally {
+            Files.deleteIfExists(stdOutFile);
+        }
+    }
+
+    /**
+     * Runs a command through the shell, discarding its standard output unless a file is given to capture it. The run
+     * listener is told about the process when it is run for a FlowFile.
+     */
+    private void run(final ICommand command, final Path stdOutFile, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        closed = false;
+
+        // stderr goes to a file rather than a pipe, so that a hung runrep cannot block us past the data timeout
+        final Path stdErrFile = createStdErrFile(command, flowFile);
+        final ProcessBuilder builder = new ProcessBuilder(SHELL, "-s");
+        builder.redirectOutput(
+                stdOutFile == null ? ProcessBuilder.Redirect.DISCARD : ProcessBuilder.Redirect.to(stdOutFile.toFile()));
+        builder.redirectError(stdErrFile.toFile());
+
+        Process process = null;
+        try {
+            process = builder.start();
+            runningProcesses.add(process);
+            final RunListener listener = runListener;
+            if (listener != null && flowFile != null)
+                listener.onStarted(flowFile, null, String.valueOf(process.pid()));
+            try (final OutputStream stdin = process.getOutputStream()) {
+                stdin.write(command.getCommand().getBytes(StandardCharsets.UTF_8));
+                stdin.write(("\necho " + RUN_COMPLETED_MARKER + " >&2\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            final PropertyValue executionTimeout = context.getProperty(BaseExecuteGeneva.EXECUTION_TIMEOUT);
+            final long timeoutMillis = (executionTimeout.isSet() ? executionTimeout
+                    : context.getProperty(FileTransfer.DATA_TIMEOUT)).asTimePeriod(TimeUnit.MILLISECONDS);
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS))
+                throw new RunTimeoutException(String.format("Command did not finish within %d ms: %s",
+                        timeoutMillis, command.getObfuscatedCommand()));
+            if (cancelledProcesses.remove(process))
+                throw new RunCancelledException("The run was cancelled and killed");
+
+            try (BufferedReader stdErrReader = Files.newBufferedReader(stdErrFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = stdErrReader.readLine()) != null) {
+                    if (StringUtils.isNotBlank(line))
+                        this.maybeRaiseException("Failed to run command in runrep", line,
+                                command.getObfuscatedCommand());
+                }
+            }
+
+            if (process.exitValue() != 0)
+                logger.warn("Command exited with status {}: {}", process.exitValue(), command.getObfuscatedCommand());
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the command to finish", exc);
+        } finally {
+            if (process != null) {
+                runningProcesses.remove(process);
+                cancelledProcesses.remove(process);
+                destroyTree(process);
+            }
+            Files.deleteIfExists(stdErrFile);
+        }
+    }
+
+    @Override
+    public void cancelRuns() {
+        for (final Process process : runningProcesses) {
+            cancelledProcesses.add(process);
+            destroyTree(process);
+        }
+    }
+
+    @Override
+    public void setRunListener(final RunListener runListener) {
+        this.runListener = runListener;
+    }
+
+    /**
+     * Waits for a process started before NiFi went down. A process whose start time is after the run's is a different
+     * one that reused the PID, so it is treated as gone.
+     */
+    @Override
+    public boolean reattach(final String pid, final long startedAt, final String outputResource,
+            final FlowFile flowFile) throws IOException {
+        final Optional<ProcessHandle> handle = ProcessHandle.of(Long.parseLong(pid))
+                .filter(process -> process.info().startInstant()
+                        .map(start -> start.toEpochMilli() <= startedAt + PROCESS_START_TOLERANCE_MILLIS)
+                        .orElse(false));
+        if (handle.isPresent()) {
+            final long remainingMillis = BaseExecuteGeneva.getReattachDeadline(context, startedAt)
+                    - System.currentTimeMillis();
+            try {
+                handle.get().onExit().get(Math.max(remainingMillis, 0), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException exc) {
+                logger.info("Run {} took too long to wait for after NiFi restarted; killing it", pid);
+                handle.get().descendants().forEach(ProcessHandle::destroyForcibly);
+                handle.get().destroyForcibly();
+                return false;
+            } catch (final ExecutionException exc) {
+                throw new IOException("Failed to wait for run " + pid, exc);
+            } catch (final InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for run " + pid, exc);
+            }
+        }
+
+        final Path output = Paths.get(outputResource);
+        final Path stdErrFile = Paths.get(RemoteCommandExecutor.getStdErrResource(outputResource));
+        try {
+            if (!Files.isRegularFile(output) || Files.size(output) == 0 || !Files.isRegularFile(stdErrFile))
+                return false;
+            if (!isCompletedWithoutError(Files.readString(stdErrFile, StandardCharsets.UTF_8))) {
+                logger.info("Run {} did not complete without error while NiFi was down; running it again", pid);
+                return false;
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(stdErrFile);
+        }
+    }
+
+    /**
+     * Kills a process along with its children, since killing the shell alone would leave runrep running.
+     */
+    private static void destroyTree(final Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        if (process.isAlive())
+            process.destroyForcibly();
+    }
+
+    @Override
+    public FlowFile getRemoteFile(final ProcessContext context, final ICommand command, final FlowFile originalFlowFile,
+            final ProcessSession processSession, final IStreamHandler streamHandler) throws IOException {
+        final Path path = Paths.get(command.getOutputResource());
+        try {
+            return streamHandler.handleFile(context, originalFlowFile, processSession, path);
+        } catch (final NoSuchFileException exc) {
+            throw new FileNotFoundException(String.format("Could not find the report `%s`.", path));
+        }
+    }
+
+    @Override
+    public List<FlowFile> getRemoteFiles(final ProcessContext context, final List<String> resources,
+            final FlowFile originalFlowFile, final ProcessSession processSession) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (final String resource : resources)
+            files.add(Paths.get(resource));
+        return LocalFiles.importChildren(processSession, originalFlowFile, files);
+    }
+
+    @Override
+    public void deleteFile(final ICommand command, final FlowFile flowFile) throws IOException {
+        LocalFiles.delete(Paths.get(command.getOutputResource()));
+    }
+
+    @Override
+    public List<String> deleteFiles(final List<String> resources, final FlowFile flowFile) {
+        final List<String> failed = new ArrayList<>();
+        for (final String resource : resources) {
+            try {
+                LocalFiles.delete(Paths.get(resource));
+            } catch (final FileNotFoundException exc) {
+                // already gone
+            } catch (final IOException exc) {
+                logger.debug("Could not remove `{}`", resource, exc);
+                failed.add(resource);
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public List<RemoteFileInfo> listFiles(final String directory, final FlowFile flowFile) throws IOException {
+        final List<RemoteFileInfo> files = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(directory))) {
+            for (final Path path : stream) {
+                final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isRegularFile() || attributes.isDirectory())
+                    files.add(new RemoteFileInfo(path.toString(), path.getFileName().toString(),
+                            attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public void createDirectories(final String directory, final FlowFile flowFile) throws IOException {
+        Files.createDirectories(Paths.get(directory));
+    }
+
+    @Override
+    public String cacheFile(final String directory, final String name, final byte[] content, final FlowFile flowFile)
+            throws IOException {
+        return LocalFiles.ensureCached(Paths.get(directory), name, content).toString();
+    }
+
+    /**
+     * Runs the bundled filter script with the local `perl`. The script is piped to the interpreter, so nothing has to
+     * be installed next to the reports.
+     */
+    @Override
+    public ReportFilter.Statistics filterFile(final String resource, final ReportFilter filter, final FlowFile flowFile)
+            throws IOException {
+        final List<String> commandLine = new ArrayList<>();
+        commandLine.add(PERL);
+        commandLine.add("-");
+        commandLine.addAll(filter.getArguments());
+        commandLine.add(resource);
+
+        final Path stdErrFile = Files.createTempFile("geneva-filter-", ".stderr");
+        final ProcessBuilder builder = new ProcessBuilder(commandLine);
+        builder.redirectError(stdErrFile.toFile());
+
+        Process process = null;
+        try {
+            process = builder.start();
+            try (final OutputStream stdin = process.getOutputStream()) {
+                stdin.write(ReportFilter.readScript());
+            }
+            final String output;
+            try (final InputStream stdout = process.getInputStream()) {
+                output = new String(stdout.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            final long timeoutMillis = context.getProperty(FileTransfer.DATA_TIMEOUT)
+                    .asTimePeriod(TimeUnit.MILLISECONDS);
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS))
+                throw new IOException(String.format("Filtering `%s` did not finish within %d ms", resource,
+                        timeoutMillis));
+            if (process.exitValue() != 0)
+                throw new IOException(String.format("Filtering `%s` exited with status %d: %s", resource,
+                        process.exitValue(), Files.readString(stdErrFile, StandardCharsets.UTF_8).trim()));
+            return ReportFilter.Statistics.parse(output);
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the report filter to finish", exc);
+        } finally {
+            if (process != null && process.isAlive())
+                process.destroyForcibly();
+            Files.deleteIfExists(stdErrFile);
+        }
+    }
+}
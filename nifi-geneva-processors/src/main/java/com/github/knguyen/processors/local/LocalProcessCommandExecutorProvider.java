@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.local;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessContext;
+
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutorProvider;
+
+/**
+ * Provides {@link LocalProcessCommandExecutor} instances, used when the `Execution Transport` is `Local Process`.
+ */
+public class LocalProcessCommandExecutorProvider implements RemoteCommandExecutorProvider {
+    /**
+     * Creates and returns a RemoteCommandExecutor object that runs commands on the NiFi host.
+     *
+     * @param context
+     *            the ProcessContext to be used when creating the RemoteCommandExecutor
+     * @param logger
+     *            the ComponentLog to be used when creating the RemoteCommandExecutor
+     *
+     * @return a new LocalProcessCommandExecutor
+     */
+    @Override
+    public RemoteCommandExecutor createExecutor(final ProcessContext context, final ComponentLog logger) {
+        return new LocalProcessCommandExecutor(context, logger);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.ssh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+
+import com.github.knguyen.processors.delta.BlockSignatures;
+import com.github.knguyen.processors.delta.DeltaReconstructor;
+import com.github.knguyen.processors.delta.DeltaReconstructor.DeltaStatistics;
+import com.github.knguyen.processors.geneva.IStreamHandler;
+import com.github.knguyen.processors.utils.StringUtils;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.connection.channel.direct.Session.Command;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.SFTPClient;
+
+/**
+ * Fetches a report that is regenerated at a fixed remote path by only transferring the parts that changed since the
+ * previous run.
+ *
+ * The previous version of every report is kept in a local cache directory (the "basis" file). On the next run the
+ * block signatures of the basis are streamed to a small helper script on the Geneva host, which scans the new report
+ * with a rolling checksum and answers with a mix of "copy block N" instructions and literal data. The new report is
+ * rebuilt locally, verified against the digest computed by the helper and becomes the basis for the following run.
+ *
+ * The first run for a given path, or any run where the helper fails, falls back to a plain SFTP download.
+ */
+public class DeltaTransfer {
+    static final String HELPER_RESOURCE = "delta-helper.pl";
+
+    /**
+     * Concurrent tasks fetching the same report must not rebuild the same basis file at the same time.
+     */
+    private static final ConcurrentMap<Path, Object> BASIS_LOCKS = new ConcurrentHashMap<>();
+
+    private final SSHClient client;
+    private final String targetKey;
+    private final Path cacheDirectory;
+    private final int blockSize;
+    private final String helperDirectory;
+    private final ComponentLog logger;
+
+    public DeltaTransfer(final SSHClient client, final String targetKey, final Path cacheDirectory, final int blockSize,
+            final String helperDirectory, final ComponentLog logger) {
+        this.client = client;
+        this.targetKey = targetKey;
+        this.cacheDirectory = cacheDirectory;
+        this.blockSize = blockSize;
+        this.helperDirectory = helperDirectory;
+        this.logger = logger;
+    }
+
+    /**
+     * Brings the local copy of {@code resource} up to date and hands it to the stream handler.
+     *
+     * @param context
+     *            The process context.
+     * @param resource
+     *            The absolute remote path of the report.
+     * @param flowFile
+     *            The FlowFile that triggered the report run.
+     * @param session
+     *            The process session.
+     * @param streamHandler
+     *            The handler that writes the rebuilt report to the FlowFile.
+     *
+     * @return The FlowFile returned by the stream handler, with transfer statistics added as attributes.
+     *
+     * @throws IOException
+     *             if neither the delta transfer nor the fallback download succeeded.
+     */
+    public FlowFile fetch(final ProcessContext context, final String resource, final FlowFile flowFile,
+            final ProcessSession session, final IStreamHandler streamHandler) throws IOException {
+        final String baseName = StringUtils.sha256Hex(targetKey + ":" + resource);
+        final Path basis = cacheDirectory.resolve(baseName + ".basis");
+        final Path partial = cacheDirectory.resolve(baseName + ".partial");
+
+        synchronized (BASIS_LOCKS.computeIfAbsent(basis, key -> new Object())) {
+            long literalBytes = -1;
+            long matchedBytes = 0;
+
+            if (Files.isRegularFile(basis)) {
+                try {
+                    final DeltaStatistics statistics = rebuild(basis, resource, partial);
+                    literalBytes = statistics.getLiteralBytes();
+                    matchedBytes = statistics.getMatchedBytes();
+                } catch (final IOException exc) {
+                    logger.warn("Delta transfer of `{}` failed, falling back to a full download", resource, exc);
+                }
+            }
+
+            if (literalBytes < 0)
+                literalBytes = download(resource, partial);
+
+            Files.move(partial, basis, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            FlowFile result;
+            try (final InputStream in = new FileInputStream(basis.toFile())) {
+                result = streamHandler.handleStream(context, flowFile, session, in);
+            }
+            result = session.putAttribute(result, "geneva.delta.literalbytes", String.valueOf(literalBytes));
+            return session.putAttribute(result, "geneva.delta.matchedbytes", String.valueOf(matchedBytes));
+        }
+    }
+
+    private DeltaStatistics rebuild(final Path basis, final String resource, final Path partial) throws IOException {
+        final byte[] helper = RemoteResourceCache.readBundledResource(DeltaTransfer.class, HELPER_RESOURCE);
+        final String helperPath = RemoteResourceCache.ensureUploaded(client, targetKey, helperDirectory,
+                HELPER_RESOURCE, helper);
+
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec(String.format("perl %s %s", StringUtils.shellQuote(helperPath),
+                    StringUtils.shellQuote(resource)));
+
+            try (final OutputStream stdin = new BufferedOutputStream(cmd.getOutputStream())) {
+                BlockSignatures.write(basis, blockSize, stdin);
+            }
+
+            final DeltaStatistics statistics;
+            try (final InputStream delta = new BufferedInputStream(cmd.getInputStream());
+                    final OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+                statistics = DeltaReconstructor.apply(basis, blockSize, delta, out);
+            }
+
+            cmd.join();
+            final Integer exitStatus = cmd.getExitStatus();
+            if (exitStatus == null || exitStatus != 0) {
+                final String error = new String(cmd.getErrorStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+                throw new IOException(
+                        String.format("Delta helper exited with status %s: %s", exitStatus, error));
+            }
+            return statistics;
+        } catch (final IOException exc) {
+            Files.deleteIfExists(partial);
+            throw exc;
+        }
+    }
+
+    private long download(final String resource, final Path partial) throws IOException {
+        try (final SFTPClient sftpClient = client.newSFTPClient();
+                final RemoteFile remoteFile = sftpClient.open(resource);
+                final InputStream in = remoteFile.new ReadAheadRemoteFileInputStream(16)) {
+            return Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException exc) {
+            Files.deleteIfExists(partial);
+            throw exc;
+        }
+    }
+}
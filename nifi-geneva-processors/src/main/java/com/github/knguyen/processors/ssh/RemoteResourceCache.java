@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.knguyen.processors.utils.StringUtils;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.SFTPClient;
+import net.schmizz.sshj.xfer.InMemorySourceFile;
+
+/**
+ * Makes sure small helper files (scripts, RSL definitions, etc.) exist on the Geneva host before a command that needs
+ * them is executed. Files are named after the hash of their content, so an existing file never has to be compared or
+ * overwritten, and a helper that changes between releases simply lands next to the old one.
+ *
+ * Uploads go to a temporary name first and are renamed into place, which keeps concurrent NiFi nodes from ever
+ * executing a half-written helper.
+ */
+public final class RemoteResourceCache {
+    /**
+     * The remote paths already known to exist, keyed by `host:port:path`. This is shared by every executor in the JVM so
+     * that the existence check happens once per host rather than once per FlowFile.
+     */
+    private static final Set<String> KNOWN_PATHS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Ensures that the given content exists under {@code directory} on the remote host and returns its absolute path.
+     *
+     * @param client
+     *            A connected SSH client.
+     * @param targetKey
+     *            Identifies the remote host, typically `host:port`.
+     * @param directory
+     *            The remote directory to place the file in. It is created when missing.
+     * @param name
+     *            The logical file name, e.g. `delta-helper.pl`. The remote name is prefixed with the content hash.
+     * @param content
+     *            The file content.
+     *
+     * @return The absolute remote path of the file.
+     *
+     * @throws IOException
+     *             if the file cannot be checked or uploaded.
+     */
+    public static String ensureUploaded(final SSHClient client, final String targetKey, final String directory,
+            final String name, final byte[] content) throws IOException {
+        final String hash = StringUtils.sha256Hex(content).substring(0, 16);
+        final String remotePath = String.format("%s/%s-%s", trimTrailingSlash(directory), hash, name);
+        return ensureUploaded(client, targetKey, directory, remotePath, name, content);
+    }
+
+    /**
+     * Ensures that the given content exists as {@code directory/<hash>/name} on the remote host and returns its
+     * absolute path. Unlike {@link #ensureUploaded(SSHClient, String, String, String, byte[])}, the file keeps its
+     * name, which matters for files that are referred to by name, such as RSL definitions.
+     *
+     * @param client
+     *            A connected SSH client.
+     * @param targetKey
+     *            Identifies the remote host, typically `host:port`.
+     * @param directory
+     *            The remote directory to place the hash directory in. It is created when missing.
+     * @param name
+     *            The file name, e.g. `glmap_netassets.rsl`.
+     * @param content
+     *            The file content.
+     *
+     * @return The absolute remote path of the file.
+     *
+     * @throws IOException
+     *             if the file cannot be checked or uploaded.
+     */
+    public static String ensureUploadedUnderHash(final SSHClient client, final String targetKey,
+            final String directory, final String name, final byte[] content) throws IOException {
+        final String hashDirectory = trimTrailingSlash(directory) + "/"
+                + StringUtils.sha256Hex(content).substring(0, 16);
+        return ensureUploaded(client, targetKey, hashDirectory, hashDirectory + "/" + name, name, content);
+    }
+
+    private static String ensureUploaded(final SSHClient client, final String targetKey, final String directory,
+            final String remotePath, final String name, final byte[] content) throws IOException {
+        final String cacheKey = targetKey + ":" + remotePath;
+
+        if (KNOWN_PATHS.contains(cacheKey))
+            return remotePath;
+
+        try (final SFTPClient sftpClient = client.newSFTPClient()) {
+            if (sftpClient.statExistence(remotePath) == null) {
+                sftpClient.mkdirs(directory);
+
+                final String partPath = remotePath + ".part" + Long.toHexString(System.nanoTime());
+                sftpClient.put(new ByteArraySourceFile(name, content), partPath);
+                try {
+                    sftpClient.rename(partPath, remotePath);
+                } catch (final IOException exc) {
+                    // another node may have won the race, which is fine as long as the file is there now
+                    sftpClient.rm(partPath);
+                    if (sftpClient.statExistence(remotePath) == null)
+                        throw exc;
+                }
+            }
+        }
+
+        KNOWN_PATHS.add(cacheKey);
+        return remotePath;
+    }
+
+    /**
+     * Reads a resource bundled next to the given class.
+     *
+     * @param anchor
+     *            The class whose package holds the resource.
+     * @param name
+     *            The resource name.
+     *
+     * @return The resource content.
+     *
+     * @throws IOException
+     *             if the resource is missing or cannot be read.
+     */
+    public static byte[] readBundledResource(final Class<?> anchor, final String name) throws IOException {
+        try (final InputStream in = anchor.getResourceAsStream(name)) {
+            if (in == null)
+                throw new FileNotFoundException(
+                        String.format("Could not find the bundled resource `%s` next to `%s`.", name, anchor.getName()));
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Forgets every remote path known to exist. Mostly useful in tests.
+     */
+    static void clear() {
+        KNOWN_PATHS.clear();
+    }
+
+    private static String trimTrailingSlash(final String directory) {
+        return directory.endsWith("/") && directory.length() > 1 ? directory.substring(0, directory.length() - 1)
+                : directory;
+    }
+
+    private static final class ByteArraySourceFile extends InMemorySourceFile {
+        private final String name;
+        private final byte[] content;
+
+        ByteArraySourceFile(final String name, final byte[] content) {
+            this.name = name;
+            this.content = content;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getLength() {
+            return content.length;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+    }
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private RemoteResourceCache() {
+    }
+}
@@ -16,42 +16,118 @@
  */
 package com.github.knguyen.processors.ssh;
 
+import static com.github.knguyen.processors.utils.StringUtils.shellQuote;
+
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.nifi.context.PropertyContext;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
 import org.apache.nifi.processors.standard.ssh.StandardSSHClientProvider;
+import org.apache.nifi.processors.standard.socket.ClientConnectException;
 import org.apache.nifi.processors.standard.util.FileTransfer;
 import org.apache.nifi.processors.standard.util.PermissionDeniedException;
 import org.apache.nifi.processors.standard.util.SFTPTransfer;
 import org.apache.nifi.util.StringUtils;
 import org.apache.nifi.util.file.FileUtils;
 
+import com.github.knguyen.processors.diff.ReportFilter;
+import com.github.knguyen.processors.geneva.BaseExecuteGeneva;
 import com.github.knguyen.processors.geneva.GenevaException;
 import com.github.knguyen.processors.geneva.IStreamHandler;
 import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RemoteFileInfo;
+import com.github.knguyen.processors.geneva.RunCancelledException;
+import com.github.knguyen.processors.geneva.RunListener;
+import com.github.knguyen.processors.geneva.RunTimeoutException;
 import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.utils.LocalFiles;
 
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.connection.channel.direct.Session;
 import net.schmizz.sshj.connection.channel.direct.Session.Command;
+import net.schmizz.sshj.sftp.FileAttributes;
 import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import net.schmizz.sshj.sftp.Response;
 import net.schmizz.sshj.sftp.SFTPClient;
 import net.schmizz.sshj.sftp.SFTPException;
 
 public class SSHCommandExecutor implements RemoteCommandExecutor {
+    private static final int MIN_DELTA_BLOCK_SIZE = 1024;
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+    private static final int KILL_TIMEOUT_SECONDS = 10;
+    private static final long REATTACH_POLL_MILLIS = 5000;
+    private static final long PROCESS_START_TOLERANCE_MILLIS = 5000;
+
+    /**
+     * Directories created by {@link #createDirectories}, keyed by host and port, so that every shard of a sharded
+     * output directory costs one `mkdir` per NiFi node at most. A directory is forgotten when a run or fetch into it
+     * fails.
+     */
+    private static final Set<String> KNOWN_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    static final String PID_PREFIX = "geneva.pid=";
+
+    /**
+     * Times the runs that have an `Execution Timeout`, and hands those that exceed it to {@link #KILLS}.
+     */
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Geneva run deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Downloads the sibling outputs of the reports, shared by every executor so that a report does not start threads of
+     * its own. A report uses at most {@link #MAX_PARALLEL_DOWNLOADS} of them.
+     */
+    private static final ExecutorService DOWNLOADS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "Geneva sibling download");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Kills the runs that exceed their deadline. A kill is an SSH exec that may block for up to
+     * {@link #KILL_TIMEOUT_SECONDS} on a slow host, so it must not hold up the deadlines of the other runs.
+     */
+    private static final ExecutorService KILLS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "Geneva run kill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected SSHClientProvider sshClientProvider = new StandardSSHClientProvider();
 
     public void setSSHClientProvider(SSHClientProvider sshClientProvider) {
@@ -62,6 +138,8 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
     private final ComponentLog logger;
 
     private SSHClient sshClient;
+    private final Set<RemoteRun> runs = ConcurrentHashMap.newKeySet();
+    private volatile RunListener runListener;
 
     private volatile boolean closed = false;
     private String activeHostname;
@@ -94,20 +172,26 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
         // host from the properties/flow-file, and if different then we need to close and reinitialize, if same we can
         // reuse
         if (sshClient != null) {
-            if (Objects.equals(evaledHostname, activeHostname) && Objects.equals(evaledPort, activePort)
-                    && Objects.equals(evaledUsername, activeUsername) && Objects.equals(evaledPassword, activePassword)
+            if (sshClient.isConnected() && Objects.equals(evaledHostname, activeHostname)
+                    && Objects.equals(evaledPort, activePort) && Objects.equals(evaledUsername, activeUsername)
+                    && Objects.equals(evaledPassword, activePassword)
                     && Objects.equals(evaledPrivateKeyPath, activePrivateKeyPath)
                     && Objects.equals(evaledPrivateKeyPassphrase, activePrivateKeyPassphrase)) {
                 // destination matches so we can keep our current session
                 return sshClient;
             } else {
-                // this flowFile is going to a different destination, reset session
+                // this flowFile is going to a different destination, or the connection dropped, reset session
                 close();
             }
         }
 
         final Map<String, String> attributes = flowFile == null ? Collections.emptyMap() : flowFile.getAttributes();
-        this.sshClient = sshClientProvider.getClient(context, attributes);
+        try {
+            this.sshClient = sshClientProvider.getClient(context, attributes);
+        } catch (final ClientConnectException exc) {
+            // fail like any other I/O error, so that the host pool, circuit breaker and retries see it
+            throw new IOException(String.format("Failed to connect to %s:%s", evaledHostname, evaledPort), exc);
+        }
 
         activeHostname = evaledHostname;
         activePort = evaledPort;
@@ -158,10 +242,30 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
     @Override
     public void execute(final ICommand command, final FlowFile originalFlowFile, final ProcessSession processSession)
             throws IOException, GenevaException {
+        try {
+            run(command, originalFlowFile);
+        } catch (final IOException | GenevaException exc) {
+            forgetDirectory(command.getOutputResource());
+            throw exc;
+        }
+    }
+
+    private void run(final ICommand command, final FlowFile originalFlowFile) throws IOException, GenevaException {
         final SSHClient client = ensureSSHClientConnected(originalFlowFile);
+        // the standard error is only kept on the host for a reattach, which needs the job journal
+        final String stdErrResource = command.getOutputResource() == null || !isJournaled() ? null
+                : RemoteCommandExecutor.getStdErrResource(command.getOutputResource());
 
         try (final Session session = client.startSession()) {
-            final Command cmd = session.exec(command.getCommand());
+            // the shell prints its PID first, so that the run can be killed on the host
+            final Command cmd = session
+                    .exec("echo " + PID_PREFIX + "$$; " + keepStdErr(command.getCommand(), stdErrResource));
+            final RemoteRun run = new RemoteRun(client, session, readPid(cmd.getInputStream()));
+            runs.add(run);
+            final RunListener listener = runListener;
+            if (listener != null && run.pid != null)
+                listener.onStarted(originalFlowFile, activeHostname, run.pid);
+            final ScheduledFuture<?> deadline = scheduleDeadline(run);
 
             // Nested try-with-resources for BufferedReader and InputStreamReader
             try (BufferedReader stdErrReader = new BufferedReader(new InputStreamReader(cmd.getErrorStream()))) {
@@ -174,21 +278,228 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
                         break;
                     }
                 }
+            } catch (final IOException exc) {
+                run.rethrowIfKilled();
+                throw exc;
+            } finally {
+                if (deadline != null)
+                    deadline.cancel(false);
+                runs.remove(run);
+                removeStdErr(client, stdErrResource);
+            }
+            run.rethrowIfKilled();
+
+            // wait x seconds for the file to materialise
+            if (!Boolean.TRUE.toString().equals(System.getProperty("skipSleep")))
+                FileUtils.sleepQuietly(3000);
+        }
+    }
+
+    /**
+     * @return {@code true} if runs may be reattached to after NiFi restarts, see {@link BaseExecuteGeneva#JOB_JOURNAL}.
+     */
+    private boolean isJournaled() {
+        return Boolean.TRUE.equals(context.getProperty(BaseExecuteGeneva.JOB_JOURNAL).asBoolean());
+    }
+
+    /**
+     * Has the shell keep a copy of the standard error of a command in a file, followed by
+     * {@link RemoteCommandExecutor#RUN_COMPLETED_MARKER} once the command exited, so that the outcome of the run can be
+     * checked when it is reattached to. The standard error still reaches the channel.
+     */
+    static String keepStdErr(final String command, final String stdErrResource) {
+        if (stdErrResource == null)
+            return command;
+
+        final String file = shellQuote(stdErrResource);
+        return "{ { " + command + "\n} 2>&1 1>&3 3>&- | tee " + file + " 1>&2 3>&-; } 3>&1; echo "
+                + RUN_COMPLETED_MARKER + " >> " + file;
+    }
+
+    /**
+     * Removes the standard error file of a run that was followed to its end, which a reattach will never read.
+     */
+    private void removeStdErr(final SSHClient client, final String stdErrResource) {
+        if (stdErrResource == null)
+            return;
+
+        try (final Session session = client.startSession()) {
+            session.exec("rm -f -- " + shellQuote(stdErrResource)).join(KILL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final IOException exc) {
+            logger.debug("Failed to remove `{}` from the host", stdErrResource, exc);
+        }
+    }
+
+    /**
+     * Reads the PID the shell of a run prints before running the command.
+     *
+     * @return The PID, or {@code null} if the shell printed something else, in which case the run cannot be killed.
+     */
+    static String readPid(final InputStream stdout) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int next;
+        while ((next = stdout.read()) != -1 && next != '\n')
+            line.append((char) next);
+
+        final String pid = line.toString().trim();
+        if (!pid.startsWith(PID_PREFIX) || !pid.substring(PID_PREFIX.length()).matches("\\d+"))
+            return null;
+        return pid.substring(PID_PREFIX.length());
+    }
+
+    private ScheduledFuture<?> scheduleDeadline(final RemoteRun run) {
+        if (!context.getProperty(BaseExecuteGeneva.EXECUTION_TIMEOUT).isSet())
+            return null;
+
+        final long timeoutMillis = context.getProperty(BaseExecuteGeneva.EXECUTION_TIMEOUT)
+                .asTimePeriod(TimeUnit.MILLISECONDS);
+        return DEADLINES.schedule(() -> KILLS.execute(() -> run.kill(new RunTimeoutException(
+                String.format("runrep ran for longer than %d ms and was killed on the host", timeoutMillis)))),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void cancelRuns() {
+        for (final RemoteRun run : runs)
+            run.kill(new RunCancelledException("The run was cancelled and killed on the host"));
+    }
+
+    @Override
+    public void setRunListener(final RunListener runListener) {
+        this.runListener = runListener;
+    }
 
-                // wait x seconds for the file to materialise
-                if (!Boolean.TRUE.toString().equals(System.getProperty("skipSleep")))
-                    FileUtils.sleepQuietly(3000);
+    @Override
+    public boolean reattach(final String pid, final long startedAt, final String outputResource,
+            final FlowFile flowFile) throws IOException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+        final long deadline = BaseExecuteGeneva.getReattachDeadline(context, startedAt);
+        while (isRunning(client, pid, startedAt)) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.info("Run {} took too long to wait for after NiFi restarted; killing it", pid);
+                killProcessGroup(client, pid);
+                return false;
             }
+            FileUtils.sleepQuietly(REATTACH_POLL_MILLIS);
+        }
+
+        // the standard error file is only read once, whatever the outcome
+        final String stdErrResource = shellQuote(RemoteCommandExecutor.getStdErrResource(outputResource));
+        final String stdErr;
+        final Integer exitStatus;
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec("test -s " + shellQuote(outputResource) + " && cat -- " + stdErrResource
+                    + "; status=$?; rm -f -- " + stdErrResource + "; exit $status");
+            stdErr = new String(cmd.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            cmd.join(context.getProperty(FileTransfer.DATA_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS),
+                    TimeUnit.MILLISECONDS);
+            exitStatus = cmd.getExitStatus();
+        }
+        if (!Integer.valueOf(0).equals(exitStatus))
+            return false;
+        if (!isCompletedWithoutError(stdErr)) {
+            logger.info("Run {} did not complete without error while NiFi was down; running it again", pid);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the process is running and started no later than the run, i.e. its PID was not reused
+     *         by another process since.
+     */
+    private boolean isRunning(final SSHClient client, final String pid, final long startedAt) throws IOException {
+        final String elapsedSeconds;
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec("ps -o etimes= -p " + pid);
+            elapsedSeconds = new String(cmd.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            cmd.join(context.getProperty(FileTransfer.DATA_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS),
+                    TimeUnit.MILLISECONDS);
+        }
+        if (!elapsedSeconds.matches("\\d+"))
+            return false;
+
+        final long processStart = System.currentTimeMillis()
+                - TimeUnit.SECONDS.toMillis(Long.parseLong(elapsedSeconds));
+        return processStart <= startedAt + PROCESS_START_TOLERANCE_MILLIS;
+    }
+
+    /**
+     * Kills the process group of a run's shell, which holds runrep and its children.
+     */
+    private void killProcessGroup(final SSHClient client, final String pid) {
+        try (final Session killSession = client.startSession()) {
+            final Command kill = killSession.exec("kill -TERM -- -" + pid + " 2>/dev/null || kill -TERM " + pid);
+            kill.join(KILL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final IOException exc) {
+            logger.warn("Failed to kill run {} on the host", pid, exc);
+        }
+    }
+
+    @Override
+    public String executeForOutput(final ICommand command, final FlowFile flowFile)
+            throws IOException, GenevaException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec(command.getCommand());
+            final String output = new String(cmd.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            cmd.join(context.getProperty(FileTransfer.DATA_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS),
+                    TimeUnit.MILLISECONDS);
+
+            final String error = new String(cmd.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+            for (final String line : error.split("\\r?\\n")) {
+                if (StringUtils.isNotBlank(line))
+                    this.maybeRaiseException("Failed to run command in runrep", line, command.getObfuscatedCommand());
+            }
+            return output;
         }
     }
 
     @Override
     public FlowFile getRemoteFile(final ProcessContext context, final ICommand command, final FlowFile originalFlowFile,
             final ProcessSession processSession, IStreamHandler streamHandler) throws IOException {
-        final SSHClient client = ensureSSHClientConnected(originalFlowFile);
+        try {
+            return fetchRemoteFile(context, command, originalFlowFile, processSession, streamHandler);
+        } catch (final IOException exc) {
+            forgetDirectory(command.getOutputResource());
+            throw exc;
+        }
+    }
 
+    private FlowFile fetchRemoteFile(final ProcessContext context, final ICommand command,
+            final FlowFile originalFlowFile, final ProcessSession processSession, IStreamHandler streamHandler)
+            throws IOException {
         final String resource = command.getOutputResource();
+        final Path sharedMountPath = getSharedMountPath(resource);
+        if (sharedMountPath != null) {
+            final long visibilityTimeout = context.getProperty(BaseExecuteGeneva.SHARED_MOUNT_VISIBILITY_TIMEOUT)
+                    .asTimePeriod(TimeUnit.MILLISECONDS);
+            LocalFiles.awaitVisible(sharedMountPath, visibilityTimeout);
+            return streamHandler.handleFile(context, originalFlowFile, processSession, sharedMountPath);
+        }
+
+        final SSHClient client = ensureSSHClientConnected(originalFlowFile);
+        if (isDeltaTransferEnabled(context, originalFlowFile)) {
+            final DeltaTransfer deltaTransfer = new DeltaTransfer(client, activeHostname + ":" + activePort,
+                    Paths.get(context.getProperty(BaseExecuteGeneva.DELTA_TRANSFER_CACHE_DIRECTORY).getValue()),
+                    getDeltaTransferBlockSize(context),
+                    context.getProperty(BaseExecuteGeneva.REMOTE_HELPER_DIRECTORY)
+                            .evaluateAttributeExpressions(originalFlowFile).getValue(),
+                    logger);
+            return deltaTransfer.fetch(context, resource, originalFlowFile, processSession, streamHandler);
+        }
+
         try (final SFTPClient sftpClient = client.newSFTPClient()) {
+            if (context.getProperty(BaseExecuteGeneva.EXEC_STREAM_THRESHOLD).isSet()) {
+                final double threshold = context.getProperty(BaseExecuteGeneva.EXEC_STREAM_THRESHOLD)
+                        .asDataSize(DataUnit.B);
+                final long size = sftpClient.stat(resource).getSize();
+                if (size >= threshold)
+                    return streamThroughExec(context, client, resource, size, originalFlowFile, processSession,
+                            streamHandler);
+            }
+
             try (final RemoteFile remoteFile = sftpClient.open(resource)) {
                 final InputStream in = getStreamFromRemoteFile(remoteFile);
                 return streamHandler.handleStream(context, originalFlowFile, processSession, in);
@@ -196,7 +507,198 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
         }
     }
 
-    public InputStream getStreamFromRemoteFile(final RemoteFile remoteFile) throws IOException {
+    /**
+     * Downloads the files concurrently over a single SFTP channel into temporary files, then imports them into the
+     * session one by one, since a session must not be used from several threads. Files below `Shared Mount Remote
+     * Directory` are read from the mount instead.
+     */
+    @Override
+    public List<FlowFile> getRemoteFiles(final ProcessContext context, final List<String> resources,
+            final FlowFile originalFlowFile, final ProcessSession processSession) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        final Map<String, Path> downloads = new LinkedHashMap<>();
+        try {
+            for (final String resource : resources) {
+                final Path sharedMountPath = getSharedMountPath(resource);
+                if (sharedMountPath != null) {
+                    LocalFiles.awaitVisible(sharedMountPath, context
+                            .getProperty(BaseExecuteGeneva.SHARED_MOUNT_VISIBILITY_TIMEOUT)
+                            .asTimePeriod(TimeUnit.MILLISECONDS));
+                    files.add(sharedMountPath);
+                } else {
+                    final Path download = Files.createTempFile("geneva-", ".part");
+                    downloads.put(resource, download);
+                    files.add(download);
+                }
+            }
+
+            if (!downloads.isEmpty())
+                downloadConcurrently(downloads, originalFlowFile);
+            return LocalFiles.importChildren(processSession, originalFlowFile, files);
+        } finally {
+            for (final Path download : downloads.values())
+                Files.deleteIfExists(download);
+        }
+    }
+
+    private void downloadConcurrently(final Map<String, Path> downloads, final FlowFile flowFile)
+            throws IOException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+        final List<Future<?>> futures = new ArrayList<>();
+        try (final SFTPClient sftpClient = client.newSFTPClient()) {
+            // every worker takes the next download until none is left
+            final Iterator<Map.Entry<String, Path>> pending = downloads.entrySet().iterator();
+            for (int i = 0; i < Math.min(downloads.size(), MAX_PARALLEL_DOWNLOADS); i++) {
+                futures.add(DOWNLOADS.submit(() -> {
+                    Map.Entry<String, Path> download;
+                    while ((download = next(pending)) != null) {
+                        try (final RemoteFile remoteFile = sftpClient.open(download.getKey());
+                                final InputStream in = getStreamFromRemoteFile(remoteFile)) {
+                            Files.copy(in, download.getValue(), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (final Future<?> future : futures)
+                future.get();
+        } catch (final ExecutionException exc) {
+            if (exc.getCause() instanceof IOException)
+                throw (IOException) exc.getCause();
+            throw new IOException("Could not download the sibling outputs", exc.getCause());
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading the sibling outputs", exc);
+        } finally {
+            for (final Future<?> future : futures)
+                future.cancel(true);
+        }
+    }
+
+    private static <T> T next(final Iterator<T> iterator) {
+        synchronized (iterator) {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    /**
+     * Streams the report through `cat` on an exec channel, which is not throttled by the SFTP request window.
+     */
+    private FlowFile streamThroughExec(final ProcessContext context, final SSHClient client, final String resource,
+            final long size, final FlowFile originalFlowFile, final ProcessSession processSession,
+            final IStreamHandler streamHandler) throws IOException {
+        try (final Session session = client.startSession()) {
+            final Command cmd = session
+                    .exec("cat -- " + shellQuote(resource));
+
+            final FlowFile result;
+            try (final InputStream in = new LengthCheckedInputStream(cmd.getInputStream(), size, resource)) {
+                result = streamHandler.handleStream(context, originalFlowFile, processSession, in);
+            }
+
+            cmd.join(context.getProperty(FileTransfer.DATA_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS),
+                    TimeUnit.MILLISECONDS);
+            final Integer exitStatus = cmd.getExitStatus();
+            if (exitStatus == null || exitStatus != 0)
+                throw new IOException(String.format("Streaming `%s` exited with status %s", resource, exitStatus));
+            return result;
+        }
+    }
+
+    /**
+     * Fails the transfer when the exec channel ends before or after the number of bytes the report was stat'ed at.
+     * Unlike SFTP, `cat` has no framing that would tell a short read from the end of the file.
+     */
+    private static final class LengthCheckedInputStream extends FilterInputStream {
+        private final long expectedLength;
+        private final String resource;
+        private long count;
+
+        LengthCheckedInputStream(final InputStream in, final long expectedLength, final String resource) {
+            super(in);
+            this.expectedLength = expectedLength;
+            this.resource = resource;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0)
+                verify();
+            else
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read < 0)
+                verify();
+            else
+                count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void verify() throws IOException {
+            if (count != expectedLength)
+                throw new IOException(String.format("Received %d bytes of `%s` but expected %d", count, resource,
+                        expectedLength));
+        }
+    }
+
+    /**
+     * Maps a report path on the Geneva host to the same file on the shared mount.
+     *
+     * @return The path of the report on the NiFi node, or {@code null} if no shared mount is configured or the report
+     *         is not written below it.
+     */
+    private Path getSharedMountPath(final String resource) {
+        final String remoteDirectory = context.getProperty(BaseExecuteGeneva.SHARED_MOUNT_REMOTE_DIRECTORY).getValue();
+        if (StringUtils.isBlank(remoteDirectory) || StringUtils.isBlank(resource))
+            return null;
+
+        // compare whole path elements, and never follow `..` out of the mount
+        final Path remoteRoot = Paths.get(remoteDirectory).normalize();
+        final Path remotePath = Paths.get(resource).normalize();
+        if (!remotePath.startsWith(remoteRoot) || remotePath.equals(remoteRoot))
+            return null;
+
+        final Path localRoot = Paths
+                .get(context.getProperty(BaseExecuteGeneva.SHARED_MOUNT_LOCAL_DIRECTORY).getValue());
+        return localRoot.resolve(remoteRoot.relativize(remotePath).toString());
+    }
+
+    /**
+     * Delta transfer only pays off when the same remote path is fetched again, which is only the case when the user
+     * pinned `Report Output Path`.
+     */
+    private boolean isDeltaTransferEnabled(final ProcessContext context, final FlowFile flowFile) {
+        return context.getProperty(BaseExecuteGeneva.DELTA_TRANSFER_CACHE_DIRECTORY).isSet() && StringUtils.isNotBlank(
+                context.getProperty(BaseExecuteGeneva.REPORT_OUTPUT_PATH).evaluateAttributeExpressions(flowFile)
+                        .getValue());
+    }
+
+    private int getDeltaTransferBlockSize(final ProcessContext context) {
+        final double blockSize = context.getProperty(BaseExecuteGeneva.DELTA_TRANSFER_BLOCK_SIZE)
+                .asDataSize(DataUnit.B);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_DELTA_BLOCK_SIZE, blockSize));
+    }
+
+    protected InputStream getStreamFromRemoteFile(final RemoteFile remoteFile) throws IOException {
         try (final RemoteFile.ReadAheadRemoteFileInputStream rfis = remoteFile.new ReadAheadRemoteFileInputStream(16)) {
             return rfis;
         }
@@ -204,6 +706,12 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
 
     @Override
     public void deleteFile(final ICommand command, final FlowFile flowFile) throws IOException {
+        final Path sharedMountPath = getSharedMountPath(command.getOutputResource());
+        if (sharedMountPath != null) {
+            LocalFiles.delete(sharedMountPath);
+            return;
+        }
+
         final SSHClient client = ensureSSHClientConnected(flowFile);
         final String remoteFile = command.getOutputResource();
 
@@ -225,6 +733,145 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
         }
     }
 
+    /**
+     * Removes the reports with a single `rm` and only falls back to removing them one by one over SFTP, in the same
+     * session, when `rm` reports a failure.
+     */
+    @Override
+    public List<String> deleteFiles(final List<String> resources, final FlowFile flowFile) throws IOException {
+        final List<String> failed = new ArrayList<>();
+        final List<String> remoteResources = new ArrayList<>();
+        for (final String resource : resources) {
+            final Path sharedMountPath = getSharedMountPath(resource);
+            if (sharedMountPath == null) {
+                remoteResources.add(resource);
+                continue;
+            }
+
+            try {
+                LocalFiles.delete(sharedMountPath);
+            } catch (final FileNotFoundException exc) {
+                // already gone
+            } catch (final IOException exc) {
+                logger.debug("Could not remove `{}` from the shared mount", sharedMountPath, exc);
+                failed.add(resource);
+            }
+        }
+        if (remoteResources.isEmpty())
+            return failed;
+
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+        final StringBuilder rm = new StringBuilder("rm -f --");
+        for (final String resource : remoteResources)
+            rm.append(' ').append(shellQuote(resource));
+
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec(rm.toString());
+            cmd.join(context.getProperty(FileTransfer.DATA_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS),
+                    TimeUnit.MILLISECONDS);
+            if (Integer.valueOf(0).equals(cmd.getExitStatus()))
+                return failed;
+            logger.debug("`rm` exited with status {}, removing the reports one by one", cmd.getExitStatus());
+        }
+
+        try (final SFTPClient sftpClient = client.newSFTPClient()) {
+            for (final String resource : remoteResources) {
+                try {
+                    sftpClient.rm(resource);
+                } catch (final SFTPException exc) {
+                    if (exc.getStatusCode() != Response.StatusCode.NO_SUCH_FILE) {
+                        logger.debug("Could not remove `{}`", resource, exc);
+                        failed.add(resource);
+                    }
+                }
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public List<RemoteFileInfo> listFiles(final String directory, final FlowFile flowFile) throws IOException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+
+        final List<RemoteFileInfo> files = new ArrayList<>();
+        try (final SFTPClient sftpClient = client.newSFTPClient()) {
+            for (final RemoteResourceInfo info : sftpClient.ls(directory)) {
+                if (!info.isRegularFile() && !info.isDirectory())
+                    continue;
+
+                final FileAttributes attributes = info.getAttributes();
+                files.add(new RemoteFileInfo(info.getPath(), info.getName(), info.isDirectory(), attributes.getSize(),
+                        TimeUnit.SECONDS.toMillis(attributes.getMtime())));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Creates the directory over SFTP, unless it was already created for the same host since NiFi started.
+     */
+    @Override
+    public void createDirectories(final String directory, final FlowFile flowFile) throws IOException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+        final String key = activeHostname + ":" + activePort + ":" + directory;
+        if (KNOWN_DIRECTORIES.contains(key))
+            return;
+
+        try (final SFTPClient sftpClient = client.newSFTPClient()) {
+            sftpClient.mkdirs(directory);
+        }
+        KNOWN_DIRECTORIES.add(key);
+    }
+
+    /**
+     * Forgets that the directory of a report was created, since a failed run or fetch may be due to it having been
+     * removed since, e.g. by a cleaner of the temporary directory. The next run into it creates it again.
+     */
+    private void forgetDirectory(final String resource) {
+        if (resource == null)
+            return;
+
+        final Path parent = Paths.get(resource).getParent();
+        if (parent != null)
+            KNOWN_DIRECTORIES.remove(activeHostname + ":" + activePort + ":" + parent);
+    }
+
+    @Override
+    public String cacheFile(final String directory, final String name, final byte[] content, final FlowFile flowFile)
+            throws IOException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+        return RemoteResourceCache.ensureUploadedUnderHash(client, activeHostname + ":" + activePort, directory, name,
+                content);
+    }
+
+    /**
+     * Runs the bundled filter script on the Geneva host. The script is uploaded to `Remote Helper Directory` once per
+     * host and version.
+     */
+    @Override
+    public ReportFilter.Statistics filterFile(final String resource, final ReportFilter filter, final FlowFile flowFile)
+            throws IOException {
+        final SSHClient client = ensureSSHClientConnected(flowFile);
+        final String helperPath = RemoteResourceCache.ensureUploaded(client, activeHostname + ":" + activePort,
+                context.getProperty(BaseExecuteGeneva.REMOTE_HELPER_DIRECTORY).evaluateAttributeExpressions(flowFile)
+                        .getValue(),
+                ReportFilter.SCRIPT_RESOURCE, ReportFilter.readScript());
+
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec(filter.toCommandLine(helperPath, resource));
+            final String output = new String(cmd.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            cmd.join(context.getProperty(FileTransfer.DATA_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS),
+                    TimeUnit.MILLISECONDS);
+            final Integer exitStatus = cmd.getExitStatus();
+            if (exitStatus == null || exitStatus != 0) {
+                final String error = new String(cmd.getErrorStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+                throw new IOException(
+                        String.format("Filtering `%s` exited with status %s: %s", resource, exitStatus, error));
+            }
+            return ReportFilter.Statistics.parse(output);
+        }
+    }
+
     private SSHClient ensureSSHClientConnected(final FlowFile flowFile) throws IllegalStateException, IOException {
         final SSHClient client = this.getSSHClient(flowFile);
         if (client == null || !client.isConnected()) {
@@ -233,4 +880,43 @@ public class SSHCommandExecutor implements RemoteCommandExecutor {
         }
         return client;
     }
+
+    /**
+     * A run in flight on the host, which can be killed along with its child processes.
+     */
+    private final class RemoteRun {
+        private final SSHClient client;
+        private final Session session;
+        private final String pid;
+        private volatile IOException killed;
+
+        RemoteRun(final SSHClient client, final Session session, final String pid) {
+            this.client = client;
+            this.session = session;
+            this.pid = pid;
+        }
+
+        /**
+         * Kills the process group of the run's shell, which holds runrep and its children, then drops the run's channel
+         * so that the thread waiting for it fails with the given error.
+         */
+        void kill(final IOException reason) {
+            killed = reason;
+            if (pid == null)
+                logger.warn("The PID of a run is unknown; it may keep running on the host");
+            else
+                killProcessGroup(client, pid);
+
+            try {
+                session.close();
+            } catch (final IOException exc) {
+                logger.debug("Failed to close the channel of run {}", pid, exc);
+            }
+        }
+
+        void rethrowIfKilled() throws IOException {
+            if (killed != null)
+                throw killed;
+        }
+    }
 }
@@ -24,6 +24,9 @@ import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.components.Validator;
 
+import com.github.knguyen.processors.diff.ReportFilter;
+import com.github.knguyen.processors.geneva.pool.HostPool;
+
 public class CustomValidators {
     private static boolean isValidHostname(String hostname) {
         if (hostname.length() > 255)
@@ -102,6 +105,37 @@ public class CustomValidators {
                 .build();
     };
 
+    /**
+     * Validates report filter conditions, one `column operator value` per line. Values with Expression Language are
+     * only checked once evaluated against a FlowFile.
+     */
+    public static final Validator REPORT_FILTER_CONDITIONS_VALIDATOR = (subject, input, context) -> {
+        if (context.isExpressionLanguageSupported(subject) && context.isExpressionLanguagePresent(input))
+            return new ValidationResult.Builder().subject(subject).input(input)
+                    .explanation("Expression Language Present").valid(true).build();
+
+        try {
+            ReportFilter.parseConditions(input);
+            return new ValidationResult.Builder().subject(subject).input(input).valid(true).build();
+        } catch (final IllegalArgumentException exc) {
+            return new ValidationResult.Builder().subject(subject).input(input).valid(false)
+                    .explanation(exc.getMessage()).build();
+        }
+    };
+
+    /**
+     * Validates the targets of a host pool, one `host[:port] [aga] [weight=n]` per line.
+     */
+    public static final Validator HOST_POOL_VALIDATOR = (subject, input, context) -> {
+        try {
+            HostPool.parseTargets(input, 22, null);
+            return new ValidationResult.Builder().subject(subject).input(input).valid(true).build();
+        } catch (final IllegalArgumentException exc) {
+            return new ValidationResult.Builder().subject(subject).input(input).valid(false)
+                    .explanation(exc.getMessage()).build();
+        }
+    };
+
     public static final Validator DIRECTORY_EXISTS_FROM_PATH_VALIDATOR = new DirectoryExistsValidator(true, true);
 
     public static class DirectoryExistsValidator implements Validator {
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.exception.FlowFileAccessException;
+import org.apache.nifi.processors.standard.util.PermissionDeniedException;
+
+/**
+ * Helpers for reports that are reachable on the NiFi host's file system, either because runrep ran locally or because
+ * the report directory is mounted on the NiFi host.
+ */
+public final class LocalFiles {
+    private static final long POLL_INTERVAL_MILLIS = 250;
+
+    private LocalFiles() {
+    }
+
+    /**
+     * Deletes a report, translating the failures into the exceptions the SFTP code path raises so that callers can
+     * treat both the same way.
+     *
+     * @param file
+     *            The file to delete.
+     *
+     * @throws FileNotFoundException
+     *             if the file does not exist.
+     * @throws PermissionDeniedException
+     *             if NiFi is not allowed to delete the file.
+     * @throws IOException
+     *             if the file could not be deleted for any other reason.
+     */
+    public static void delete(final Path file) throws IOException {
+        try {
+            Files.delete(file);
+        } catch (final NoSuchFileException exc) {
+            throw new FileNotFoundException(String.format("Could not find the file `%s` to remove.", file));
+        } catch (final AccessDeniedException exc) {
+            throw new PermissionDeniedException(
+                    String.format("Insufficient permissions to delete the file `%s`.", file), exc);
+        }
+    }
+
+    /**
+     * Waits for a file to show up. Network file systems cache directory listings, so a report written on the Geneva
+     * host can take a few seconds to become visible on the mount.
+     *
+     * @param file
+     *            The file to wait for.
+     * @param timeoutMillis
+     *            How long to wait for.
+     *
+     * @throws FileNotFoundException
+     *             if the file did not show up in time.
+     * @throws IOException
+     *             if the wait was interrupted.
+     */
+    public static void awaitVisible(final Path file, final long timeoutMillis) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!Files.isRegularFile(file)) {
+            if (System.nanoTime() - deadline >= 0)
+                throw new FileNotFoundException(
+                        String.format("The file `%s` did not show up within %d ms.", file, timeoutMillis));
+
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (final InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new IOException(String.format("Interrupted while waiting for `%s`.", file), exc);
+            }
+        }
+    }
+
+    /**
+     * Copies local files into new children of a FlowFile, in order. Either every file is imported or, on failure, none
+     * of the children is left in the session.
+     *
+     * @param session
+     *            The session to create the children in.
+     * @param parent
+     *            The FlowFile to derive the children from.
+     * @param files
+     *            The files to import. They are left in place.
+     *
+     * @return The children, one per file.
+     *
+     * @throws IOException
+     *             if a file could not be read.
+     */
+    public static List<FlowFile> importChildren(final ProcessSession session, final FlowFile parent,
+            final List<Path> files) throws IOException {
+        final List<FlowFile> children = new ArrayList<>();
+        for (final Path file : files) {
+            FlowFile child = session.create(parent);
+            try {
+                child = session.importFrom(file, true, child);
+            } catch (final FlowFileAccessException exc) {
+                session.remove(child);
+                session.remove(children);
+                throw new IOException(String.format("Could not read `%s`.", file), exc);
+            }
+            children.add(child);
+        }
+        return children;
+    }
+
+    /**
+     * Ensures that the given content exists as {@code directory/<hash>/name} and returns its path. The file is written
+     * to a temporary name first and moved into place, so a concurrent reader never sees a partial file.
+     *
+     * @param directory
+     *            The directory to place the hash directory in. It is created when missing.
+     * @param name
+     *            The file name.
+     * @param content
+     *            The file content.
+     *
+     * @return The path of the file.
+     *
+     * @throws IOException
+     *             if the file could not be written.
+     */
+    public static Path ensureCached(final Path directory, final String name, final byte[] content)
+            throws IOException {
+        final Path hashDirectory = directory.resolve(StringUtils.sha256Hex(content).substring(0, 16));
+        final Path file = hashDirectory.resolve(name);
+        if (Files.isRegularFile(file))
+            return file;
+
+        Files.createDirectories(hashDirectory);
+        final Path partFile = Files.createTempFile(hashDirectory, name, ".part");
+        try {
+            Files.write(partFile, content);
+            Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final FileAlreadyExistsException exc) {
+            // another thread won the race with the same content
+        } finally {
+            Files.deleteIfExists(partFile);
+        }
+        return file;
+    }
+}
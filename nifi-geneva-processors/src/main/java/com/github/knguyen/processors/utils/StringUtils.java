@@ -16,12 +16,30 @@
  */
 package com.github.knguyen.processors.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
 
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.flowfile.attributes.CoreAttributes;
 
 public final class StringUtils {
+    /**
+     * Matches the names {@link #getGuidFilename} generates, for every extension runrep output formats map to, with or
+     * without the index {@link #getIndexedFilename} adds. The `.err` and `.arg` files runrep writes next to `xmlerr`
+     * reports are matched as well.
+     */
+    public static final Pattern GUID_FILENAME_PATTERN = Pattern
+            .compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}(-\\d+)?"
+                    + "\\.(csv|tsv|txt|json|pdf|xml|rmf|err|arg)");
+
+    /**
+     * Matches the subdirectory names {@link #getShardedGuidFilename} generates.
+     */
+    public static final Pattern SHARD_DIRECTORY_PATTERN = Pattern.compile("[0-9a-f]{2}");
+
     /**
      * Generates a filename with a GUID and appends it to the given directory. The method ensures the correct file path
      * format, even if the directory does not end with a slash. The GUID is generated in lowercase and the filename has
@@ -38,6 +56,89 @@ public final class StringUtils {
         return Paths.get(directory, filename).toString();
     }
 
+    /**
+     * Like {@link #getGuidFilename}, but spreads the files over two levels of subdirectories named after the first four
+     * characters of the GUID, e.g. {@code directory/c4/80/c480d5a6-9400-11ee-b9d1-0242ac120002.csv}, so that no single
+     * directory grows too large.
+     *
+     * @param directory
+     *            The directory path under which the subdirectories are created.
+     *
+     * @return A string representing the full path with the generated filename.
+     */
+    public static String getShardedGuidFilename(final String directory, final FlowFile flowfile,
+            final String extension) {
+        final String flowfileId = flowfile.getAttribute(CoreAttributes.UUID.key());
+        return Paths.get(directory, flowfileId.substring(0, 2), flowfileId.substring(2, 4), flowfileId + extension)
+                .toString();
+    }
+
+    /**
+     * Inserts a 1-based index before the extension of a path, e.g. {@code /tmp/report-02.csv} for index 2 of
+     * {@code /tmp/report.csv}. Used to give every report of a bundle its own output file.
+     *
+     * @param path
+     *            The path to derive the indexed path from.
+     * @param index
+     *            The index, starting at 1.
+     *
+     * @return The indexed path.
+     */
+    public static String getIndexedFilename(final String path, final int index) {
+        final int separator = path.lastIndexOf('/');
+        final int extension = path.lastIndexOf('.');
+        if (extension <= separator + 1)
+            return String.format("%s-%02d", path, index);
+        return String.format("%s-%02d%s", path.substring(0, extension), index, path.substring(extension));
+    }
+
+    /**
+     * Computes the lowercase hexadecimal SHA-256 digest of the given bytes. Used wherever a stable, content-derived
+     * identifier is needed, e.g. for cache file names.
+     *
+     * @param content
+     *            The bytes to hash.
+     *
+     * @return The 64 character hexadecimal digest.
+     */
+    public static String sha256Hex(final byte[] content) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final StringBuilder hex = new StringBuilder(64);
+            for (final byte b : digest.digest(content))
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException exc) {
+            // every JVM is required to support SHA-256
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    /**
+     * Computes the lowercase hexadecimal SHA-256 digest of the UTF-8 encoding of the given string.
+     *
+     * @param value
+     *            The string to hash.
+     *
+     * @return The 64 character hexadecimal digest.
+     */
+    public static String sha256Hex(final String value) {
+        return sha256Hex(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Quotes a value for safe use as a single argument in a POSIX shell command line. The value is wrapped in single
+     * quotes and any embedded single quotes are closed, escaped and reopened, so the shell never interprets its content.
+     *
+     * @param value
+     *            The raw argument.
+     *
+     * @return The quoted argument, e.g. {@code 'my report.csv'}.
+     */
+    public static String shellQuote(final String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
     /**
      * Private constructor to prevent instantiation of this utility class.
      *
@@ -0,0 +1,212 @@
+#!/usr/bin/perl
+#
+# Licensed to the Apache Software Foundation (ASF) under one or more
+# contributor license agreements.  See the NOTICE file distributed with
+# this work for additional information regarding copyright ownership.
+# The ASF licenses this file to You under the Apache License, Version 2.0
+# (the "License"); you may not use this file except in compliance with
+# the License.  You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Filters the rows and projects the columns of a delimited report in place, so that only what the flow needs is
+# transferred to NiFi. Used by the ExecuteGeneva processors (see ReportFilter).
+#
+# Usage: perl report-filter.pl [-d <delimiter>] [-q] [-h] [-c <columns>] [-f <column> <operator> <value>]... <file>
+#
+#   -d   the field delimiter, `,` by default
+#   -q   fields may be enclosed in double quotes (CSV)
+#   -h   the first row holds the column names; it is kept, projected, and never filtered
+#   -c   comma-separated columns to keep, as names or 1-based numbers, in output order
+#   -f   keep only rows where the column compares to the value; repeat for more conditions, all of which must hold.
+#        Operators are = != < <= > >= (numeric when the value is a number, textual otherwise) and ~ !~ (Perl regular
+#        expressions).
+#
+# The filtered report is written next to the original and renamed over it. Only core Perl is used so the helper runs
+# on a stock Geneva host.
+use strict;
+use warnings;
+
+my $delimiter = ',';
+my $quoted = 0;
+my $header = 0;
+my $columns;
+my @conditions;
+
+while (@ARGV > 1) {
+    my $option = shift @ARGV;
+    if ($option eq '-d') {
+        $delimiter = shift @ARGV;
+    } elsif ($option eq '-q') {
+        $quoted = 1;
+    } elsif ($option eq '-h') {
+        $header = 1;
+    } elsif ($option eq '-c') {
+        $columns = shift @ARGV;
+    } elsif ($option eq '-f') {
+        push @conditions, [ splice(@ARGV, 0, 3) ];
+    } else {
+        die "unknown option $option\n";
+    }
+}
+@ARGV == 1 or die "usage: $0 [options] <report file>\n";
+my $path = shift @ARGV;
+
+my $number = qr/^\s*[-+]?(?:\d+\.?\d*|\.\d+)(?:[eE][-+]?\d+)?\s*$/;
+my %numeric = (
+    '='  => sub { $_[0] == $_[1] },
+    '!=' => sub { $_[0] != $_[1] },
+    '<'  => sub { $_[0] < $_[1] },
+    '<=' => sub { $_[0] <= $_[1] },
+    '>'  => sub { $_[0] > $_[1] },
+    '>=' => sub { $_[0] >= $_[1] },
+);
+my %textual = (
+    '='  => sub { $_[0] eq $_[1] },
+    '!=' => sub { $_[0] ne $_[1] },
+    '<'  => sub { $_[0] lt $_[1] },
+    '<=' => sub { $_[0] le $_[1] },
+    '>'  => sub { $_[0] gt $_[1] },
+    '>=' => sub { $_[0] ge $_[1] },
+);
+
+sub split_row {
+    my ($line) = @_;
+    return split(/\Q$delimiter\E/, $line, -1) unless $quoted && index($line, '"') >= 0;
+
+    my @fields;
+    my $field = '';
+    my $in_quotes = 0;
+    my $length = length $line;
+    for (my $i = 0; $i < $length; $i++) {
+        my $c = substr($line, $i, 1);
+        if ($in_quotes) {
+            if ($c ne '"') {
+                $field .= $c;
+            } elsif ($i + 1 < $length && substr($line, $i + 1, 1) eq '"') {
+                $field .= '"';
+                $i++;
+            } else {
+                $in_quotes = 0;
+            }
+        } elsif ($c eq '"') {
+            $in_quotes = 1;
+        } elsif ($c eq $delimiter) {
+            push @fields, $field;
+            $field = '';
+        } else {
+            $field .= $c;
+        }
+    }
+    push @fields, $field;
+    return @fields;
+}
+
+sub join_row {
+    return join($delimiter, @_) unless $quoted;
+    return join($delimiter, map {
+        my $field = $_;
+        if (index($field, $delimiter) >= 0 || $field =~ /["\r\n]/) {
+            $field =~ s/"/""/g;
+            $field = qq("$field");
+        }
+        $field;
+    } @_);
+}
+
+# Columns are 1-based numbers or, when the report has a header row, column names.
+sub resolve {
+    my ($column, $names) = @_;
+    $column =~ s/^\s+|\s+$//g;
+    if ($column =~ /^\d+$/) {
+        die "column numbers are 1-based\n" if $column < 1;
+        return $column - 1;
+    }
+    die "column `$column` can only be referenced by number, the report has no header row\n" unless $names;
+    for my $i (0 .. $#$names) {
+        (my $name = $names->[$i]) =~ s/^\s+|\s+$//g;
+        return $i if $name eq $column;
+    }
+    die "the report has no column `$column`\n";
+}
+
+my ($projection, @tests);
+sub prepare {
+    my ($names) = @_;
+    $projection = [ map { resolve($_, $names) } split(/,/, $columns) ] if defined $columns;
+    for my $condition (@conditions) {
+        my ($column, $operator, $value) = @$condition;
+        my $index = resolve($column, $names);
+        if ($operator eq '~' || $operator eq '!~') {
+            my $pattern = eval { qr/$value/ } or die "invalid regular expression `$value`: $@";
+            my $negate = $operator eq '!~';
+            push @tests, sub { my $field = $_[0][$index] // ''; ($field =~ $pattern) xor $negate };
+        } elsif ($textual{$operator}) {
+            if ($value =~ $number) {
+                # a field that is not a number, e.g. `n/a`, is never equal, less or greater than a number
+                my $mismatch = $operator eq '!=';
+                push @tests, sub {
+                    my $field = $_[0][$index] // '';
+                    return $field =~ $number ? $numeric{$operator}->($field, $value) : $mismatch;
+                };
+            } else {
+                push @tests, sub { $textual{$operator}->($_[0][$index] // '', $value) };
+            }
+        } else {
+            die "unknown operator `$operator`\n";
+        }
+    }
+}
+
+sub emit {
+    my ($out, $fields, $eol) = @_;
+    my @values = $projection ? map { $fields->[$_] // '' } @$projection : @$fields;
+    print $out join_row(@values), $eol or die "cannot write the filtered report: $!\n";
+}
+
+my $filtered = "$path.filtered.$$";
+END { unlink($filtered) if $? && -e $filtered }
+
+open(my $in, '<:raw', $path) or die "cannot open $path: $!\n";
+open(my $out, '>:raw', $filtered) or die "cannot create $filtered: $!\n";
+
+my $first = 1;
+my ($kept, $dropped) = (0, 0);
+while (my $line = <$in>) {
+    my $eol = $line =~ s/(\r?\n)\z// ? $1 : '';
+    my @fields = split_row($line);
+    if ($first) {
+        $first = 0;
+        prepare($header ? \@fields : undef);
+        if ($header) {
+            emit($out, \@fields, $eol);
+            next;
+        }
+    }
+
+    my $keep = 1;
+    for my $test (@tests) {
+        unless ($test->(\@fields)) {
+            $keep = 0;
+            last;
+        }
+    }
+    if ($keep) {
+        emit($out, \@fields, $eol);
+        $kept++;
+    } else {
+        $dropped++;
+    }
+}
+
+close($in);
+close($out) or die "cannot write the filtered report: $!\n";
+rename($filtered, $path) or die "cannot replace $path: $!\n";
+print STDOUT "$kept $dropped\n";
+exit 0;
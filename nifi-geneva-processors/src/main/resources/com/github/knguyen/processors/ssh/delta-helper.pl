@@ -0,0 +1,155 @@
+#!/usr/bin/perl
+#
+# Licensed to the Apache Software Foundation (ASF) under one or more
+# contributor license agreements.  See the NOTICE file distributed with
+# this work for additional information regarding copyright ownership.
+# The ASF licenses this file to You under the Apache License, Version 2.0
+# (the "License"); you may not use this file except in compliance with
+# the License.  You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Remote side of the delta transfer used by the ExecuteGeneva processors.
+#
+# Usage: perl delta-helper.pl <report file> < signatures
+#
+# Reads the block signatures of the copy NiFi already holds from stdin (see BlockSignatures), scans the report with a
+# rolling checksum and writes an instruction stream to stdout (see DeltaReconstructor):
+#
+#   'L' <u32 length> <bytes>   literal data
+#   'B' <u32 index>            copy block <index> from the basis file
+#   'E' <16 byte md5>          end of stream, digest of the whole report
+#
+# Only core Perl modules are used so the helper runs on a stock Geneva host.
+use strict;
+use warnings;
+use Digest::MD5 qw(md5_hex);
+
+my $path = shift @ARGV or die "usage: $0 <report file>\n";
+my $read_size = 1 << 20;
+my $max_literal = 1 << 20;
+
+binmode STDIN;
+binmode STDOUT;
+
+my $header = <STDIN>;
+defined $header or die "missing signature header\n";
+chomp $header;
+my ($bs, $count) = split / /, $header;
+
+my %weak;
+for my $index (0 .. $count - 1) {
+    my $line = <STDIN>;
+    defined $line or die "signature stream truncated at block $index\n";
+    chomp $line;
+    my ($sum, $digest) = split / /, $line;
+    push @{ $weak{$sum} }, [ $digest, $index ];
+}
+
+open(my $fh, '<:raw', $path) or die "cannot open $path: $!\n";
+my $whole = Digest::MD5->new;
+
+my $buf = '';
+my $eof = 0;
+my $pos = 0;          # start of the current window within $buf
+my $literal = 0;      # start of the pending literal within $buf
+my ($s1, $s2) = (0, 0);
+my $fresh = 1;        # the window checksum has to be computed from scratch
+
+sub emit_literal {
+    my ($from, $to) = @_;
+    return if $to <= $from;
+    print STDOUT 'L', pack('N', $to - $from), substr($buf, $from, $to - $from);
+}
+
+# Makes sure at least $need bytes are available from $pos, discarding data that was already emitted.
+sub fill {
+    my ($need) = @_;
+    while (!$eof && length($buf) - $pos < $need) {
+        if ($literal > 0) {
+            substr($buf, 0, $literal) = '';
+            $pos -= $literal;
+            $literal = 0;
+        }
+        my $chunk;
+        my $n = read($fh, $chunk, $read_size);
+        die "read failed on $path: $!\n" unless defined $n;
+        if ($n == 0) {
+            $eof = 1;
+        } else {
+            $whole->add($chunk);
+            $buf .= $chunk;
+        }
+    }
+    return length($buf) - $pos >= $need;
+}
+
+while ($count > 0) {
+    # one byte beyond the window is needed to roll, fill() only returns short at end of file
+    fill($bs + 1);
+    last if length($buf) - $pos < $bs;
+
+    if ($fresh) {
+        ($s1, $s2) = (0, 0);
+        my $i = $bs;
+        for my $value (unpack('C*', substr($buf, $pos, $bs))) {
+            $s1 += $value;
+            $s2 += $i-- * $value;
+        }
+        $s1 &= 0xffff;
+        $s2 &= 0xffff;
+        $fresh = 0;
+    }
+
+    my $sum = $s1 | ($s2 << 16);
+    my $matched;
+    if (my $candidates = $weak{$sum}) {
+        my $digest = md5_hex(substr($buf, $pos, $bs));
+        for my $candidate (@$candidates) {
+            if ($candidate->[0] eq $digest) {
+                $matched = $candidate->[1];
+                last;
+            }
+        }
+    }
+
+    if (defined $matched) {
+        emit_literal($literal, $pos);
+        print STDOUT 'B', pack('N', $matched);
+        $pos += $bs;
+        $literal = $pos;
+        $fresh = 1;
+        next;
+    }
+
+    # no block starts here, roll the window forward by one byte
+    last if length($buf) - $pos == $bs;
+    my $old = ord(substr($buf, $pos, 1));
+    my $new = ord(substr($buf, $pos + $bs, 1));
+    $s1 = ($s1 - $old + $new) & 0xffff;
+    $s2 = ($s2 - $bs * $old + $s1) & 0xffff;
+    $pos++;
+
+    if ($pos - $literal >= $max_literal) {
+        emit_literal($literal, $pos);
+        $literal = $pos;
+    }
+}
+
+# whatever is left cannot start a full block and is sent verbatim
+do {
+    fill($read_size);
+    emit_literal($literal, length($buf));
+    $pos = length($buf);
+    $literal = $pos;
+} until ($eof);
+
+close($fh);
+print STDOUT 'E', $whole->digest;
+exit 0;
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.delta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeltaReconstructorTest {
+
+    private static final int BLOCK_SIZE = 4;
+
+    @TempDir
+    Path tempDir;
+
+    private Path writeBasis(final String content) throws IOException {
+        final Path basis = tempDir.resolve("report.basis");
+        Files.write(basis, content.getBytes(StandardCharsets.US_ASCII));
+        return basis;
+    }
+
+    private static void literal(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.writeByte('L');
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void block(final DataOutputStream out, final int index) throws IOException {
+        out.writeByte('B');
+        out.writeInt(index);
+    }
+
+    private static void end(final DataOutputStream out, final String expected) throws IOException {
+        out.writeByte('E');
+        out.write(BlockSignatures.newMd5().digest(expected.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void testRebuildsFromBlocksAndLiterals() throws IOException {
+        final Path basis = writeBasis("AAAABBBBCCCCdd");
+        final String expected = "BBBBxyzAAAACCCCtail";
+
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(delta);
+        block(out, 1);
+        literal(out, "xyz");
+        block(out, 0);
+        block(out, 2);
+        literal(out, "tail");
+        end(out, expected);
+
+        final ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        final DeltaReconstructor.DeltaStatistics statistics = DeltaReconstructor.apply(basis, BLOCK_SIZE,
+                new ByteArrayInputStream(delta.toByteArray()), rebuilt);
+
+        assertEquals(expected, rebuilt.toString(StandardCharsets.US_ASCII));
+        assertEquals(7, statistics.getLiteralBytes());
+        assertEquals(12, statistics.getMatchedBytes());
+    }
+
+    @Test
+    void testDigestMismatchIsRejected() throws IOException {
+        final Path basis = writeBasis("AAAABBBB");
+
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(delta);
+        block(out, 0);
+        end(out, "BBBB");
+
+        assertThrows(IOException.class, () -> DeltaReconstructor.apply(basis, BLOCK_SIZE,
+                new ByteArrayInputStream(delta.toByteArray()), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void testUnknownBlockIsRejected() throws IOException {
+        // the trailing partial block is never signed, so it cannot be referenced either
+        final Path basis = writeBasis("AAAABB");
+
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(delta);
+        block(out, 1);
+
+        assertThrows(IOException.class, () -> DeltaReconstructor.apply(basis, BLOCK_SIZE,
+                new ByteArrayInputStream(delta.toByteArray()), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void testTruncatedStreamIsRejected() throws IOException {
+        final Path basis = writeBasis("AAAABBBB");
+
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(delta);
+        block(out, 0);
+
+        assertThrows(EOFException.class, () -> DeltaReconstructor.apply(basis, BLOCK_SIZE,
+                new ByteArrayInputStream(delta.toByteArray()), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void testSignaturesListOnlyFullBlocks() throws IOException {
+        final Path basis = writeBasis("AAAABBBBCC");
+
+        final ByteArrayOutputStream signatures = new ByteArrayOutputStream();
+        BlockSignatures.write(basis, BLOCK_SIZE, signatures);
+
+        final String[] lines = signatures.toString(StandardCharsets.US_ASCII).split("\n");
+        assertEquals("4 2", lines[0]);
+        assertEquals(3, lines.length);
+
+        final byte[] block = "BBBB".getBytes(StandardCharsets.US_ASCII);
+        final MessageDigest md5 = BlockSignatures.newMd5();
+        assertEquals(BlockSignatures.weakChecksum(block, 0, BLOCK_SIZE) + " " + BlockSignatures.toHex(md5.digest(block)),
+                lines[2]);
+    }
+
+    @Test
+    void testWeakChecksumMatchesRollingUpdate() {
+        final byte[] data = "the quick brown fox".getBytes(StandardCharsets.US_ASCII);
+        final int length = 8;
+
+        long a = BlockSignatures.weakChecksum(data, 0, length) & 0xffff;
+        long b = BlockSignatures.weakChecksum(data, 0, length) >>> 16;
+        for (int offset = 1; offset + length <= data.length; offset++) {
+            final int old = data[offset - 1] & 0xff;
+            final int next = data[offset + length - 1] & 0xff;
+            a = (a - old + next) & 0xffff;
+            b = (b - (long) length * old + a) & 0xffff;
+            assertEquals(BlockSignatures.weakChecksum(data, offset, length), a | (b << 16));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ReportDemultiplexerTest {
+
+    private final Map<String, List<OutputStream>> outputs = new HashMap<>();
+
+    private ByteArrayOutputStream register(final String key) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        outputs.computeIfAbsent(key, k -> new ArrayList<>()).add(out);
+        return out;
+    }
+
+    private ReportDemultiplexer.Summary split(final String report, final boolean headerPresent,
+            final String keyColumn) throws IOException {
+        return new ReportDemultiplexer((byte) ',', true, headerPresent, keyColumn)
+                .split(new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8)), outputs);
+    }
+
+    @Test
+    void testRowsAreRoutedByKeyWithTheHeader() throws IOException {
+        final var fund1 = register("Fund1");
+        final var fund2 = register("Fund2");
+        final var fund3 = register("Fund3");
+
+        final var summary = split("Portfolio,Investment,Qty\nFund1,IBM,10\n\"Fund2\",AAPL,5\nFund1,MSFT,7\n", true,
+                "portfolio");
+
+        assertEquals("Portfolio,Investment,Qty\nFund1,IBM,10\nFund1,MSFT,7\n",
+                fund1.toString(StandardCharsets.UTF_8));
+        assertEquals("Portfolio,Investment,Qty\n\"Fund2\",AAPL,5\n", fund2.toString(StandardCharsets.UTF_8));
+        assertEquals("Portfolio,Investment,Qty\n", fund3.toString(StandardCharsets.UTF_8));
+        assertEquals(2, summary.getRows("Fund1"));
+        assertEquals(1, summary.getRows("Fund2"));
+        assertEquals(0, summary.getRows("Fund3"));
+        assertEquals(0, summary.getUnmatched());
+    }
+
+    @Test
+    void testOutputsSharingAKeyReceiveTheSameRows() throws IOException {
+        final var first = register("Fund1");
+        final var second = register("Fund1");
+
+        split("Fund1,IBM,10\nFund9,AAPL,5\n", false, "1");
+
+        assertEquals("Fund1,IBM,10\n", first.toString(StandardCharsets.UTF_8));
+        assertEquals(first.toString(StandardCharsets.UTF_8), second.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testUnrequestedKeysAreCounted() throws IOException {
+        register("Fund1");
+
+        final var summary = split("Portfolio,Qty\nFund1,1\nFund2,2\nFund3,3\n", true, "Portfolio");
+
+        assertEquals(1, summary.getRows("Fund1"));
+        assertEquals(2, summary.getUnmatched());
+    }
+
+    @Test
+    void testUnknownKeyColumnIsRejected() {
+        register("Fund1");
+
+        assertThrows(IllegalArgumentException.class, () -> split("Portfolio,Qty\nFund1,1\n", true, "Fund"));
+        assertThrows(IllegalArgumentException.class, () -> split("Fund1,1\n", false, "Portfolio"));
+        assertThrows(IOException.class, () -> split("Portfolio,Qty\nFund1,1\n", false, "3"));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParsesConditions() {
+        final List<ReportFilter.Condition> conditions = ReportFilter
+                .parseConditions("Quantity>=10\n\n  Portfolio != Fund 2 \r\nInvestment ~ ^[A-Z]+=\n");
+
+        assertEquals(3, conditions.size());
+        assertCondition(conditions.get(0), "Quantity", ">=", "10");
+        assertCondition(conditions.get(1), "Portfolio", "!=", "Fund 2");
+        // the first operator wins, so the value may contain operator characters
+        assertCondition(conditions.get(2), "Investment", "~", "^[A-Z]+=");
+    }
+
+    @Test
+    void testRejectsConditionWithoutOperator() {
+        final IllegalArgumentException exc = assertThrows(IllegalArgumentException.class,
+                () -> ReportFilter.parseConditions("Quantity 10"));
+        assertTrue(exc.getMessage().contains("Quantity 10"));
+    }
+
+    @Test
+    void testRejectsEmptyFilter() {
+        assertThrows(IllegalArgumentException.class, () -> new ReportFilter((byte) ',', true, true,
+                Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    void testRendersQuotedCommandLine() {
+        final ReportFilter filter = new ReportFilter((byte) '|', false, true,
+                ReportFilter.parseColumns(" Portfolio, 3 ,"), ReportFilter.parseConditions("Name = O'Brien"));
+
+        assertEquals(Arrays.asList("-d", "|", "-h", "-c", "Portfolio,3", "-f", "Name", "=", "O'Brien"),
+                filter.getArguments());
+        assertEquals("perl '/tmp/helper.pl' '-d' '|' '-h' '-c' 'Portfolio,3' '-f' 'Name' '=' 'O'\\''Brien' "
+                + "'/reports/my report.bcp'", filter.toCommandLine("/tmp/helper.pl", "/reports/my report.bcp"));
+    }
+
+    @Test
+    void testParsesStatistics() throws IOException {
+        final ReportFilter.Statistics statistics = ReportFilter.Statistics.parse("12 30\n");
+        assertEquals(12, statistics.getKeptRows());
+        assertEquals(30, statistics.getDroppedRows());
+
+        assertThrows(IOException.class, () -> ReportFilter.Statistics.parse("Can't locate strict.pm"));
+    }
+
+    @Test
+    void testScriptFiltersAndProjectsQuotedReport() throws Exception {
+        final Path report = tempDir.resolve("report.csv");
+        Files.write(report, ("Portfolio,Investment,Quantity\r\n" + "Fund1,\"Acme, Inc\",10\r\n" + "Fund1,Foo,-5\r\n"
+                + "Fund2,\"Say \"\"hi\"\"\",20\r\n" + "Fund3,Bar,9\r\n").getBytes(StandardCharsets.UTF_8));
+
+        final ReportFilter filter = new ReportFilter((byte) ',', true, true, Arrays.asList("Investment", "1"),
+                ReportFilter.parseConditions("Quantity >= 10\nPortfolio ~ ^Fund[12]$"));
+
+        assertEquals("2 2", runScript(filter, report, true));
+        assertEquals("Investment,Portfolio\r\n" + "\"Acme, Inc\",Fund1\r\n" + "\"Say \"\"hi\"\"\",Fund2\r\n",
+                new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testScriptComparesNumbersNumerically() throws Exception {
+        final Path report = tempDir.resolve("report.bcp");
+        Files.write(report, "9|a\n10|b\n100|c\nn/a|d\n".getBytes(StandardCharsets.UTF_8));
+
+        final ReportFilter filter = new ReportFilter((byte) '|', false, false, Collections.singletonList("2"),
+                ReportFilter.parseConditions("1 > 9"));
+
+        // `n/a` is not a number and therefore not greater than 9
+        assertEquals("2 2", runScript(filter, report, true));
+        assertEquals("b\nc\n", new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testScriptLeavesReportAloneOnUnknownColumn() throws Exception {
+        final Path report = tempDir.resolve("report.csv");
+        final byte[] content = "Portfolio,Quantity\nFund1,10\n".getBytes(StandardCharsets.UTF_8);
+        Files.write(report, content);
+
+        final ReportFilter filter = new ReportFilter((byte) ',', true, true, Collections.singletonList("Price"),
+                Collections.emptyList());
+
+        runScript(filter, report, false);
+        assertEquals(new String(content, StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private static void assertCondition(final ReportFilter.Condition condition, final String column,
+            final String operator, final String value) {
+        assertEquals(column, condition.getColumn());
+        assertEquals(operator, condition.getOperator());
+        assertEquals(value, condition.getValue());
+    }
+
+    /**
+     * Runs the bundled script the same way the local transport does and returns its standard output.
+     */
+    private static String runScript(final ReportFilter filter, final Path report, final boolean expectSuccess)
+            throws Exception {
+        final List<String> commandLine = new ArrayList<>(Arrays.asList("perl", "-"));
+        commandLine.addAll(filter.getArguments());
+        commandLine.add(report.toString());
+
+        final Process process;
+        try {
+            process = new ProcessBuilder(commandLine).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (final IOException exc) {
+            Assumptions.assumeTrue(false, "perl is not available");
+            throw exc;
+        }
+        try (final OutputStream stdin = process.getOutputStream()) {
+            stdin.write(ReportFilter.readScript());
+        }
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        assertEquals(expectSuccess, process.exitValue() == 0);
+        return output;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.diff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RowChangeDetectorTest {
+
+    private static final String DEFINITION = "GVA|Positions.rsl|csv|-p Fund1";
+
+    @TempDir
+    Path tempDir;
+
+    private final ByteArrayOutputStream inserted = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream updated = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream deleted = new ByteArrayOutputStream();
+
+    private RowChangeDetector.ChangeSummary run(final String report, final List<String> keyColumns,
+            final boolean headerPresent, final boolean offHeap) throws IOException {
+        inserted.reset();
+        updated.reset();
+        deleted.reset();
+
+        final RowChangeDetector detector = new RowChangeDetector(
+                RowChangeDetector.indexFileFor(tempDir, DEFINITION), (byte) ',', true, headerPresent, keyColumns,
+                offHeap);
+        final RowChangeDetector.ChangeSummary summary = detector.detect(
+                new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8)), inserted, updated, deleted);
+        detector.commit();
+        return summary;
+    }
+
+    private static Set<String> lines(final ByteArrayOutputStream out) {
+        return new HashSet<>(Arrays.asList(out.toString(StandardCharsets.UTF_8).split("\n")));
+    }
+
+    @Test
+    void testFirstRunInsertsEveryRow() throws IOException {
+        final var summary = run("Id,Name,Qty\n1,A,10\n2,B,20\n", List.of("Id"), true, false);
+
+        assertEquals(2, summary.getInserted());
+        assertEquals(0, summary.getUpdated());
+        assertEquals(0, summary.getDeleted());
+        assertEquals("Id,Name,Qty\n1,A,10\n2,B,20\n", inserted.toString(StandardCharsets.UTF_8));
+        assertEquals("Id,Name,Qty\n", updated.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSecondRunEmitsOnlyChanges() throws IOException {
+        run("Id,Name,Qty\n1,A,10\n2,B,20\n3,C,30\n", List.of("Id"), true, false);
+        final var summary = run("Id,Name,Qty\r\n1,A,10\r\n2,B,25\r\n4,D,40\r\n", List.of("Id"), true, false);
+
+        assertEquals(1, summary.getInserted());
+        assertEquals(1, summary.getUpdated());
+        assertEquals(1, summary.getDeleted());
+        assertEquals(1, summary.getUnchanged());
+        assertEquals("Id,Name,Qty\n4,D,40\n", inserted.toString(StandardCharsets.UTF_8));
+        assertEquals("Id,Name,Qty\n2,B,25\n", updated.toString(StandardCharsets.UTF_8));
+        assertEquals("Id\n3\n", deleted.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCompositeKeyByColumnNumberWithoutHeader() throws IOException {
+        run("F1,X,1\nF1,Y,2\nF2,X,3\n", List.of("1", "2"), false, true);
+        final var summary = run("F1,X,1\nF2,X,4\nF2,Y,5\n", List.of("1", "2"), false, true);
+
+        assertEquals(1, summary.getInserted());
+        assertEquals(1, summary.getUpdated());
+        assertEquals(1, summary.getDeleted());
+        assertEquals(Set.of("F1,Y"), lines(deleted));
+    }
+
+    @Test
+    void testQuotedFieldsKeepTheirDelimitersAndLineBreaks() throws IOException {
+        run("Id,Description\n\"1\",\"a, b\"\n\"2\",\"multi\nline\"\n", List.of("Id"), true, false);
+        final var summary = run("Id,Description\n\"1\",\"a, b\"\n\"2\",\"multi\nline, changed\"\n", List.of("Id"),
+                true, false);
+
+        assertEquals(0, summary.getInserted());
+        assertEquals(1, summary.getUpdated());
+        assertEquals(1, summary.getUnchanged());
+        assertEquals("Id,Description\n\"2\",\"multi\nline, changed\"\n", updated.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testAbortKeepsThePreviousBaseline() throws IOException {
+        run("Id,Qty\n1,10\n", List.of("Id"), true, false);
+
+        final RowChangeDetector detector = new RowChangeDetector(RowChangeDetector.indexFileFor(tempDir, DEFINITION),
+                (byte) ',', true, true, List.of("Id"), false);
+        detector.detect(new ByteArrayInputStream("Id,Qty\n1,99\n".getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        detector.abort();
+
+        final var summary = run("Id,Qty\n1,10\n", List.of("Id"), true, false);
+        assertEquals(1, summary.getUnchanged());
+        assertEquals(0, summary.getUpdated());
+        try (final var files = Files.list(tempDir)) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void testUnknownKeyColumnIsRejected() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> run("Id,Qty\n1,10\n", List.of("Account"), true, false));
+        assertThrows(IllegalArgumentException.class, () -> run("1,10\n", List.of("Id"), false, false));
+        try (final var files = Files.list(tempDir)) {
+            assertFalse(files.findAny().isPresent());
+        }
+    }
+
+    @Test
+    void testKeyColumnsAreValidatedWithoutTheReport() {
+        RowChangeDetector.validateKeyColumns(List.of("Id", "2"), true);
+        RowChangeDetector.validateKeyColumns(List.of(" 1", "2"), false);
+        assertThrows(IllegalArgumentException.class, () -> RowChangeDetector.validateKeyColumns(List.of("Id"), false));
+        assertThrows(IllegalArgumentException.class, () -> RowChangeDetector.validateKeyColumns(List.of("0"), true));
+        assertThrows(IllegalArgumentException.class, () -> RowChangeDetector.validateKeyColumns(List.of(), true));
+    }
+
+    @Test
+    void testDelimiterForFormats() {
+        assertEquals(Byte.valueOf((byte) ','), RowChangeDetector.delimiterFor("csvnospace"));
+        assertEquals(Byte.valueOf((byte) '|'), RowChangeDetector.delimiterFor("bcp"));
+        assertEquals(Byte.valueOf((byte) '\t'), RowChangeDetector.delimiterFor("tsv"));
+        assertEquals(null, RowChangeDetector.delimiterFor("pdf"));
+    }
+}
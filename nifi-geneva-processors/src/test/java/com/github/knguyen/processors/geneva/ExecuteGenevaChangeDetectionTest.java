@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.knguyen.processors.geneva.command.Command;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.pool.HostPool;
+import com.github.knguyen.processors.geneva.pool.TargetPropertyContext;
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class ExecuteGenevaChangeDetectionTest {
+    private static final String REPORT = "NameSort,NetAssets\n" + "Fund1,100\n" + "Fund2,200\n";
+
+    @TempDir
+    Path stateDirectory;
+
+    private final InMemoryCommandExecutor executor = new InMemoryCommandExecutor();
+    private TestRunner testRunner;
+
+    @BeforeEach
+    public void setup() {
+        testRunner = TestRunners.newTestRunner(ExecuteGenevaRSL.class);
+        final ExecuteGenevaRSL processor = (ExecuteGenevaRSL) testRunner.getProcessor();
+        processor.setExecutorProvider((context, logger) -> executor);
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, BaseExecuteGenevaTest.HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, BaseExecuteGenevaTest.USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, BaseExecuteGenevaTest.PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, BaseExecuteGenevaTest.RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, BaseExecuteGenevaTest.RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "9999");
+        testRunner.setProperty(ExecuteGenevaRSL.RSL_NAME, "netassets");
+        testRunner.setProperty(BaseExecuteGeneva.CHANGE_DETECTION_STATE_DIRECTORY, stateDirectory.toString());
+
+        executor.setRunHandler(command -> executor.addFile(command.getOutputResource(), REPORT));
+    }
+
+    @Test
+    void testRowsAreRoutedByChange() {
+        testRunner.setProperty(BaseExecuteGeneva.CHANGE_DETECTION_KEY_COLUMNS, "NameSort");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        testRunner.assertTransferCount(BaseExecuteGeneva.REL_SUCCESS, 1);
+        testRunner.assertTransferCount(BaseExecuteGeneva.REL_INSERTED, 1);
+        testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_SUCCESS).get(0)
+                .assertAttributeEquals("geneva.change.inserted", "2");
+    }
+
+    @Test
+    void testKeyColumnNameWithoutHeaderFailsBeforeTheRun() {
+        testRunner.setProperty(BaseExecuteGeneva.CHANGE_DETECTION_KEY_COLUMNS, "NameSort");
+        testRunner.setProperty(BaseExecuteGeneva.REPORT_HAS_HEADER_ROW, "false");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        assertTrue(executor.getExecutedCommands().isEmpty());
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_FAILURE, 1);
+        testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_FAILURE).get(0)
+                .assertAttributeExists("geneva.change.error");
+    }
+
+    @Test
+    void testKeyColumnMissingFromTheHeaderFailsAndCleansUpTheReport() {
+        testRunner.setProperty(BaseExecuteGeneva.CHANGE_DETECTION_KEY_COLUMNS, "PortfolioCode");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        assertEquals(1, executor.getExecutedCommands().size());
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_FAILURE, 1);
+        final MockFlowFile failed = testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_FAILURE).get(0);
+        failed.assertAttributeExists("geneva.change.error");
+        testRunner.assertQueueEmpty();
+
+        // the fetched report is still removed from the server
+        final String report = executor.getExecutedCommands().get(0).getOutputResource();
+        assertFalse(executor.exists(report));
+    }
+
+    @Test
+    void testStateIsKeptPerHostAndSharedByPoolTargets() {
+        final ICommand command = new Command("runrep", "runrep -f csv", "/tmp/report.csv");
+        final MockFlowFile flowFile = new MockFlowFile(1);
+        final String hostKey = BaseExecuteGeneva.getReportStateKey(testRunner.getProcessContext(), flowFile, command);
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, "other.geneva.server.com");
+        assertNotEquals(hostKey,
+                BaseExecuteGeneva.getReportStateKey(testRunner.getProcessContext(), flowFile, command));
+
+        testRunner.setProperty(BaseExecuteGeneva.HOST_POOL, "geneva1.example.com 9001\ngeneva2.example.com 9002");
+        final ProcessContext context = testRunner.getProcessContext();
+        final String poolKey = BaseExecuteGeneva.getReportStateKey(context, flowFile, command);
+        for (final HostPool.Target target : HostPool.parseTargets(
+                context.getProperty(BaseExecuteGeneva.HOST_POOL).getValue(), 22, "9999")) {
+            final ProcessContext targetContext = TargetPropertyContext.wrap(context, target,
+                    BaseExecuteGeneva.HOSTNAME, BaseExecuteGeneva.PORT, BaseExecuteGeneva.GENEVA_AGA);
+            assertEquals(poolKey, BaseExecuteGeneva.getReportStateKey(targetContext, flowFile, command));
+        }
+    }
+}
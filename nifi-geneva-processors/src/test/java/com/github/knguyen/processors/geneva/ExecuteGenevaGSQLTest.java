@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class ExecuteGenevaGSQLTest {
+    private static final String RESULT = "NameSort,NetAssets\n" + "Fund1,100\n" + "Fund2,200\n" + "Fund1,300\n"
+            + "Fund9,900\n";
+
+    private final InMemoryCommandExecutor executor = new InMemoryCommandExecutor();
+    private TestRunner testRunner;
+
+    @BeforeEach
+    public void setup() {
+        testRunner = TestRunners.newTestRunner(ExecuteGenevaGSQL.class);
+        final ExecuteGenevaGSQL processor = (ExecuteGenevaGSQL) testRunner.getProcessor();
+        processor.setExecutorProvider((context, logger) -> executor);
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, BaseExecuteGenevaTest.HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, BaseExecuteGenevaTest.USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, BaseExecuteGenevaTest.PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, BaseExecuteGenevaTest.RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, BaseExecuteGenevaTest.RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "${aga}");
+        testRunner.setProperty(ExecuteGenevaGSQL.GENEVA_SQL_QUERY,
+                "SELECT NameSort, NetAssets FROM Portfolio WHERE NameSort IN (:BatchKeys);");
+        testRunner.setProperty(ExecuteGenevaGSQL.GSQL_BATCH_KEY, "${portfolio.code}");
+        testRunner.setProperty(ExecuteGenevaGSQL.GSQL_BATCH_KEY_COLUMN, "NameSort");
+        testRunner.setProperty(BaseExecuteGeneva.REPORT_HAS_HEADER_ROW, "true");
+
+        executor.setRunHandler(command -> executor.addFile(command.getOutputResource(), RESULT));
+    }
+
+    private void enqueue(final String portfolioCode, final String aga) {
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("portfolio.code", portfolioCode);
+        attributes.put("aga", aga);
+        testRunner.enqueue("", attributes);
+    }
+
+    private static MockFlowFile getFlowFile(final List<MockFlowFile> flowFiles, final String portfolioCode) {
+        return flowFiles.stream().filter(flowFile -> portfolioCode.equals(flowFile.getAttribute("portfolio.code")))
+                .findFirst().orElseThrow(() -> new AssertionError(portfolioCode + " was not transferred"));
+    }
+
+    @Test
+    void testBatchResultIsSplitBackIntoTheFlowFilesOfItsKeys() {
+        enqueue("Fund1", "9999");
+        enqueue("Fund2", "9999");
+        enqueue("Fund3", "9999");
+        testRunner.run();
+
+        assertEquals(1, executor.getExecutedCommands().size());
+        assertTrue(executor.getExecutedCommands().get(0).getCommand()
+                .contains("WHERE NameSort IN (\"Fund1\", \"Fund2\", \"Fund3\");"));
+
+        testRunner.assertAllFlowFilesTransferred(ExecuteGenevaGSQL.REL_SUCCESS, 3);
+        final List<MockFlowFile> flowFiles = testRunner.getFlowFilesForRelationship(ExecuteGenevaGSQL.REL_SUCCESS);
+        getFlowFile(flowFiles, "Fund1").assertContentEquals("NameSort,NetAssets\nFund1,100\nFund1,300\n");
+        getFlowFile(flowFiles, "Fund1").assertAttributeEquals("geneva.batch.rows", "2");
+        getFlowFile(flowFiles, "Fund2").assertContentEquals("NameSort,NetAssets\nFund2,200\n");
+        getFlowFile(flowFiles, "Fund3").assertContentEquals("NameSort,NetAssets\n");
+        getFlowFile(flowFiles, "Fund3").assertAttributeEquals("geneva.batch.rows", "0");
+        for (final MockFlowFile flowFile : flowFiles)
+            flowFile.assertAttributeEquals("geneva.batch.size", "3");
+    }
+
+    @Test
+    void testFailedBatchDoesNotFailTheOthers() {
+        executor.setRunHandler(command -> {
+            if (command.getCommand().contains("-k 1002"))
+                throw new GenevaException("runrep failed", "Unknown column NetAssets", "rungsql");
+            executor.addFile(command.getOutputResource(), RESULT);
+        });
+        enqueue("Fund1", "1001");
+        enqueue("Fund2", "1002");
+        enqueue("Fund1\"; DROP", "1001");
+        enqueue("Fund2", "1001");
+        testRunner.run();
+
+        assertEquals(2, executor.getExecutedCommands().size());
+        testRunner.assertTransferCount(ExecuteGenevaGSQL.REL_SUCCESS, 2);
+        testRunner.assertTransferCount(ExecuteGenevaGSQL.REL_GENEVA_FAILURE, 1);
+        testRunner.assertTransferCount(ExecuteGenevaGSQL.REL_FAILURE, 1);
+
+        final List<MockFlowFile> succeeded = testRunner.getFlowFilesForRelationship(ExecuteGenevaGSQL.REL_SUCCESS);
+        getFlowFile(succeeded, "Fund1").assertContentEquals("NameSort,NetAssets\nFund1,100\nFund1,300\n");
+        getFlowFile(succeeded, "Fund2").assertContentEquals("NameSort,NetAssets\nFund2,200\n");
+        final MockFlowFile failed = testRunner.getFlowFilesForRelationship(ExecuteGenevaGSQL.REL_GENEVA_FAILURE)
+                .get(0);
+        failed.assertAttributeEquals("aga", "1002");
+        failed.assertAttributeEquals("geneva.runrep.error", "Unknown column NetAssets");
+        testRunner.getFlowFilesForRelationship(ExecuteGenevaGSQL.REL_FAILURE).get(0)
+                .assertAttributeEquals("portfolio.code", "Fund1\"; DROP");
+    }
+
+    @Test
+    void testBatchesOfATriggerAreCommittedTogether() {
+        enqueue("Fund1", "1001");
+        enqueue("Fund2", "1002");
+        enqueue("Fund2", "1001");
+        testRunner.run();
+
+        assertEquals(2, executor.getExecutedCommands().size());
+        testRunner.assertAllFlowFilesTransferred(ExecuteGenevaGSQL.REL_SUCCESS, 3);
+        for (final ICommand command : executor.getExecutedCommands())
+            assertFalse(executor.exists(command.getOutputResource()), command.getOutputResource());
+    }
+
+    @Test
+    void testRejectedBatchReturnsTheBatchesNotRunYetToTheQueue() {
+        executor.setRunHandler(command -> {
+            if (command.getCommand().contains("-k 1002"))
+                throw new RunRejectedException("Too many runs for testing");
+            executor.addFile(command.getOutputResource(), RESULT);
+        });
+        enqueue("Fund1", "1001");
+        enqueue("Fund2", "1002");
+        enqueue("Fund2", "1003");
+        testRunner.run();
+
+        assertEquals(2, executor.getExecutedCommands().size());
+        testRunner.assertAllFlowFilesTransferred(ExecuteGenevaGSQL.REL_SUCCESS, 1);
+        testRunner.getFlowFilesForRelationship(ExecuteGenevaGSQL.REL_SUCCESS).get(0).assertAttributeEquals("aga",
+                "1001");
+        testRunner.assertQueueNotEmpty();
+        assertEquals(2, testRunner.getQueueSize().getObjectCount());
+    }
+
+    @Test
+    void testBatchesForAnOpenCircuitGoBackToTheirQueue() {
+        testRunner.setProperty(BaseExecuteGeneva.CIRCUIT_BREAKER_THRESHOLD, "1");
+        testRunner.setProperty(BaseExecuteGeneva.CIRCUIT_BREAKER_OPEN_DURATION, "1 hour");
+        executor.setRunHandler(command -> {
+            if (command.getCommand().contains("-k 2002"))
+                throw new IOException("Connection refused for testing");
+            executor.addFile(command.getOutputResource(), RESULT);
+        });
+        enqueue("Fund1", "2001");
+        enqueue("Fund2", "2002");
+        testRunner.run();
+
+        testRunner.assertTransferCount(ExecuteGenevaGSQL.REL_SUCCESS, 1);
+        testRunner.assertTransferCount(ExecuteGenevaGSQL.REL_FAILURE, 1);
+        testRunner.clearTransferState();
+        executor.getExecutedCommands().clear();
+
+        enqueue("Fund1", "2001");
+        enqueue("Fund2", "2002");
+        testRunner.run();
+
+        assertEquals(1, executor.getExecutedCommands().size());
+        testRunner.assertAllFlowFilesTransferred(ExecuteGenevaGSQL.REL_SUCCESS, 1);
+        testRunner.getFlowFilesForRelationship(ExecuteGenevaGSQL.REL_SUCCESS).get(0).assertAttributeEquals("aga",
+                "2001");
+        assertEquals(1, testRunner.getQueueSize().getObjectCount());
+    }
+}
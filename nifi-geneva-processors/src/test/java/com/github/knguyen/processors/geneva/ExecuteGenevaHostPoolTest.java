@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class ExecuteGenevaHostPoolTest {
+    private static final String REPORT = "NameSort,NetAssets\n" + "Fund1,100\n";
+
+    private final InMemoryCommandExecutor executor = new InMemoryCommandExecutor();
+    private final AtomicInteger createdExecutors = new AtomicInteger();
+    private ServerSocket host;
+    private TestRunner testRunner;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        // the pool only routes runs to the targets its probes reach
+        host = new ServerSocket(0);
+
+        testRunner = TestRunners.newTestRunner(ExecuteGenevaRSL.class);
+        final ExecuteGenevaRSL processor = (ExecuteGenevaRSL) testRunner.getProcessor();
+        processor.setExecutorProvider((context, logger) -> {
+            createdExecutors.incrementAndGet();
+            return executor;
+        });
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, BaseExecuteGenevaTest.HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, BaseExecuteGenevaTest.USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, BaseExecuteGenevaTest.PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, BaseExecuteGenevaTest.RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, BaseExecuteGenevaTest.RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "9999");
+        testRunner.setProperty(BaseExecuteGeneva.HOST_POOL,
+                "127.0.0.1:" + host.getLocalPort() + " 9001\nlocalhost:" + host.getLocalPort() + " 9002");
+        testRunner.setProperty(ExecuteGenevaRSL.RSL_NAME, "netassets");
+
+        executor.setRunHandler(command -> executor.addFile(command.getOutputResource(), REPORT));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        host.close();
+    }
+
+    private void enqueue(final int count) {
+        for (int i = 0; i < count; i++) {
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put("filename", "report-" + i);
+            testRunner.enqueue("", attributes);
+        }
+    }
+
+    @Test
+    void testEveryTargetKeepsItsExecutor() {
+        enqueue(6);
+        testRunner.run(6);
+
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_SUCCESS, 6);
+        assertEquals(2, createdExecutors.get(), "one executor per target, whatever the number of runs");
+        assertEquals(6, executor.getExecutedCommands().size());
+    }
+
+    @Test
+    void testReportsOfPoolTargetsAreRemovedInBatches() {
+        testRunner.setProperty(BaseExecuteGeneva.REMOTE_CLEANUP_BATCH_SIZE, "10");
+        enqueue(4);
+        testRunner.run(4);
+
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_SUCCESS, 4);
+        assertEquals(2, executor.getDeletedBatches().size(), "one batch per target once the processor stops");
+        assertEquals(4, executor.getDeletedBatches().stream().mapToInt(batch -> batch.size()).sum());
+        for (final ICommand command : executor.getExecutedCommands())
+            assertFalse(executor.exists(command.getOutputResource()));
+    }
+}
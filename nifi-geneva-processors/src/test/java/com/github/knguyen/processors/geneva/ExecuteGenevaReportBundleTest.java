@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.knguyen.processors.geneva.command.BundleCommand;
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class ExecuteGenevaReportBundleTest {
+    private static final String REPORTS = "glmap_netassets\n" + "# not run\n" + "\n"
+            + "runquery TaxLotAppraisalAccruals\n";
+
+    private final InMemoryCommandExecutor executor = new InMemoryCommandExecutor();
+    private TestRunner testRunner;
+
+    @BeforeEach
+    public void setup() {
+        testRunner = TestRunners.newTestRunner(ExecuteGenevaReportBundle.class);
+        final ExecuteGenevaReportBundle processor = (ExecuteGenevaReportBundle) testRunner.getProcessor();
+        processor.setExecutorProvider((context, logger) -> executor);
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, BaseExecuteGenevaTest.HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, BaseExecuteGenevaTest.USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, BaseExecuteGenevaTest.PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, BaseExecuteGenevaTest.RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, BaseExecuteGenevaTest.RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "9999");
+        testRunner.setProperty(ExecuteGenevaReportBundle.REPORT_BUNDLE, REPORTS);
+    }
+
+    /**
+     * Writes `report n` to the output of the n-th report of a bundle.
+     */
+    private void writeReports() {
+        executor.setRunHandler(command -> {
+            final List<String> outputResources = ((BundleCommand) command).getOutputResources();
+            for (int i = 0; i < outputResources.size(); i++)
+                executor.addFile(outputResources.get(i), "report " + (i + 1) + "\n");
+        });
+    }
+
+    @Test
+    void testEveryReportOfTheBundleIsFetchedFromASingleRun() {
+        writeReports();
+        testRunner.enqueue("");
+        testRunner.run();
+
+        assertEquals(1, executor.getExecutedCommands().size());
+        testRunner.assertTransferCount(ExecuteGenevaReportBundle.REL_SUCCESS, 2);
+        testRunner.assertTransferCount(ExecuteGenevaReportBundle.REL_ORIGINAL, 1);
+        testRunner.assertTransferCount(ExecuteGenevaReportBundle.REL_FAILURE, 0);
+
+        final BundleCommand command = (BundleCommand) executor.getExecutedCommands().get(0);
+        final List<MockFlowFile> reports = testRunner.getFlowFilesForRelationship(ExecuteGenevaReportBundle.REL_SUCCESS);
+        final String[] names = { "glmap_netassets", "runquery TaxLotAppraisalAccruals" };
+        for (int i = 0; i < reports.size(); i++) {
+            final MockFlowFile report = reports.get(i);
+            report.assertContentEquals("report " + (i + 1) + "\n");
+            report.assertAttributeEquals("geneva.bundle.index", String.valueOf(i + 1));
+            report.assertAttributeEquals("geneva.bundle.report", names[i]);
+            report.assertAttributeEquals("memory.remote.filename", command.getOutputResources().get(i));
+        }
+        testRunner.getFlowFilesForRelationship(ExecuteGenevaReportBundle.REL_ORIGINAL).get(0)
+                .assertAttributeEquals("geneva.bundle.count", "2");
+        assertEquals(2, testRunner.getProvenanceEvents().stream()
+                .filter(event -> event.getEventType() == ProvenanceEventType.FETCH).count());
+    }
+
+    @Test
+    void testReportsAreRemovedFromTheHostOnceCommitted() {
+        writeReports();
+        testRunner.enqueue("");
+        testRunner.run();
+
+        final BundleCommand command = (BundleCommand) executor.getExecutedCommands().get(0);
+        for (final String outputResource : command.getOutputResources())
+            assertFalse(executor.exists(outputResource), outputResource);
+    }
+
+    @Test
+    void testGenevaErrorFailsTheWholeBundle() {
+        executor.setRunHandler(command -> {
+            throw new GenevaException("runrep failed", "Could not find the RSL glmap_netassets", "runrep");
+        });
+        testRunner.enqueue("");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(ExecuteGenevaReportBundle.REL_GENEVA_FAILURE, 1);
+        testRunner.getFlowFilesForRelationship(ExecuteGenevaReportBundle.REL_GENEVA_FAILURE).get(0)
+                .assertAttributeEquals("geneva.runrep.error", "Could not find the RSL glmap_netassets");
+    }
+}
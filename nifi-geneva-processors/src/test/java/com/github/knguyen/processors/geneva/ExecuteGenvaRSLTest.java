@@ -18,6 +18,7 @@ package com.github.knguyen.processors.geneva;
 
 import org.apache.nifi.context.PropertyContext;
 import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
+import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunners;
 import org.junit.jupiter.api.BeforeEach;
 import org.mockito.Mockito;
@@ -28,6 +29,8 @@ import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -35,7 +38,9 @@ import org.junit.jupiter.api.Test;
 
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.sftp.FileAttributes;
 import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
 import net.schmizz.sshj.sftp.SFTPClient;
 
 import org.mockito.ArgumentMatcher;
@@ -83,6 +88,8 @@ class ExecuteGenvaRSLTest extends BaseExecuteGenevaTest {
         final String noErrors = "okay\n";
         when(mockCommand.getErrorStream()).thenReturn(new ByteArrayInputStream(noErrors.getBytes()));
         when(mockCommand.getExitStatus()).thenReturn(0);
+        when(mockCommand.getInputStream())
+                .thenAnswer(invocation -> new ByteArrayInputStream("geneva.pid=4242\n".getBytes()));
 
         testRunner = TestRunners.newTestRunner(ExecuteGenevaRSL.class);
 
@@ -121,7 +128,9 @@ class ExecuteGenvaRSLTest extends BaseExecuteGenevaTest {
         Mockito.verify(mockSession).exec(argThat(new ArgumentMatcher<String>() {
             @Override
             public boolean matches(String argument) {
-                return argument.matches("runrep -f empty.lst -b << EOF" + System.lineSeparator() + //
+                // without the job journal, the standard error is not kept on the host
+                return argument.matches("echo geneva\\.pid=\\$\\$; runrep -f empty.lst -b << EOF"
+                        + System.lineSeparator() + //
                         "connect runrepusr/runreppass -k 9999" + System.lineSeparator() + //
                         "read \"netassets.rsl\"" + System.lineSeparator() + //
                         "runfile \"netassets\" -f csv -o \"/tmp/[a-f0-9\\-]*\\.csv\"" + System.lineSeparator() + //
@@ -151,21 +160,140 @@ class ExecuteGenvaRSLTest extends BaseExecuteGenevaTest {
                 .withPassword("bar").withRunrepUsername("fez").withRunrepPassword("faz").withGenevaAga(1234)
                 .withRSLName("positions").withReportOutputPath("/tmp/my report file.csv")
                 .withExpectedCommandPattern(commandPattern).build();
+        testRunner.setProperty(BaseExecuteGeneva.JOB_JOURNAL, "true");
 
         gvaTestRunner.execute(this);
         gvaTestRunner.assertPass();
 
-        // verify that we called with the correct cmd
+        // verify that we called with the correct cmd, keeping the standard error for a reattach
         Mockito.verify(mockSession).exec(argThat(new ArgumentMatcher<String>() {
             @Override
             public boolean matches(String argument) {
-                return argument.matches("runrep -f empty.lst -b << EOF" + System.lineSeparator() + //
+                return argument.matches("echo geneva\\.pid=\\$\\$; \\{ \\{ runrep -f empty.lst -b << EOF"
+                        + System.lineSeparator() + //
                         "connect fez/faz -k 1234" + System.lineSeparator() + //
                         "read \"positions.rsl\"" + System.lineSeparator() + //
                         "runfile \"positions\" -f csv -o \"/tmp/my report file.csv\"" + System.lineSeparator() + //
                         "exit" + System.lineSeparator() + //
-                        "EOF\n");
+                        "EOF\n\n\\} 2>&1 1>&3 3>&- \\| tee '/tmp/\\.my report file\\.csv\\.stderr' 1>&2 3>&-; \\} 3>&1; "
+                        + "echo geneva\\.run=completed >> '/tmp/\\.my report file\\.csv\\.stderr'");
+            }
+        }));
+    }
+
+    @Test
+    void testAutoIncrementalUsesKnowledgeDateOfLastSuccessfulRun() throws Exception {
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "9999");
+        testRunner.setProperty(ExecuteGenevaRSL.RSL_NAME, "netassets");
+        testRunner.setProperty(BaseExecuteGeneva.ACCOUNTING_RUN_TYPE,
+                BaseExecuteGeneva.INCREMENTAL_ACCOUNTING.getValue());
+        testRunner.setProperty(BaseExecuteGeneva.AUTO_INCREMENTAL, "true");
+
+        // the first run has nothing to be incremental to
+        testRunner.enqueue("", Map.of("geneva.knowledgedate", "2024-01-31T23:59:59"));
+        testRunner.run();
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_SUCCESS, 1);
+        testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_SUCCESS).get(0)
+                .assertAttributeNotExists(BaseExecuteGeneva.AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE);
+        Mockito.verify(mockSession).exec(argThat(new ArgumentMatcher<String>() {
+            @Override
+            public boolean matches(String argument) {
+                return argument.contains("-at Incremental") && !argument.contains("-pk");
+            }
+        }));
+
+        // the second run picks up where the first one left off
+        testRunner.clearTransferState();
+        testRunner.enqueue("", Map.of("geneva.knowledgedate", "2024-02-29T23:59:59"));
+        testRunner.run();
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_SUCCESS, 1);
+        testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_SUCCESS).get(0).assertAttributeEquals(
+                BaseExecuteGeneva.AUTO_PRIOR_KNOWLEDGE_DATE_ATTRIBUTE, "2024-01-31T23:59:59");
+        Mockito.verify(mockSession).exec(argThat(new ArgumentMatcher<String>() {
+            @Override
+            public boolean matches(String argument) {
+                return argument.contains("-k 2024-02-29T23:59:59 -pk 2024-01-31T23:59:59");
+            }
+        }));
+    }
+
+    @Test
+    void testShardedLayoutWritesToCreatedShardDirectory() throws Exception {
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "9999");
+        testRunner.setProperty(ExecuteGenevaRSL.RSL_NAME, "netassets");
+        testRunner.setProperty(BaseExecuteGeneva.REPORT_OUTPUT_DIRECTORY, "/tmp");
+        testRunner.setProperty(BaseExecuteGeneva.REPORT_OUTPUT_LAYOUT, BaseExecuteGeneva.SHARDED_LAYOUT.getValue());
+
+        testRunner.enqueue("");
+        testRunner.run();
+        testRunner.assertAllFlowFilesTransferred(BaseExecuteGeneva.REL_SUCCESS, 1);
+
+        final String uuid = testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_SUCCESS).get(0)
+                .getAttribute("uuid");
+        final String shardDirectory = "/tmp/" + uuid.substring(0, 2) + "/" + uuid.substring(2, 4);
+        Mockito.verify(mockSftpClient).mkdirs(shardDirectory);
+        Mockito.verify(mockSession).exec(argThat(new ArgumentMatcher<String>() {
+            @Override
+            public boolean matches(String argument) {
+                return argument.contains("-o \"" + shardDirectory + "/" + uuid + ".csv\"");
             }
         }));
     }
+
+    @Test
+    void testSiblingOutputsAreFetchedAndRemovedWithTheReport() throws Exception {
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, "9999");
+        testRunner.setProperty(ExecuteGenevaRSL.RSL_NAME, "netassets");
+        testRunner.setProperty(BaseExecuteGeneva.REPORT_OUTPUT_DIRECTORY, "/tmp");
+        testRunner.setProperty(BaseExecuteGeneva.REPORT_OUTPUT_FORMAT, BaseExecuteGeneva.OUTPUT_XML_ERROR.getValue());
+        testRunner.setProperty(BaseExecuteGeneva.FETCH_SIBLING_OUTPUTS, "true");
+
+        final String uuid = testRunner.enqueue("").getAttribute("uuid");
+        final List<RemoteResourceInfo> listing = Arrays.asList(mockRemoteResourceInfo(uuid + ".xml"),
+                mockRemoteResourceInfo(uuid + ".err"), mockRemoteResourceInfo(uuid + ".arg"),
+                mockRemoteResourceInfo("another-report.err"));
+        when(mockSftpClient.ls("/tmp")).thenReturn(listing);
+
+        testRunner.run();
+        testRunner.assertTransferCount(BaseExecuteGeneva.REL_SUCCESS, 1);
+        testRunner.assertTransferCount(BaseExecuteGeneva.REL_SIBLING_OUTPUT, 2);
+        testRunner.getFlowFilesForRelationship(BaseExecuteGeneva.REL_SUCCESS).get(0)
+                .assertAttributeEquals("geneva.sibling.count", "2");
+
+        final List<MockFlowFile> siblings = testRunner
+                .getFlowFilesForRelationship(BaseExecuteGeneva.REL_SIBLING_OUTPUT);
+        siblings.get(0).assertAttributeEquals("filename", uuid + ".arg");
+        siblings.get(0).assertAttributeEquals("geneva.sibling.extension", "arg");
+        siblings.get(1).assertAttributeEquals("filename", uuid + ".err");
+        siblings.get(1).assertAttributeEquals("ssh.remote.filename", "/tmp/" + uuid + ".err");
+        siblings.get(1).assertContentEquals(SSHCommandExecutorForTesting.CSV_CONTENT);
+
+        // the report and its siblings are removed with a single command
+        Mockito.verify(mockSession).exec("rm -f -- '/tmp/" + uuid + ".xml' '/tmp/" + uuid + ".arg' '/tmp/" + uuid
+                + ".err'");
+    }
+
+    private static RemoteResourceInfo mockRemoteResourceInfo(final String name) {
+        final RemoteResourceInfo info = Mockito.mock(RemoteResourceInfo.class);
+        when(info.getName()).thenReturn(name);
+        when(info.getPath()).thenReturn("/tmp/" + name);
+        when(info.isRegularFile()).thenReturn(true);
+        when(info.getAttributes()).thenReturn(FileAttributes.EMPTY);
+        return info;
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class PurgeGenevaReportOutputsTest {
+    private static final long TWO_DAYS_AGO = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+
+    @TempDir
+    Path outputDirectory;
+
+    private final InMemoryCommandExecutor executor = new InMemoryCommandExecutor();
+    private TestRunner testRunner;
+
+    @BeforeEach
+    public void setup() {
+        testRunner = TestRunners.newTestRunner(PurgeGenevaReportOutputs.class);
+        final PurgeGenevaReportOutputs processor = (PurgeGenevaReportOutputs) testRunner.getProcessor();
+        processor.setExecutorProvider((context, logger) -> executor);
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, BaseExecuteGenevaTest.HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, BaseExecuteGenevaTest.USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, BaseExecuteGenevaTest.PASSWORD);
+        testRunner.setProperty(PurgeGenevaReportOutputs.REPORT_OUTPUT_DIRECTORY, outputDirectory.toString());
+        testRunner.setProperty(PurgeGenevaReportOutputs.MINIMUM_FILE_AGE, "1 day");
+    }
+
+    private String report(final String name) {
+        return outputDirectory.resolve(name).toString();
+    }
+
+    @Test
+    void testOutputDirectoryHasNoDefault() {
+        testRunner.removeProperty(PurgeGenevaReportOutputs.REPORT_OUTPUT_DIRECTORY);
+
+        testRunner.assertNotValid();
+    }
+
+    @Test
+    void testRemovesOnlyOldReportsNamedAfterFlowFiles() {
+        final String orphan = report("c480d5a6-9400-11ee-b9d1-0242ac120002.csv");
+        final String otherOrphan = report("0f8fad5b-d9cb-469f-a165-70867728950e.txt");
+        final String recent = report("7c9e6679-7425-40de-944b-e07fc1f90ae7.csv");
+        final String fixedPath = report("positions.csv");
+        executor.addFile(orphan, 1000, TWO_DAYS_AGO);
+        executor.addFile(otherOrphan, 234, TWO_DAYS_AGO);
+        executor.addFile(recent, 1000, System.currentTimeMillis());
+        executor.addFile(fixedPath, 1000, TWO_DAYS_AGO);
+
+        testRunner.run();
+
+        assertFalse(executor.exists(orphan));
+        assertFalse(executor.exists(otherOrphan));
+        assertTrue(executor.exists(recent));
+        assertTrue(executor.exists(fixedPath));
+        assertEquals(2L, testRunner.getCounterValue(PurgeGenevaReportOutputs.REMOVED_COUNTER).longValue());
+        assertEquals(1234L, testRunner.getCounterValue(PurgeGenevaReportOutputs.RECLAIMED_COUNTER).longValue());
+    }
+
+    @Test
+    void testRemovesTheStandardErrorOfRunsNeverReattachedTo() {
+        final String stdErr = report(".c480d5a6-9400-11ee-b9d1-0242ac120002.csv.stderr");
+        final String otherHiddenFile = report(".profile");
+        executor.addFile(stdErr, 12, TWO_DAYS_AGO);
+        executor.addFile(otherHiddenFile, 12, TWO_DAYS_AGO);
+
+        testRunner.run();
+
+        assertFalse(executor.exists(stdErr));
+        assertTrue(executor.exists(otherHiddenFile));
+    }
+
+    @Test
+    void testRemovesReportsInShardDirectories() {
+        final String flatOrphan = report("0f8fad5b-d9cb-469f-a165-70867728950e.txt");
+        final String shardedOrphan = report("c4/80/c480d5a6-9400-11ee-b9d1-0242ac120002.csv");
+        final String archived = report("archive/7c9e6679-7425-40de-944b-e07fc1f90ae7.csv");
+        final String tooDeep = report("c4/80/00/7c9e6679-7425-40de-944b-e07fc1f90ae7.csv");
+        executor.addFile(flatOrphan, 1000, TWO_DAYS_AGO);
+        executor.addFile(shardedOrphan, 1000, TWO_DAYS_AGO);
+        executor.addFile(archived, 1000, TWO_DAYS_AGO);
+        executor.addFile(tooDeep, 1000, TWO_DAYS_AGO);
+
+        testRunner.run();
+
+        assertFalse(executor.exists(flatOrphan));
+        assertFalse(executor.exists(shardedOrphan));
+        assertTrue(executor.exists(archived));
+        assertTrue(executor.exists(tooDeep));
+    }
+
+    @Test
+    void testReportsThatCouldNotBeRemovedAreNotCounted() {
+        final String orphan = report("c480d5a6-9400-11ee-b9d1-0242ac120002.csv");
+        final String undeletable = report("0f8fad5b-d9cb-469f-a165-70867728950e.csv");
+        executor.addFile(orphan, 1000, TWO_DAYS_AGO);
+        executor.addFile(undeletable, 1000, TWO_DAYS_AGO);
+        executor.setUndeletable(undeletable);
+
+        testRunner.run();
+
+        assertTrue(executor.exists(undeletable));
+        assertEquals(1L, testRunner.getCounterValue(PurgeGenevaReportOutputs.REMOVED_COUNTER).longValue());
+        assertEquals(1000L, testRunner.getCounterValue(PurgeGenevaReportOutputs.RECLAIMED_COUNTER).longValue());
+    }
+
+    @Test
+    void testUnreachableHostRemovesNothing() {
+        final String orphan = report("c480d5a6-9400-11ee-b9d1-0242ac120002.csv");
+        executor.addFile(orphan, 1000, TWO_DAYS_AGO);
+        executor.setUnreachable(true);
+
+        testRunner.run();
+
+        assertTrue(executor.exists(orphan));
+        assertTrue(executor.getDeletedBatches().isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class RemoteCleanupQueueTest {
+
+    private final InMemoryCommandExecutor executor = new InMemoryCommandExecutor();
+    private final FlowFile flowFile = Mockito.mock(FlowFile.class);
+    private RemoteCleanupQueue queue;
+
+    private RemoteCleanupQueue createQueue(final int batchSize) {
+        // a long interval, so that only full batches and explicit flushes remove anything
+        queue = new RemoteCleanupQueue(executor, batchSize, TimeUnit.HOURS.toMillis(1),
+                Mockito.mock(ComponentLog.class));
+        return queue;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (queue != null)
+            queue.close();
+    }
+
+    @Test
+    void testReportsAreGroupedByTarget() {
+        createQueue(10);
+        queue.enqueue("user@host1:22", flowFile, "/tmp/a.csv");
+        queue.enqueue("user@host2:22", flowFile, "/tmp/b.csv");
+        queue.enqueue("user@host1:22", flowFile, "/tmp/c.csv");
+
+        queue.flush();
+
+        assertEquals(Arrays.asList(Arrays.asList("/tmp/a.csv", "/tmp/c.csv"), Arrays.asList("/tmp/b.csv")),
+                executor.getDeletedBatches());
+    }
+
+    @Test
+    void testFullBatchIsFlushedInTheBackground() throws InterruptedException {
+        createQueue(2);
+        queue.enqueue("user@host1:22", flowFile, "/tmp/a.csv");
+        assertTrue(executor.getDeletedBatches().isEmpty());
+
+        queue.enqueue("user@host1:22", flowFile, "/tmp/b.csv");
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getDeletedBatches().isEmpty() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(Arrays.asList(Arrays.asList("/tmp/a.csv", "/tmp/b.csv")), executor.getDeletedBatches());
+    }
+
+    @Test
+    void testFailedReportsAreRetriedThenDropped() {
+        createQueue(10);
+        executor.setUndeletable("/tmp/b.csv");
+        queue.enqueue("user@host1:22", flowFile, "/tmp/a.csv");
+        queue.enqueue("user@host1:22", flowFile, "/tmp/b.csv");
+
+        for (int flush = 0; flush < RemoteCleanupQueue.MAX_ATTEMPTS + 1; flush++)
+            queue.flush();
+
+        assertEquals(Arrays.asList(Arrays.asList("/tmp/a.csv", "/tmp/b.csv"), Arrays.asList("/tmp/b.csv"),
+                Arrays.asList("/tmp/b.csv")), executor.getDeletedBatches());
+    }
+
+    @Test
+    void testUnreachableHostResetsTheConnection() {
+        createQueue(10);
+        executor.setUnreachable(true);
+        queue.enqueue("user@host1:22", flowFile, "/tmp/a.csv");
+
+        queue.flush();
+        assertEquals(1, executor.getCloseCount());
+
+        executor.setUnreachable(false);
+        queue.flush();
+        assertEquals(2, executor.getDeletedBatches().size());
+    }
+
+    @Test
+    void testCloseRemovesQueuedReports() {
+        createQueue(10);
+        queue.enqueue("user@host1:22", flowFile, "/tmp/a.csv");
+
+        queue.close();
+        queue = null;
+
+        assertEquals(Arrays.asList(Arrays.asList("/tmp/a.csv")), executor.getDeletedBatches());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.knguyen.processors.geneva.portfolio.GenevaPortfolioService;
+import com.github.knguyen.processors.geneva.portfolio.GenevaPortfolios;
+
+class SplitGenevaPortfolioGroupTest {
+
+    private static final String GENEVA_AGA = "20";
+
+    private static final String MEMBERSHIPS = "Portfolio,PortfolioGroup\n" + "Fund1,Equities\n" + "Fund2,Equities\n"
+            + "Fund3,Equities\n" + "\"My Fund\",Credit\n" + "Fund5,Credit\n" + "Equities,AllFunds\n"
+            + "Credit,AllFunds\n";
+
+    private final StaticPortfolioService portfolioService = new StaticPortfolioService();
+    private TestRunner testRunner;
+
+    @BeforeEach
+    public void setup() throws InitializationException {
+        testRunner = TestRunners.newTestRunner(SplitGenevaPortfolioGroup.class);
+        testRunner.addControllerService("portfolios", portfolioService);
+        testRunner.enableControllerService(portfolioService);
+
+        testRunner.setProperty(BaseExecuteGeneva.HOSTNAME, BaseExecuteGenevaTest.HOSTNAME);
+        testRunner.setProperty(BaseExecuteGeneva.USERNAME, BaseExecuteGenevaTest.USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.PASSWORD, BaseExecuteGenevaTest.PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_USERNAME, BaseExecuteGenevaTest.RUNREP_USERNAME);
+        testRunner.setProperty(BaseExecuteGeneva.RUNREP_PASSWORD, BaseExecuteGenevaTest.RUNREP_PASSWORD);
+        testRunner.setProperty(BaseExecuteGeneva.GENEVA_AGA, GENEVA_AGA);
+        testRunner.setProperty(SplitGenevaPortfolioGroup.PORTFOLIO_SERVICE, "portfolios");
+        testRunner.setProperty(SplitGenevaPortfolioGroup.MAX_PORTFOLIOS_PER_SPLIT, "2");
+    }
+
+    private static List<String> getPortfolios(final List<MockFlowFile> flowFiles) {
+        return flowFiles.stream().map(flowFile -> flowFile.getAttribute("geneva.portfolio"))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testSplitsTheExpandedGroupsIntoBalancedWorkUnits() {
+        testRunner.setProperty(BaseExecuteGeneva.PORTFOLIO_LIST, "AllFunds");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        testRunner.assertTransferCount(SplitGenevaPortfolioGroup.REL_SPLIT, 3);
+        testRunner.assertTransferCount(SplitGenevaPortfolioGroup.REL_ORIGINAL, 1);
+        testRunner.assertTransferCount(SplitGenevaPortfolioGroup.REL_FAILURE, 0);
+
+        final List<MockFlowFile> splits = testRunner.getFlowFilesForRelationship(SplitGenevaPortfolioGroup.REL_SPLIT);
+        assertEquals(Arrays.asList("Fund1,Fund2", "Fund3,\\\"My Fund\\\"", "Fund5"), getPortfolios(splits));
+        splits.get(0).assertAttributeEquals("geneva.portfolio.count", "2");
+        splits.get(2).assertAttributeEquals("geneva.portfolio.count", "1");
+        assertEquals(Collections.singletonList(GENEVA_AGA), portfolioService.agas);
+    }
+
+    @Test
+    void testWorkUnitsAreFragmentsOfTheOriginal() {
+        testRunner.setProperty(BaseExecuteGeneva.PORTFOLIO_LIST, "Equities, Fund5");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        final String originalId = testRunner.getFlowFilesForRelationship(SplitGenevaPortfolioGroup.REL_ORIGINAL)
+                .get(0).getAttribute(CoreAttributes.UUID.key());
+        final List<MockFlowFile> splits = testRunner.getFlowFilesForRelationship(SplitGenevaPortfolioGroup.REL_SPLIT);
+        assertEquals(2, splits.size());
+        for (int i = 0; i < splits.size(); i++) {
+            splits.get(i).assertAttributeEquals("fragment.identifier", originalId);
+            splits.get(i).assertAttributeEquals("fragment.index", String.valueOf(i));
+            splits.get(i).assertAttributeEquals("fragment.count", "2");
+        }
+    }
+
+    @Test
+    void testUnknownPortfolioIsRoutedToFailure() {
+        testRunner.setProperty(BaseExecuteGeneva.PORTFOLIO_LIST, "Equities,Fund9");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(SplitGenevaPortfolioGroup.REL_FAILURE, 1);
+        final MockFlowFile failed = testRunner.getFlowFilesForRelationship(SplitGenevaPortfolioGroup.REL_FAILURE)
+                .get(0);
+        failed.assertAttributeEquals("geneva.portfolio.error", "`Fund9` is neither a portfolio nor a group");
+        assertEquals(1, testRunner.getPenalizedFlowFiles().size());
+    }
+
+    @Test
+    void testPortfoliosThatCannotBeLoadedAreRoutedToFailure() {
+        portfolioService.failure = new IOException("runrep exited with status 1");
+        testRunner.setProperty(BaseExecuteGeneva.PORTFOLIO_LIST, "Fund1");
+        testRunner.enqueue("");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(SplitGenevaPortfolioGroup.REL_FAILURE, 1);
+        testRunner.getFlowFilesForRelationship(SplitGenevaPortfolioGroup.REL_FAILURE).get(0)
+                .assertAttributeEquals("geneva.portfolio.error", "runrep exited with status 1");
+    }
+
+    @Test
+    void testEmptyListOnlyRoutesTheOriginal() {
+        testRunner.enqueue("");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(SplitGenevaPortfolioGroup.REL_ORIGINAL, 1);
+        testRunner.assertTransferCount(SplitGenevaPortfolioGroup.REL_SPLIT, 0);
+    }
+
+    private static class StaticPortfolioService extends AbstractControllerService implements GenevaPortfolioService {
+        private final List<String> agas = new ArrayList<>();
+        private IOException failure;
+
+        @Override
+        public GenevaPortfolios getPortfolios(final String aga, final PortfolioLoader loader) throws IOException {
+            agas.add(aga);
+            if (failure != null)
+                throw failure;
+            return GenevaPortfolios.parse(MEMBERSHIPS, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StreamToFlowfileContentHandlerTest {
+    private final StreamToFlowfileContentHandler handler = new StreamToFlowfileContentHandler();
+    private ProcessSession session;
+    private FlowFile flowFile;
+
+    @BeforeEach
+    public void setup() {
+        final TestRunner testRunner = TestRunners.newTestRunner(ExecuteGenevaRSL.class);
+        session = testRunner.getProcessSessionFactory().createSession();
+        flowFile = session.create();
+    }
+
+    @Test
+    void testReportNotArrivedYetIsStillCopied() throws IOException {
+        // like a network stream whose first bytes are still on their way
+        final FilterInputStream slowStream = new FilterInputStream(
+                new ByteArrayInputStream("Fund1,100\n".getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+
+        final FlowFile result = handler.handleStream(null, flowFile, session, slowStream);
+        ((MockFlowFile) result).assertContentEquals("Fund1,100\n");
+    }
+
+    @Test
+    void testEmptyReportLeavesTheFlowFileAsIs() throws IOException {
+        final FlowFile result = handler.handleStream(null, flowFile, session, new ByteArrayInputStream(new byte[0]));
+        assertSame(flowFile, result);
+        assertEquals(0, result.getSize());
+    }
+}
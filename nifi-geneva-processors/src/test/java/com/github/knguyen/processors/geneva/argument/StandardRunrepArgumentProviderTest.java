@@ -203,12 +203,37 @@ class StandardRunrepArgumentProviderTest {
         when(propertyValue1.evaluateAttributeExpressions(flowfile)).thenReturn(propertyValue1);
         when(propertyValue1.getValue()).thenReturn("");
 
+        mockOutputLayout(BaseExecuteGeneva.FLAT_LAYOUT.getValue());
         when(flowfile.getAttribute(CoreAttributes.UUID.key())).thenReturn(MOCK_FLOW_UUID);
 
         assertEquals(System.getProperty("java.io.tmpdir") + "/c480d5a6-9400-11ee-b9d1-0242ac120002.csv",
                 provider.getOutputPath());
     }
 
+    @Test
+    void testShardedFileNameFromDirectoryPath() {
+        final var propertyValue0 = Mockito.mock(PropertyValue.class);
+        when(context.getProperty(BaseExecuteGeneva.REPORT_OUTPUT_DIRECTORY)).thenReturn(propertyValue0);
+        when(propertyValue0.evaluateAttributeExpressions(flowfile)).thenReturn(propertyValue0);
+        when(propertyValue0.getValue()).thenReturn("/tmp/me");
+
+        final var propertyValue1 = Mockito.mock(PropertyValue.class);
+        when(context.getProperty(BaseExecuteGeneva.REPORT_OUTPUT_PATH)).thenReturn(propertyValue1);
+        when(propertyValue1.evaluateAttributeExpressions(flowfile)).thenReturn(propertyValue1);
+        when(propertyValue1.getValue()).thenReturn("");
+
+        mockOutputLayout(BaseExecuteGeneva.SHARDED_LAYOUT.getValue());
+        when(flowfile.getAttribute(CoreAttributes.UUID.key())).thenReturn(MOCK_FLOW_UUID);
+
+        assertEquals("/tmp/me/c4/80/c480d5a6-9400-11ee-b9d1-0242ac120002.csv", provider.getOutputPath());
+    }
+
+    private void mockOutputLayout(final String layout) {
+        final var propertyValue = Mockito.mock(PropertyValue.class);
+        when(context.getProperty(BaseExecuteGeneva.REPORT_OUTPUT_LAYOUT)).thenReturn(propertyValue);
+        when(propertyValue.getValue()).thenReturn(layout);
+    }
+
     @Test
     void testFilenameFromFilePath() {
         final var propertyValue0 = Mockito.mock(PropertyValue.class);
@@ -244,6 +269,7 @@ class StandardRunrepArgumentProviderTest {
         when(propertyValue1.evaluateAttributeExpressions(flowfile)).thenReturn(propertyValue1);
         when(propertyValue1.getValue()).thenReturn("json");
 
+        mockOutputLayout(BaseExecuteGeneva.FLAT_LAYOUT.getValue());
         when(flowfile.getAttribute(CoreAttributes.UUID.key())).thenReturn(MOCK_FLOW_UUID);
 
         assertEquals("/tmp/me/c480d5a6-9400-11ee-b9d1-0242ac120002.json", provider.getOutputPath());
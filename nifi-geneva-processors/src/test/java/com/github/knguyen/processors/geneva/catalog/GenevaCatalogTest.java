@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.catalog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class GenevaCatalogTest {
+
+    private static final String LIST = "Available reports:\n" + "  1. taxlotappraisal Tax Lot Appraisal\n"
+            + " 12  positionsbyfund.rsl\n" + "\n";
+    private static final String PQUERY = "TaxLotAppraisalAccruals\n" + "OpenPositions  (3 parameters)\n";
+
+    @Test
+    void testReportsAndQueriesAreFound() {
+        final GenevaCatalog catalog = GenevaCatalog.parse(LIST, PQUERY, 42L);
+
+        assertTrue(catalog.contains("runfile", "TaxLotAppraisal.rsl"));
+        assertTrue(catalog.contains("run", "Tax Lot Appraisal"));
+        assertTrue(catalog.contains("runfile", "positionsbyfund"));
+        assertTrue(catalog.contains("runquery", "openpositions"));
+        assertFalse(catalog.contains("runfile", "missingreport"));
+        assertFalse(catalog.contains("runquery", "MissingQuery"));
+        assertEquals(42L, catalog.getLoadedAt());
+    }
+
+    @Test
+    void testReportNumbersResolveToNames() {
+        final GenevaCatalog catalog = GenevaCatalog.parse(LIST, PQUERY, 0L);
+
+        assertEquals("taxlotappraisal", catalog.resolveReportNumber("01"));
+        assertEquals("positionsbyfund", catalog.resolveReportNumber("12"));
+        assertNull(catalog.resolveReportNumber("7"));
+        assertNull(catalog.resolveReportNumber("abc"));
+        assertTrue(catalog.contains("runnumber", "12"));
+        assertFalse(catalog.contains("runnumber", "7"));
+    }
+
+    @Test
+    void testUnparsableSectionsAcceptEverything() {
+        final GenevaCatalog catalog = GenevaCatalog.parse("No reports found", "", 0L);
+
+        assertEquals(0, catalog.getReportCount());
+        assertEquals(0, catalog.getQueryCount());
+        assertTrue(catalog.contains("runfile", "anything"));
+        assertTrue(catalog.contains("runnumber", "3"));
+        assertTrue(catalog.contains("runquery", "anything"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.command;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+class BundleCommandTest extends BaseCommandTest {
+
+    @Override
+    @BeforeEach
+    void setup() {
+        super.setup();
+
+        when(runrepArgumentProviderMock.getReportBundle())
+                .thenReturn("# positions first\nmy_positions.rsl\n\nrunquery TaxLotAppraisalAccruals\n"
+                        + "run \"Tax Lot Appraisal\"\n");
+    }
+
+    @Test
+    void testAllReportsRunInOneSession() {
+        final var bundleCommand = new BundleCommand(runrepArgumentProviderMock);
+
+        assertEquals("runrep -f empty.lst -b << EOF\n" + //
+                "connect usr/pw -k 9999\n" + //
+                "read \"my_positions.rsl\"\n" + //
+                "runfile \"my_positions\" -f csv -o \"/usr/advent/geneva-20.0.0/share/rslspecs/my-report-01.csv\" -p 123,456,789 -ps 2023-01-01T00:00:00 -pe 2023-01-31T00:00:00 -k 2023-02-01T23:59:59 -pk 2022-12-01T12:34:56\n"
+                + //
+                "runquery TaxLotAppraisalAccruals -f csv -o /usr/advent/geneva-20.0.0/share/rslspecs/my-report-02.csv -p 123,456,789 -ps 2023-01-01T00:00:00 -pe 2023-01-31T00:00:00 -k 2023-02-01T23:59:59 -pk 2022-12-01T12:34:56\n"
+                + //
+                "run \"Tax Lot Appraisal\" -f csv -o /usr/advent/geneva-20.0.0/share/rslspecs/my-report-03.csv -p 123,456,789 -ps 2023-01-01T00:00:00 -pe 2023-01-31T00:00:00 -k 2023-02-01T23:59:59 -pk 2022-12-01T12:34:56\n"
+                + //
+                "exit\n" + //
+                "EOF\n", bundleCommand.getCommand());
+    }
+
+    @Test
+    void testEveryReportHasItsOwnOutput() {
+        final var bundleCommand = new BundleCommand(runrepArgumentProviderMock);
+
+        assertEquals(Arrays.asList("/usr/advent/geneva-20.0.0/share/rslspecs/my-report-01.csv",
+                "/usr/advent/geneva-20.0.0/share/rslspecs/my-report-02.csv",
+                "/usr/advent/geneva-20.0.0/share/rslspecs/my-report-03.csv"), bundleCommand.getOutputResources());
+        assertEquals("/usr/advent/geneva-20.0.0/share/rslspecs/my-report-01.csv", bundleCommand.getOutputResource());
+        assertEquals("my_positions,runquery TaxLotAppraisalAccruals,run Tax Lot Appraisal|csv|-p 123,456,789",
+                bundleCommand.getReportDefinition());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "# nothing to run\n\n",
+        "my_positions.rsl\n-f json",
+        "runquery -o /etc/passwd"
+    })
+    void testInvalidBundlesAreRejected(final String bundle) {
+        when(runrepArgumentProviderMock.getReportBundle()).thenReturn(bundle);
+        final var bundleCommand = new BundleCommand(runrepArgumentProviderMock);
+
+        assertThrows(IllegalArgumentException.class, bundleCommand::validate);
+    }
+}
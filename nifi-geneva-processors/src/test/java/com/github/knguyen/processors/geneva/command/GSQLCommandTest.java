@@ -19,6 +19,8 @@ package com.github.knguyen.processors.geneva.command;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -89,4 +91,28 @@ class GSQLCommandTest extends BaseCommandTest {
 
         Assertions.assertDoesNotThrow(() -> gsqlCommand.validate());
     }
+
+    @Test
+    void testBatchQueryExpandsTheKeys() {
+        when(runrepArgumentProviderMock.getGSQLQuery())
+                .thenReturn("SELECT { Portfolio.NameSort } FROM Portfolio WHERE { NameSort } IN (:BatchKeys);");
+        this.gsqlCommand = new GSQLCommand(runrepArgumentProviderMock);
+
+        assertEquals("SELECT { Portfolio.NameSort } FROM Portfolio WHERE { NameSort } IN (\"Fund1\", \"Fund 2\");",
+                gsqlCommand.getBatchQuery(Arrays.asList("Fund1", "Fund 2")));
+    }
+
+    @Test
+    void testBatchQueryRequiresThePlaceholder() {
+        this.gsqlCommand = new GSQLCommand(runrepArgumentProviderMock);
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> gsqlCommand.getBatchQuery(Arrays.asList("Fund1")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { " ", "Fund\"1", "$(reboot)", "`id`", "Fund\\1", "Fund1\nexit" })
+    void testUnsafeBatchKeysAreRejected(final String key) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GSQLCommand.validateBatchKey(key));
+    }
 }
@@ -56,6 +56,33 @@ class RSLCommandTest extends BaseCommandTest {
                 "EOF\n", commandStr);
     }
 
+    @Test
+    void testUploadedRslIsReadFromItsPath() {
+        when(runrepArgumentProviderMock.getRSLPath())
+                .thenReturn("/tmp/nifi-geneva/rsl/0123456789abcdef/my_positions.rsl");
+        this.rslCommand = new RSLCommand(runrepArgumentProviderMock);
+
+        assertEquals("runrep -f empty.lst -b << EOF\n" + //
+                "connect usr/pw -k 9999\n" + //
+                "read \"/tmp/nifi-geneva/rsl/0123456789abcdef/my_positions.rsl\"\n" + //
+                "runfile \"my_positions\" -f csv -o \"/usr/advent/geneva-20.0.0/share/rslspecs/my-report.csv\" -p 123,456,789 -ps 2023-01-01T00:00:00 -pe 2023-01-31T00:00:00 -k 2023-02-01T23:59:59 -pk 2022-12-01T12:34:56\n"
+                + //
+                "exit\n" + //
+                "EOF\n", rslCommand.getCommand());
+        assertEquals("/tmp/nifi-geneva/rsl/0123456789abcdef/my_positions.rsl|csv|-p 123,456,789",
+                rslCommand.getReportDefinition());
+    }
+
+    @Test
+    void testReportDefinitionIgnoresDatesAndOutputPath() {
+        final var definition = new RSLCommand(runrepArgumentProviderMock).getReportDefinition();
+        assertEquals("my_positions.rsl|csv|-p 123,456,789", definition);
+
+        when(runrepArgumentProviderMock.getPeriodEndDate()).thenReturn("2023-02-28T00:00:00");
+        when(runrepArgumentProviderMock.getOutputPath()).thenReturn("/tmp/another-report.csv");
+        assertEquals(definition, new RSLCommand(runrepArgumentProviderMock).getReportDefinition());
+    }
+
     @ParameterizedTest
     @CsvSource({
         "foo,bar",
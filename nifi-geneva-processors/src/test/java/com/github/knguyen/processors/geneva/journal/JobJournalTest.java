@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.state.MockStateManager;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.github.knguyen.processors.geneva.ExecuteGenevaRSL;
+import com.github.knguyen.processors.geneva.command.Command;
+
+class JobJournalTest {
+
+    private final MockStateManager stateManager = new MockStateManager(new ExecuteGenevaRSL());
+    private final JobJournal journal = new JobJournal(stateManager, Mockito.mock(ComponentLog.class));
+
+    @Test
+    void testRecordedRunIsReadBackAndRemoved() {
+        journal.record("uuid-1", new JobJournal.Entry("geneva01", "4242", 1000L, "abc", "/tmp/pnl.csv"));
+
+        final JobJournal.Entry entry = journal.get("uuid-1");
+        assertNotNull(entry);
+        assertEquals("geneva01", entry.getHost());
+        assertEquals("4242", entry.getPid());
+        assertEquals(1000L, entry.getStartedAt());
+        assertEquals("abc", entry.getFingerprint());
+        assertEquals("/tmp/pnl.csv", entry.getOutputResource());
+
+        journal.remove("uuid-1");
+        assertNull(journal.get("uuid-1"));
+        stateManager.assertStateNotSet("job.uuid-1", Scope.LOCAL);
+    }
+
+    @Test
+    void testLocalRunHasNoHost() {
+        journal.record("uuid-1", new JobJournal.Entry(null, "4242", 1000L, "abc", "/tmp/pnl.csv"));
+
+        assertNull(journal.get("uuid-1").getHost());
+    }
+
+    @Test
+    void testPruneDropsRunsPastTheRetention() {
+        final long now = JobJournal.RETENTION_MILLIS * 2;
+        journal.record("old", new JobJournal.Entry("geneva01", "1", now - JobJournal.RETENTION_MILLIS - 1, "abc",
+                "/tmp/old.csv"));
+        journal.record("recent", new JobJournal.Entry("geneva01", "2", now - 1000, "abc", "/tmp/recent.csv"));
+
+        journal.prune(now);
+
+        assertNull(journal.get("old"));
+        assertNotNull(journal.get("recent"));
+    }
+
+    @Test
+    void testKeepsTheStateWrittenConcurrently() {
+        final MockStateManager racingStateManager = new MockStateManager(new ExecuteGenevaRSL()) {
+            private boolean raced;
+
+            @Override
+            public synchronized StateMap getState(final Scope scope) throws IOException {
+                final StateMap state = super.getState(scope);
+                if (!raced) {
+                    // a standalone node keeps the cluster state in the local state too
+                    raced = true;
+                    setState(Collections.singletonMap("knowledgedate.pnl", "2024-01-31"), scope);
+                }
+                return state;
+            }
+        };
+
+        new JobJournal(racingStateManager, Mockito.mock(ComponentLog.class)).record("uuid-1",
+                new JobJournal.Entry("geneva01", "4242", 1000L, "abc", "/tmp/pnl.csv"));
+
+        racingStateManager.assertStateEquals("knowledgedate.pnl", "2024-01-31", Scope.LOCAL);
+        racingStateManager.assertStateSet("job.uuid-1", Scope.LOCAL);
+    }
+
+    @Test
+    void testFingerprintCoversTheOutput() {
+        assertNotEquals(JobJournal.fingerprint(new Command("runrep", "runrep -o /tmp/a.csv", "/tmp/a.csv")),
+                JobJournal.fingerprint(new Command("runrep", "runrep -o /tmp/a.csv", "/tmp/b.csv")));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Runs {@code count} rounds of as many runs as the limit allows, each taking {@code latencyNanos}.
+     */
+    private static void runRounds(final AdaptiveConcurrencyLimiter limiter, final int count, final long latencyNanos)
+            throws InterruptedException {
+        for (int round = 0; round < count; round++) {
+            final int runs = limiter.getLimit();
+            for (int i = 0; i < runs; i++)
+                assertTrue(limiter.acquire(0));
+            for (int i = 0; i < runs; i++)
+                limiter.onSuccess(latencyNanos);
+        }
+    }
+
+    @Test
+    void testRunsBeyondTheLimitWait() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("geneva:22/9001", 8);
+
+        assertEquals(2, limiter.getLimit());
+        assertTrue(limiter.acquire(0));
+        assertTrue(limiter.acquire(0));
+        assertFalse(limiter.acquire(10));
+
+        limiter.onIgnored();
+        assertTrue(limiter.acquire(0));
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyIsFlat() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("geneva:22/9001", 8);
+
+        runRounds(limiter, 20, SECOND);
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitShrinksOnLatencyGrowthAndFailures() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("geneva:22/9001", 8);
+        runRounds(limiter, 20, SECOND);
+
+        runRounds(limiter, 2, 10 * SECOND);
+        final int congested = limiter.getLimit();
+        assertTrue(congested < 8, "the limit backs off when runs get slower");
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire(0));
+            limiter.onDropped();
+        }
+        assertTrue(limiter.getLimit() < congested, "the limit backs off when runs fail");
+        assertTrue(limiter.getLimit() >= 1);
+    }
+
+    @Test
+    void testIdleTargetsDoNotGrow() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("geneva:22/9001", 8);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.acquire(0));
+            limiter.onSuccess(SECOND);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+}
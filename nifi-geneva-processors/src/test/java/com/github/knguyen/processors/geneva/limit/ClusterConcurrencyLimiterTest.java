@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.state.MockStateManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.github.knguyen.processors.geneva.ExecuteGenevaRSL;
+
+class ClusterConcurrencyLimiterTest {
+
+    private static final String TARGET = "geneva01:22/aga01";
+
+    // two nodes of a cluster, sharing the cluster state of the processor
+    private final MockStateManager stateManager = new MockStateManager(new ExecuteGenevaRSL());
+    private final ClusterConcurrencyLimiter node1 = new ClusterConcurrencyLimiter(stateManager, 2,
+            Mockito.mock(ComponentLog.class));
+    private final ClusterConcurrencyLimiter node2 = new ClusterConcurrencyLimiter(stateManager, 2,
+            Mockito.mock(ComponentLog.class));
+
+    @AfterEach
+    void close() {
+        node1.close();
+        node2.close();
+    }
+
+    @Test
+    void testLimitHoldsAcrossNodes() throws Exception {
+        assertTrue(node1.acquire(TARGET, 0));
+        assertTrue(node2.acquire(TARGET, 0));
+        assertFalse(node1.acquire(TARGET, 0));
+        assertFalse(node2.acquire(TARGET, 0));
+
+        node1.release(TARGET);
+        assertTrue(node2.acquire(TARGET, 0));
+        assertTrue(node1.acquire("geneva02:22/aga01", 0));
+    }
+
+    @Test
+    void testFirstWriteKeepsTheStateWrittenConcurrently() throws Exception {
+        final MockStateManager racingStateManager = new MockStateManager(new ExecuteGenevaRSL()) {
+            private boolean raced;
+
+            @Override
+            public synchronized StateMap getState(final Scope scope) throws IOException {
+                final StateMap state = super.getState(scope);
+                if (!raced) {
+                    raced = true;
+                    setState(Collections.singletonMap("knowledgedate.pnl", "2024-01-31"), scope);
+                }
+                return state;
+            }
+        };
+
+        try (final ClusterConcurrencyLimiter limiter = new ClusterConcurrencyLimiter(racingStateManager, 2,
+                Mockito.mock(ComponentLog.class))) {
+            assertTrue(limiter.acquire(TARGET, 0));
+        }
+        racingStateManager.assertStateEquals("knowledgedate.pnl", "2024-01-31", Scope.CLUSTER);
+    }
+
+    @Test
+    void testFreedSlotGoesToTheWaitingNode() throws Exception {
+        assertTrue(node1.acquire(TARGET, 0));
+        assertTrue(node1.acquire(TARGET, 0));
+
+        final CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return node2.acquire(TARGET, TimeUnit.SECONDS.toMillis(10));
+            } catch (final Exception exc) {
+                throw new IllegalStateException(exc);
+            }
+        });
+        final String key = ClusterConcurrencyLimiter.getStateKey(TARGET);
+        while (!String.valueOf(stateManager.getState(Scope.CLUSTER).get(key)).contains(" 0 1 "))
+            Thread.sleep(10);
+
+        node1.release(TARGET);
+        // node 1 already holds its share while node 2 waits
+        assertFalse(node1.acquire(TARGET, 0));
+        assertTrue(waiting.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testClosingFreesTheSlotsOfTheNode() throws Exception {
+        assertTrue(node1.acquire(TARGET, 0));
+        assertTrue(node1.acquire(TARGET, 0));
+
+        node1.close();
+        assertTrue(node2.acquire(TARGET, 0));
+        assertTrue(node2.acquire(TARGET, 0));
+    }
+
+    @Test
+    void testExpiredNodesAreSkipped() {
+        final Map<String, ClusterConcurrencyLimiter.Slots> nodes = ClusterConcurrencyLimiter
+                .parse("node1 2 0 1000;node2 1 3 3000;garbage", 2000);
+
+        assertEquals(1, nodes.size());
+        assertEquals(1, nodes.get("node2").running);
+        assertEquals(3, nodes.get("node2").waiting);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.pool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.RunListener;
+import com.github.knguyen.processors.geneva.command.Command;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class HedgingCommandExecutorTest {
+
+    private static final ICommand COMMAND = new Command("runrep -f csv -o /tmp/pnl.csv",
+            "runrep -f csv -o /tmp/pnl.csv", "/tmp/pnl.csv");
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final ComponentLog logger = Mockito.mock(ComponentLog.class);
+
+    /**
+     * An executor whose runs wait the given time to be admitted, then report their process and take the given time, or
+     * fail as soon as it is closed.
+     */
+    private static class TimedCommandExecutor extends ForwardingCommandExecutor {
+        private final long admissionMillis;
+        private final long runMillis;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final List<String> executed = new CopyOnWriteArrayList<>();
+        private final List<String> deleted = new CopyOnWriteArrayList<>();
+        private volatile RunListener runListener;
+
+        TimedCommandExecutor(final long runMillis) {
+            this(0, runMillis);
+        }
+
+        TimedCommandExecutor(final long admissionMillis, final long runMillis) {
+            super(new InMemoryCommandExecutor());
+            this.admissionMillis = admissionMillis;
+            this.runMillis = runMillis;
+        }
+
+        @Override
+        public void setRunListener(final RunListener runListener) {
+            this.runListener = runListener;
+        }
+
+        @Override
+        public void execute(final ICommand command, final FlowFile originalFlowFile,
+                final ProcessSession processSession) throws IOException {
+            executed.add(command.getCommand());
+            try {
+                Thread.sleep(admissionMillis);
+                runListener.onStarted(originalFlowFile, "geneva", "4242");
+                if (closed.await(runMillis, TimeUnit.MILLISECONDS))
+                    throw new IOException("Connection closed");
+            } catch (final InterruptedException exc) {
+                throw new IOException(exc);
+            }
+        }
+
+        @Override
+        public String executeForOutput(final ICommand command, final FlowFile flowFile) {
+            executed.add(command.getCommand());
+            return "";
+        }
+
+        @Override
+        public void deleteFile(final ICommand command, final FlowFile flowFile) {
+            deleted.add(command.getOutputResource());
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    @AfterEach
+    void stopThreads() {
+        threads.shutdownNow();
+    }
+
+    private static RuntimeHistory history(final long runMillis) {
+        final RuntimeHistory history = new RuntimeHistory(100, 10);
+        for (int i = 0; i < 10; i++)
+            history.record(COMMAND.getReportDefinition(), runMillis);
+        return history;
+    }
+
+    private static HostPool pool() {
+        return new HostPool(HostPool.parseTargets("geneva1 9001\ngeneva2 9001\n", 22, null), HostPool.LEAST_IN_FLIGHT,
+                Mockito.mock(ComponentLog.class));
+    }
+
+    @Test
+    void testHistoryPercentiles() {
+        final RuntimeHistory history = new RuntimeHistory(5, 3);
+        history.record("pnl", 10);
+        history.record("pnl", 20);
+        assertEquals(-1, history.getPercentile("pnl", 90), "too few runs to tell a straggler");
+
+        for (final long millis : new long[] { 30, 40, 50, 60 })
+            history.record("pnl", millis);
+
+        assertEquals(60, history.getPercentile("pnl", 90));
+        assertEquals(40, history.getPercentile("pnl", 50), "only the most recent runs count");
+        assertEquals(-1, history.getPercentile("nav", 90));
+    }
+
+    @Test
+    void testStragglerIsHedgedOnAnotherTarget() throws Exception {
+        final HostPool pool = pool();
+        final HostPool.Lease lease = pool.acquire();
+        final TimedCommandExecutor straggler = new TimedCommandExecutor(60_000);
+        final TimedCommandExecutor hedge = new TimedCommandExecutor(0);
+
+        final HedgingCommandExecutor executor = new HedgingCommandExecutor(straggler, lease.getTarget(), pool,
+                target -> hedge, history(10), 90, threads, logger);
+        executor.execute(COMMAND, null, null);
+
+        assertSame(pool.getTargets().get(1), executor.getWinningTarget());
+        assertSame(hedge, executor.delegate(), "the report is fetched from the winning target");
+
+        assertEquals(List.of("runrep -f csv -o /tmp/.hedge-pnl.csv", "mv -f -- '/tmp/.hedge-pnl.csv' '/tmp/pnl.csv'"),
+                hedge.executed, "the hedge writes its own file, which replaces the report once it wins");
+
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(straggler.deleted.isEmpty(), "the report of the aborted run may be the winning report");
+        assertTrue(hedge.deleted.isEmpty());
+    }
+
+    @Test
+    void testLosingHedgeRemovesItsOwnReport() throws Exception {
+        final HostPool pool = pool();
+        final HostPool.Lease lease = pool.acquire();
+        final TimedCommandExecutor primary = new TimedCommandExecutor(300);
+        final TimedCommandExecutor hedge = new TimedCommandExecutor(60_000);
+
+        final HedgingCommandExecutor executor = new HedgingCommandExecutor(primary, lease.getTarget(), pool,
+                target -> hedge, history(10), 90, threads, logger);
+        executor.execute(COMMAND, null, null);
+
+        assertSame(lease.getTarget(), executor.getWinningTarget());
+        assertSame(primary, executor.delegate());
+
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/tmp/.hedge-pnl.csv"), hedge.deleted, "the report of the aborted hedge is removed");
+        assertTrue(primary.deleted.isEmpty());
+    }
+
+    @Test
+    void testFastRunIsNotHedged() throws Exception {
+        final HostPool pool = pool();
+        final HostPool.Lease lease = pool.acquire();
+        final TimedCommandExecutor primary = new TimedCommandExecutor(0);
+
+        final HedgingCommandExecutor executor = new HedgingCommandExecutor(primary, lease.getTarget(), pool,
+                target -> {
+                    throw new AssertionError("The run was hedged");
+                }, history(60_000), 90, threads, logger);
+        executor.execute(COMMAND, null, null);
+
+        assertSame(lease.getTarget(), executor.getWinningTarget());
+        assertSame(primary, executor.delegate());
+    }
+
+    @Test
+    void testWaitForAdmissionDoesNotCount() throws Exception {
+        final HostPool pool = pool();
+        final HostPool.Lease lease = pool.acquire();
+        final TimedCommandExecutor primary = new TimedCommandExecutor(500, 0);
+        final RuntimeHistory history = history(100);
+        final List<String> pids = new CopyOnWriteArrayList<>();
+
+        final HedgingCommandExecutor executor = new HedgingCommandExecutor(primary, lease.getTarget(), pool,
+                target -> {
+                    throw new AssertionError("The run was hedged while it waited to be admitted");
+                }, history, 90, threads, logger);
+        executor.setRunListener((flowFile, host, pid) -> pids.add(pid));
+        executor.execute(COMMAND, null, null);
+
+        assertSame(primary, executor.delegate());
+        assertEquals(List.of("4242"), pids, "the process is still reported to the listener");
+        assertTrue(history.getPercentile(COMMAND.getReportDefinition(), 100) < 500,
+                "the runtime does not include the wait");
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.pool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class HostPoolTest {
+
+    private static final String TARGETS = "# primary site\n" + "geneva1:2222 9001\n" + "\n"
+            + "geneva2 weight=3\n";
+
+    private static HostPool pool(final String policy) {
+        return new HostPool(HostPool.parseTargets(TARGETS, 22, null), policy, Mockito.mock(ComponentLog.class));
+    }
+
+    @Test
+    void testTargetsAreParsed() {
+        final List<HostPool.Target> targets = HostPool.parseTargets(TARGETS, 22, null);
+
+        assertEquals(2, targets.size());
+        assertEquals("geneva1:2222/9001", targets.get(0).toString());
+        assertEquals(1, targets.get(0).getWeight());
+        assertEquals("geneva2:22", targets.get(1).toString());
+        assertNull(targets.get(1).getAga());
+        assertEquals(3, targets.get(1).getWeight());
+
+        assertThrows(IllegalArgumentException.class, () -> HostPool.parseTargets("geneva1:ssh", 22, null));
+        assertThrows(IllegalArgumentException.class, () -> HostPool.parseTargets("geneva1 weight=0", 22, null));
+        assertThrows(IllegalArgumentException.class, () -> HostPool.parseTargets("# nothing\n", 22, null));
+    }
+
+    @Test
+    void testLeastInFlightSpreadsRuns() {
+        final HostPool pool = pool(HostPool.LEAST_IN_FLIGHT);
+
+        final HostPool.Lease first = pool.acquire();
+        final HostPool.Lease second = pool.acquire();
+        assertEquals("geneva1", first.getTarget().getHost());
+        assertEquals("geneva2", second.getTarget().getHost());
+
+        first.close();
+        assertEquals("geneva1", pool.acquire().getTarget().getHost());
+    }
+
+    @Test
+    void testWeightedRoutesByWeight() {
+        final HostPool pool = pool(HostPool.WEIGHTED);
+
+        final List<String> hosts = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            hosts.add(pool.acquire().getTarget().getHost());
+
+        assertEquals(3, hosts.stream().filter("geneva2"::equals).count());
+    }
+
+    @Test
+    void testFailedTargetsGetNoRuns() {
+        final HostPool pool = pool(HostPool.LEAST_IN_FLIGHT);
+
+        try (final HostPool.Lease lease = pool.acquire()) {
+            lease.fail();
+        }
+        assertEquals("geneva2", pool.acquire().getTarget().getHost());
+        assertEquals("geneva2", pool.acquire().getTarget().getHost());
+
+        pool.acquire().fail();
+        assertNull(pool.acquire());
+    }
+
+    @Test
+    void testUnavailableTargetsAreSkipped() {
+        final Set<String> unavailable = new HashSet<>(List.of("geneva1"));
+        final HostPool pool = new HostPool(HostPool.parseTargets(TARGETS, 22, null), HostPool.LEAST_IN_FLIGHT,
+                target -> !unavailable.contains(target.getHost()), Mockito.mock(ComponentLog.class));
+
+        assertEquals("geneva2", pool.acquire().getTarget().getHost());
+        assertEquals("geneva2", pool.acquire().getTarget().getHost());
+        final HostPool.Lease primary = pool.acquire();
+        assertNull(pool.acquire(primary.getTarget()));
+
+        unavailable.add("geneva2");
+        assertNull(pool.acquire());
+
+        unavailable.clear();
+        assertEquals("geneva1", pool.acquire().getTarget().getHost());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.portfolio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GenevaPortfoliosTest {
+
+    private static final String MEMBERSHIPS = "Portfolio,PortfolioGroup\n" + "Fund1,Equities\n" + "Fund2,Equities\n"
+            + "\"My Fund\",Credit\n" + "Fund4,Credit\n" + "Equities,AllFunds\n" + "Credit,AllFunds\n"
+            + "AllFunds,Equities\n" + "Fund5,\n";
+
+    @Test
+    void testNamesAreFoundCaseInsensitively() throws IOException {
+        final GenevaPortfolios portfolios = GenevaPortfolios.parse(MEMBERSHIPS, 0L);
+
+        assertTrue(portfolios.contains("fund1"));
+        assertTrue(portfolios.contains("\\\"My Fund\\\""));
+        assertTrue(portfolios.contains("Fund5"));
+        assertTrue(portfolios.isGroup("ALLFUNDS"));
+        assertFalse(portfolios.isGroup("Fund1"));
+        assertFalse(portfolios.contains("Fund9"));
+    }
+
+    @Test
+    void testNestedGroupsAreExpandedOnce() throws IOException {
+        final GenevaPortfolios portfolios = GenevaPortfolios.parse(MEMBERSHIPS, 0L);
+
+        assertEquals(Arrays.asList("Fund1", "Fund2", "My Fund", "Fund4"), portfolios.expand("AllFunds"));
+        assertEquals(Arrays.asList("Fund5", "My Fund", "Fund4", "Fund1"),
+                portfolios.expand("Fund5, Credit,fund1,Fund4"));
+        assertThrows(IllegalArgumentException.class, () -> portfolios.expand("Fund1,Fund9"));
+    }
+
+    @Test
+    void testWorkUnitsAreBalanced() {
+        final List<List<String>> units = GenevaPortfolios
+                .partition(Arrays.asList("A", "B", "C", "D", "E", "F", "G"), 3);
+
+        assertEquals(Arrays.asList(Arrays.asList("A", "B", "C"), Arrays.asList("D", "E"), Arrays.asList("F", "G")),
+                units);
+        assertEquals("A,\\\"My Fund\\\"", GenevaPortfolios.format(Arrays.asList("A", "My Fund")));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessSession;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.github.knguyen.processors.geneva.ForwardingCommandExecutor;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RunListener;
+import com.github.knguyen.processors.geneva.RunRejectedException;
+import com.github.knguyen.processors.geneva.RunTimeoutException;
+import com.github.knguyen.processors.geneva.command.ICommand;
+import com.github.knguyen.processors.geneva.runners.InMemoryCommandExecutor;
+
+class RetryingCommandExecutorTest {
+
+    private static final ICommand COMMAND = Mockito.mock(ICommand.class);
+
+    /**
+     * An executor whose runs fail with the given errors, one per run, then succeed.
+     */
+    private static class FailingCommandExecutor extends ForwardingCommandExecutor {
+        private final Deque<Exception> failures = new ArrayDeque<>();
+        private RunListener runListener;
+        private boolean reportsPid;
+        private int runs;
+
+        FailingCommandExecutor(final InMemoryCommandExecutor delegate, final Exception... failures) {
+            super(delegate);
+            for (final Exception failure : failures)
+                this.failures.add(failure);
+        }
+
+        @Override
+        public void setRunListener(final RunListener runListener) {
+            this.runListener = runListener;
+        }
+
+        @Override
+        public void execute(final ICommand command, final FlowFile originalFlowFile,
+                final ProcessSession processSession) throws IOException, GenevaException {
+            runs++;
+            if (reportsPid)
+                runListener.onStarted(originalFlowFile, "geneva-1", String.valueOf(runs));
+            final Exception failure = failures.poll();
+            if (failure instanceof GenevaException)
+                throw (GenevaException) failure;
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+        }
+    }
+
+    private static RetryingCommandExecutor retrying(final FailingCommandExecutor delegate, final int retries,
+            final long budgetMillis) {
+        return new RetryingCommandExecutor(delegate, retries, 0, 0, budgetMillis, Mockito.mock(ComponentLog.class));
+    }
+
+    @Test
+    void testRetriesTransientFailuresWithoutClosingTheConnection() throws Exception {
+        final InMemoryCommandExecutor connection = new InMemoryCommandExecutor();
+        final FailingCommandExecutor delegate = new FailingCommandExecutor(connection,
+                new IOException("Connection reset"),
+                new GenevaException("Failed", "AGA is busy, try again later", "runrep"));
+
+        retrying(delegate, 3, 60_000).execute(COMMAND, null, null);
+
+        assertEquals(3, delegate.runs);
+        assertEquals(0, connection.getCloseCount(), "the connection may be shared with other runs");
+    }
+
+    @Test
+    void testDoesNotRetryAnIOErrorOnceTheRunStarted() throws Exception {
+        final FailingCommandExecutor delegate = new FailingCommandExecutor(new InMemoryCommandExecutor(),
+                new GenevaException("Failed", "AGA is busy, try again later", "runrep"),
+                new IOException("Connection reset"));
+        delegate.reportsPid = true;
+        final List<String> pids = new ArrayList<>();
+        final RetryingCommandExecutor executor = retrying(delegate, 3, 60_000);
+        executor.setRunListener((flowFile, host, pid) -> pids.add(pid));
+
+        assertThrows(IOException.class, () -> executor.execute(COMMAND, null, null));
+        assertEquals(2, delegate.runs, "the run that lost its channel may still be running");
+        assertEquals(Arrays.asList("1", "2"), pids);
+    }
+
+    @Test
+    void testGivesUpOnTerminalFailures() {
+        final FailingCommandExecutor delegate = new FailingCommandExecutor(new InMemoryCommandExecutor(),
+                new GenevaException("Failed", "Syntax error at line 3 of RSL", "runrep"));
+
+        assertThrows(GenevaException.class, () -> retrying(delegate, 3, 60_000).execute(COMMAND, null, null));
+        assertEquals(1, delegate.runs);
+    }
+
+    @Test
+    void testGivesUpAfterTheRetriesOrTheBudget() {
+        final FailingCommandExecutor limited = new FailingCommandExecutor(new InMemoryCommandExecutor(),
+                new SocketTimeoutException(), new SocketTimeoutException(), new SocketTimeoutException());
+
+        assertThrows(SocketTimeoutException.class,
+                () -> retrying(limited, 2, 60_000).execute(COMMAND, null, null));
+        assertEquals(3, limited.runs);
+
+        final FailingCommandExecutor budgeted = new FailingCommandExecutor(new InMemoryCommandExecutor(),
+                new SocketTimeoutException(), new SocketTimeoutException());
+        final RetryingCommandExecutor executor = new RetryingCommandExecutor(budgeted, 5, 1_000, 1_000, 0,
+                Mockito.mock(ComponentLog.class));
+
+        assertThrows(SocketTimeoutException.class, () -> executor.execute(COMMAND, null, null));
+        assertEquals(1, budgeted.runs, "a retry that would start after the budget is not made");
+    }
+
+    @Test
+    void testClassifiesErrors() {
+        assertTrue(GenevaErrorClassifier.isTransient(new SocketTimeoutException("Read timed out")));
+        assertTrue(GenevaErrorClassifier.isTransient(new IOException("Connection reset by peer")));
+        assertTrue(GenevaErrorClassifier.isTransient(new IOException("Failed", new SocketTimeoutException())));
+        assertTrue(GenevaErrorClassifier
+                .isTransient(new GenevaException("Failed", "Unable to connect to AGA 9001", "runrep")));
+        assertTrue(GenevaErrorClassifier
+                .isTransient(new GenevaException("Failed", "AGA is busy, try again later", "runrep")));
+
+        assertFalse(GenevaErrorClassifier.isTransient(new FileNotFoundException("/tmp/report.csv")));
+        assertFalse(GenevaErrorClassifier.isTransient(new RunRejectedException("Limit reached")));
+        assertFalse(GenevaErrorClassifier.isTransient(new IOException("Unexpected exit code 2")));
+        assertFalse(GenevaErrorClassifier
+                .isTransient(new GenevaException("Failed", "Syntax error at line 3 of RSL", "runrep")));
+
+        assertTrue(GenevaErrorClassifier.isConnectionFailure(new IOException("Failed", new ConnectException())));
+        assertTrue(GenevaErrorClassifier.isConnectionFailure(new UnknownHostException("geneva-1")));
+        assertFalse(GenevaErrorClassifier.isConnectionFailure(new FileNotFoundException("/tmp/report.csv")));
+        assertFalse(GenevaErrorClassifier.isConnectionFailure(new IOException("Connection reset by peer")));
+
+        assertTrue(GenevaErrorClassifier.isOverload(new RunTimeoutException("runrep ran for longer than 60000 ms")));
+        assertTrue(GenevaErrorClassifier
+                .isOverload(new GenevaException("Failed", "Unable to connect to AGA 9001", "runrep")));
+        assertFalse(GenevaErrorClassifier
+                .isOverload(new GenevaException("Failed", "Syntax error at line 3 of RSL", "runrep")));
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.runners;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processors.standard.ssh.SSHClientProvider;
+
+import com.github.knguyen.processors.diff.ReportFilter;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.IStreamHandler;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RemoteFileInfo;
+import com.github.knguyen.processors.geneva.command.ICommand;
+
+/**
+ * An executor over an in-memory file system, for testing the code that lists and removes reports. It records every
+ * batch it is asked to remove, and every command it runs; what a run writes is up to its {@link RunHandler}.
+ */
+public class InMemoryCommandExecutor implements RemoteCommandExecutor {
+    private final Map<String, RemoteFileInfo> files = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, byte[]> contents = Collections.synchronizedMap(new HashMap<>());
+    private final Set<String> directories = Collections.synchronizedSet(new HashSet<>());
+
+    private final List<List<String>> deletedBatches = new CopyOnWriteArrayList<>();
+    private final Set<String> undeletable = Collections.synchronizedSet(new HashSet<>());
+    private final List<ICommand> executedCommands = new CopyOnWriteArrayList<>();
+    private volatile RunHandler runHandler = command -> {
+    };
+    private volatile boolean unreachable;
+    private volatile int closeCount;
+
+    public void addFile(final String path, final long size, final long lastModified) {
+        files.put(path,
+                new RemoteFileInfo(path, Paths.get(path).getFileName().toString(), false, size, lastModified));
+    }
+
+    public void addFile(final String path, final String content) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        addFile(path, bytes.length, System.currentTimeMillis());
+        contents.put(path, bytes);
+    }
+
+    public boolean exists(final String path) {
+        return files.containsKey(path);
+    }
+
+    public boolean directoryExists(final String path) {
+        return directories.contains(path);
+    }
+
+    public void setUndeletable(final String path) {
+        undeletable.add(path);
+    }
+
+    public void setUnreachable(final boolean unreachable) {
+        this.unreachable = unreachable;
+    }
+
+    public void setRunHandler(final RunHandler runHandler) {
+        this.runHandler = runHandler;
+    }
+
+    public List<ICommand> getExecutedCommands() {
+        return executedCommands;
+    }
+
+    public List<List<String>> getDeletedBatches() {
+        return deletedBatches;
+    }
+
+    public int getCloseCount() {
+        return closeCount;
+    }
+
+    @Override
+    public List<String> deleteFiles(final List<String> resources, final FlowFile flowFile) throws IOException {
+        deletedBatches.add(new ArrayList<>(resources));
+        if (unreachable)
+            throw new IOException("Connection refused for testing");
+
+        final List<String> failed = new ArrayList<>();
+        for (final String resource : resources) {
+            if (undeletable.contains(resource)) {
+                failed.add(resource);
+            } else {
+                files.remove(resource);
+                contents.remove(resource);
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public List<RemoteFileInfo> listFiles(final String directory, final FlowFile flowFile) throws IOException {
+        if (unreachable)
+            throw new IOException("Connection refused for testing");
+
+        final Path parent = Paths.get(directory);
+        final List<RemoteFileInfo> listing = new ArrayList<>();
+        final Set<Path> subdirectories = new LinkedHashSet<>();
+        synchronized (files) {
+            for (final RemoteFileInfo file : files.values()) {
+                final Path path = Paths.get(file.getPath());
+                if (!path.startsWith(parent))
+                    continue;
+
+                if (parent.equals(path.getParent()))
+                    listing.add(file);
+                else
+                    subdirectories.add(parent.resolve(parent.relativize(path).getName(0)));
+            }
+        }
+        for (final Path subdirectory : subdirectories)
+            listing.add(new RemoteFileInfo(subdirectory.toString(), subdirectory.getFileName().toString(), true, 0, 0));
+        return listing;
+    }
+
+    @Override
+    public void createDirectories(final String directory, final FlowFile flowFile) {
+        directories.add(directory);
+    }
+
+    @Override
+    public List<FlowFile> getRemoteFiles(final ProcessContext context, final List<String> resources,
+            final FlowFile originalFlowFile, final ProcessSession processSession) {
+        throw new UnsupportedOperationException("Fetching is not simulated");
+    }
+
+    @Override
+    public ReportFilter.Statistics filterFile(final String resource, final ReportFilter filter,
+            final FlowFile flowFile) {
+        throw new UnsupportedOperationException("Report filtering is not simulated");
+    }
+
+    @Override
+    public String cacheFile(final String directory, final String name, final byte[] content,
+            final FlowFile flowFile) {
+        throw new UnsupportedOperationException("Caching is not simulated");
+    }
+
+    @Override
+    public void close() {
+        closeCount++;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closeCount > 0;
+    }
+
+    @Override
+    public void setSSHClientProvider(final SSHClientProvider sshClientProvider) {
+    }
+
+    @Override
+    public String getProtocolName() {
+        return "memory";
+    }
+
+    @Override
+    public void execute(final ICommand command, final FlowFile originalFlowFile,
+            final ProcessSession processSession) throws IOException, GenevaException {
+        executedCommands.add(command);
+        if (unreachable)
+            throw new IOException("Connection refused for testing");
+
+        runHandler.run(command);
+    }
+
+    @Override
+    public String executeForOutput(final ICommand command, final FlowFile flowFile) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FlowFile getRemoteFile(final ProcessContext context, final ICommand command, final FlowFile originalFlowFile,
+            final ProcessSession processSession, final IStreamHandler streamHandler) throws IOException {
+        final byte[] content = contents.get(command.getOutputResource());
+        if (content == null)
+            throw new FileNotFoundException(command.getOutputResource());
+
+        return processSession.write(originalFlowFile, out -> out.write(content));
+    }
+
+    @Override
+    public void deleteFile(final ICommand command, final FlowFile flowFile) {
+        files.remove(command.getOutputResource());
+        contents.remove(command.getOutputResource());
+    }
+
+    /**
+     * Simulates what a command does on the host, e.g. writes its output with {@link #addFile(String, String)}.
+     */
+    @FunctionalInterface
+    public interface RunHandler {
+        void run(ICommand command) throws IOException, GenevaException;
+    }
+}
@@ -51,7 +51,7 @@ public class SSHCommandExecutorForTesting extends SSHCommandExecutor {
     }
 
     @Override
-    public InputStream getStreamFromRemoteFile(final RemoteFile remoteFile) throws IOException {
+    protected InputStream getStreamFromRemoteFile(final RemoteFile remoteFile) throws IOException {
         if (noSuchFile)
             throw new SFTPException(StatusCode.NO_SUCH_FILE, "File not found for testing");
 
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.geneva.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class UserSessionLimiterTest {
+
+    private static CompletableFuture<Boolean> acquireAsync(final UserSessionLimiter limiter, final long timeoutMillis) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(timeoutMillis);
+            } catch (final InterruptedException exc) {
+                throw new IllegalStateException(exc);
+            }
+        });
+    }
+
+    private static void awaitQueued(final UserSessionLimiter limiter, final int queued) throws InterruptedException {
+        while (limiter.getQueued() < queued)
+            Thread.sleep(10);
+    }
+
+    @Test
+    void testSessionsAreCapped() throws Exception {
+        final UserSessionLimiter limiter = new UserSessionLimiter("ops", 2, 6000, 10, 5);
+        assertTrue(limiter.acquire(0));
+        assertTrue(limiter.acquire(0));
+        assertFalse(limiter.acquire(50));
+
+        final CompletableFuture<Boolean> waiting = acquireAsync(limiter, TimeUnit.SECONDS.toMillis(10));
+        awaitQueued(limiter, 1);
+        limiter.release();
+        assertTrue(waiting.get(10, TimeUnit.SECONDS));
+        assertEquals(2, limiter.getOpenSessions());
+    }
+
+    @Test
+    void testStartsAreRateLimited() throws Exception {
+        // one start every 200 ms after a burst of two
+        final UserSessionLimiter limiter = new UserSessionLimiter("ops", 10, 300, 2, 5);
+        assertTrue(limiter.acquire(0));
+        assertTrue(limiter.acquire(0));
+        assertFalse(limiter.acquire(0));
+
+        final long start = System.nanoTime();
+        assertTrue(limiter.acquire(TimeUnit.SECONDS.toMillis(10)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void testFullQueueRejectsRightAway() throws Exception {
+        final UserSessionLimiter limiter = new UserSessionLimiter("ops", 1, 6000, 10, 1);
+        assertTrue(limiter.acquire(0));
+
+        final CompletableFuture<Boolean> waiting = acquireAsync(limiter, TimeUnit.SECONDS.toMillis(10));
+        awaitQueued(limiter, 1);
+        final long start = System.nanoTime();
+        assertFalse(limiter.acquire(TimeUnit.SECONDS.toMillis(10)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        limiter.release();
+        assertTrue(waiting.get(10, TimeUnit.SECONDS));
+    }
+}
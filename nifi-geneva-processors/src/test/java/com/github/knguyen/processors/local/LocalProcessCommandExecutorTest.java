@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.github.knguyen.processors.geneva.BaseExecuteGeneva;
+import com.github.knguyen.processors.geneva.GenevaException;
+import com.github.knguyen.processors.geneva.RemoteCommandExecutor;
+import com.github.knguyen.processors.geneva.RunCancelledException;
+import com.github.knguyen.processors.geneva.command.Command;
+import com.github.knguyen.processors.geneva.command.ICommand;
+
+class LocalProcessCommandExecutorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ProcessContext context;
+
+    @Mock
+    private ProcessSession session;
+
+    @Mock
+    private FlowFile flowFile;
+
+    @Mock
+    private ComponentLog logger;
+
+    private LocalProcessCommandExecutor executor;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        mockDataTimeout(5000);
+        when(context.getProperty(BaseExecuteGeneva.EXECUTION_TIMEOUT)).thenReturn(Mockito.mock(PropertyValue.class));
+        executor = new LocalProcessCommandExecutor(context, logger);
+    }
+
+    private void mockDataTimeout(final long millis) {
+        final var propertyValue = Mockito.mock(PropertyValue.class);
+        when(context.getProperty(BaseExecuteGeneva.DATA_TIMEOUT)).thenReturn(propertyValue);
+        when(propertyValue.asTimePeriod(TimeUnit.MILLISECONDS)).thenReturn(millis);
+    }
+
+    private static ICommand command(final String script, final Path outputResource) {
+        return new Command(script, script, outputResource.toString());
+    }
+
+    @Test
+    void testScriptIsReadFromStandardInput() throws Exception {
+        final Path report = tempDir.resolve("report.csv");
+        final ICommand command = command(
+                "cat > '" + report + "' <<EOF\ncolumn1,column2\nvalue1,value2\nEOF", report);
+
+        executor.execute(command, flowFile, session);
+
+        assertEquals("column1,column2\nvalue1,value2\n", Files.readString(report, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testErrorOnStandardErrorRaisesGenevaException() {
+        final ICommand command = command("echo 'Error running report: no such portfolio' >&2",
+                tempDir.resolve("report.csv"));
+
+        final GenevaException exc = assertThrows(GenevaException.class,
+                () -> executor.execute(command, flowFile, session));
+        assertEquals("Error running report: no such portfolio", exc.getGenevaErrorMessage());
+    }
+
+    @Test
+    void testCommandIsKilledAfterDataTimeout() {
+        mockDataTimeout(200);
+        final ICommand command = command("sleep 30", tempDir.resolve("report.csv"));
+
+        assertThrows(IOException.class, () -> executor.execute(command, flowFile, session));
+    }
+
+    @Test
+    void testCancelledRunIsKilledWithItsChildren() throws Exception {
+        final Path marker = tempDir.resolve("finished");
+        final ICommand command = command("sleep 30 && touch '" + marker + "'", tempDir.resolve("report.csv"));
+
+        final Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(500);
+            } catch (final InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+            executor.cancelRuns();
+        });
+        canceller.start();
+
+        assertThrows(RunCancelledException.class, () -> executor.execute(command, flowFile, session));
+        canceller.join();
+        assertFalse(Files.exists(marker));
+    }
+
+    @Test
+    void testReattachChecksTheOutcomeOfTheRun() throws Exception {
+        final Path report = Files.writeString(tempDir.resolve("report.csv"), "a,b\n");
+        final Path stdErr = tempDir.resolve(".report.csv.stderr");
+        final String gonePid = "999999999";
+
+        Files.writeString(stdErr, RemoteCommandExecutor.RUN_COMPLETED_MARKER + "\n");
+        assertTrue(executor.reattach(gonePid, 1000L, report.toString(), flowFile));
+        assertFalse(Files.exists(stdErr));
+
+        Files.writeString(stdErr, "Error running report: no such portfolio\n"
+                + RemoteCommandExecutor.RUN_COMPLETED_MARKER + "\n");
+        assertFalse(executor.reattach(gonePid, 1000L, report.toString(), flowFile));
+
+        Files.writeString(stdErr, "");
+        assertFalse(executor.reattach(gonePid, 1000L, report.toString(), flowFile), "the run was killed");
+    }
+
+    @Test
+    void testRunLeavesNoStandardErrorFileBehind() throws Exception {
+        final Path report = tempDir.resolve("report.csv");
+        executor.execute(command("echo 'a,b' > '" + report + "'", report), flowFile, session);
+
+        assertFalse(Files.exists(tempDir.resolve(".report.csv.stderr")));
+    }
+
+    @Test
+    void testDeleteFile() throws Exception {
+        final Path report = Files.writeString(tempDir.resolve("report.csv"), "a,b\n");
+        final ICommand command = command("true", report);
+
+        executor.deleteFile(command, flowFile);
+        assertFalse(Files.exists(report));
+
+        assertThrows(FileNotFoundException.class, () -> executor.deleteFile(command, flowFile));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.ssh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.connection.channel.direct.Session.Command;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.SFTPClient;
+import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
+
+/**
+ * Compares the throughput of SFTP and of streaming through an exec channel, to help choose the `Exec Stream
+ * Threshold`. Needs an SSH server, so it only runs when asked for, e.g.
+ *
+ * <pre>
+ * mvn test -Dtest=ExecStreamBenchmarkTest -Dgeneva.benchmark.host=localhost -Dgeneva.benchmark.privatekey=~/.ssh/id_rsa
+ * </pre>
+ *
+ * Add latency to the loopback interface (e.g. {@code tc qdisc add dev lo root netem delay 20ms}) to see the effect of
+ * the SFTP request window.
+ */
+@EnabledIfSystemProperty(named = "geneva.benchmark.host", matches = ".+")
+class ExecStreamBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecStreamBenchmarkTest.class);
+    private static final long[] SIZES = { 1L << 20, 16L << 20, 128L << 20 };
+    private static final int ROUNDS = 3;
+
+    private SSHClient client;
+
+    @BeforeEach
+    public void connect() throws IOException {
+        client = new SSHClient();
+        client.addHostKeyVerifier(new PromiscuousVerifier());
+        client.connect(System.getProperty("geneva.benchmark.host"),
+                Integer.getInteger("geneva.benchmark.port", 22));
+        client.authPublickey(System.getProperty("geneva.benchmark.username", System.getProperty("user.name")),
+                System.getProperty("geneva.benchmark.privatekey",
+                        Paths.get(System.getProperty("user.home"), ".ssh", "id_rsa").toString()));
+    }
+
+    @AfterEach
+    public void disconnect() throws IOException {
+        client.disconnect();
+    }
+
+    @Test
+    void testCompareSftpAndExecStream() throws IOException {
+        for (final long size : SIZES) {
+            final String path = "/tmp/geneva-benchmark-" + size;
+            exec("head -c " + size + " /dev/urandom > " + path);
+            try {
+                long sftpNanos = Long.MAX_VALUE;
+                long execNanos = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    sftpNanos = Math.min(sftpNanos, time(() -> readOverSftp(path), size));
+                    execNanos = Math.min(execNanos, time(() -> readOverExec(path), size));
+                }
+                LOGGER.info(String.format("%,d bytes: sftp %.1f MB/s, exec stream %.1f MB/s", size,
+                        throughput(size, sftpNanos), throughput(size, execNanos)));
+            } finally {
+                exec("rm -f " + path);
+            }
+        }
+    }
+
+    private interface Transfer {
+        long run() throws IOException;
+    }
+
+    private static long time(final Transfer transfer, final long expectedSize) throws IOException {
+        final long start = System.nanoTime();
+        assertEquals(expectedSize, transfer.run());
+        return System.nanoTime() - start;
+    }
+
+    private static double throughput(final long size, final long nanos) {
+        return size / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    private long readOverSftp(final String path) throws IOException {
+        try (final SFTPClient sftpClient = client.newSFTPClient();
+                final RemoteFile remoteFile = sftpClient.open(path);
+                final InputStream in = remoteFile.new ReadAheadRemoteFileInputStream(16)) {
+            return drain(in);
+        }
+    }
+
+    private long readOverExec(final String path) throws IOException {
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec("cat -- " + path);
+            try (final InputStream in = cmd.getInputStream()) {
+                return drain(in);
+            }
+        }
+    }
+
+    private void exec(final String command) throws IOException {
+        try (final Session session = client.startSession()) {
+            final Command cmd = session.exec(command);
+            cmd.join(5, TimeUnit.MINUTES);
+            assertEquals(0, cmd.getExitStatus().intValue(), command);
+        }
+    }
+
+    private static long drain(final InputStream in) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+            total += read;
+        return total;
+    }
+}
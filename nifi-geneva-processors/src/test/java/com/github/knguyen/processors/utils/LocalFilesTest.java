@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.knguyen.processors.utils;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDelete() throws Exception {
+        final Path report = Files.writeString(tempDir.resolve("report.csv"), "a,b\n");
+
+        LocalFiles.delete(report);
+        assertFalse(Files.exists(report));
+
+        assertThrows(FileNotFoundException.class, () -> LocalFiles.delete(report));
+    }
+
+    @Test
+    void testAwaitVisibleWaitsForLateFile() throws Exception {
+        final Path report = tempDir.resolve("report.csv");
+        final Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                Files.writeString(report, "a,b\n");
+            } catch (final Exception exc) {
+                throw new IllegalStateException(exc);
+            }
+        });
+        writer.start();
+
+        assertDoesNotThrow(() -> LocalFiles.awaitVisible(report, 5000));
+        writer.join();
+    }
+
+    @Test
+    void testAwaitVisibleTimesOut() {
+        assertThrows(FileNotFoundException.class,
+                () -> LocalFiles.awaitVisible(tempDir.resolve("missing.csv"), 300));
+    }
+
+    @Test
+    void testEnsureCachedReusesTheSameContent() throws Exception {
+        final byte[] definition = "DEFINE REPORT positions ...".getBytes(StandardCharsets.UTF_8);
+
+        final Path cached = LocalFiles.ensureCached(tempDir, "positions.rsl", definition);
+        assertEquals("positions.rsl", cached.getFileName().toString());
+        assertEquals("DEFINE REPORT positions ...", Files.readString(cached));
+
+        final long modified = Files.getLastModifiedTime(cached).toMillis();
+        Files.setLastModifiedTime(cached, FileTime.fromMillis(modified - 60_000));
+        assertEquals(cached, LocalFiles.ensureCached(tempDir, "positions.rsl", definition));
+        assertEquals(modified - 60_000, Files.getLastModifiedTime(cached).toMillis());
+
+        final Path changed = LocalFiles.ensureCached(tempDir, "positions.rsl",
+                "DEFINE REPORT positions v2".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(cached, changed);
+        assertEquals("DEFINE REPORT positions ...", Files.readString(cached));
+        try (final var files = Files.list(cached.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+}